@@ -25,6 +25,7 @@ import java.util.Arrays;
 import com.anji.nn.AnjiNet;
 import com.anji.nn.Neuron;
 import com.anji.nn.Pattern;
+import com.ojcoleman.ahni.evaluation.EvaluationBudget;
 import com.ojcoleman.ahni.util.ArrayUtil;
 
 /**
@@ -83,6 +84,8 @@ public class AnjiActivator implements Activator {
 		if (newInputValues != null)
 			inputPattern.setValues(newInputValues);
 
+		EvaluationBudget.step(numCycles);
+
 		// step through network activations for recurrent network
 		for (int cycle = 0; cycle < numCycles - 1; ++cycle) {
 			net.step();
@@ -0,0 +1,197 @@
+package com.anji.integration;
+
+import java.awt.Graphics2D;
+import java.util.Arrays;
+
+import com.anji.nn.AnjiNet;
+import com.anji.nn.CompiledAnjiNet;
+import com.ojcoleman.ahni.evaluation.EvaluationBudget;
+import com.ojcoleman.ahni.util.ArrayUtil;
+
+/**
+ * Activator for an {@link AnjiNet} compiled to a {@link CompiledAnjiNet}. Behaves as {@link AnjiActivator} (see
+ * {@link CompiledAnjiNet} for the treatment of recurrent connections) but activates the network with a single pass
+ * over flat arrays, which is much faster for networks activated very many times such as CPPNs.
+ *
+ * @see AnjiNetTranscriber#transcribeCompiled(org.jgapcustomised.Chromosome)
+ */
+public class CompiledAnjiActivator implements Activator {
+	private AnjiNet net;
+	private CompiledAnjiNet compiled;
+	private int numCycles = 1;
+	private double[] lastInput;
+	private double minResponseValue;
+	private double maxResponseValue;
+
+	/**
+	 * @param aNet ANN, which must not have been wrapped by an {@link AnjiActivator}.
+	 * @param aNumCycles number of times input pattern is "shown" to network before a result is returned; this allows
+	 *            for recurrent connections to take effect
+	 * @throws IllegalArgumentException
+	 */
+	public CompiledAnjiActivator(AnjiNet aNet, int aNumCycles) throws IllegalArgumentException {
+		if (aNumCycles < 1)
+			throw new IllegalArgumentException("numCycles must be >= 1");
+		numCycles = aNumCycles;
+		net = aNet;
+		compiled = new CompiledAnjiNet(aNet);
+		lastInput = new double[compiled.getInputDimension()];
+
+		// verify consistent response ranges
+		minResponseValue = compiled.getOutputFunc(0).getMinValue();
+		maxResponseValue = compiled.getOutputFunc(0).getMaxValue();
+		for (int i = 1; i < compiled.getOutputDimension(); ++i)
+			if (minResponseValue != compiled.getOutputFunc(i).getMinValue() || maxResponseValue != compiled.getOutputFunc(i).getMaxValue())
+				throw new IllegalArgumentException("min and max values for response nodes differ");
+	}
+
+	public double[] next() {
+		return next((double[]) null);
+	}
+
+	public double[] next(double[] newInputValues) {
+		assert !Double.isNaN(ArrayUtil.sum(newInputValues)) : "input array contains NaN: " + Arrays.toString(newInputValues);
+
+		if (newInputValues != null)
+			System.arraycopy(newInputValues, 0, lastInput, 0, lastInput.length);
+
+		EvaluationBudget.step(numCycles);
+
+		for (int cycle = 0; cycle < numCycles; ++cycle) {
+			compiled.step(lastInput);
+		}
+		double[] result = new double[compiled.getOutputDimension()];
+		compiled.getOutput(result);
+
+		assert !Double.isNaN(ArrayUtil.sum(result)) : "result array contains NaN: " + Arrays.toString(result);
+
+		return result;
+	}
+
+	/**
+	 * Activate the network for a batch of input patterns, each from the reset state, with the results identical to
+	 * calling {@link #reset()} and {@link #next(double[])} for each pattern. See
+	 * {@link CompiledAnjiNet#activateBatch(double[][], int, int, double[][])}.
+	 *
+	 * @param input The input values, indexed by [input][pattern].
+	 * @param count The number of patterns in the batch.
+	 * @param output An array to write the output values into, indexed by [output][pattern].
+	 */
+	public void nextBatch(double[][] input, int count, double[][] output) {
+		EvaluationBudget.step(numCycles * count);
+		compiled.activateBatch(input, count, numCycles, output);
+	}
+
+	public double[][] nextSequence(double[][] newInputValues) {
+		double[][] result = new double[newInputValues.length][];
+		for (int i = 0; i < newInputValues.length; ++i) {
+			result[i] = next(newInputValues[i]);
+		}
+		return result;
+	}
+
+	public double[][] next(double[][] stimuli) {
+		throw new IllegalArgumentException("CompiledAnjiActivator can only accept one dimensional input patterns");
+	}
+
+	public double[][][] nextSequence(double[][][] stimuli) {
+		throw new IllegalArgumentException("CompiledAnjiActivator can only accept one dimensional input patterns");
+	}
+
+	/**
+	 * clear all memory in network
+	 */
+	public void reset() {
+		compiled.reset();
+	}
+
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return net.toString();
+	}
+
+	/**
+	 * @see com.anji.integration.Activator#toXml()
+	 */
+	public String toXml() {
+		return net.toXml();
+	}
+
+	/**
+	 * @see com.anji.integration.Activator#getName()
+	 */
+	public String getName() {
+		return net.getName();
+	}
+
+	public void setName(String string) {
+		net.setName(string);
+	}
+
+	public int[] getInputDimension() {
+		return new int[] { compiled.getInputDimension() };
+	}
+
+	public int[] getOutputDimension() {
+		return new int[] { compiled.getOutputDimension() };
+	}
+
+	public int getInputCount() {
+		return compiled.getInputDimension();
+	}
+
+	public int getOutputCount() {
+		return compiled.getOutputDimension();
+	}
+
+	public boolean isRecurrent() {
+		return compiled.isRecurrent();
+	}
+
+	public double getMinResponse() {
+		return minResponseValue;
+	}
+
+	public double getMaxResponse() {
+		return maxResponseValue;
+	}
+
+	/**
+	 * @see com.anji.util.XmlPersistable#getXmlRootTag()
+	 */
+	public String getXmlRootTag() {
+		return "network";
+	}
+
+	/**
+	 * @see com.anji.util.XmlPersistable#getXmld()
+	 */
+	public String getXmld() {
+		return net.getName();
+	}
+
+	/**
+	 * Generate a class to activate the network, see {@link CompiledAnjiNet#generateClass()}.
+	 * 
+	 * @return true iff a class was generated.
+	 */
+	public boolean generateClass() {
+		return compiled.generateClass();
+	}
+
+	/**
+	 * Return the underlying AnjiNet, which is not used for activation.
+	 */
+	public AnjiNet getAnjiNet() {
+		return net;
+	}
+
+	public boolean render(Graphics2D g, int width, int height, int neuronSize) {
+		return false;
+	}
+
+	public void dispose() {
+	}
+}
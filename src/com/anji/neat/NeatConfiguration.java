@@ -37,6 +37,7 @@ import org.jgapcustomised.impl.WeightedRouletteSelector;
 
 import com.anji.integration.SimpleSelector;
 import com.anji.nn.RecurrencyPolicy;
+import com.anji.nn.activationfunction.ActivationFunctionFactory;
 import com.anji.util.Configurable;
 import com.anji.util.Properties;
 import com.anji.util.Randomizer;
@@ -293,6 +294,11 @@ public class NeatConfiguration extends Configuration implements Configurable {
 	public void init(Properties newProps) throws InvalidConfigurationException {
 		props = newProps;
 
+		// Must be set before any networks (or objects creating them) are created.
+		ActivationFunctionFactory.getInstance().setFastMath(props.getBooleanProperty(ActivationFunctionFactory.FAST_MATH_KEY, false));
+		if (ActivationFunctionFactory.getInstance().isFastMath())
+			logger.info("Using fast approximations of activation functions.");
+
 		Randomizer r = (Randomizer) props.singletonObjectProperty(Randomizer.class);
 		setRandomGenerator(r.getRand());
 		setEventManager(new EventManager());
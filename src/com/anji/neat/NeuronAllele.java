@@ -136,6 +136,11 @@ public class NeuronAllele extends Allele {
 		return getType().equals(other.getType()) && getActivationType().equals(other.getActivationType()) && bias == other.bias;
 	}
 
+	@Override
+	public long equivalenceHash() {
+		return super.equivalenceHash() * 31 + getActivationType().hashCode();
+	}
+
 	/**
 	 * Gets the bias value.
 	 */
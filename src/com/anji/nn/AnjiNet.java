@@ -113,12 +113,12 @@ public class AnjiNet {
 		return inNeurons.size();
 	}
 
-	// /**
-	// * @return <code>Collection</code> contains all <code>Neuron</code> objects
-	// */
-	// public Collection getAllNeurons() {
-	// return allNeurons;
-	// }
+	/**
+	 * @return <code>List</code> contains all <code>Neuron</code> objects
+	 */
+	public List<Neuron> getAllNeurons() {
+		return allNeurons;
+	}
 
 	/**
 	 * @param idx
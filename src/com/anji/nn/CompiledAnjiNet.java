@@ -0,0 +1,486 @@
+package com.anji.nn;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.anji.nn.activationfunction.AbsoluteActivationFunction;
+import com.anji.nn.activationfunction.ActivationFunction;
+import com.anji.nn.activationfunction.ActivationFunctionNonIntegrating;
+import com.anji.nn.activationfunction.BipolarSigmoidActivationFunction;
+import com.anji.nn.activationfunction.CosineActivationFunction;
+import com.anji.nn.activationfunction.GaussianActivationFunction;
+import com.anji.nn.activationfunction.LinearActivationFunction;
+import com.anji.nn.activationfunction.SigmoidActivationFunction;
+import com.anji.nn.activationfunction.SineActivationFunction;
+import com.anji.nn.activationfunction.SteepSigmoidActivationFunction;
+import com.anji.nn.activationfunction.TanhActivationFunction;
+
+/**
+ * <p>
+ * A flattened form of an {@link AnjiNet}, for networks that are activated very many times such as CPPNs. The neurons
+ * are sorted topologically so that a single pass over them in order activates the network; the incoming connections of
+ * each neuron are stored as source neuron indices and weights in flat arrays and the activation function of each
+ * neuron as an opcode, with the most common functions computed inline. This avoids the recursive, object-based
+ * activation of {@link AnjiNet}, which is slow and may overflow the stack for deep networks.
+ * </p>
+ * <p>
+ * Neuron values are double buffered: connections in the forward direction read the value of their source neuron from
+ * the current step, while recurrent connections ({@link CacheNeuronConnection}s, and any other connections that close
+ * a cycle) read the value from the previous step. For feed-forward networks the output is identical to that of the
+ * {@link AnjiNet} the instance was compiled from. For recurrent networks each recurrent connection always conveys the
+ * value from the previous step, whereas the lazy activation in {@link AnjiNet} may convey the value from the current
+ * step depending on the order neurons happen to be activated in.
+ * </p>
+ */
+public class CompiledAnjiNet {
+	private static final int OP_LINEAR = 0;
+	private static final int OP_SIGMOID = 1;
+	private static final int OP_STEEP_SIGMOID = 2;
+	private static final int OP_BIPOLAR_SIGMOID = 3;
+	private static final int OP_TANH = 4;
+	private static final int OP_GAUSSIAN = 5;
+	private static final int OP_SINE = 6;
+	private static final int OP_COSINE = 7;
+	private static final int OP_ABSOLUTE = 8;
+	/**
+	 * Any other integrating activation function, applied via {@link ActivationFunction#apply(double)}.
+	 */
+	private static final int OP_FUNCTION = 9;
+	/**
+	 * A non-integrating activation function, applied via {@link ActivationFunctionNonIntegrating#apply(double[], double)}.
+	 */
+	static final int OP_NON_INTEGRATING = 10;
+
+	final int neuronCount;
+	final int[] op;
+	final ActivationFunction[] func;
+	final double[] bias;
+	/**
+	 * The index of the input value for each neuron, or -1 if it is not an input neuron.
+	 */
+	final int[] inputIndex;
+	/**
+	 * The incoming connections of neuron n are at indices [connStart[n], connStart[n+1]) of connSource, connWeight and
+	 * connRecurrent, in the same order as in the original network.
+	 */
+	final int[] connStart;
+	final int[] connSource;
+	final double[] connWeight;
+	final boolean[] connRecurrent;
+	private final boolean recurrent;
+	private final int[] outputs;
+	private final int inputCount;
+
+	private double[] current;
+	private double[] previous;
+	/**
+	 * The generated class that performs activation, or null if activation is performed by {@link #step(double[])}.
+	 */
+	private Program program;
+	/**
+	 * Scratch space for the inputs to each neuron with a non-integrating activation function.
+	 */
+	final double[][] nonIntegratingInput;
+	/**
+	 * Neuron values for {@link #activateBatch(double[][], int, int, double[][])}, indexed by [neuron][pattern].
+	 */
+	private double[][] batchCurrent;
+	private double[][] batchPrevious;
+	private int batchCapacity;
+
+	/**
+	 * Compile the given network. The network must not have been wrapped by an activator that connects input patterns
+	 * to its input neurons, as the input neurons of the compiled network read their input directly.
+	 *
+	 * @throws IllegalArgumentException If the network contains connection types other than {@link NeuronConnection}
+	 *             and {@link CacheNeuronConnection}.
+	 */
+	public CompiledAnjiNet(AnjiNet net) {
+		List<Neuron> neurons = net.getAllNeurons();
+		neuronCount = neurons.size();
+		Map<Neuron, Integer> indexOf = new IdentityHashMap<Neuron, Integer>(neuronCount * 2);
+		for (int i = 0; i < neuronCount; i++) {
+			indexOf.put(neurons.get(i), i);
+		}
+
+		// Topologically sort the neurons by forward connections with an iterative depth-first search, marking
+		// connections that close a cycle as recurrent.
+		int connCount = 0;
+		Connection[][] incoming = new Connection[neuronCount][];
+		for (int i = 0; i < neuronCount; i++) {
+			incoming[i] = neurons.get(i).getIncomingConns().toArray(new Connection[0]);
+			connCount += incoming[i].length;
+			for (Connection c : incoming[i]) {
+				if (!(c instanceof NeuronConnection)) {
+					throw new IllegalArgumentException("Unable to compile network containing connections of type " + c.getClass().getName());
+				}
+			}
+		}
+		boolean[][] cyclic = new boolean[neuronCount][];
+		int[] order = new int[neuronCount]; // original index for each position
+		int[] position = new int[neuronCount]; // position for each original index
+		int[] state = new int[neuronCount]; // 0 = unvisited, 1 = in progress, 2 = done
+		int[] stack = new int[neuronCount];
+		int[] nextConn = new int[neuronCount];
+		inputIndex = new int[neuronCount];
+		Arrays.fill(inputIndex, -1);
+		int sorted = 0;
+		for (int root = 0; root < neuronCount; root++) {
+			if (state[root] != 0)
+				continue;
+			int top = 0;
+			stack[top] = root;
+			state[root] = 1;
+			cyclic[root] = new boolean[incoming[root].length];
+			while (top >= 0) {
+				int n = stack[top];
+				if (nextConn[n] < incoming[n].length) {
+					int c = nextConn[n]++;
+					NeuronConnection conn = (NeuronConnection) incoming[n][c];
+					if (conn instanceof CacheNeuronConnection)
+						continue;
+					int src = indexOf.get(conn.getIncomingNode());
+					if (state[src] == 1) {
+						cyclic[n][c] = true;
+					} else if (state[src] == 0) {
+						state[src] = 1;
+						cyclic[src] = new boolean[incoming[src].length];
+						stack[++top] = src;
+					}
+				} else {
+					state[n] = 2;
+					position[n] = sorted;
+					order[sorted++] = n;
+					top--;
+				}
+			}
+		}
+
+		inputCount = net.getInputDimension();
+		for (int i = 0; i < inputCount; i++) {
+			inputIndex[position[indexOf.get(net.getInputNeuron(i))]] = i;
+		}
+		outputs = new int[net.getOutputDimension()];
+		for (int i = 0; i < outputs.length; i++) {
+			outputs[i] = position[indexOf.get(net.getOutputNeuron(i))];
+		}
+
+		op = new int[neuronCount];
+		func = new ActivationFunction[neuronCount];
+		bias = new double[neuronCount];
+		connStart = new int[neuronCount + 1];
+		connSource = new int[connCount];
+		connWeight = new double[connCount];
+		connRecurrent = new boolean[connCount];
+		boolean anyRecurrent = false;
+		nonIntegratingInput = new double[neuronCount][];
+		int c = 0;
+		for (int p = 0; p < neuronCount; p++) {
+			int n = order[p];
+			Neuron neuron = neurons.get(n);
+			func[p] = neuron.getFunc();
+			op[p] = opcode(func[p]);
+			bias[p] = neuron.getBias();
+			connStart[p] = c;
+			for (int i = 0; i < incoming[n].length; i++, c++) {
+				NeuronConnection conn = (NeuronConnection) incoming[n][i];
+				connSource[c] = position[indexOf.get(conn.getIncomingNode())];
+				connWeight[c] = conn.getWeight();
+				connRecurrent[c] = conn instanceof CacheNeuronConnection || cyclic[n][i];
+				anyRecurrent |= connRecurrent[c];
+			}
+			if (op[p] == OP_NON_INTEGRATING) {
+				nonIntegratingInput[p] = new double[incoming[n].length + (inputIndex[p] != -1 ? 1 : 0)];
+			}
+		}
+		connStart[neuronCount] = c;
+		recurrent = anyRecurrent;
+		current = new double[neuronCount];
+		previous = new double[neuronCount];
+	}
+
+	private static int opcode(ActivationFunction f) {
+		if (f instanceof ActivationFunctionNonIntegrating)
+			return OP_NON_INTEGRATING;
+		// Only the exact classes, subclasses may override apply().
+		Class<?> c = f.getClass();
+		if (c == LinearActivationFunction.class)
+			return OP_LINEAR;
+		if (c == SigmoidActivationFunction.class)
+			return OP_SIGMOID;
+		if (c == SteepSigmoidActivationFunction.class)
+			return OP_STEEP_SIGMOID;
+		if (c == BipolarSigmoidActivationFunction.class)
+			return OP_BIPOLAR_SIGMOID;
+		if (c == TanhActivationFunction.class)
+			return OP_TANH;
+		if (c == GaussianActivationFunction.class)
+			return OP_GAUSSIAN;
+		if (c == SineActivationFunction.class)
+			return OP_SINE;
+		if (c == CosineActivationFunction.class)
+			return OP_COSINE;
+		if (c == AbsoluteActivationFunction.class)
+			return OP_ABSOLUTE;
+		return OP_FUNCTION;
+	}
+
+	/**
+	 * Perform one activation step.
+	 *
+	 * @param input The values of the input neurons, which are added to their weighted input sums.
+	 */
+	public void step(double[] input) {
+		double[] t = previous;
+		previous = current;
+		current = t;
+		if (program != null) {
+			program.step(input, current, previous);
+			return;
+		}
+		double[] cur = current;
+		double[] prev = previous;
+		for (int n = 0; n < neuronCount; n++) {
+			int start = connStart[n];
+			int end = connStart[n + 1];
+			int in = inputIndex[n];
+			double value;
+			if (op[n] == OP_NON_INTEGRATING) {
+				double[] values = nonIntegratingInput[n];
+				int count = 0;
+				for (int c = start; c < end; c++) {
+					values[count++] = connRecurrent[c] ? cached(connWeight[c] * prev[connSource[c]]) : connWeight[c] * cur[connSource[c]];
+				}
+				if (in != -1) {
+					values[count++] = input[in];
+				}
+				value = ((ActivationFunctionNonIntegrating) func[n]).apply(values, bias[n]);
+			} else {
+				double sum = bias[n];
+				for (int c = start; c < end; c++) {
+					sum += connRecurrent[c] ? cached(connWeight[c] * prev[connSource[c]]) : connWeight[c] * cur[connSource[c]];
+				}
+				if (in != -1) {
+					sum += input[in];
+				}
+				switch (op[n]) {
+				case OP_LINEAR:
+					value = sum;
+					break;
+				case OP_SIGMOID:
+					value = 1.0 / (1.0 + Math.exp(-sum));
+					break;
+				case OP_STEEP_SIGMOID:
+					value = 1.0 / (1.0 + Math.exp(-(sum * 4.9)));
+					break;
+				case OP_BIPOLAR_SIGMOID:
+					value = 2.0 / (1.0 + Math.exp(-(sum * 2))) - 1.0;
+					break;
+				case OP_TANH:
+					value = -1 + (2 / (1 + Math.exp(-2 * sum)));
+					break;
+				case OP_GAUSSIAN:
+					value = Math.exp(-(sum * sum));
+					break;
+				case OP_SINE:
+					value = Math.sin(sum);
+					break;
+				case OP_COSINE:
+					value = Math.cos(sum);
+					break;
+				case OP_ABSOLUTE:
+					value = Math.abs(sum);
+					break;
+				default:
+					value = func[n].apply(sum);
+				}
+			}
+			cur[n] = value;
+		}
+	}
+
+	/**
+	 * Activate the network for a batch of input patterns, each starting from the reset state, as if for each pattern
+	 * {@link #reset()} were called followed by the given number of calls to {@link #step(double[])} (the results are
+	 * identical). The batch is computed column-wise: each neuron is computed for all patterns before moving on to the
+	 * next neuron, so the inner loops run over contiguous arrays and no arrays are allocated once the internal buffers
+	 * have grown to the batch size. The state of the network used by {@link #step(double[])} is not affected.
+	 *
+	 * @param input The input values, indexed by [input neuron][pattern].
+	 * @param count The number of patterns in the batch.
+	 * @param cycles The number of activation steps performed for each pattern.
+	 * @param output An array to write the output values into, indexed by [output neuron][pattern].
+	 */
+	public void activateBatch(double[][] input, int count, int cycles, double[][] output) {
+		if (batchCurrent == null || batchCapacity < count) {
+			batchCapacity = count;
+			batchCurrent = new double[neuronCount][count];
+			batchPrevious = new double[neuronCount][count];
+		}
+		if (recurrent) {
+			for (int n = 0; n < neuronCount; n++) {
+				Arrays.fill(batchCurrent[n], 0, count, 0);
+			}
+			for (int cycle = 0; cycle < cycles; cycle++) {
+				double[][] t = batchPrevious;
+				batchPrevious = batchCurrent;
+				batchCurrent = t;
+				stepBatch(input, count, batchCurrent, batchPrevious);
+			}
+		} else {
+			// Without recurrent connections every step gives the same result, and the previous values are not used.
+			stepBatch(input, count, batchCurrent, batchPrevious);
+		}
+		for (int i = 0; i < outputs.length; i++) {
+			System.arraycopy(batchCurrent[outputs[i]], 0, output[i], 0, count);
+		}
+	}
+
+	private void stepBatch(double[][] input, int count, double[][] cur, double[][] prev) {
+		for (int n = 0; n < neuronCount; n++) {
+			int start = connStart[n];
+			int end = connStart[n + 1];
+			int in = inputIndex[n];
+			double[] value = cur[n];
+			if (op[n] == OP_NON_INTEGRATING) {
+				ActivationFunctionNonIntegrating f = (ActivationFunctionNonIntegrating) func[n];
+				double[] values = nonIntegratingInput[n];
+				for (int p = 0; p < count; p++) {
+					int k = 0;
+					for (int c = start; c < end; c++) {
+						values[k++] = connRecurrent[c] ? cached(connWeight[c] * prev[connSource[c]][p]) : connWeight[c] * cur[connSource[c]][p];
+					}
+					if (in != -1) {
+						values[k++] = input[in][p];
+					}
+					value[p] = f.apply(values, bias[n]);
+				}
+				continue;
+			}
+
+			Arrays.fill(value, 0, count, bias[n]);
+			for (int c = start; c < end; c++) {
+				double w = connWeight[c];
+				if (connRecurrent[c]) {
+					double[] source = prev[connSource[c]];
+					for (int p = 0; p < count; p++) {
+						value[p] += cached(w * source[p]);
+					}
+				} else {
+					double[] source = cur[connSource[c]];
+					for (int p = 0; p < count; p++) {
+						value[p] += w * source[p];
+					}
+				}
+			}
+			if (in != -1) {
+				double[] source = input[in];
+				for (int p = 0; p < count; p++) {
+					value[p] += source[p];
+				}
+			}
+			func[n].apply(value, value, 0, count);
+		}
+	}
+
+	/**
+	 * The value conveyed by a recurrent connection, as for {@link CacheNeuronConnection#step()}.
+	 */
+	static double cached(double v) {
+		return Math.min(Math.max(v, -Float.MAX_VALUE), Float.MAX_VALUE);
+	}
+
+	/**
+	 * Generate a class to perform activation for this network, see {@link CompiledAnjiNetGenerator}. Subsequent
+	 * activation uses the generated class, which gives identical results.
+	 *
+	 * @return true iff a class was generated (or retrieved from the cache), false if the network is too large, in which
+	 *         case activation continues to use the flat arrays.
+	 */
+	public boolean generateClass() {
+		program = CompiledAnjiNetGenerator.newProgram(this);
+		return program != null;
+	}
+
+	/**
+	 * @return true iff activation is performed by a generated class, see {@link #generateClass()}.
+	 */
+	public boolean isGenerated() {
+		return program != null;
+	}
+
+	/**
+	 * Base class for classes generated by {@link CompiledAnjiNetGenerator}. Generated classes are loaded by their own
+	 * class loader, so members accessed by them must be public or protected.
+	 */
+	public static abstract class Program {
+		/**
+		 * The activation function of each neuron, in topological order.
+		 */
+		protected ActivationFunction[] func;
+		/**
+		 * Scratch space for the inputs to each neuron with a non-integrating activation function.
+		 */
+		protected double[][] nonIntegratingInput;
+
+		/**
+		 * Perform one activation step, reading recurrent connections from previous and writing the value of every
+		 * neuron to current.
+		 */
+		public abstract void step(double[] input, double[] current, double[] previous);
+
+		/**
+		 * The value conveyed by a recurrent connection.
+		 */
+		protected static double cached(double v) {
+			return CompiledAnjiNet.cached(v);
+		}
+	}
+
+	/**
+	 * Copy the values of the output neurons from the last step into the given array.
+	 */
+	public void getOutput(double[] output) {
+		for (int i = 0; i < outputs.length; i++) {
+			output[i] = current[outputs[i]];
+		}
+	}
+
+	/**
+	 * Set the values of all neurons to 0.
+	 */
+	public void reset() {
+		Arrays.fill(current, 0);
+		Arrays.fill(previous, 0);
+	}
+
+	/**
+	 * @return The number of input neurons.
+	 */
+	public int getInputDimension() {
+		return inputCount;
+	}
+
+	/**
+	 * @return The number of output neurons.
+	 */
+	public int getOutputDimension() {
+		return outputs.length;
+	}
+
+	/**
+	 * @return The activation function of the given output neuron.
+	 */
+	public ActivationFunction getOutputFunc(int idx) {
+		return func[outputs[idx]];
+	}
+
+	/**
+	 * @return true if the network contains any recurrent connections, false otherwise.
+	 */
+	public boolean isRecurrent() {
+		return recurrent;
+	}
+}
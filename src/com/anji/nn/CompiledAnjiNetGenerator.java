@@ -0,0 +1,461 @@
+package com.anji.nn;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import com.anji.nn.activationfunction.ActivationFunction;
+import com.anji.nn.activationfunction.ActivationFunctionNonIntegrating;
+
+/**
+ * <p>
+ * Generates a Java class for each {@link CompiledAnjiNet}, written directly as a class file, that activates the
+ * network with straight-line code: one block per neuron in topological order, with the connection weights and biases
+ * as constants and the values of neurons held in local variables. Each activation function is applied through its own
+ * call site, which sees only one class of function, so the JIT can inline it. All activation functions are supported,
+ * including {@link ActivationFunctionNonIntegrating} ones. The generated code performs exactly the same arithmetic in
+ * the same order as {@link CompiledAnjiNet#step(double[])}, so results are identical.
+ * </p>
+ * <p>
+ * Networks larger than {@link #MAX_NEURONS} neurons or {@link #MAX_CODE_BYTES} bytes of code are not generated, they
+ * are activated with {@link CompiledAnjiNet#step(double[])}. Generated classes are cached by the structure, weights and
+ * activation functions of the network, so that the same genome (e.g. an elite individual) transcribed again reuses its
+ * class. The cache holds at most {@link #CACHE_SIZE} classes. Each class is defined by its own class loader, so once it
+ * has been evicted from the cache and the networks using it are discarded it can be unloaded.
+ * </p>
+ */
+public class CompiledAnjiNetGenerator {
+	private static final Logger logger = Logger.getLogger(CompiledAnjiNetGenerator.class);
+
+	/**
+	 * The maximum number of neurons in a network for which a class is generated.
+	 */
+	public static final int MAX_NEURONS = 4096;
+	/**
+	 * The maximum size of the generated method, slightly below the limit of 65535 bytes imposed by the class file
+	 * format.
+	 */
+	public static final int MAX_CODE_BYTES = 65000;
+	/**
+	 * The maximum number of generated classes to cache.
+	 */
+	public static final int CACHE_SIZE = 512;
+
+	private static final String PROGRAM_CLASS = "com/anji/nn/CompiledAnjiNet$Program";
+	private static final String STEP_DESC = "([D[D[D)V";
+	/**
+	 * Local variables of the step method: this, input, current, previous, scratch array, then the neuron values.
+	 */
+	private static final int LOCAL_SCRATCH = 4;
+	private static final int LOCAL_FIRST_NEURON = 5;
+
+	private static final AtomicLong classCount = new AtomicLong();
+	private static final Map<Key, Class<?>> cache = new LinkedHashMap<Key, Class<?>>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, Class<?>> eldest) {
+			return size() > CACHE_SIZE;
+		}
+	};
+
+	/**
+	 * Create an instance of the generated class for the given network, generating the class if it is not in the cache.
+	 *
+	 * @return The instance, or null if the network is too large.
+	 */
+	static CompiledAnjiNet.Program newProgram(CompiledAnjiNet net) {
+		if (net.neuronCount > MAX_NEURONS) {
+			return null;
+		}
+		Key key = new Key(net);
+		Class<?> programClass;
+		synchronized (cache) {
+			programClass = cache.get(key);
+		}
+		if (programClass == null) {
+			String name = "com.anji.nn.GeneratedAnjiNet" + classCount.incrementAndGet();
+			byte[] classFile = generate(net, name.replace('.', '/'));
+			if (classFile == null) {
+				return null;
+			}
+			programClass = new ProgramLoader(CompiledAnjiNet.Program.class.getClassLoader()).define(name, classFile);
+			synchronized (cache) {
+				cache.put(key, programClass);
+			}
+		}
+		try {
+			CompiledAnjiNet.Program program = (CompiledAnjiNet.Program) programClass.getDeclaredConstructor().newInstance();
+			program.func = net.func;
+			program.nonIntegratingInput = net.nonIntegratingInput;
+			return program;
+		} catch (Exception e) {
+			logger.warn("Unable to instantiate generated network class: " + e);
+			return null;
+		}
+	}
+
+	/**
+	 * Generate the class file for the given network.
+	 *
+	 * @return The class file, or null if the generated method would be too large.
+	 */
+	private static byte[] generate(CompiledAnjiNet net, String className) {
+		ConstantPool cp = new ConstantPool();
+		int thisClass = cp.classRef(className);
+		int superClass = cp.classRef(PROGRAM_CLASS);
+		int superInit = cp.methodRef(PROGRAM_CLASS, "<init>", "()V");
+		int funcField = cp.fieldRef(PROGRAM_CLASS, "func", "[Lcom/anji/nn/activationfunction/ActivationFunction;");
+		int scratchField = cp.fieldRef(PROGRAM_CLASS, "nonIntegratingInput", "[[D");
+		int cached = cp.methodRef(PROGRAM_CLASS, "cached", "(D)D");
+		int apply = cp.interfaceMethodRef("com/anji/nn/activationfunction/ActivationFunction", "apply", "(D)D");
+		int applyNonIntegrating = cp.interfaceMethodRef("com/anji/nn/activationfunction/ActivationFunctionNonIntegrating", "apply", "([DD)D");
+		int nonIntegratingClass = cp.classRef("com/anji/nn/activationfunction/ActivationFunctionNonIntegrating");
+
+		Code code = new Code();
+		for (int n = 0; n < net.neuronCount; n++) {
+			int start = net.connStart[n];
+			int end = net.connStart[n + 1];
+			int in = net.inputIndex[n];
+			if (net.op[n] == CompiledAnjiNet.OP_NON_INTEGRATING) {
+				// scratch = nonIntegratingInput[n]; scratch[i] = <input i> ...
+				code.op(Code.ALOAD_0).op(Code.GETFIELD).u2(scratchField).pushInt(n).op(Code.AALOAD).op(Code.ASTORE).u1(LOCAL_SCRATCH);
+				int i = 0;
+				for (int c = start; c < end; c++, i++) {
+					code.op(Code.ALOAD).u1(LOCAL_SCRATCH).pushInt(i);
+					connectionTerm(code, cp, net, c, cached);
+					code.op(Code.DASTORE);
+				}
+				if (in != -1) {
+					code.op(Code.ALOAD).u1(LOCAL_SCRATCH).pushInt(i).op(Code.ALOAD_1).pushInt(in).op(Code.DALOAD).op(Code.DASTORE);
+				}
+				// ((ActivationFunctionNonIntegrating) func[n]).apply(scratch, bias)
+				code.op(Code.ALOAD_0).op(Code.GETFIELD).u2(funcField).pushInt(n).op(Code.AALOAD).op(Code.CHECKCAST).u2(nonIntegratingClass);
+				code.op(Code.ALOAD).u1(LOCAL_SCRATCH);
+				code.pushDouble(cp, net.bias[n]);
+				code.op(Code.INVOKEINTERFACE).u2(applyNonIntegrating).u1(4).u1(0);
+			} else {
+				// func[n].apply(bias + <input 0> + <input 1> ...)
+				code.op(Code.ALOAD_0).op(Code.GETFIELD).u2(funcField).pushInt(n).op(Code.AALOAD);
+				code.pushDouble(cp, net.bias[n]);
+				for (int c = start; c < end; c++) {
+					connectionTerm(code, cp, net, c, cached);
+					code.op(Code.DADD);
+				}
+				if (in != -1) {
+					code.op(Code.ALOAD_1).pushInt(in).op(Code.DALOAD).op(Code.DADD);
+				}
+				code.op(Code.INVOKEINTERFACE).u2(apply).u1(3).u1(0);
+			}
+			// value_n = <result>; current[n] = value_n
+			code.dstore(LOCAL_FIRST_NEURON + 2 * n);
+			code.op(Code.ALOAD_2).pushInt(n).dload(LOCAL_FIRST_NEURON + 2 * n).op(Code.DASTORE);
+			if (code.size() > MAX_CODE_BYTES) {
+				return null;
+			}
+		}
+		code.op(Code.RETURN);
+
+		int codeAttr = cp.utf8("Code");
+		int stepName = cp.utf8("step");
+		int stepDesc = cp.utf8(STEP_DESC);
+		int initName = cp.utf8("<init>");
+		int initDesc = cp.utf8("()V");
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(code.size() + cp.size() + 256);
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeInt(0xCAFEBABE);
+			out.writeShort(0); // minor version
+			out.writeShort(49); // major version (Java 5), no stack map frames required
+			cp.write(out);
+			out.writeShort(0x0001 | 0x0010 | 0x0020); // public final super
+			out.writeShort(thisClass);
+			out.writeShort(superClass);
+			out.writeShort(0); // interfaces
+			out.writeShort(0); // fields
+			out.writeShort(2); // methods
+
+			// public <init>() { super(); }
+			out.writeShort(0x0001);
+			out.writeShort(initName);
+			out.writeShort(initDesc);
+			out.writeShort(1);
+			out.writeShort(codeAttr);
+			out.writeInt(12 + 5);
+			out.writeShort(1); // max stack
+			out.writeShort(1); // max locals
+			out.writeInt(5);
+			out.writeByte(Code.ALOAD_0);
+			out.writeByte(Code.INVOKESPECIAL);
+			out.writeShort(superInit);
+			out.writeByte(Code.RETURN);
+			out.writeShort(0); // exception table
+			out.writeShort(0); // attributes
+
+			// public void step(double[] input, double[] current, double[] previous)
+			out.writeShort(0x0001);
+			out.writeShort(stepName);
+			out.writeShort(stepDesc);
+			out.writeShort(1);
+			out.writeShort(codeAttr);
+			out.writeInt(12 + code.size());
+			out.writeShort(8); // max stack
+			out.writeShort(LOCAL_FIRST_NEURON + 2 * net.neuronCount); // max locals
+			out.writeInt(code.size());
+			code.writeTo(out);
+			out.writeShort(0); // exception table
+			out.writeShort(0); // attributes
+
+			out.writeShort(0); // class attributes
+			out.flush();
+			return bytes.toByteArray();
+		} catch (IOException e) {
+			// Not possible with a ByteArrayOutputStream.
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Push the value conveyed by the given connection: weight * value of the source neuron, from its local variable
+	 * for forward connections or from the previous step for recurrent connections.
+	 */
+	private static void connectionTerm(Code code, ConstantPool cp, CompiledAnjiNet net, int c, int cached) {
+		int src = net.connSource[c];
+		code.pushDouble(cp, net.connWeight[c]);
+		if (net.connRecurrent[c]) {
+			code.op(Code.ALOAD_3).pushInt(src).op(Code.DALOAD).op(Code.DMUL);
+			code.op(Code.INVOKESTATIC).u2(cached);
+		} else {
+			code.dload(LOCAL_FIRST_NEURON + 2 * src).op(Code.DMUL);
+		}
+	}
+
+	/**
+	 * Identifies a network by its structure, weights and activation functions.
+	 */
+	private static class Key {
+		final int[] structure;
+		final long[] values;
+		final ActivationFunction[] func;
+		final int hash;
+
+		Key(CompiledAnjiNet net) {
+			int neurons = net.neuronCount;
+			int conns = net.connSource.length;
+			structure = new int[2 * neurons + 1 + 2 * conns];
+			values = new long[neurons + conns];
+			int s = 0, v = 0;
+			for (int n = 0; n < neurons; n++) {
+				structure[s++] = net.inputIndex[n];
+				structure[s++] = net.connStart[n];
+				values[v++] = Double.doubleToLongBits(net.bias[n]);
+			}
+			structure[s++] = net.connStart[neurons];
+			for (int c = 0; c < conns; c++) {
+				structure[s++] = net.connSource[c];
+				structure[s++] = net.connRecurrent[c] ? 1 : 0;
+				values[v++] = Double.doubleToLongBits(net.connWeight[c]);
+			}
+			func = net.func.clone();
+			hash = 31 * (31 * Arrays.hashCode(structure) + Arrays.hashCode(values)) + Arrays.hashCode(func);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key))
+				return false;
+			Key k = (Key) o;
+			return hash == k.hash && Arrays.equals(structure, k.structure) && Arrays.equals(values, k.values) && Arrays.equals(func, k.func);
+		}
+	}
+
+	/**
+	 * Defines a single generated class, so that the class can be unloaded independently of all others.
+	 */
+	private static class ProgramLoader extends ClassLoader {
+		ProgramLoader(ClassLoader parent) {
+			super(parent);
+		}
+
+		Class<?> define(String name, byte[] classFile) {
+			return defineClass(name, classFile, 0, classFile.length);
+		}
+	}
+
+	/**
+	 * The constant pool of a class file being generated.
+	 */
+	private static class ConstantPool {
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		private final DataOutputStream out = new DataOutputStream(bytes);
+		private final Map<String, Integer> entries = new HashMap<String, Integer>();
+		private int count = 1;
+
+		private int entry(String key, int tag, int slots, Object... parts) {
+			Integer index = entries.get(key);
+			if (index != null)
+				return index;
+			try {
+				out.writeByte(tag);
+				for (Object part : parts) {
+					if (part instanceof String) {
+						out.writeUTF((String) part);
+					} else if (part instanceof Long) {
+						out.writeLong((Long) part);
+					} else {
+						out.writeShort((Integer) part);
+					}
+				}
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+			index = count;
+			count += slots;
+			entries.put(key, index);
+			return index;
+		}
+
+		int utf8(String s) {
+			return entry("U" + s, 1, 1, s);
+		}
+
+		int doubleConstant(double d) {
+			long bits = Double.doubleToRawLongBits(d);
+			return entry("D" + bits, 6, 2, Long.valueOf(bits));
+		}
+
+		int classRef(String name) {
+			int n = utf8(name);
+			return entry("C" + name, 7, 1, n);
+		}
+
+		private int nameAndType(String name, String desc) {
+			int n = utf8(name);
+			int d = utf8(desc);
+			return entry("N" + name + " " + desc, 12, 1, n, d);
+		}
+
+		private int memberRef(int tag, String owner, String name, String desc) {
+			int c = classRef(owner);
+			int nt = nameAndType(name, desc);
+			return entry(tag + owner + "." + name + desc, tag, 1, c, nt);
+		}
+
+		int fieldRef(String owner, String name, String desc) {
+			return memberRef(9, owner, name, desc);
+		}
+
+		int methodRef(String owner, String name, String desc) {
+			return memberRef(10, owner, name, desc);
+		}
+
+		int interfaceMethodRef(String owner, String name, String desc) {
+			return memberRef(11, owner, name, desc);
+		}
+
+		int size() {
+			return bytes.size();
+		}
+
+		void write(DataOutputStream dest) throws IOException {
+			if (count > 0xFFFF) {
+				throw new IOException("Too many constants.");
+			}
+			dest.writeShort(count);
+			bytes.writeTo(dest);
+		}
+	}
+
+	/**
+	 * The bytecode of a method being generated.
+	 */
+	private static class Code {
+		static final int DCONST_0 = 0x0e;
+		static final int DCONST_1 = 0x0f;
+		static final int BIPUSH = 0x10;
+		static final int SIPUSH = 0x11;
+		static final int LDC2_W = 0x14;
+		static final int DLOAD = 0x18;
+		static final int ALOAD = 0x19;
+		static final int ALOAD_0 = 0x2a;
+		static final int ALOAD_1 = 0x2b;
+		static final int ALOAD_2 = 0x2c;
+		static final int ALOAD_3 = 0x2d;
+		static final int DALOAD = 0x31;
+		static final int AALOAD = 0x32;
+		static final int DSTORE = 0x39;
+		static final int ASTORE = 0x3a;
+		static final int DASTORE = 0x52;
+		static final int DADD = 0x63;
+		static final int DMUL = 0x6b;
+		static final int RETURN = 0xb1;
+		static final int GETFIELD = 0xb4;
+		static final int INVOKESPECIAL = 0xb7;
+		static final int INVOKESTATIC = 0xb8;
+		static final int INVOKEINTERFACE = 0xb9;
+		static final int CHECKCAST = 0xc0;
+		static final int WIDE = 0xc4;
+
+		private byte[] code = new byte[1024];
+		private int size;
+
+		Code u1(int b) {
+			if (size == code.length) {
+				code = Arrays.copyOf(code, size * 2);
+			}
+			code[size++] = (byte) b;
+			return this;
+		}
+
+		Code u2(int s) {
+			return u1(s >> 8).u1(s);
+		}
+
+		Code op(int opcode) {
+			return u1(opcode);
+		}
+
+		Code pushInt(int i) {
+			if (i >= -1 && i <= 5)
+				return op(0x03 + i); // iconst_<i>
+			if (i >= Byte.MIN_VALUE && i <= Byte.MAX_VALUE)
+				return op(BIPUSH).u1(i);
+			return op(SIPUSH).u2(i);
+		}
+
+		Code pushDouble(ConstantPool cp, double d) {
+			long bits = Double.doubleToRawLongBits(d);
+			if (bits == Double.doubleToRawLongBits(0.0))
+				return op(DCONST_0);
+			if (bits == Double.doubleToRawLongBits(1.0))
+				return op(DCONST_1);
+			return op(LDC2_W).u2(cp.doubleConstant(d));
+		}
+
+		Code dload(int local) {
+			return local <= 0xFF ? op(DLOAD).u1(local) : op(WIDE).op(DLOAD).u2(local);
+		}
+
+		Code dstore(int local) {
+			return local <= 0xFF ? op(DSTORE).u1(local) : op(WIDE).op(DSTORE).u2(local);
+		}
+
+		int size() {
+			return size;
+		}
+
+		void writeTo(DataOutputStream out) throws IOException {
+			out.write(code, 0, size);
+		}
+	}
+}
@@ -193,6 +193,9 @@ public class Neuron implements XmlPersistable {
 	
 	private boolean nonIntegrating = false;
 
+	// reused to pass the inputs to a non-integrating function
+	private double[] nonIntegratingInput;
+
 	// time step
 
 	private ArrayList<Connection> incomingConns = new ArrayList<Connection>();
@@ -241,11 +244,14 @@ public class Neuron implements XmlPersistable {
 		if (dirty) {
 			if (nonIntegrating) {
 				ActivationFunctionNonIntegrating func2 = (ActivationFunctionNonIntegrating) func;
-				double[] input = new double[incomingConns.size()];
-				for (int i = 0; i < incomingConns.size(); i++) {
-					input[i] = incomingConns.get(i).read();
+				int count = incomingConns.size();
+				if (nonIntegratingInput == null || nonIntegratingInput.length < count) {
+					nonIntegratingInput = new double[count];
+				}
+				for (int i = 0; i < count; i++) {
+					nonIntegratingInput[i] = incomingConns.get(i).read();
 				}
-				value = func2.apply(input, bias);
+				value = func2.apply(nonIntegratingInput, count, bias);
 			} else {
 				double sum = bias;
 				for (int i = 0; i < incomingConns.size(); i++) {
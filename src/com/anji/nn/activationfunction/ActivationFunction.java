@@ -36,6 +36,18 @@ public interface ActivationFunction {
 	 */
 	public abstract double apply(double input);
 
+	/**
+	 * Apply activation function to each of a range of inputs. The result is identical to calling
+	 * {@link #apply(double)} for each input, but avoids a virtual call per value when many neurons or input patterns
+	 * are activated together.
+	 * 
+	 * @param input the inputs
+	 * @param output array to write the results to, may be the same array as <code>input</code>
+	 * @param from index of the first input to apply activation function to
+	 * @param to index after the last input to apply activation function to
+	 */
+	public void apply(double[] input, double[] output, int from, int to);
+
 	/**
 	 * @return ceiling value for this function
 	 */
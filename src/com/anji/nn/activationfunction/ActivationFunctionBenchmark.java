@@ -0,0 +1,76 @@
+package com.anji.nn.activationfunction;
+
+import java.util.Random;
+
+/**
+ * Compares the throughput and accuracy of the approximated activation functions used in the "fast math" mode (see
+ * {@link ActivationFunctionFactory#setFastMath(boolean)}) against the exact functions, to help decide whether the
+ * mode is appropriate for an experiment. Usage: <code>ActivationFunctionBenchmark [input range] [seconds per
+ * function]</code>, inputs are drawn uniformly from [-range, range], default range is 8 and default time is 1 second.
+ */
+public class ActivationFunctionBenchmark {
+	private static final int INPUT_COUNT = 1 << 16;
+	/**
+	 * Receives the sum of the outputs of each measurement so the evaluations can not be eliminated.
+	 */
+	private static volatile double sink;
+
+	public static void main(String[] args) {
+		double range = args.length > 0 ? Double.parseDouble(args[0]) : 8;
+		double seconds = args.length > 1 ? Double.parseDouble(args[1]) : 1;
+
+		Random random = new Random(1);
+		double[] inputs = new double[INPUT_COUNT];
+		for (int i = 0; i < INPUT_COUNT; i++) {
+			inputs[i] = (random.nextDouble() * 2 - 1) * range;
+		}
+
+		ActivationFunctionFactory factory = ActivationFunctionFactory.getInstance();
+		boolean initialFastMath = factory.isFastMath();
+		factory.setFastMath(true);
+		String[] names = new String[] { SigmoidActivationFunction.NAME, SteepSigmoidActivationFunction.NAME, BipolarSigmoidActivationFunction.NAME, TanhActivationFunction.NAME, TanhCubicActivationFunction.NAME, GaussianActivationFunction.NAME, SineActivationFunction.NAME, CosineActivationFunction.NAME };
+		LookupTableActivationFunction[] fast = new LookupTableActivationFunction[names.length];
+		for (int f = 0; f < names.length; f++) {
+			fast[f] = (LookupTableActivationFunction) factory.get(names[f]);
+		}
+		factory.setFastMath(initialFastMath);
+
+		// Warm up all functions before timing any, so that the call site is as polymorphic as when activating a network.
+		for (int f = 0; f < names.length; f++) {
+			measure(fast[f].getExact(), inputs, seconds * 0.2);
+			measure(fast[f], inputs, seconds * 0.2);
+		}
+
+		System.out.println(String.format("%-16s %14s %14s %8s %12s %12s", "function", "exact (M/s)", "fast (M/s)", "speedup", "max error", "table error"));
+		for (int f = 0; f < names.length; f++) {
+			ActivationFunction exact = fast[f].getExact();
+			double error = 0;
+			for (int i = 0; i < INPUT_COUNT; i++) {
+				error = Math.max(error, Math.abs(fast[f].apply(inputs[i]) - exact.apply(inputs[i])));
+			}
+			double exactRate = measure(exact, inputs, seconds);
+			double fastRate = measure(fast[f], inputs, seconds);
+			System.out.println(String.format("%-16s %14.1f %14.1f %8.2f %12.2e %12.2e", names[f], exactRate / 1e6, fastRate / 1e6, fastRate / exactRate, error, fast[f].getMaxError()));
+		}
+	}
+
+	/**
+	 * @return The number of evaluations per second.
+	 */
+	private static double measure(ActivationFunction function, double[] inputs, double seconds) {
+		long duration = (long) (seconds * 1e9);
+		long count = 0;
+		double sum = 0;
+		long start = System.nanoTime();
+		long elapsed;
+		do {
+			for (int i = 0; i < inputs.length; i++) {
+				sum += function.apply(inputs[i]);
+			}
+			count += inputs.length;
+			elapsed = System.nanoTime() - start;
+		} while (elapsed < duration);
+		sink = sum;
+		return count / (elapsed / 1e9);
+	}
+}
@@ -28,11 +28,23 @@ import java.util.Map;
  * @author Philip Tucker
  */
 public class ActivationFunctionFactory {
+	/**
+	 * If true then the sigmoid, steep and bipolar sigmoid, hyperbolic tangent (and of cubic), Gaussian, sine and cosine
+	 * functions are replaced by faster approximations, see {@link #setFastMath(boolean)}. Default is false.
+	 */
+	public static final String FAST_MATH_KEY = "ann.activation.fastmath";
+
+	/**
+	 * The number of intervals in the lookup table for each approximated function.
+	 */
+	private static final int FAST_MATH_INTERVALS = 4096;
 
 	private Map<String, ActivationFunction> activationFunctions = new HashMap<String, ActivationFunction>();
 
 	private static ActivationFunctionFactory instance = null;
 
+	private boolean fastMath = false;
+
 	/**
 	 * singleton; initialize map of activation functions
 	 */
@@ -78,6 +90,46 @@ public class ActivationFunctionFactory {
 		return instance;
 	}
 
+	/**
+	 * Enable or disable the "fast math" mode, in which functions that are expensive to compute exactly are replaced by
+	 * a {@link LookupTableActivationFunction} approximating them by linear interpolation. This should be set before
+	 * any networks are created, as networks retain the functions they were created with. The maximum absolute error of
+	 * each approximation is given by {@link LookupTableActivationFunction#getMaxError()} and is less than 2e-6 for all
+	 * the functions replaced (about 1e-6 or less for most), see {@link ActivationFunctionBenchmark}.
+	 */
+	public synchronized void setFastMath(boolean fast) {
+		if (fast == fastMath)
+			return;
+		fastMath = fast;
+		if (fast) {
+			approximate(SigmoidActivationFunction.NAME, -16, 16, false);
+			approximate(SteepSigmoidActivationFunction.NAME, -16 / 4.9, 16 / 4.9, false);
+			approximate(BipolarSigmoidActivationFunction.NAME, -9, 9, false);
+			approximate(TanhActivationFunction.NAME, -9, 9, false);
+			approximate(TanhCubicActivationFunction.NAME, -2.6, 2.6, false);
+			approximate(GaussianActivationFunction.NAME, -4.1, 4.1, false);
+			approximate(SineActivationFunction.NAME, 0, 2 * Math.PI, true);
+			approximate(CosineActivationFunction.NAME, 0, 2 * Math.PI, true);
+		} else {
+			for (Map.Entry<String, ActivationFunction> e : activationFunctions.entrySet()) {
+				if (e.getValue() instanceof LookupTableActivationFunction) {
+					e.setValue(((LookupTableActivationFunction) e.getValue()).getExact());
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return true iff the "fast math" mode is enabled, see {@link #setFastMath(boolean)}.
+	 */
+	public boolean isFastMath() {
+		return fastMath;
+	}
+
+	private void approximate(String key, double min, double max, boolean periodic) {
+		activationFunctions.put(key, new LookupTableActivationFunction(activationFunctions.get(key), min, max, FAST_MATH_INTERVALS, periodic));
+	}
+
 	/**
 	 * @param key ID of activation function; these are defined in each concrete <code>ActivationFunction</code> class;
 	 *            e.g., <code>SigmoidActivationFunction</code>, <code>LinearActivationFunction</code>, and
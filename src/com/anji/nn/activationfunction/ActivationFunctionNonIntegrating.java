@@ -1,6 +1,16 @@
 package com.anji.nn.activationfunction;
 
+/**
+ * Activation function that is applied to the individual (weighted) inputs to a neuron rather than their sum.
+ */
 public interface ActivationFunctionNonIntegrating {
 	public double apply(double[] input, double bias);
 
+	/**
+	 * Apply activation function to the first <code>count</code> inputs in the given array, allowing a buffer to be
+	 * reused for neurons with any number of inputs. The result is identical to {@link #apply(double[], double)} for an
+	 * array containing just those inputs.
+	 */
+	public double apply(double[] input, int count, double bias);
+
 }
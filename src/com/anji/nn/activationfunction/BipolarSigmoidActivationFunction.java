@@ -56,6 +56,14 @@ public class BipolarSigmoidActivationFunction implements ActivationFunction {
 		return 2.0 / (1.0 + Math.exp(-(input * SLOPE))) - 1.0;
 	}
 
+	/**
+	 * @see com.anji.nn.activationfunction.ActivationFunction#apply(double[], double[], int, int)
+	 */
+	public void apply(double[] input, double[] output, int from, int to) {
+		for (int i = from; i < to; i++)
+			output[i] = apply(input[i]);
+	}
+
 	/**
 	 * @see com.anji.nn.activationfunction.ActivationFunction#getMaxValue()
 	 */
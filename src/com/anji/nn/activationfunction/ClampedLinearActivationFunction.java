@@ -48,6 +48,14 @@ public class ClampedLinearActivationFunction implements ActivationFunction {
 			return input;
 	}
 
+	/**
+	 * @see com.anji.nn.activationfunction.ActivationFunction#apply(double[], double[], int, int)
+	 */
+	public void apply(double[] input, double[] output, int from, int to) {
+		for (int i = from; i < to; i++)
+			output[i] = apply(input[i]);
+	}
+
 	/**
 	 * @see com.anji.nn.activationfunction.ActivationFunction#getMaxValue()
 	 */
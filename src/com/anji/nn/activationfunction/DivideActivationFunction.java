@@ -1,5 +1,7 @@
 package com.anji.nn.activationfunction;
 
+import java.util.Arrays;
+
 /**
  * Divide activation function (divides first input by second input).
  * 
@@ -34,14 +36,31 @@ public class DivideActivationFunction implements ActivationFunction, ActivationF
 		return 0;
 	}
 
+	/**
+	 * Not used as this is a non-integrating function, sets outputs to 0.
+	 * 
+	 * @see #apply(double[], int, double)
+	 */
+	public void apply(double[] input, double[] output, int from, int to) {
+		Arrays.fill(output, from, to, 0);
+	}
+
 	/**
 	 * Return first input divided by second input (or just first input if no second input).
 	 * Output is capped to +/- Float.MAX_VALUE
 	 */
 	@Override
 	public double apply(double[] input, double bias) {
-		if (input.length > 0) {
-			if (input.length < 2)
+		return apply(input, input.length, bias);
+	}
+
+	/**
+	 * @see com.anji.nn.activationfunction.ActivationFunctionNonIntegrating#apply(double[], int, double)
+	 */
+	@Override
+	public double apply(double[] input, int count, double bias) {
+		if (count > 0) {
+			if (count < 2)
 				return input[0];
 			double v = input[0] / input[1];
 			if (Double.isNaN(v) || Double.isInfinite(v)) {
@@ -54,6 +54,14 @@ public class LinearActivationFunction implements ActivationFunction {
 		return input;
 	}
 
+	/**
+	 * @see com.anji.nn.activationfunction.ActivationFunction#apply(double[], double[], int, int)
+	 */
+	public void apply(double[] input, double[] output, int from, int to) {
+		if (input != output)
+			System.arraycopy(input, from, output, from, to - from);
+	}
+
 	/**
 	 * @see com.anji.nn.activationfunction.ActivationFunction#getMaxValue()
 	 */
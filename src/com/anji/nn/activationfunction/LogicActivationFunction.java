@@ -1,5 +1,7 @@
 package com.anji.nn.activationfunction;
 
+import java.util.Arrays;
+
 /**
  * Absolute activation function.
  * 
@@ -15,6 +17,22 @@ public abstract class LogicActivationFunction implements ActivationFunction, Act
 		return 0;
 	}
 
+	/**
+	 * Not used as this is a non-integrating function, sets outputs to 0.
+	 * 
+	 * @see #apply(double[], int, double)
+	 */
+	public void apply(double[] input, double[] output, int from, int to) {
+		Arrays.fill(output, from, to, 0);
+	}
+
+	/**
+	 * @see com.anji.nn.activationfunction.ActivationFunctionNonIntegrating#apply(double[], double)
+	 */
+	public double apply(double[] input, double bias) {
+		return apply(input, input.length, bias);
+	}
+
 	/**
 	 * @see com.anji.nn.activationfunction.ActivationFunction#getMaxValue()
 	 */
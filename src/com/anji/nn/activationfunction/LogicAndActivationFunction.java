@@ -25,14 +25,14 @@ public class LogicAndActivationFunction extends LogicActivationFunction {
 	}
 
 	/**
-	 * Returns the result of a logical AND over all inputs, where an input value greater than or equal to 0.5 is
-	 * considered logical true, and less than 0.5 false.
+	 * Returns the result of a logical AND over the first <code>count</code> inputs, where an input value greater than
+	 * or equal to 0.5 is considered logical true, and less than 0.5 false.
 	 * 
 	 * @return 1 or 0 depending on result of logic operation.
 	 */
-	public double apply(double[] input, double bias) {
+	public double apply(double[] input, int count, double bias) {
 		boolean result = false;
-		for (int i = 0; i < input.length; i++)
+		for (int i = 0; i < count; i++)
 			result &= input[i] >= 0.5;
 		return result ? 1 : 0;
 	}
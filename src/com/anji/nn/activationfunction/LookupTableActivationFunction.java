@@ -0,0 +1,123 @@
+package com.anji.nn.activationfunction;
+
+/**
+ * Approximates another activation function by linear interpolation in a table of its values, for the "fast math"
+ * activation mode (see {@link ActivationFunctionFactory#setFastMath(boolean)}). For a bounded domain the input is
+ * clamped to the domain, so the function should be close to its asymptotes at the ends of the domain; for a periodic
+ * domain the input is wrapped into the domain. The maximum absolute error of the approximation, measured over the
+ * domain and beyond it when the table is built, is given by {@link #getMaxError()}. This class has the same name as
+ * the function it approximates, so networks using it are persisted identically.
+ */
+public class LookupTableActivationFunction implements ActivationFunction {
+	private final ActivationFunction exact;
+	private final double min;
+	private final double period;
+	private final double invStep;
+	private final int intervals;
+	private final double invIntervals;
+	private final boolean periodic;
+	private final double[] table;
+	private final double maxError;
+
+	/**
+	 * This class should only be accessed via ActivationFunctionFactory.
+	 *
+	 * @param exact The function to approximate.
+	 * @param min The lower bound of the domain.
+	 * @param max The upper bound of the domain.
+	 * @param intervals The number of intervals to divide the domain in to.
+	 * @param periodic If true then the function is periodic with period max - min, otherwise the input is clamped to
+	 *            [min, max].
+	 */
+	LookupTableActivationFunction(ActivationFunction exact, double min, double max, int intervals, boolean periodic) {
+		this.exact = exact;
+		this.min = min;
+		this.intervals = intervals;
+		invIntervals = 1.0 / intervals;
+		this.periodic = periodic;
+		period = max - min;
+		double step = period / intervals;
+		invStep = 1.0 / step;
+		// One extra entry so that an input at the end of the domain may still be interpolated.
+		table = new double[intervals + 2];
+		for (int i = 0; i < table.length; i++) {
+			table[i] = exact.apply(min + i * step);
+		}
+
+		// The interpolation error is greatest within intervals, and for a clamped domain beyond the ends of it.
+		double error = 0;
+		for (int i = 0; i < intervals; i++) {
+			for (int q = 1; q < 4; q++) {
+				double x = min + (i + q * 0.25) * step;
+				error = Math.max(error, Math.abs(apply(x) - exact.apply(x)));
+			}
+		}
+		double[] outside = periodic ? new double[] { min - period * 0.3, max + period * 10.7 } : new double[] { min - period, max + period, -Double.MAX_VALUE, Double.MAX_VALUE };
+		for (double x : outside) {
+			error = Math.max(error, Math.abs(apply(x) - exact.apply(x)));
+		}
+		maxError = error;
+	}
+
+	public double apply(double input) {
+		double x = (input - min) * invStep;
+		if (periodic) {
+			x -= Math.floor(x * invIntervals) * intervals;
+		} else {
+			x = x < 0 ? 0 : (x > intervals ? intervals : x);
+		}
+		int i = (int) x;
+		double a = table[i];
+		return a + (table[i + 1] - a) * (x - i);
+	}
+
+	/**
+	 * @see com.anji.nn.activationfunction.ActivationFunction#apply(double[], double[], int, int)
+	 */
+	public void apply(double[] input, double[] output, int from, int to) {
+		for (int i = from; i < to; i++)
+			output[i] = apply(input[i]);
+	}
+
+	/**
+	 * @return The maximum absolute difference between this function and the function it approximates.
+	 */
+	public double getMaxError() {
+		return maxError;
+	}
+
+	/**
+	 * @return The function this function approximates.
+	 */
+	public ActivationFunction getExact() {
+		return exact;
+	}
+
+	/**
+	 * @see com.anji.nn.activationfunction.ActivationFunction#getMaxValue()
+	 */
+	public double getMaxValue() {
+		return exact.getMaxValue();
+	}
+
+	/**
+	 * @see com.anji.nn.activationfunction.ActivationFunction#getMinValue()
+	 */
+	public double getMinValue() {
+		return exact.getMinValue();
+	}
+
+	/**
+	 * @see com.anji.nn.activationfunction.ActivationFunction#cost()
+	 */
+	public long cost() {
+		return 42;
+	}
+
+	/**
+	 * @see Object#toString()
+	 */
+	public String toString() {
+		return exact.toString();
+	}
+}
@@ -1,5 +1,7 @@
 package com.anji.nn.activationfunction;
 
+import java.util.Arrays;
+
 /**
  * Multiply activation function.
  * 
@@ -32,14 +34,30 @@ public class MultiplyActivationFunction implements ActivationFunction, Activatio
 	public double apply(double input) {
 		return 0;
 	}
+
+	/**
+	 * Not used as this is a non-integrating function, sets outputs to 0.
+	 * 
+	 * @see #apply(double[], int, double)
+	 */
+	public void apply(double[] input, double[] output, int from, int to) {
+		Arrays.fill(output, from, to, 0);
+	}
 	
 	/**
 	 * Return result of inputs multiplied together.
 	 */
 	public double apply(double[] input, double bias) {
-		if (input.length == 0) return 0;
+		return apply(input, input.length, bias);
+	}
+
+	/**
+	 * @see com.anji.nn.activationfunction.ActivationFunctionNonIntegrating#apply(double[], int, double)
+	 */
+	public double apply(double[] input, int count, double bias) {
+		if (count == 0) return 0;
 		double result = input[0];
-		for (int i = 1; i < input.length; i++)
+		for (int i = 1; i < count; i++)
 			result *= input[i];;
 		return result;
 	}
@@ -1,5 +1,7 @@
 package com.anji.nn.activationfunction;
 
+import java.util.Arrays;
+
 /**
  * Square-root function.
  * 
@@ -33,12 +35,29 @@ public class PowerActivationFunction implements ActivationFunction, ActivationFu
 		return 0;
 	}
 
+	/**
+	 * Not used as this is a non-integrating function, sets outputs to 0.
+	 * 
+	 * @see #apply(double[], int, double)
+	 */
+	public void apply(double[] input, double[] output, int from, int to) {
+		Arrays.fill(output, from, to, 0);
+	}
+
 	/**
 	 * Return first input raised to the power of the absolute value of the second input (or just first input if no second input).
 	 */
 	@Override
 	public double apply(double[] input, double bias) {
-		if (input.length < 2)
+		return apply(input, input.length, bias);
+	}
+
+	/**
+	 * @see com.anji.nn.activationfunction.ActivationFunctionNonIntegrating#apply(double[], int, double)
+	 */
+	@Override
+	public double apply(double[] input, int count, double bias) {
+		if (count < 2)
 			return input[0];
 		double v = Math.pow(input[0], Math.abs(input[1]));
 		return Double.isNaN(v) ? 0 : v;
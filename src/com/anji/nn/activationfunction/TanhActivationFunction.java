@@ -54,6 +54,14 @@ public class TanhActivationFunction implements ActivationFunction {
 		return (-1 + (2 / (1 + (double) Math.exp(-2 * (input)))));
 	}
 
+	/**
+	 * @see com.anji.nn.activationfunction.ActivationFunction#apply(double[], double[], int, int)
+	 */
+	public void apply(double[] input, double[] output, int from, int to) {
+		for (int i = from; i < to; i++)
+			output[i] = apply(input[i]);
+	}
+
 	/**
 	 * @see com.anji.nn.activationfunction.ActivationFunction#getMaxValue()
 	 */
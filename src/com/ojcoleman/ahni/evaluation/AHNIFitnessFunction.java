@@ -53,4 +53,13 @@ public abstract class AHNIFitnessFunction extends BulkFitnessFunction {
 	 */
 	public void evaluate(Chromosome genotype, Activator substrate, String baseFileName, boolean logText, boolean logImage) {
 	}
+
+	/**
+	 * This method may optionally be overridden to provide a brief summary of statistics about the most recent
+	 * evaluation of the population, which is appended to the line logged for each generation. This default
+	 * implementation returns null (nothing is appended).
+	 */
+	public String getLogSummary() {
+		return null;
+	}
 }
@@ -0,0 +1,35 @@
+package com.ojcoleman.ahni.evaluation;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An {@link EvaluationScheduler} in which all evaluator threads claim chunks from a single shared index via a
+ * compare-and-set operation, so no locking is required to hand out work. This is the default scheduler.
+ */
+public class AtomicIndexScheduler extends EvaluationScheduler {
+	private final AtomicInteger next = new AtomicInteger();
+	private volatile int itemCount;
+	private volatile int threadCount;
+
+	@Override
+	public void reset(int itemCount, int threadCount) {
+		this.itemCount = itemCount;
+		this.threadCount = threadCount;
+		next.set(0);
+	}
+
+	@Override
+	public boolean nextChunk(int thread, int[] chunk) {
+		while (true) {
+			int start = next.get();
+			if (start >= itemCount)
+				return false;
+			int end = start + chunkSize(itemCount - start, threadCount);
+			if (next.compareAndSet(start, end)) {
+				chunk[0] = start;
+				chunk[1] = end;
+				return true;
+			}
+		}
+	}
+}
@@ -5,12 +5,19 @@ import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
+import java.util.RandomAccess;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.imageio.ImageIO;
 
@@ -28,7 +35,6 @@ import com.anji.neat.Evolver;
 import com.anji.util.Randomizer;
 import com.ojcoleman.ahni.evaluation.novelty.Behaviour;
 import com.ojcoleman.ahni.evaluation.novelty.NoveltySearch;
-import com.ojcoleman.ahni.evaluation.novelty.RealVectorBehaviour;
 import com.ojcoleman.ahni.experiments.csb.SimpleNavigationEnvironment;
 import com.ojcoleman.ahni.hyperneat.Configurable;
 import com.ojcoleman.ahni.hyperneat.HyperNEATConfiguration;
@@ -36,6 +42,8 @@ import com.ojcoleman.ahni.hyperneat.HyperNEATEvolver;
 import com.ojcoleman.ahni.hyperneat.Properties;
 import com.ojcoleman.ahni.util.ArrayUtil;
 import com.ojcoleman.ahni.util.CircularFifoBuffer;
+import com.ojcoleman.ahni.util.LightweightThreads;
+import com.ojcoleman.ahni.util.SplitMixRandom;
 
 /**
  * <p>
@@ -69,6 +77,17 @@ public abstract class BulkFitnessFunctionMT extends AHNIFitnessFunction implemen
 	 * processor cores and the specified minimum will be used.
 	 */
 	public static final String MAX_THREADS_KEY = "fitness.max_threads";
+	/**
+	 * Property key to enable automatic tuning of the number of evaluator threads. If enabled, the number of individuals
+	 * evaluated per second is measured over the first generations using different numbers of threads between
+	 * {@link #MIN_THREADS_KEY} and {@link #MAX_THREADS_KEY} (or the number of processor cores if this is not set), and
+	 * the fastest is then used for subsequent generations. Fewer threads can be faster for memory-bandwidth-bound
+	 * substrates. Thread counts are probed again when the substrates are reset, for example when the substrate is
+	 * resized. Not used with {@link #WORKERS_KEY}. Default is false.
+	 * 
+	 * @see ThreadCountTuner
+	 */
+	public static final String THREADS_AUTOTUNE_KEY = "fitness.threads.autotune";
 
 	/**
 	 * Property key for specifying additional fitness function classes in a multi-objective evaluation. Note that these
@@ -88,12 +107,154 @@ public abstract class BulkFitnessFunctionMT extends AHNIFitnessFunction implemen
 	 */
 	public static final String MULTI_WEIGHTING_KEY = "fitness.function.multi.weighting";
 
+	/**
+	 * Property key for the {@link EvaluationScheduler} used to dispatch individuals to the evaluator threads. Default
+	 * is {@link AtomicIndexScheduler}. {@link WorkStealingScheduler} may give better load balancing when evaluation
+	 * costs vary a lot between individuals.
+	 */
+	public static final String SCHEDULER_CLASS_KEY = "fitness.scheduler.class";
+
+	/**
+	 * Property key for the number of threads to use for transcription of genotype/cppn to phenotype/substrate when
+	 * transcription and evaluation are performed as separate pipeline stages. If this is greater than 0 then
+	 * transcription threads feed a bounded queue of ready substrates to the evaluation threads (the number of which is
+	 * determined by {@link #MIN_THREADS_KEY} and {@link #MAX_THREADS_KEY}), so that transcription of some individuals
+	 * overlaps with evaluation of others. Default is 0 (disabled, each evaluation thread transcribes and then
+	 * evaluates each individual in turn).
+	 */
+	public static final String TRANSCRIBE_THREADS_KEY = "fitness.transcribe_threads";
+	/**
+	 * Property key for the maximum number of transcribed substrates waiting to be evaluated when
+	 * {@link #TRANSCRIBE_THREADS_KEY} is greater than 0. Default is twice the number of evaluation threads.
+	 */
+	public static final String PIPELINE_QUEUE_SIZE_KEY = "fitness.pipeline.queue_size";
+	/**
+	 * Property key for the maximum number of individuals to evaluate concurrently when each evaluation is run on its
+	 * own lightweight thread. This suits fitness functions that spend most of their time blocked, for example waiting
+	 * on I/O, a simulator in another process or a remote service, for which the number of concurrent evaluations
+	 * should be much larger than the number of processors. If this is greater than 0 then transcription and evaluation
+	 * are pipelined: the (CPU-bound) transcription is performed by a bounded pool of transcription threads (see
+	 * {@link #TRANSCRIBE_THREADS_KEY}, default is the number of evaluator threads), each of which starts a new
+	 * lightweight thread to evaluate each individual it has transcribed. Virtual threads are used if the JVM supports
+	 * them (Java 21 or later), otherwise platform threads with a small stack are used (see {@link LightweightThreads}).
+	 * The evalThreadIndex passed to the evaluate methods is then in the range [0, {@link #getNumThreads()} + this
+	 * value). Novelty assessment and racing rounds (see {@link #RACING_KEY}) are still performed by the evaluator
+	 * threads. Not used with worker processes (see {@link #WORKERS_KEY}) or thread count auto-tuning (see
+	 * {@link #THREADS_AUTOTUNE_KEY}). Default is 0 (disabled).
+	 */
+	public static final String VIRTUAL_THREADS_KEY = "fitness.virtual_threads";
+
+	/**
+	 * Property key to enable racing evaluation for fitness functions that support evaluating individuals one trial at a
+	 * time (see {@link #getRacingTrialCount()}). When enabled all individuals are evaluated on a first block of trials,
+	 * then in each subsequent round only the best individuals so far (see {@link #RACING_SURVIVAL_KEY} and
+	 * {@link #RACING_CONFIDENCE_KEY}) are evaluated on the next block of trials, until all trials have been performed
+	 * for the remaining individuals. The fitness and performance of an individual are the average over the trials it
+	 * was evaluated on. Racing is only available if the primary fitness function defines one fitness objective and no
+	 * novelty objectives, and if enabled fitness caching (see {@link #fitnessValuesDeterministic()}) is disabled. If
+	 * the fitness function does not support racing (it defines fewer than two trials) an exception is thrown when
+	 * evaluation begins. Default is false.
+	 */
+	public static final String RACING_KEY = "fitness.racing";
+	/**
+	 * Property key for the number of trials to perform in each round of racing evaluation. Default is a quarter of the
+	 * number of trials.
+	 */
+	public static final String RACING_BLOCK_KEY = "fitness.racing.block";
+	/**
+	 * Property key for the fraction of individuals that continue to the next round of racing evaluation. Default is
+	 * 0.5.
+	 */
+	public static final String RACING_SURVIVAL_KEY = "fitness.racing.survival";
+	/**
+	 * Property key for the confidence bound used when eliminating individuals in racing evaluation, as a number of
+	 * standard errors of the average fitness over the trials performed so far. An individual outside the fraction given
+	 * by {@link #RACING_SURVIVAL_KEY} is only eliminated if its average fitness plus this many standard errors is lower
+	 * than the average fitness minus this many standard errors of the worst individual within the fraction. 0 gives
+	 * plain successive halving. Default is 1.
+	 */
+	public static final String RACING_CONFIDENCE_KEY = "fitness.racing.confidence";
+
+	/**
+	 * Property key for the maximum number of simulation steps, as reported by the substrate (see
+	 * {@link EvaluationBudget}), that the evaluation of an individual may take. If this is exceeded the evaluation is
+	 * aborted and the individual is assigned the fitness given by {@link #BUDGET_PENALTY_KEY}. Default is 0 (no
+	 * limit).
+	 */
+	public static final String BUDGET_STEPS_KEY = "fitness.budget.steps";
+	/**
+	 * Property key for the maximum wall-clock time, in milliseconds, that the evaluation of an individual may take. If
+	 * this is exceeded the evaluation is aborted and the individual is assigned the fitness given by
+	 * {@link #BUDGET_PENALTY_KEY}. Note that the time is only checked when the substrate performs a simulation step
+	 * (see {@link EvaluationBudget}). Default is 0 (no limit).
+	 */
+	public static final String BUDGET_TIME_KEY = "fitness.budget.time";
+	/**
+	 * Property key for the fitness assigned (for all fitness objectives that were being evaluated) to individuals whose
+	 * evaluation exceeds the budget given by {@link #BUDGET_STEPS_KEY} or {@link #BUDGET_TIME_KEY}. The performance of
+	 * such individuals is set to the worst possible value. Default is 0.
+	 */
+	public static final String BUDGET_PENALTY_KEY = "fitness.budget.penalty";
+	/**
+	 * Property key for the number of worker processes (separate JVMs on the same machine) to use to transcribe and
+	 * evaluate individuals, instead of evaluator threads in this JVM. This avoids allocation-heavy fitness functions
+	 * being limited by garbage collection in a single shared heap. Each worker sets up its own instance of the fitness
+	 * function(s) from a copy of the Properties for the run, so all fitness functions must be deterministic (see
+	 * {@link #fitnessValuesDeterministic()}) and must not change the task once evaluation has begun (for example by
+	 * increasing the difficulty or resizing the substrate), as such changes can not be reflected in the workers; this
+	 * is detected via {@link #invalidateFitnessCache()} and causes the run to fail. Novelty is assessed in this JVM.
+	 * Racing evaluation (see {@link #RACING_KEY}) and pipelined transcription (see {@link #TRANSCRIBE_THREADS_KEY}) are
+	 * not used with worker processes. Default is 0 (evaluate in this JVM).
+	 * 
+	 * @see EvaluationWorker
+	 */
+	public static final String WORKERS_KEY = "fitness.workers";
+	/**
+	 * Property key for additional arguments for the worker JVMs (see {@link #WORKERS_KEY}), separated by whitespace,
+	 * for example "-Xmx2g -XX:+UseParallelGC". Default is none.
+	 */
+	public static final String WORKERS_JVM_ARGS_KEY = "fitness.workers.jvm_args";
+
 	protected Properties props;
 	protected Transcriber transcriber;
 	protected int numThreads;
 	protected int evaluatorsFinishedCount;
 	protected Evaluator[] evaluators;
-	protected Iterator<Chromosome> chromosomesIterator;
+	/**
+	 * The individuals currently being evaluated. This list provides random access, the evaluator threads retrieve
+	 * individuals by index as determined by {@link #scheduler} or {@link #noveltyScheduler}.
+	 */
+	protected List<Chromosome> chromosomes;
+	/**
+	 * Dispatches individuals to the evaluator threads for fitness evaluation.
+	 */
+	protected EvaluationScheduler scheduler;
+	/**
+	 * Dispatches individuals to the evaluator threads for novelty evaluation. This is separate to {@link #scheduler}
+	 * as the cost of novelty evaluation is unrelated to the cost of fitness evaluation.
+	 */
+	protected EvaluationScheduler noveltyScheduler;
+	/**
+	 * The transcription stage threads, or null if transcription and evaluation are not pipelined (see
+	 * {@link #TRANSCRIBE_THREADS_KEY}).
+	 */
+	protected TranscriptionThread[] transcriptionThreads;
+	/**
+	 * Transcribed individuals waiting to be evaluated when pipelining is enabled.
+	 */
+	protected BlockingQueue<PipelineItem> readyQueue;
+	/**
+	 * Evaluated substrates which may be reused by the transcription stage when pipelining is enabled.
+	 */
+	protected BlockingQueue<Activator> spareSubstrates;
+	private final AtomicInteger activeTranscriptionThreads = new AtomicInteger();
+	/**
+	 * Evaluation contexts not currently in use by a lightweight evaluation thread, or null if lightweight evaluation
+	 * threads are not being used (see {@link #VIRTUAL_THREADS_KEY}).
+	 */
+	private BlockingQueue<Evaluator> idleLightweightEvaluators;
+	private int lightweightEvaluatorCount;
+	private ThreadGroup evaluatorGroup;
 	protected int logChampPerGens = -1;
 	protected BulkFitnessFunctionMT[] multiFitnessFunctions;
 	protected double[] multiFitnessFunctionWeights;
@@ -101,9 +262,49 @@ public abstract class BulkFitnessFunctionMT extends AHNIFitnessFunction implemen
 	protected int objectiveCount;
 	protected int noveltyObjectiveCount;
 	protected NoveltySearch[] noveltyArchives;
+	/**
+	 * Cache of evaluation results shared by all fitness functions, see {@link #fitnessValuesDeterministic()}.
+	 */
+	protected FitnessCache fitnessCache;
+	private boolean useFitnessCache;
+	private boolean racing;
+	private int racingBlock;
+	private double racingSurvival;
+	private double racingConfidence;
+	/**
+	 * The racing state of the individuals being evaluated, by Chromosome ID, or null if racing is not being used in
+	 * the current evaluation.
+	 */
+	private HashMap<Long, RaceState> raceStates;
+	private volatile boolean racingRound;
+	private int raceTrialStart;
+	private int raceTrialEnd;
+	private final AtomicLong raceTrialsPerformed = new AtomicLong();
+	private long raceTrialsTotal;
+	private long budgetSteps;
+	private long budgetMillis;
+	private double budgetPenalty;
+	private final AtomicInteger budgetAborts = new AtomicInteger();
+	private WorkerProcess[] workers;
+	/**
+	 * Whether this function is being evaluated by worker processes, which set up their own (fixed) copy of the task.
+	 */
+	private boolean workersEvaluating;
+	private Evaluator workerEvaluator;
+	private SplitMixRandom[] evaluatorRandoms;
+	private ThreadCountTuner threadTuner;
+	/**
+	 * The number of evaluator threads used for the current evaluation.
+	 */
+	private int activeEvaluators;
+	private final AtomicInteger evaluatedCount = new AtomicInteger();
+	private long randomSeed;
+	private int generation;
 
 	/**
-	 * This RNG should be used by all sub-classes for all randomness.
+	 * This RNG should be used by sub-classes for all randomness outside of the evaluation of individuals, for example
+	 * in {@link #init(Properties)} and {@link #initialiseEvaluation()}. During the evaluation of an individual the
+	 * generator given by {@link #getRandom(int)} should be used instead.
 	 */
 	protected Random random;
 
@@ -150,7 +351,10 @@ public abstract class BulkFitnessFunctionMT extends AHNIFitnessFunction implemen
 	 */
 	public void init(Properties props) {
 		this.props = props;
-		random = ((Randomizer) props.singletonObjectProperty(Randomizer.class)).getRand();
+		Randomizer randomizer = (Randomizer) props.singletonObjectProperty(Randomizer.class);
+		random = randomizer.getRand();
+		randomSeed = randomizer.getSeed();
+		fitnessCache = props.singletonObjectProperty(FitnessCache.class);
 
 		// If this is not the primary fitness function, skip everything else.
 		if (props.getBooleanProperty("fitness.function.multi.addingsub", false)) {
@@ -171,14 +375,79 @@ public abstract class BulkFitnessFunctionMT extends AHNIFitnessFunction implemen
 			numThreads = minThreads;
 		if (maxThreads > 0 && numThreads > maxThreads)
 			numThreads = maxThreads;
+		boolean autotuneThreads = props.getBooleanProperty(THREADS_AUTOTUNE_KEY, false);
+		// When auto-tuning, probe up to the maximum number of threads even if there are fewer processors.
+		if (autotuneThreads && maxThreads > numThreads)
+			numThreads = maxThreads;
+		// One evaluator thread per worker process, which sends individuals to the worker.
+		int workerCount = props.getIntProperty(WORKERS_KEY, 0);
+		if (workerCount > 0)
+			numThreads = workerCount;
+		lightweightEvaluatorCount = workerCount > 0 ? 0 : Math.max(0, props.getIntProperty(VIRTUAL_THREADS_KEY, 0));
+		if (lightweightEvaluatorCount > 0 && autotuneThreads) {
+			logger.warn("Thread count auto-tuning is not used with lightweight evaluation threads.");
+			autotuneThreads = false;
+		}
+		evaluatorRandoms = new SplitMixRandom[numThreads + lightweightEvaluatorCount];
+		for (int i = 0; i < evaluatorRandoms.length; i++) {
+			evaluatorRandoms[i] = new SplitMixRandom(randomSeed);
+		}
+
+		Class<?> schedulerClass = props.getClassProperty(SCHEDULER_CLASS_KEY, AtomicIndexScheduler.class);
+		scheduler = (EvaluationScheduler) props.newObjectProperty(schedulerClass);
+		noveltyScheduler = (EvaluationScheduler) props.newObjectProperty(schedulerClass);
+		logger.info("Using " + schedulerClass.getSimpleName() + " to dispatch individuals to evaluator threads.");
+
+		budgetSteps = props.getLongProperty(BUDGET_STEPS_KEY, 0);
+		budgetMillis = props.getLongProperty(BUDGET_TIME_KEY, 0);
+		budgetPenalty = props.getDoubleProperty(BUDGET_PENALTY_KEY, 0);
+		if (budgetSteps > 0 || budgetMillis > 0) {
+			logger.info("Limiting evaluations to " + (budgetSteps > 0 ? budgetSteps + " steps" : "unlimited steps") + " and " + (budgetMillis > 0 ? budgetMillis + "ms" : "unlimited time") + ", with a penalty fitness of " + budgetPenalty + ".");
+		}
 
 		EvaluatorGroup eg = new EvaluatorGroup(this.getClass().getSimpleName() + " evaluators");
-		logger.info("Using " + numThreads + " threads for transcription and evaluation.");
+		evaluatorGroup = eg;
+		int transcribeThreads = props.getIntProperty(TRANSCRIBE_THREADS_KEY, 0);
+		if (workerCount > 0) {
+			logger.info("Using " + workerCount + " worker processes for transcription and evaluation.");
+		} else if (lightweightEvaluatorCount > 0) {
+			if (transcribeThreads <= 0)
+				transcribeThreads = numThreads;
+			logger.info("Using " + transcribeThreads + " threads for transcription, evaluating up to " + lightweightEvaluatorCount + " individuals concurrently on " + (LightweightThreads.virtualThreadsAvailable() ? "virtual threads" : "lightweight platform threads (virtual threads are not available)") + ".");
+			spareSubstrates = new LinkedBlockingQueue<Activator>();
+			idleLightweightEvaluators = new ArrayBlockingQueue<Evaluator>(lightweightEvaluatorCount);
+			for (int i = 0; i < lightweightEvaluatorCount; i++) {
+				// Evaluation contexts only, these are never started as threads.
+				idleLightweightEvaluators.add(new Evaluator(numThreads + i, eg));
+			}
+			transcriptionThreads = new TranscriptionThread[transcribeThreads];
+			for (int i = 0; i < transcribeThreads; i++) {
+				transcriptionThreads[i] = new TranscriptionThread(i, eg);
+				transcriptionThreads[i].start();
+			}
+		} else if (transcribeThreads > 0) {
+			int queueSize = Math.max(1, props.getIntProperty(PIPELINE_QUEUE_SIZE_KEY, numThreads * 2));
+			logger.info("Using " + transcribeThreads + " threads for transcription and " + numThreads + " threads for evaluation, with a queue of " + queueSize + " transcribed substrates.");
+			readyQueue = new ArrayBlockingQueue<PipelineItem>(queueSize);
+			spareSubstrates = new LinkedBlockingQueue<Activator>();
+			transcriptionThreads = new TranscriptionThread[transcribeThreads];
+			for (int i = 0; i < transcribeThreads; i++) {
+				transcriptionThreads[i] = new TranscriptionThread(i, eg);
+				transcriptionThreads[i].start();
+			}
+		} else {
+			logger.info("Using " + numThreads + " threads for transcription and evaluation.");
+		}
 		evaluators = new Evaluator[numThreads];
 		for (int i = 0; i < numThreads; i++) {
 			evaluators[i] = new Evaluator(i, eg);
 			evaluators[i].start();
 		}
+		activeEvaluators = numThreads;
+		if (autotuneThreads && workerCount == 0) {
+			threadTuner = new ThreadCountTuner(minThreads, numThreads);
+			logger.info("Auto-tuning the number of evaluator threads between " + Math.max(1, Math.min(minThreads, numThreads)) + " and " + numThreads + ".");
+		}
 
 		noveltyObjectiveCount = noveltyObjectiveCount();
 		objectiveCount = fitnessObjectivesCount();
@@ -195,6 +464,8 @@ public abstract class BulkFitnessFunctionMT extends AHNIFitnessFunction implemen
 					String tempKey = MULTI_KEY + "." + i;
 					props.put(tempKey + ".class", mffs[i].trim());
 					multiFitnessFunctions[i] = (BulkFitnessFunctionMT) props.newObjectProperty(tempKey);
+					// Secondary functions are evaluated by the evaluator threads of this function.
+					multiFitnessFunctions[i].evaluatorRandoms = evaluatorRandoms;
 					props.remove(tempKey + ".class");
 
 					noveltyObjectiveCount += multiFitnessFunctions[i].noveltyObjectiveCount();
@@ -207,6 +478,51 @@ public abstract class BulkFitnessFunctionMT extends AHNIFitnessFunction implemen
 
 		objectiveCount += noveltyObjectiveCount;
 
+		racing = props.getBooleanProperty(RACING_KEY, false);
+		if (racing) {
+			if (fitnessObjectivesCount() != 1 || noveltyObjectiveCount() != 0) {
+				throw new IllegalArgumentException("Racing evaluation requires the primary fitness function to define exactly one fitness objective and no novelty objectives.");
+			}
+			racingBlock = props.getIntProperty(RACING_BLOCK_KEY, 0);
+			racingSurvival = props.getDoubleProperty(RACING_SURVIVAL_KEY, 0.5);
+			racingConfidence = props.getDoubleProperty(RACING_CONFIDENCE_KEY, 1);
+			if (racingSurvival <= 0 || racingSurvival > 1) {
+				throw new IllegalArgumentException(RACING_SURVIVAL_KEY + " must be in the range (0, 1].");
+			}
+			logger.info("Enabling racing evaluation, keeping " + racingSurvival + " of individuals (" + racingConfidence + " standard errors) per round.");
+		}
+
+		useFitnessCache = fitnessCache.getCapacity() > 0 && !racing && fitnessValuesDeterministic();
+		for (BulkFitnessFunctionMT f : multiFitnessFunctions) {
+			useFitnessCache &= f.fitnessValuesDeterministic();
+		}
+		if (useFitnessCache) {
+			logger.info("Caching up to " + fitnessCache.getCapacity() + " evaluation results of deterministic fitness function(s).");
+		}
+
+		if (workerCount > 0) {
+			if (racing) {
+				throw new IllegalArgumentException("Racing evaluation can not be used with worker processes.");
+			}
+			boolean deterministic = fitnessValuesDeterministic();
+			for (BulkFitnessFunctionMT f : multiFitnessFunctions) {
+				deterministic &= f.fitnessValuesDeterministic();
+			}
+			if (!deterministic) {
+				throw new IllegalArgumentException("Evaluation in worker processes requires all fitness functions to be deterministic (see BulkFitnessFunctionMT.fitnessValuesDeterministic()).");
+			}
+			try {
+				workers = WorkerProcess.launch(props, workerCount, props.getProperty(WORKERS_JVM_ARGS_KEY, null), objectiveCount - noveltyObjectiveCount, noveltyObjectiveCount);
+			} catch (IOException e) {
+				// Otherwise the (idle) evaluator threads keep the JVM alive.
+				disposeThreads();
+				throw new RuntimeException("Unable to launch evaluation worker processes.", e);
+			}
+			for (int i = 0; i < workerCount; i++) {
+				evaluators[i].worker = workers[i];
+			}
+		}
+
 		multiFitnessFunctionWeights = props.getDoubleArrayProperty(MULTI_WEIGHTING_KEY, ArrayUtil.newArray(objectiveCount, 1.0));
 		ArrayUtil.normaliseSum(multiFitnessFunctionWeights);
 		if (multiFitnessFunctionWeights.length != objectiveCount) {
@@ -220,6 +536,7 @@ public abstract class BulkFitnessFunctionMT extends AHNIFitnessFunction implemen
 			noveltyArchives = new NoveltySearch[noveltyObjectiveCount];
 			for (int n = 0; n < noveltyObjectiveCount; n++) {
 				noveltyArchives[n] = props.newObjectProperty(NoveltySearch.class);
+				noveltyArchives[n].initArchiveFile(n);
 			}
 		}
 	}
@@ -297,7 +614,8 @@ public abstract class BulkFitnessFunctionMT extends AHNIFitnessFunction implemen
 	/**
 	 * If the fitness value(s) and behaviour(s) for novelty search (if used) for this fitness function do not change
 	 * between generations then subclasses should override this method to return true in order to avoid unnecessarily
-	 * recalculating the fitness value(s) or behaviour(s). This default implementation returns false.
+	 * recalculating the fitness value(s) or behaviour(s). If the evaluation data for all fitness functions is stable
+	 * and available for an individual then it is not transcribed at all. This default implementation returns false.
 	 * 
 	 * @see #fitnessObjectivesCount()
 	 */
@@ -305,6 +623,124 @@ public abstract class BulkFitnessFunctionMT extends AHNIFitnessFunction implemen
 		return false;
 	}
 
+	/**
+	 * Subclasses should override this method to return true if the fitness value(s), performance value and behaviour(s)
+	 * for novelty search (if used) determined by this fitness function depend only on the genotype being evaluated (and
+	 * not, for example, on randomly generated environments). If this is the case for all fitness functions (the primary
+	 * function and any specified by {@link #MULTI_KEY}) then evaluation results are cached (see {@link FitnessCache}),
+	 * so that individuals with a genotype equivalent to one evaluated recently, such as clones and elites, are not
+	 * transcribed or evaluated again. Subclasses that return true must call {@link #invalidateFitnessCache()} whenever
+	 * the results for a given genotype change, for example when the difficulty of the task is increased. If results
+	 * are only retrieved from the cache then {@link #postEvaluate(Chromosome, Activator, int)} is not called. This
+	 * default implementation returns false.
+	 * 
+	 * @see #fitnessValuesStable()
+	 */
+	public boolean fitnessValuesDeterministic() {
+		return false;
+	}
+
+	/**
+	 * Remove all cached evaluation results (see {@link #fitnessValuesDeterministic()}). This should be called when the
+	 * evaluation results for a given genotype may have changed. It should only be called between evaluations.
+	 * 
+	 * @throws IllegalStateException if evaluation is performed by worker processes (see {@link #WORKERS_KEY}) and has
+	 *             already begun, as the workers can not reflect changes to the task.
+	 */
+	protected void invalidateFitnessCache() {
+		if (workersEvaluating) {
+			throw new IllegalStateException("The task for " + getClass().getSimpleName() + " was changed during the run, which is not supported when evaluating in worker processes (" + WORKERS_KEY + ").");
+		}
+		if (fitnessCache != null) {
+			fitnessCache.clear();
+		}
+	}
+
+	/**
+	 * Fitness functions that can evaluate an individual one trial at a time (for example one environment at a time)
+	 * should override this method to return the number of trials, and override
+	 * {@link #evaluateTrial(Chromosome, Activator, int, int)}, to allow racing evaluation (see {@link #RACING_KEY}).
+	 * This method is called at the beginning of each evaluation. This default implementation returns 0 (racing not
+	 * supported).
+	 */
+	public int getRacingTrialCount() {
+		return 0;
+	}
+
+	/**
+	 * Evaluate an individual on a single trial, see {@link #getRacingTrialCount()}. The trials for an individual are
+	 * performed in order, but possibly spread over several rounds and with a different substrate instance (transcribed
+	 * from the same genotype) in each round, so the substrate should be reset at the beginning of each trial if
+	 * necessary. This default implementation throws an UnsupportedOperationException.
+	 * 
+	 * @param genotype the genotype being evaluated. This is not usually required but may be useful in some cases.
+	 * @param substrate the phenotypic substrate of the genotype being evaluated.
+	 * @param evalThreadIndex The index of the evaluator thread. This is not usually required but may be useful in some
+	 *            cases.
+	 * @param trial The index of the trial to perform, in the range [0, {@link #getRacingTrialCount()}).
+	 * @return The fitness and performance of the individual on the trial.
+	 */
+	protected TrialResult evaluateTrial(Chromosome genotype, Activator substrate, int evalThreadIndex, int trial) {
+		throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support racing evaluation.");
+	}
+
+	/**
+	 * The result of evaluating an individual on a single trial, see
+	 * {@link BulkFitnessFunctionMT#evaluateTrial(Chromosome, Activator, int, int)}.
+	 */
+	public static class TrialResult {
+		/**
+		 * The fitness on the trial, in the range [0, 1].
+		 */
+		public final double fitness;
+		/**
+		 * The performance on the trial, in the range [0, 1].
+		 */
+		public final double performance;
+
+		public TrialResult(double fitness, double performance) {
+			this.fitness = fitness;
+			this.performance = performance;
+		}
+	}
+
+	/**
+	 * {@inheritDoc} This implementation reports the hit rate of the {@link FitnessCache}, the proportion of trials
+	 * performed in racing evaluation, the number of evaluations that exceeded their budget, the number of evaluator
+	 * threads used, and the total size of and evictions from the novelty archives, if these are used.
+	 */
+	@Override
+	public String getLogSummary() {
+		StringBuilder summary = new StringBuilder();
+		if (useFitnessCache) {
+			double hitRate = fitnessCache.getHitRate();
+			summary.append("FCH: " + (Double.isNaN(hitRate) ? "-" : Math.round(hitRate * 100) + "%"));
+		}
+		if (racing && raceTrialsTotal > 0) {
+			summary.append((summary.length() > 0 ? "  " : "") + "RTP: " + Math.round(100.0 * raceTrialsPerformed.get() / raceTrialsTotal) + "%");
+		}
+		if (budgetSteps > 0 || budgetMillis > 0) {
+			summary.append((summary.length() > 0 ? "  " : "") + "EBA: " + budgetAborts.get());
+		}
+		if (threadTuner != null) {
+			summary.append((summary.length() > 0 ? "  " : "") + "ET: " + activeEvaluators);
+		}
+		if (noveltyArchives != null) {
+			int archiveSize = 0, evictions = 0;
+			boolean bounded = false;
+			for (NoveltySearch archive : noveltyArchives) {
+				archiveSize += archive.getArchiveSize();
+				evictions += archive.getEvictionCount();
+				bounded |= archive.getArchiveCapacity() > 0;
+			}
+			summary.append((summary.length() > 0 ? "  " : "") + "NAS: " + archiveSize);
+			if (bounded) {
+				summary.append("  NAE: " + evictions);
+			}
+		}
+		return summary.length() > 0 ? summary.toString() : null;
+	}
+
 	/**
 	 * Evaluate a set of chromosomes.
 	 * 
@@ -319,42 +755,75 @@ public abstract class BulkFitnessFunctionMT extends AHNIFitnessFunction implemen
 		}
 
 		bestPerformance = targetPerformanceType == 1 ? 0 : Float.MAX_VALUE;
+		if (useFitnessCache) {
+			fitnessCache.resetStatistics();
+		}
+		budgetAborts.set(0);
+
+		if (workers != null) {
+			workersEvaluating = true;
+			for (BulkFitnessFunctionMT f : multiFitnessFunctions) {
+				f.workersEvaluating = true;
+			}
+		}
+
+		chromosomes = genotypes instanceof RandomAccess ? genotypes : new ArrayList<Chromosome>(genotypes);
+
+		int raceTrialCount = racing ? getRacingTrialCount() : 0;
+		if (racing && raceTrialCount <= 1) {
+			throw new IllegalStateException("Racing evaluation is enabled (" + RACING_KEY + ") but " + getClass().getSimpleName() + " does not support it (it defines " + raceTrialCount + " racing trials).");
+		}
+		if (raceTrialCount > 0) {
+			raceStates = new HashMap<Long, RaceState>();
+			for (Chromosome chrom : chromosomes) {
+				raceStates.put(chrom.getId(), new RaceState());
+			}
+			raceTrialStart = 0;
+			raceTrialEnd = Math.min(raceTrialCount, racingBlock > 0 ? racingBlock : (raceTrialCount + 3) / 4);
+			raceTrialsPerformed.set(0);
+			raceTrialsTotal = (long) raceTrialCount * chromosomes.size();
+		}
+
+		activeEvaluators = threadTuner != null ? threadTuner.getThreadCount() : evaluators.length;
+		evaluatedCount.set(0);
+		long evaluationStart = System.nanoTime();
 
 		// Evaluate fitness/performance over all individuals.
-		chromosomesIterator = genotypes.iterator();
 		evaluatorsFinishedCount = 0;
-		for (Evaluator ev : evaluators)
-			ev.go();
-		while (true) {
-			try {
-				synchronized (this) {
-					if (evaluatorsFinishedCount == evaluators.length)
-						break;
-					wait();
-				}
-			} catch (InterruptedException ignore) {
-				System.out.println(ignore);
-			}
+		if (transcriptionThreads != null) {
+			// The transcription stage takes individuals from the scheduler, the evaluators take them from the queue.
+			scheduler.reset(chromosomes.size(), transcriptionThreads.length);
+			activeTranscriptionThreads.set(transcriptionThreads.length);
+			for (TranscriptionThread tt : transcriptionThreads)
+				tt.go();
+		} else {
+			scheduler.reset(chromosomes.size(), activeEvaluators);
 		}
-		
+		if (idleLightweightEvaluators != null) {
+			waitForLightweightEvaluations();
+		} else {
+			for (int i = 0; i < activeEvaluators; i++)
+				evaluators[i].go();
+			waitForEvaluators();
+		}
+
+		if (raceStates != null) {
+			race(raceTrialCount);
+			raceStates = null;
+		}
+
+		if (threadTuner != null) {
+			threadTuner.recordEvaluation(evaluatedCount.get(), System.nanoTime() - evaluationStart);
+		}
+
 		if (noveltyArchives != null) {
 			// Evaluate novelty over all individuals (this must be done after fitness/performance evaluation so that
 			// we have the behaviour record of every individual in the population.
-			chromosomesIterator = genotypes.iterator();
+			noveltyScheduler.reset(chromosomes.size(), activeEvaluators);
 			evaluatorsFinishedCount = 0;
-			for (Evaluator ev : evaluators)
-				ev.goNovelty();
-			while (true) {
-				try {
-					synchronized (this) {
-						if (evaluatorsFinishedCount == evaluators.length)
-							break;
-						wait();
-					}
-				} catch (InterruptedException ignore) {
-					System.out.println(ignore);
-				}
-			}
+			for (int i = 0; i < activeEvaluators; i++)
+				evaluators[i].goNovelty();
+			waitForEvaluators();
 
 			// double avgArchiveSize = 0;
 			for (int n = 0; n < noveltyObjectiveCount; n++) {
@@ -386,6 +855,8 @@ public abstract class BulkFitnessFunctionMT extends AHNIFitnessFunction implemen
 		}
 
 		renderedNoveltyArchivesThisGeneration = false;
+		chromosomes = null;
+		generation++;
 	}
 
 	/**
@@ -435,6 +906,54 @@ public abstract class BulkFitnessFunctionMT extends AHNIFitnessFunction implemen
 		}
 	}
 
+	/**
+	 * Get the random number generator for the given evaluator thread. This should be used for all randomness during
+	 * the evaluation of an individual (in {@link #evaluate(Chromosome, Activator, int)},
+	 * {@link #evaluate(Chromosome, Activator, int, double[], Behaviour[])} and
+	 * {@link #evaluateTrial(Chromosome, Activator, int, int)}). Before each individual (and each racing trial) is
+	 * evaluated the generator is re-seeded from the run seed (see {@link Randomizer}), the generation and the ID of the
+	 * individual, so that the evaluation results do not depend on the number of evaluator threads or on which thread
+	 * evaluates which individual. The generator must not be used by other threads.
+	 * 
+	 * @param evalThreadIndex The index of the evaluator thread, as passed to the evaluate methods.
+	 */
+	protected Random getRandom(int evalThreadIndex) {
+		return evaluatorRandoms[evalThreadIndex];
+	}
+
+	/**
+	 * Prepare this fitness function for evaluating individuals in the calling thread via
+	 * {@link #evaluateInCallingThread(Chromosome)}, as is done in worker processes (see {@link EvaluationWorker}).
+	 * Novelty is assessed by the master process so the novelty archives of this instance are not used.
+	 */
+	void initialiseWorkerEvaluation() {
+		transcriber = (Transcriber) props.singletonObjectProperty(ActivatorTranscriber.TRANSCRIBER_KEY);
+		initialiseEvaluation();
+		for (BulkFitnessFunctionMT f : multiFitnessFunctions) {
+			f.initialiseEvaluation();
+		}
+		bestPerformance = targetPerformanceType == 1 ? 0 : Float.MAX_VALUE;
+		noveltyArchives = null;
+		workerEvaluator = new Evaluator(0, Thread.currentThread().getThreadGroup());
+		workerEvaluator.allocateBuffers();
+	}
+
+	/**
+	 * Transcribe and evaluate the given Chromosome in the calling thread, assigning the resulting fitness values,
+	 * performance and behaviours to it. {@link #initialiseWorkerEvaluation()} must be called first.
+	 * 
+	 * @param generation The generation in the master process, used to seed the random number generator (see
+	 *            {@link #getRandom(int)}).
+	 * @return true iff the evaluation was aborted because it exceeded the evaluation budget (see
+	 *         {@link #BUDGET_STEPS_KEY}).
+	 */
+	boolean evaluateInCallingThread(Chromosome chrom, int generation) {
+		this.generation = generation;
+		int aborts = budgetAborts.get();
+		workerEvaluator.evaluateChromosome(chrom);
+		return budgetAborts.get() != aborts;
+	}
+
 	public int getNumThreads() {
 		return numThreads;
 	}
@@ -443,24 +962,466 @@ public abstract class BulkFitnessFunctionMT extends AHNIFitnessFunction implemen
 		return endRun;
 	}
 
-	private synchronized Chromosome getNextChromosome() {
-		if (chromosomesIterator.hasNext())
-			return chromosomesIterator.next();
-		else
-			return null;
-	}
-
 	private synchronized void finishedEvaluating() {
 		evaluatorsFinishedCount++;
 		notifyAll();
 	}
 
+	private synchronized void finishedTranscribing() {
+		notifyAll();
+	}
+
+	/**
+	 * Wait until all individuals have been transcribed and the lightweight evaluation threads have finished
+	 * evaluating them (see {@link #VIRTUAL_THREADS_KEY}).
+	 */
+	private void waitForLightweightEvaluations() {
+		// Evaluations still in progress hold an evaluation context until they finish.
+		List<Evaluator> idle = new ArrayList<Evaluator>(lightweightEvaluatorCount);
+		try {
+			synchronized (this) {
+				while (activeTranscriptionThreads.get() != 0)
+					wait();
+			}
+			while (idle.size() < lightweightEvaluatorCount) {
+				idle.add(idleLightweightEvaluators.take());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while waiting for evaluations to finish.", e);
+		} finally {
+			idleLightweightEvaluators.addAll(idle);
+		}
+	}
+
+	/**
+	 * Wait until all active evaluator threads have finished the current task.
+	 */
+	private void waitForEvaluators() {
+		while (true) {
+			try {
+				synchronized (this) {
+					if (evaluatorsFinishedCount == activeEvaluators)
+						break;
+					wait();
+				}
+			} catch (InterruptedException ignore) {
+				System.out.println(ignore);
+			}
+		}
+	}
+
+	/**
+	 * Perform the remaining rounds of racing evaluation (see {@link #RACING_KEY}), after all individuals have been
+	 * evaluated on the first block of trials.
+	 */
+	private void race(int trialCount) {
+		List<Chromosome> population = chromosomes;
+		// Only individuals evaluated in the first round take part, the others had stable evaluation data.
+		List<Chromosome> contenders = new ArrayList<Chromosome>();
+		for (Chromosome chrom : population) {
+			RaceState state = raceStates.get(chrom.getId());
+			if (state.count > 0 && !state.aborted) {
+				contenders.add(chrom);
+			}
+		}
+		int block = raceTrialEnd;
+		while (raceTrialEnd < trialCount && !contenders.isEmpty()) {
+			contenders = selectRaceSurvivors(contenders);
+			raceTrialStart = raceTrialEnd;
+			raceTrialEnd = Math.min(trialCount, raceTrialEnd + block);
+
+			chromosomes = contenders;
+			scheduler.reset(contenders.size(), activeEvaluators);
+			racingRound = true;
+			evaluatorsFinishedCount = 0;
+			for (int i = 0; i < activeEvaluators; i++)
+				evaluators[i].go();
+			waitForEvaluators();
+			racingRound = false;
+		}
+		chromosomes = population;
+
+		// The performance of individuals may have decreased over later rounds. Individuals eliminated from the race
+		// have a performance based on fewer trials, so only those that completed every trial (or that had stable
+		// evaluation data and so were not raced) are considered for the best performance.
+		bestPerformance = targetPerformanceType == 1 ? 0 : Float.MAX_VALUE;
+		for (Chromosome chrom : population) {
+			RaceState state = raceStates.get(chrom.getId());
+			if (state.count != trialCount && (state.count > 0 || state.aborted)) {
+				continue;
+			}
+			if ((targetPerformanceType == 1 && chrom.getPerformanceValue() > bestPerformance) || (targetPerformanceType == 0 && chrom.getPerformanceValue() < bestPerformance)) {
+				bestPerformance = chrom.getPerformanceValue();
+				newBestChrom = chrom;
+			}
+		}
+	}
+
+	/**
+	 * Select the individuals that continue to the next round of racing evaluation.
+	 */
+	private List<Chromosome> selectRaceSurvivors(List<Chromosome> contenders) {
+		// Individuals whose evaluation exceeded the budget are out of the race.
+		List<Chromosome> ranked = new ArrayList<Chromosome>(contenders.size());
+		for (Chromosome chrom : contenders) {
+			if (!raceStates.get(chrom.getId()).aborted) {
+				ranked.add(chrom);
+			}
+		}
+		if (ranked.isEmpty()) {
+			return ranked;
+		}
+		Collections.sort(ranked, new Comparator<Chromosome>() {
+			@Override
+			public int compare(Chromosome c1, Chromosome c2) {
+				return Double.compare(raceStates.get(c2.getId()).meanFitness(), raceStates.get(c1.getId()).meanFitness());
+			}
+		});
+		int keep = Math.max(1, (int) Math.ceil(ranked.size() * racingSurvival));
+		RaceState cutoff = raceStates.get(ranked.get(keep - 1).getId());
+		double cutoffLower = cutoff.meanFitness() - racingConfidence * cutoff.standardError();
+		List<Chromosome> survivors = new ArrayList<Chromosome>(ranked.subList(0, keep));
+		for (int i = keep; i < ranked.size(); i++) {
+			RaceState state = raceStates.get(ranked.get(i).getId());
+			if (state.meanFitness() + racingConfidence * state.standardError() >= cutoffLower) {
+				survivors.add(ranked.get(i));
+			}
+		}
+		return survivors;
+	}
+
+	/**
+	 * The trial results so far for an individual in racing evaluation.
+	 */
+	private static class RaceState {
+		int count;
+		/**
+		 * Set if the evaluation of the individual exceeded its budget, see {@link BulkFitnessFunctionMT#BUDGET_STEPS_KEY}.
+		 */
+		volatile boolean aborted;
+		double fitnessSum;
+		double fitnessSumSq;
+		double performanceSum;
+
+		synchronized void add(TrialResult result) {
+			count++;
+			fitnessSum += result.fitness;
+			fitnessSumSq += result.fitness * result.fitness;
+			performanceSum += result.performance;
+		}
+
+		synchronized double meanFitness() {
+			return fitnessSum / count;
+		}
+
+		synchronized double meanPerformance() {
+			return performanceSum / count;
+		}
+
+		/**
+		 * @return The standard error of the mean fitness, or 0 if it can not be estimated (fewer than 2 trials).
+		 */
+		synchronized double standardError() {
+			if (count < 2)
+				return 0;
+			double variance = Math.max(0, (fitnessSumSq - fitnessSum * fitnessSum / count) / (count - 1));
+			return Math.sqrt(variance / count);
+		}
+	}
+
+	/**
+	 * Determine whether the given Chromosome must be transcribed, that is whether any of the fitness functions (the
+	 * primary function and any specified by {@link #MULTI_KEY}) must (re-)evaluate it. A substrate is not required if
+	 * all functions have stable fitness values (see {@link #fitnessValuesStable()}) and the fitness values and
+	 * behaviours for all functions have already been calculated for the Chromosome.
+	 */
+	protected boolean requiresSubstrate(Chromosome chrom) {
+		for (int i = 0, fs = 0, bs = 0; i <= multiFitnessFunctions.length; i++) {
+			BulkFitnessFunctionMT func = i == 0 ? this : multiFitnessFunctions[i - 1];
+			if (!func.fitnessValuesStable()) {
+				return true;
+			}
+			for (int f = 0; f < func.fitnessObjectivesCount(); f++, fs++) {
+				if (Double.isNaN(chrom.getFitnessValue(fs))) {
+					return true;
+				}
+			}
+			for (int b = 0; b < func.noveltyObjectiveCount(); b++, bs++) {
+				if (chrom.behaviours == null || chrom.behaviours[bs] == null) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Determine whether the given fitness function must (re-)evaluate an individual given the fitness values and
+	 * behaviours currently recorded for it by the function.
+	 */
+	private static boolean requiresEvaluation(BulkFitnessFunctionMT func, double[] fitnessValues, Behaviour[] behaviours) {
+		return !func.fitnessValuesStable() || Double.isNaN(ArrayUtil.sum(fitnessValues)) || ArrayUtils.contains(behaviours, null);
+	}
+
+	/**
+	 * If evaluation results are being cached and results for a genotype equivalent to that of the given Chromosome are
+	 * available, assign them to the Chromosome.
+	 * 
+	 * @return true iff cached results were assigned.
+	 */
+	private boolean applyCachedEvaluation(Chromosome chrom) {
+		if (!useFitnessCache) {
+			return false;
+		}
+		FitnessCache.Entry entry = fitnessCache.get(chrom.getMaterial());
+		if (entry == null) {
+			return false;
+		}
+		for (int i = 0; i < entry.fitnessValues.length; i++) {
+			chrom.setFitnessValue(entry.fitnessValues[i], i);
+		}
+		chrom.setPerformanceValue(entry.performance);
+		if (entry.behaviours.length > 0) {
+			System.arraycopy(entry.behaviours, 0, chrom.behaviours, 0, entry.behaviours.length);
+		}
+		return true;
+	}
+
+	/**
+	 * If evaluation results are being cached, store those of the given (just evaluated) Chromosome.
+	 */
+	private void cacheEvaluation(Chromosome chrom) {
+		if (!useFitnessCache) {
+			return;
+		}
+		double[] fitness = new double[objectiveCount - noveltyObjectiveCount];
+		for (int i = 0; i < fitness.length; i++) {
+			fitness[i] = chrom.getFitnessValue(i);
+		}
+		Behaviour[] behaviours = noveltyObjectiveCount > 0 ? chrom.behaviours.clone() : new Behaviour[0];
+		fitnessCache.put(chrom.getMaterial(), new FitnessCache.Entry(fitness, chrom.getPerformanceValue(), behaviours));
+	}
+
+	/**
+	 * Deletes the current substrate(s) held by all evaluator threads (and the transcription stage if pipelining is
+	 * enabled), so that completely new ones will be generated. This is useful for when a substrate can be reused by
+	 * the Transcriber, but sometimes needs to be completely regenerated, for example when the substrate is resized.
+	 * This should only be called between evaluations. If the number of evaluator threads is being auto-tuned (see
+	 * {@link #THREADS_AUTOTUNE_KEY}) then the thread counts are probed again, as the cost of evaluation has likely
+	 * changed.
+	 * 
+	 * @see Transcriber#transcribe(Chromosome, Activator)
+	 */
+	protected void resetSubstrates() {
+		for (Evaluator ev : evaluators)
+			ev.resetSubstrate();
+		if (threadTuner != null)
+			threadTuner.reprobe();
+		if (spareSubstrates != null) {
+			Activator spare;
+			while ((spare = spareSubstrates.poll()) != null)
+				spare.dispose();
+		}
+	}
+
+	/**
+	 * Put the given item in the ready queue, waiting for space if necessary. If lightweight evaluation threads are
+	 * being used (see {@link #VIRTUAL_THREADS_KEY}) the item is instead evaluated on a new lightweight thread, once an
+	 * evaluation context is available.
+	 */
+	private void putReady(final PipelineItem item) {
+		if (idleLightweightEvaluators != null) {
+			final Evaluator ev = takeUninterruptibly(idleLightweightEvaluators);
+			Runnable task = new Runnable() {
+				public void run() {
+					try {
+						ev.allocateBuffers();
+						ev.evaluateChromosome(item.chrom, item.substrate);
+					} catch (Exception e) {
+						logger.warn("Exception during evaluation: " + e.getMessage());
+						e.printStackTrace();
+					} finally {
+						if (item.substrate != null) {
+							spareSubstrates.offer(item.substrate);
+						}
+						idleLightweightEvaluators.offer(ev);
+					}
+				}
+			};
+			LightweightThreads.newThread(task, "FF Lightweight Evaluator " + ev.id, evaluatorGroup).start();
+			return;
+		}
+		putUninterruptibly(readyQueue, item);
+	}
+
+	/**
+	 * Put the given element in the given queue, waiting for space if necessary. The pipeline stage threads are stopped
+	 * via {@link #dispose()} rather than by interruption, and an item must not be lost part way through an evaluation,
+	 * so an interrupt does not abort the wait but the interrupted status of the thread is restored afterwards.
+	 */
+	private static <T> void putUninterruptibly(BlockingQueue<T> queue, T element) {
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					queue.put(element);
+					return;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Take an element from the given queue, waiting if necessary. As for
+	 * {@link #putUninterruptibly(BlockingQueue, Object)} an interrupt does not abort the wait but the interrupted
+	 * status of the thread is restored afterwards.
+	 */
+	private static <T> T takeUninterruptibly(BlockingQueue<T> queue) {
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					return queue.take();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * A transcribed individual waiting to be evaluated, see {@link BulkFitnessFunctionMT#TRANSCRIBE_THREADS_KEY}.
+	 */
+	protected static class PipelineItem {
+		/**
+		 * Marks the end of the individuals for the current generation.
+		 */
+		static final PipelineItem END = new PipelineItem(null, null);
+
+		final Chromosome chrom;
+		final Activator substrate;
+
+		PipelineItem(Chromosome chrom, Activator substrate) {
+			this.chrom = chrom;
+			this.substrate = substrate;
+		}
+	}
+
+	/**
+	 * Transcription stage thread used when transcription and evaluation are pipelined (see
+	 * {@link BulkFitnessFunctionMT#TRANSCRIBE_THREADS_KEY}). Takes individuals from the scheduler, transcribes them,
+	 * and places them in the ready queue for the evaluator threads (or hands them to lightweight evaluation threads,
+	 * see {@link BulkFitnessFunctionMT#VIRTUAL_THREADS_KEY}).
+	 */
+	protected class TranscriptionThread extends Thread {
+		private volatile boolean go = false;
+		private volatile boolean finish = false;
+		private int id;
+
+		protected TranscriptionThread(int id, ThreadGroup tg) {
+			super(tg, "FF Transcriber " + id);
+			this.id = id;
+		}
+
+		/**
+		 * Internal use only
+		 */
+		public void run() {
+			int[] chunk = new int[2];
+			boolean interrupted = false;
+			while (!finish) {
+				if (go) {
+					while (scheduler.nextChunk(id, chunk)) {
+						long chunkStart = System.nanoTime();
+						for (int c = chunk[0]; c < chunk[1]; c++) {
+							transcribe(chromosomes.get(c));
+						}
+						scheduler.chunkFinished(id, chunk[1] - chunk[0], System.nanoTime() - chunkStart);
+					}
+
+					go = false;
+					// The last transcription thread to finish tells each evaluator there's nothing left.
+					if (activeTranscriptionThreads.decrementAndGet() == 0) {
+						if (idleLightweightEvaluators != null) {
+							finishedTranscribing();
+						} else {
+							for (int i = 0; i < activeEvaluators; i++) {
+								putReady(PipelineItem.END);
+							}
+						}
+					}
+				}
+				try {
+					synchronized (this) {
+						while (!go && !finish)
+							wait();
+					}
+				} catch (InterruptedException e) {
+					// This thread is stopped via dispose(), so keep running but restore the interrupted status on exit.
+					if (!interrupted) {
+						logger.warn(getName() + " was interrupted, this is ignored until the fitness function is disposed.");
+					}
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		private void transcribe(Chromosome chrom) {
+			if (!requiresSubstrate(chrom) || applyCachedEvaluation(chrom)) {
+				// Nothing to transcribe, the evaluator will just apply the stored evaluation data.
+				putReady(new PipelineItem(chrom, null));
+				return;
+			}
+			Activator spare = spareSubstrates.poll();
+			try {
+				Activator substrate = generateSubstrate(chrom, spare);
+				if (substrate != null) {
+					putReady(new PipelineItem(chrom, substrate));
+				} else if (spare != null) {
+					// The transcriber decided the substrate decoding was a dud, the spare may still be reused.
+					spareSubstrates.offer(spare);
+				}
+			} catch (Exception e) {
+				logger.warn("Exception during transcription: " + e.getMessage());
+				e.printStackTrace();
+			}
+		}
+
+		protected synchronized void go() {
+			go = true;
+			notifyAll();
+		}
+
+		protected synchronized void dispose() {
+			finish = true;
+			notifyAll();
+		}
+	}
+
 	protected class Evaluator extends Thread {
 		private volatile boolean go = false;
 		private volatile boolean finish = false;
 		private volatile boolean testingNovelty = false;
 		private int id;
 		private Activator substrate;
+		private double[][] fitnessValues;
+		private Behaviour[][] behaviours;
+		private final EvaluationBudget budget = new EvaluationBudget(budgetSteps, budgetMillis);
+		private WorkerProcess worker;
 
 		protected Evaluator(int id, ThreadGroup tg) {
 			super(tg, "FF Evaluator " + id);
@@ -486,123 +1447,39 @@ public abstract class BulkFitnessFunctionMT extends AHNIFitnessFunction implemen
 		 * Internal use only
 		 */
 		public void run() {
-			double[][] fitnessValues = null;
-			Behaviour[][] behaviours = null;
-
+			int[] chunk = new int[2];
 			while (!finish) {
 				while (go) {
-					if (fitnessValues == null) {
-						fitnessValues = new double[multiFitnessFunctions.length + 1][];
-						behaviours = new Behaviour[multiFitnessFunctions.length + 1][];
-						fitnessValues[0] = new double[fitnessObjectivesCount()];
-						behaviours[0] = new Behaviour[noveltyObjectiveCount()];
-						for (int i = 0; i < multiFitnessFunctions.length; i++) {
-							fitnessValues[i + 1] = new double[multiFitnessFunctions[i].fitnessObjectivesCount()];
-							behaviours[i + 1] = new Behaviour[multiFitnessFunctions[i].noveltyObjectiveCount()];
-						}
-					}
+					allocateBuffers();
 
-					Chromosome chrom;
-					while ((chrom = getNextChromosome()) != null) {
-						if (!testingNovelty) {
+					if (!testingNovelty && !racingRound && transcriptionThreads != null) {
+						// Pipelined, take transcribed individuals from the transcription stage.
+						PipelineItem item;
+						while ((item = takeReady()) != PipelineItem.END) {
 							try {
-								Activator previousSubstrate = substrate;
-								substrate = generateSubstrate(chrom, substrate);
-
-								// If a valid substrate could be generated.
-								if (substrate != null) {
-									// Pull any stable (fixed) fitness values from chromosome.
-									for (int i = 0, fs = 0; i < fitnessValues.length; i++) {
-										for (int f = 0; f < fitnessValues[i].length; f++, fs++) {
-											fitnessValues[i][f] = chrom.getFitnessValue(fs);
-										}
-									}
-									for (int i = 0, fs = 0; i < behaviours.length; i++) {
-										for (int f = 0; f < behaviours[i].length; f++, fs++) {
-											behaviours[i][f] = chrom.behaviours[fs];
-										}
-									}
-									// Do secondary fitness functions first.
-									for (int i = 0; i < multiFitnessFunctions.length; i++) {
-										BulkFitnessFunctionMT func = multiFitnessFunctions[i];
-										// If the fitness values aren't stable for this function or they haven't been
-										// calculated yet for this chrom.
-										if (!func.fitnessValuesStable() || Double.isNaN(ArrayUtil.sum(fitnessValues[i + 1])) || ArrayUtils.contains(behaviours[i + 1], null)) {
-											func.evaluate(chrom, substrate, id, fitnessValues[i + 1], behaviours[i + 1]);
-										}
-										if (func.fitnessValuesStable()) {
-											// At least some fitness values stable (this doesn't prevent the non-stable
-											// ones from being updated).
-											chrom.setEvaluationDataStable();
-										}
-									}
-
-									// If the fitness values aren't stable for the primary function or they haven't been
-									// calculated yet for this chrom.
-									if (!fitnessValuesStable() || Double.isNaN(ArrayUtil.sum(fitnessValues[0]))) {
-										// Do primary fitness function.
-										evaluate(chrom, substrate, id, fitnessValues[0], behaviours[0]);
-									}
-									if (fitnessValuesStable()) {
-										chrom.setEvaluationDataStable();
-									}
-
-									// Assign fitness values to chromosome.
-									for (int i = 0, fs = 0; i < fitnessValues.length; i++) {
-										for (int f = 0; f < fitnessValues[i].length; f++, fs++) {
-											if (!Double.isNaN(fitnessValues[i][f])) {
-												chrom.setFitnessValue(fitnessValues[i][f], fs);
-											}
-										}
-									}
-									for (int i = 0, fs = 0; i < behaviours.length; i++) {
-										for (int f = 0; f < behaviours[i].length; f++, fs++) {
-											if (behaviours[i][f] != null) {
-												chrom.behaviours[fs] = behaviours[i][f];
-											}
-										}
-									}
-
-									postEvaluate(chrom, substrate, id);
-
-									// We just set the overall fitness value according to the weightings. A different
-									// selector (eg NSGA-II selector) may set the overall fitness to something else
-									// based on the multiple objectives.
-									// If novelty is to be assessed wait until this is done for all chromosomes before
-									// calculating overall fitness.
-									if (noveltyArchives == null)
-										calculateOverallFitness(chrom);
-
-									synchronized (this) {
-										if ((targetPerformanceType == 1 && chrom.getPerformanceValue() > bestPerformance) || (targetPerformanceType == 0 && chrom.getPerformanceValue() < bestPerformance)) {
-											bestPerformance = chrom.getPerformanceValue();
-											newBestChrom = chrom;
-										}
-									}
-									if (noveltyArchives != null) {
-										for (int n = 0; n < noveltyObjectiveCount; n++) {
-											noveltyArchives[n].addToCurrentPopulation(chrom.behaviours[n]);
-										}
-									}
-								}
-								// If the transcriber decided the substrate decoding was a dud then still allow reusing
-								// the old substrate.
-								else {
-									substrate = previousSubstrate;
-								}
+								evaluateChromosome(item.chrom, item.substrate);
 							} catch (Exception e) {
-								logger.warn("Exception during transcription or evaluation: " + e.getMessage());
+								logger.warn("Exception during evaluation: " + e.getMessage());
 								e.printStackTrace();
 							}
-						} else { // testingNovelty
-							int fitnessSlot = objectiveCount - noveltyArchives.length;
-							// May be empty if substrate decoding was a dud (see above).
-							if (chrom.behaviours != null) {
-								for (int n = 0; n < noveltyArchives.length; n++) {
-									chrom.setFitnessValue(noveltyArchives[n].testNovelty(chrom.behaviours[n]), fitnessSlot++);
+							if (item.substrate != null) {
+								spareSubstrates.offer(item.substrate);
+							}
+						}
+					} else {
+						EvaluationScheduler chunkScheduler = testingNovelty ? noveltyScheduler : scheduler;
+						while (chunkScheduler.nextChunk(id, chunk)) {
+							long chunkStart = System.nanoTime();
+							for (int c = chunk[0]; c < chunk[1]; c++) {
+								if (testingNovelty) {
+									testNovelty(chromosomes.get(c));
+								} else if (racingRound) {
+									raceChromosome(chromosomes.get(c));
+								} else {
+									evaluateChromosome(chromosomes.get(c));
 								}
-								calculateOverallFitness(chrom);
 							}
+							chunkScheduler.chunkFinished(id, chunk[1] - chunk[0], System.nanoTime() - chunkStart);
 						}
 					}
 
@@ -620,6 +1497,254 @@ public abstract class BulkFitnessFunctionMT extends AHNIFitnessFunction implemen
 			}
 		}
 
+		private void allocateBuffers() {
+			if (fitnessValues == null) {
+				fitnessValues = new double[multiFitnessFunctions.length + 1][];
+				behaviours = new Behaviour[multiFitnessFunctions.length + 1][];
+				fitnessValues[0] = new double[fitnessObjectivesCount()];
+				behaviours[0] = new Behaviour[noveltyObjectiveCount()];
+				for (int i = 0; i < multiFitnessFunctions.length; i++) {
+					fitnessValues[i + 1] = new double[multiFitnessFunctions[i].fitnessObjectivesCount()];
+					behaviours[i + 1] = new Behaviour[multiFitnessFunctions[i].noveltyObjectiveCount()];
+				}
+			}
+		}
+
+		private PipelineItem takeReady() {
+			return takeUninterruptibly(readyQueue);
+		}
+
+		/**
+		 * Transcribe and evaluate the given Chromosome over all fitness functions, assigning the resulting fitness
+		 * values and behaviours to it.
+		 */
+		private void evaluateChromosome(Chromosome chrom) {
+			try {
+				// Don't bother transcribing if all evaluation data is stable and already available, or
+				// the results for an equivalent genotype are cached.
+				if (!requiresSubstrate(chrom) || applyCachedEvaluation(chrom)) {
+					evaluateChromosome(chrom, null);
+					return;
+				}
+
+				if (worker != null) {
+					// Transcription and evaluation is performed by the worker process, which assigns the results to the
+					// Chromosome.
+					if (worker.evaluate(chrom, generation)) {
+						budgetAborts.incrementAndGet();
+					} else {
+						cacheEvaluation(chrom);
+					}
+					evaluateChromosome(chrom, null);
+					return;
+				}
+
+				Activator previousSubstrate = substrate;
+				substrate = generateSubstrate(chrom, substrate);
+
+				// If a valid substrate could be generated.
+				if (substrate != null) {
+					evaluateChromosome(chrom, substrate);
+				}
+				// If the transcriber decided the substrate decoding was a dud then still allow reusing
+				// the old substrate.
+				else {
+					substrate = previousSubstrate;
+				}
+			} catch (Exception e) {
+				logger.warn("Exception during transcription or evaluation: " + e.getMessage());
+				e.printStackTrace();
+			}
+		}
+
+		/**
+		 * Evaluate the given Chromosome over all fitness functions using the given (already transcribed) substrate,
+		 * assigning the resulting fitness values and behaviours to it. Functions whose evaluation data for the
+		 * Chromosome is stable and available are not re-evaluated.
+		 * 
+		 * @param substrate The substrate for the Chromosome, or null if {@link #requiresSubstrate(Chromosome)}
+		 *            returned false for it, in which case only the stored evaluation data is applied.
+		 */
+		private void evaluateChromosome(Chromosome chrom, Activator substrate) {
+			// Pull any stable (fixed) fitness values from chromosome.
+			for (int i = 0, fs = 0; i < fitnessValues.length; i++) {
+				for (int f = 0; f < fitnessValues[i].length; f++, fs++) {
+					fitnessValues[i][f] = chrom.getFitnessValue(fs);
+				}
+			}
+			for (int i = 0, fs = 0; i < behaviours.length; i++) {
+				for (int f = 0; f < behaviours[i].length; f++, fs++) {
+					behaviours[i][f] = chrom.behaviours[fs];
+				}
+			}
+			boolean evaluated = false;
+			boolean aborted = false;
+			evaluatorRandoms[id].setSeed(randomSeed, generation, chrom.getId());
+			budget.begin();
+			try {
+				// Do secondary fitness functions first.
+				for (int i = 0; i < multiFitnessFunctions.length; i++) {
+					BulkFitnessFunctionMT func = multiFitnessFunctions[i];
+					// If the fitness values aren't stable for this function or they haven't been
+					// calculated yet for this chrom.
+					if (substrate != null && requiresEvaluation(func, fitnessValues[i + 1], behaviours[i + 1])) {
+						func.evaluate(chrom, substrate, id, fitnessValues[i + 1], behaviours[i + 1]);
+						evaluated = true;
+					}
+					if (func.fitnessValuesStable()) {
+						// At least some fitness values stable (this doesn't prevent the non-stable
+						// ones from being updated).
+						chrom.setEvaluationDataStable();
+					}
+				}
+	
+				// If the fitness values aren't stable for the primary function or they haven't been
+				// calculated yet for this chrom.
+				if (substrate != null && requiresEvaluation(BulkFitnessFunctionMT.this, fitnessValues[0], behaviours[0])) {
+					// Do primary fitness function.
+					if (raceStates != null) {
+						performRaceTrials(chrom, substrate, fitnessValues[0]);
+					} else {
+						evaluate(chrom, substrate, id, fitnessValues[0], behaviours[0]);
+					}
+					evaluated = true;
+				}
+				if (fitnessValuesStable()) {
+					chrom.setEvaluationDataStable();
+				}
+			} catch (EvaluationBudget.ExceededException e) {
+				aborted = true;
+				budgetAborts.incrementAndGet();
+				// Penalise all objectives that were (being) evaluated.
+				for (int i = 0; i < fitnessValues.length; i++) {
+					BulkFitnessFunctionMT func = i == 0 ? BulkFitnessFunctionMT.this : multiFitnessFunctions[i - 1];
+					if (requiresEvaluation(func, fitnessValues[i], behaviours[i])) {
+						Arrays.fill(fitnessValues[i], budgetPenalty);
+					}
+				}
+				if (raceStates != null) {
+					raceStates.get(chrom.getId()).aborted = true;
+				}
+			} finally {
+				budget.end();
+			}
+
+			// Assign fitness values to chromosome.
+			for (int i = 0, fs = 0; i < fitnessValues.length; i++) {
+				for (int f = 0; f < fitnessValues[i].length; f++, fs++) {
+					if (!Double.isNaN(fitnessValues[i][f])) {
+						chrom.setFitnessValue(fitnessValues[i][f], fs);
+					}
+				}
+			}
+			for (int i = 0, fs = 0; i < behaviours.length; i++) {
+				for (int f = 0; f < behaviours[i].length; f++, fs++) {
+					if (behaviours[i][f] != null) {
+						chrom.behaviours[fs] = behaviours[i][f];
+					}
+				}
+			}
+
+			if (evaluated || aborted) {
+				evaluatedCount.incrementAndGet();
+			}
+			if (aborted) {
+				chrom.setPerformanceValue(targetPerformanceType == 1 ? 0 : 1);
+			} else if (evaluated) {
+				postEvaluate(chrom, substrate, id);
+				cacheEvaluation(chrom);
+			}
+
+			// We just set the overall fitness value according to the weightings. A different
+			// selector (eg NSGA-II selector) may set the overall fitness to something else
+			// based on the multiple objectives.
+			// If novelty is to be assessed wait until this is done for all chromosomes before
+			// calculating overall fitness.
+			if (noveltyArchives == null)
+				calculateOverallFitness(chrom);
+
+			synchronized (BulkFitnessFunctionMT.this) {
+				if ((targetPerformanceType == 1 && chrom.getPerformanceValue() > bestPerformance) || (targetPerformanceType == 0 && chrom.getPerformanceValue() < bestPerformance)) {
+					bestPerformance = chrom.getPerformanceValue();
+					newBestChrom = chrom;
+				}
+			}
+			if (noveltyArchives != null) {
+				for (int n = 0; n < noveltyObjectiveCount; n++) {
+					// May be missing if the evaluation was aborted.
+					if (chrom.behaviours[n] != null) {
+						noveltyArchives[n].addToCurrentPopulation(chrom.behaviours[n]);
+					}
+				}
+			}
+		}
+
+		/**
+		 * Evaluate the given Chromosome on the current block of trials in racing evaluation, and update its fitness
+		 * and performance accordingly.
+		 */
+		private void raceChromosome(Chromosome chrom) {
+			try {
+				Activator previousSubstrate = substrate;
+				substrate = generateSubstrate(chrom, substrate);
+				if (substrate == null) {
+					substrate = previousSubstrate;
+					return;
+				}
+				budget.begin();
+				try {
+					performRaceTrials(chrom, substrate, fitnessValues[0]);
+					chrom.setFitnessValue(fitnessValues[0][0], 0);
+					postEvaluate(chrom, substrate, id);
+				} catch (EvaluationBudget.ExceededException e) {
+					budgetAborts.incrementAndGet();
+					raceStates.get(chrom.getId()).aborted = true;
+					chrom.setFitnessValue(budgetPenalty, 0);
+					chrom.setPerformanceValue(targetPerformanceType == 1 ? 0 : 1);
+				} finally {
+					budget.end();
+				}
+				if (noveltyArchives == null)
+					calculateOverallFitness(chrom);
+			} catch (Exception e) {
+				logger.warn("Exception during transcription or evaluation: " + e.getMessage());
+				e.printStackTrace();
+			}
+		}
+
+		/**
+		 * Perform the current block of trials of racing evaluation for the given Chromosome (with the primary fitness
+		 * function), setting the primary fitness value to the average fitness over all trials performed so far.
+		 */
+		private void performRaceTrials(Chromosome chrom, Activator substrate, double[] fitnessValues) {
+			RaceState state = raceStates.get(chrom.getId());
+			for (int t = raceTrialStart; t < raceTrialEnd; t++) {
+				evaluatorRandoms[id].setSeed(SplitMixRandom.mix(randomSeed + t), generation, chrom.getId());
+				state.add(evaluateTrial(chrom, substrate, id, t));
+			}
+			raceTrialsPerformed.addAndGet(raceTrialEnd - raceTrialStart);
+			fitnessValues[0] = state.meanFitness();
+			chrom.setPerformanceValue(state.meanPerformance());
+		}
+
+		/**
+		 * Determine the novelty of the given Chromosome with respect to each novelty archive, and then its overall
+		 * fitness.
+		 */
+		private void testNovelty(Chromosome chrom) {
+			int fitnessSlot = objectiveCount - noveltyArchives.length;
+			// May be empty if substrate decoding was a dud (see above).
+			if (chrom.behaviours != null) {
+				// Use a different stream to that used for evaluation.
+				evaluatorRandoms[id].setSeed(~randomSeed, generation, chrom.getId());
+				for (int n = 0; n < noveltyArchives.length; n++) {
+					// Behaviour may be missing if the evaluation was aborted.
+					chrom.setFitnessValue(chrom.behaviours[n] != null ? noveltyArchives[n].testNovelty(chrom.behaviours[n], evaluatorRandoms[id]) : 0, fitnessSlot++);
+				}
+				calculateOverallFitness(chrom);
+			}
+		}
+
 		private void calculateOverallFitness(Chromosome c) {
 			double overallFitness = 0;
 			for (int i = 0; i < objectiveCount; i++) {
@@ -707,77 +1832,102 @@ public abstract class BulkFitnessFunctionMT extends AHNIFitnessFunction implemen
 		}
 
 		for (int n = 0; n < noveltyArchives.length; n++) {
-			if (noveltyArchives[n].archive.isEmpty())
+			// The archive is read one behaviour at a time as it may be stored in a file.
+			NoveltySearch archive = noveltyArchives[n];
+			int size = archive.getArchiveSize();
+			int dims = archive.getArchiveDimension();
+			if (size == 0 || dims == 0)
 				continue;
 
-			Behaviour tmp = noveltyArchives[n].archive.get(0);
-			if (tmp instanceof RealVectorBehaviour) {
-				int dims = ((RealVectorBehaviour) tmp).p.getDimension();
-				// If only 2 dimensions render as scatter plot.
-				if (dims == 2) {
-					int imageSize = 254;
-					BufferedImage image = new BufferedImage(imageSize + 2, imageSize + 2, BufferedImage.TYPE_BYTE_GRAY);
-					Graphics2D g = image.createGraphics();
-
-					g.setColor(Color.WHITE);
-					for (Behaviour b : noveltyArchives[n].archive) {
-						RealVectorBehaviour brv = (RealVectorBehaviour) b;
-						g.fillRect((int) Math.round(brv.p.getEntry(0) * imageSize), (int) Math.round(brv.p.getEntry(1) * imageSize), 1, 1);
-					}
-					String fileName = props.getProperty(HyperNEATConfiguration.OUTPUT_DIR_KEY) + "novelty_archive-" + props.getEvolver().getGeneration() + "-" + n + ".png";
-					File outputfile = new File(fileName);
-					try {
-						ImageIO.write(image, "png", outputfile);
-					} catch (IOException e) {
-						e.printStackTrace();
-					}
-				} else { // Render as intensity plot.
-					int imageScale = 1;
-					int size = noveltyArchives[n].archive.size();
-					BufferedImage image = new BufferedImage(size * imageScale, dims * imageScale, BufferedImage.TYPE_BYTE_GRAY);
-					Graphics2D g = image.createGraphics();
-
-					for (int i = 0; i < size; i++) {
-						RealVectorBehaviour brv = (RealVectorBehaviour) noveltyArchives[n].archive.get(i);
-						for (int j = 0; j < dims; j++) {
-							float c = (float) brv.p.getEntry(j);
-							g.setColor(new Color(c, c, c));
-							g.fillRect(i * imageScale, j * imageScale, imageScale, imageScale);
-						}
-					}
-					String fileName = props.getProperty(HyperNEATConfiguration.OUTPUT_DIR_KEY) + "novelty_archive-" + n + ".png";
-					File outputfile = new File(fileName);
-					try {
-						ImageIO.write(image, "png", outputfile);
-					} catch (IOException e) {
-						e.printStackTrace();
+			double[] buffer = new double[dims];
+			// If only 2 dimensions render as scatter plot.
+			if (dims == 2) {
+				int imageSize = 254;
+				BufferedImage image = new BufferedImage(imageSize + 2, imageSize + 2, BufferedImage.TYPE_BYTE_GRAY);
+				Graphics2D g = image.createGraphics();
+
+				g.setColor(Color.WHITE);
+				for (int i = 0; i < size; i++) {
+					double[] p = archive.getArchivedVector(i, buffer);
+					g.fillRect((int) Math.round(p[0] * imageSize), (int) Math.round(p[1] * imageSize), 1, 1);
+				}
+				String fileName = props.getProperty(HyperNEATConfiguration.OUTPUT_DIR_KEY) + "novelty_archive-" + props.getEvolver().getGeneration() + "-" + n + ".png";
+				File outputfile = new File(fileName);
+				try {
+					ImageIO.write(image, "png", outputfile);
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			} else { // Render as intensity plot.
+				int imageScale = 1;
+				BufferedImage image = new BufferedImage(size * imageScale, dims * imageScale, BufferedImage.TYPE_BYTE_GRAY);
+				Graphics2D g = image.createGraphics();
+
+				for (int i = 0; i < size; i++) {
+					double[] p = archive.getArchivedVector(i, buffer);
+					for (int j = 0; j < dims; j++) {
+						float c = (float) p[j];
+						g.setColor(new Color(c, c, c));
+						g.fillRect(i * imageScale, j * imageScale, imageScale, imageScale);
 					}
-
+				}
+				String fileName = props.getProperty(HyperNEATConfiguration.OUTPUT_DIR_KEY) + "novelty_archive-" + n + ".png";
+				File outputfile = new File(fileName);
+				try {
+					ImageIO.write(image, "png", outputfile);
+				} catch (IOException e) {
+					e.printStackTrace();
 				}
 			}
-
 		}
 	}
 	
 	
+	private void disposeThreads() {
+		if (transcriptionThreads != null) {
+			for (TranscriptionThread t : transcriptionThreads) {
+				t.dispose();
+			}
+		}
+		if (evaluators != null) {
+			for (Evaluator e : evaluators) {
+				e.dispose();
+			}
+		}
+	}
+
 	/**
 	 * Sub-classes may override this method to dispose of resources upon disposal of this object.
 	 */
 	public void dispose() {
-		if (evaluators != null) {
-			for (Evaluator e : evaluators) {
-				e.dispose();
+		disposeThreads();
+		if (workers != null) {
+			for (WorkerProcess w : workers) {
+				w.dispose();
 			}
 		}
+		if (spareSubstrates != null) {
+			Activator spare;
+			while ((spare = spareSubstrates.poll()) != null)
+				spare.dispose();
+		}
 		if (multiFitnessFunctions != null) {
 			for (BulkFitnessFunctionMT f : multiFitnessFunctions) {
 				f.dispose();
 			}
 		}
+		if (noveltyArchives != null) {
+			for (NoveltySearch archive : noveltyArchives) {
+				archive.dispose();
+			}
+		}
 	}
 
 	/**
-	 * Sub-classes may override this method to perform operations after a Chromosome has been evaluated.
+	 * Sub-classes may override this method to perform operations after a Chromosome has been evaluated. This method
+	 * is not called if no fitness function needed to re-evaluate the Chromosome because all of its evaluation data
+	 * was stable and already available (see {@link #fitnessValuesStable()}) or was retrieved from the cache (see
+	 * {@link #fitnessValuesDeterministic()}).
 	 * 
 	 * @param genotype the Chromosome that has been evaluated. It's fitness and performance will have been set.
 	 * @param substrate the network (activator), or phenotype, of the evaluated Chromosome.
@@ -0,0 +1,95 @@
+package com.ojcoleman.ahni.evaluation;
+
+/**
+ * <p>
+ * Limits the number of simulation steps and/or the wall-clock time that the evaluation of a single individual may
+ * take, so that a pathological individual (for example a recurrent substrate performing a huge number of activation
+ * cycles per step) can not stall a whole generation. See {@link BulkFitnessFunctionMT#BUDGET_STEPS_KEY} and
+ * {@link BulkFitnessFunctionMT#BUDGET_TIME_KEY}.
+ * </p>
+ * <p>
+ * A budget is active for the evaluator thread between calls to {@link #begin()} and {@link #end()}. Activator
+ * implementations report the simulation steps they perform via {@link #step(int)}; fitness functions that perform
+ * expensive computations without using an Activator may also call {@link #step(int)} (with 0 to only check the
+ * wall-clock time). When the budget is exhausted an {@link ExceededException} is thrown, which aborts the evaluation.
+ * </p>
+ */
+public class EvaluationBudget {
+	private static final ThreadLocal<EvaluationBudget> current = new ThreadLocal<EvaluationBudget>();
+
+	private final long maxSteps;
+	private final long maxNanos;
+	private long steps;
+	private long deadline;
+
+	/**
+	 * @param maxSteps The maximum number of simulation steps per evaluation, or 0 for no limit.
+	 * @param maxMillis The maximum wall-clock time per evaluation in milliseconds, or 0 for no limit.
+	 */
+	public EvaluationBudget(long maxSteps, long maxMillis) {
+		this.maxSteps = maxSteps;
+		this.maxNanos = maxMillis * 1000000;
+	}
+
+	/**
+	 * @return true iff this budget imposes a limit.
+	 */
+	public boolean isLimited() {
+		return maxSteps > 0 || maxNanos > 0;
+	}
+
+	/**
+	 * Start the budget for an evaluation performed by the current thread.
+	 */
+	public void begin() {
+		if (!isLimited())
+			return;
+		steps = 0;
+		deadline = maxNanos > 0 ? System.nanoTime() + maxNanos : 0;
+		current.set(this);
+	}
+
+	/**
+	 * End the budget for the evaluation performed by the current thread.
+	 */
+	public void end() {
+		if (!isLimited())
+			return;
+		current.remove();
+	}
+
+	/**
+	 * Record that the given number of simulation steps are about to be performed by the current thread. If the
+	 * evaluation being performed by the current thread has exhausted its budget an {@link ExceededException} is
+	 * thrown. This does nothing if no budget is active for the current thread.
+	 *
+	 * @param count The number of steps, may be 0 to only check the wall-clock time.
+	 */
+	public static void step(int count) {
+		EvaluationBudget budget = current.get();
+		if (budget != null)
+			budget.consume(count);
+	}
+
+	private void consume(int count) {
+		steps += count;
+		if (maxSteps > 0 && steps > maxSteps) {
+			throw new ExceededException("Evaluation exceeded budget of " + maxSteps + " steps.");
+		}
+		if (maxNanos > 0 && System.nanoTime() > deadline) {
+			throw new ExceededException("Evaluation exceeded budget of " + (maxNanos / 1000000) + "ms.");
+		}
+	}
+
+	/**
+	 * Thrown when an evaluation exceeds its budget. Fitness functions should not catch this exception (or should
+	 * re-throw it).
+	 */
+	public static class ExceededException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		public ExceededException(String message) {
+			super(message);
+		}
+	}
+}
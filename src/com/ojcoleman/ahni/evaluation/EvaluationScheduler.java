@@ -0,0 +1,109 @@
+package com.ojcoleman.ahni.evaluation;
+
+import com.ojcoleman.ahni.hyperneat.Configurable;
+import com.ojcoleman.ahni.hyperneat.Properties;
+
+/**
+ * <p>
+ * Base class for schedulers that dispatch the individuals in a population to the evaluator threads of a
+ * {@link BulkFitnessFunctionMT}. Individuals are referred to by their index in the list being evaluated and are handed
+ * out in contiguous chunks. The size of the chunks is adapted to the measured cost of evaluating an individual: while
+ * nothing is known about the cost chunks contain a single individual, thereafter chunks are sized so that each takes
+ * roughly {@link #TARGET_CHUNK_DURATION_KEY} milliseconds, but never more than a fraction of the remaining work so
+ * that the tail end of a generation is spread evenly over all threads.
+ * </p>
+ * <p>
+ * Implementations must be safe for concurrent use by all evaluator threads. {@link #reset(int, int)} is only called
+ * while no evaluator thread is requesting chunks.
+ * </p>
+ *
+ * @see AtomicIndexScheduler
+ * @see WorkStealingScheduler
+ */
+public abstract class EvaluationScheduler implements Configurable {
+	/**
+	 * The approximate duration, in milliseconds, that the evaluation of a chunk of individuals should take. Larger
+	 * values reduce scheduling overhead, smaller values improve load balancing. Default is 50.
+	 */
+	public static final String TARGET_CHUNK_DURATION_KEY = "fitness.scheduler.chunk_duration";
+	/**
+	 * The smoothing factor for the exponential moving average of the per-individual evaluation cost, in the range
+	 * (0, 1]. Larger values adapt more quickly to changes in cost. Default is 0.2.
+	 */
+	public static final String COST_SMOOTHING_KEY = "fitness.scheduler.cost_smoothing";
+
+	/**
+	 * The number of chunks that the remaining work is divided into per thread, at most. This bounds the chunk size so
+	 * that the final chunks of a generation are small.
+	 */
+	protected static final int MIN_CHUNKS_PER_THREAD = 2;
+
+	private long targetChunkNanos = 50 * 1000000L;
+	private double costSmoothing = 0.2;
+	private volatile double avgCostNanos = Double.NaN;
+
+	@Override
+	public void init(Properties props) {
+		targetChunkNanos = Math.round(props.getDoubleProperty(TARGET_CHUNK_DURATION_KEY, targetChunkNanos / 1000000d) * 1000000);
+		costSmoothing = props.getDoubleProperty(COST_SMOOTHING_KEY, costSmoothing);
+		if (costSmoothing <= 0 || costSmoothing > 1) {
+			throw new IllegalArgumentException(COST_SMOOTHING_KEY + " must be in the range (0, 1].");
+		}
+	}
+
+	/**
+	 * Prepare to dispatch the individuals with indices [0, itemCount) to the given number of threads.
+	 *
+	 * @param itemCount The number of individuals to dispatch.
+	 * @param threadCount The number of evaluator threads that will request chunks. Thread indices passed to
+	 *            {@link #nextChunk(int, int[])} are in the range [0, threadCount).
+	 */
+	public abstract void reset(int itemCount, int threadCount);
+
+	/**
+	 * Get the next chunk of individuals to evaluate for the given thread.
+	 *
+	 * @param thread The index of the requesting evaluator thread.
+	 * @param chunk An array of length 2 which will be set to the start (inclusive) and end (exclusive) indices of the
+	 *            chunk.
+	 * @return true if a chunk was assigned, false if there are no individuals remaining.
+	 */
+	public abstract boolean nextChunk(int thread, int[] chunk);
+
+	/**
+	 * Record the time taken to evaluate a chunk. This is used to adapt the chunk size.
+	 *
+	 * @param thread The index of the evaluator thread that evaluated the chunk.
+	 * @param itemCount The number of individuals in the chunk.
+	 * @param nanos The time taken to evaluate the chunk, in nanoseconds.
+	 */
+	public synchronized void chunkFinished(int thread, int itemCount, long nanos) {
+		if (itemCount <= 0)
+			return;
+		double cost = (double) nanos / itemCount;
+		avgCostNanos = Double.isNaN(avgCostNanos) ? cost : avgCostNanos * (1 - costSmoothing) + cost * costSmoothing;
+	}
+
+	/**
+	 * @return The current estimate of the cost of evaluating one individual, in nanoseconds, or NaN if no estimate is
+	 *         available yet.
+	 */
+	public double getAverageCost() {
+		return avgCostNanos;
+	}
+
+	/**
+	 * Determine the size of the next chunk to hand out.
+	 *
+	 * @param remaining The number of individuals available to take the chunk from.
+	 * @param threadCount The number of threads sharing the remaining individuals.
+	 */
+	protected int chunkSize(int remaining, int threadCount) {
+		double cost = avgCostNanos;
+		if (Double.isNaN(cost) || remaining <= 1)
+			return Math.min(1, remaining);
+		int size = cost <= 0 ? Integer.MAX_VALUE : (int) Math.min(Integer.MAX_VALUE, targetChunkNanos / cost);
+		size = Math.min(size, remaining / (threadCount * MIN_CHUNKS_PER_THREAD));
+		return Math.max(1, size);
+	}
+}
@@ -0,0 +1,222 @@
+package com.ojcoleman.ahni.evaluation;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.jgapcustomised.Allele;
+import org.jgapcustomised.Chromosome;
+import org.jgapcustomised.ChromosomeMaterial;
+
+import com.anji.neat.ConnectionAllele;
+import com.anji.neat.ConnectionGene;
+import com.anji.neat.NeuronAllele;
+import com.anji.neat.NeuronGene;
+import com.anji.neat.NeuronType;
+import com.ojcoleman.ahni.evaluation.novelty.Behaviour;
+import com.ojcoleman.ahni.evaluation.novelty.RealVectorBehaviour;
+import com.ojcoleman.ahni.hyperneat.HyperNEATEvolver;
+import com.ojcoleman.ahni.hyperneat.Properties;
+
+/**
+ * <p>
+ * Entry point of a worker process that transcribes and evaluates individuals on behalf of a {@link BulkFitnessFunctionMT}
+ * in another JVM on the same machine (see {@link BulkFitnessFunctionMT#WORKERS_KEY}). Worker processes are launched
+ * by {@link WorkerProcess}; they should not need to be started manually.
+ * </p>
+ * <p>
+ * The worker sets up the run from a copy of the master's Properties in the same way as {@link HyperNEATEvolver}
+ * does, then repeatedly receives a genome from the master over a loopback socket, evaluates it in the calling thread
+ * with its own instance of the fitness function(s), and sends back the fitness values (excluding novelty objectives),
+ * performance and behaviours. Novelty is assessed by the master. Only {@link NeuronAllele}s and
+ * {@link ConnectionAllele}s in genomes, and {@link RealVectorBehaviour}s, can be transferred.
+ * </p>
+ * <p>
+ * Usage: <code>EvaluationWorker &lt;properties file&gt; &lt;master port&gt; &lt;worker index&gt;</code>
+ * </p>
+ */
+public class EvaluationWorker {
+	private static Logger logger = Logger.getLogger(EvaluationWorker.class);
+
+	static final int SHUTDOWN = 0;
+	static final int EVALUATE = 1;
+
+	static final int RESULT_OK = 0;
+	static final int RESULT_ABORTED = 1;
+	static final int RESULT_FAILED = 2;
+
+	private static final byte NEURON = 0;
+	private static final byte CONNECTION = 1;
+
+	public static void main(String[] args) throws Exception {
+		if (args.length != 3) {
+			System.err.println("Usage: EvaluationWorker <properties file> <master port> <worker index>");
+			System.exit(-1);
+		}
+		// Only warnings and errors are relayed to the master.
+		BasicConfigurator.configure();
+		Logger.getRootLogger().setLevel(Level.WARN);
+
+		Properties props = new Properties(args[0]);
+		int port = Integer.parseInt(args[1]);
+		int index = Integer.parseInt(args[2]);
+
+		Socket socket = new Socket(InetAddress.getByName("127.0.0.1"), port);
+		socket.setTcpNoDelay(true);
+		DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+		out.writeInt(index);
+		out.flush();
+
+		// Set up the fitness function(s), transcriber etc as for a normal run.
+		props.singletonObjectProperty(HyperNEATEvolver.class);
+		BulkFitnessFunctionMT fitnessFunction = (BulkFitnessFunctionMT) props.getFitnessFunction();
+		fitnessFunction.initialiseWorkerEvaluation();
+		int objectiveCount = fitnessFunction.getObjectiveCount();
+		int noveltyObjectiveCount = fitnessFunction.getNoveltyObjectiveCount();
+
+		try {
+			while (true) {
+				int command;
+				try {
+					command = in.readInt();
+				} catch (EOFException e) {
+					// The master has gone away.
+					break;
+				}
+				if (command == SHUTDOWN) {
+					break;
+				}
+
+				long id = in.readLong();
+				int generation = in.readInt();
+				Chromosome chrom = new Chromosome(readMaterial(in), id, objectiveCount, noveltyObjectiveCount);
+				try {
+					boolean aborted = fitnessFunction.evaluateInCallingThread(chrom, generation);
+					out.writeInt(aborted ? RESULT_ABORTED : RESULT_OK);
+					writeResults(out, chrom, objectiveCount - noveltyObjectiveCount, noveltyObjectiveCount);
+				} catch (Exception e) {
+					logger.error("Exception evaluating individual " + id + " in worker " + index, e);
+					out.writeInt(RESULT_FAILED);
+					out.writeUTF(String.valueOf(e));
+				}
+				out.flush();
+			}
+		} finally {
+			fitnessFunction.dispose();
+			socket.close();
+		}
+		System.exit(0);
+	}
+
+	/**
+	 * Write the genome of the given Chromosome in a compact binary form.
+	 */
+	static void writeMaterial(DataOutputStream out, ChromosomeMaterial material) throws IOException {
+		out.writeInt(material.size());
+		for (Allele allele : material.getAlleles()) {
+			if (allele instanceof NeuronAllele) {
+				NeuronAllele neuron = (NeuronAllele) allele;
+				out.writeByte(NEURON);
+				out.writeLong(neuron.getInnovationId());
+				out.writeDouble(neuron.getBias());
+				out.writeUTF(neuron.getType().toString());
+				out.writeUTF(neuron.getActivationType());
+			} else if (allele instanceof ConnectionAllele) {
+				ConnectionAllele connection = (ConnectionAllele) allele;
+				out.writeByte(CONNECTION);
+				out.writeLong(connection.getInnovationId());
+				out.writeDouble(connection.getWeight());
+				out.writeLong(connection.getSrcNeuronId());
+				out.writeLong(connection.getDestNeuronId());
+			} else {
+				throw new IllegalArgumentException("Alleles of type " + allele.getClass().getSimpleName() + " can not be sent to worker processes.");
+			}
+		}
+	}
+
+	/**
+	 * Read a genome written by {@link #writeMaterial(DataOutputStream, ChromosomeMaterial)}.
+	 */
+	static ChromosomeMaterial readMaterial(DataInputStream in) throws IOException {
+		int size = in.readInt();
+		List<Allele> alleles = new ArrayList<Allele>(size);
+		for (int i = 0; i < size; i++) {
+			byte type = in.readByte();
+			long innovationId = in.readLong();
+			double value = in.readDouble();
+			if (type == NEURON) {
+				NeuronType neuronType = NeuronType.valueOf(in.readUTF());
+				String activationType = in.readUTF();
+				alleles.add(new NeuronAllele(new NeuronGene(neuronType, innovationId, activationType), value));
+			} else {
+				long src = in.readLong();
+				long dest = in.readLong();
+				ConnectionAllele connection = new ConnectionAllele(new ConnectionGene(innovationId, src, dest));
+				connection.setWeight(value);
+				alleles.add(connection);
+			}
+		}
+		return new ChromosomeMaterial(alleles);
+	}
+
+	/**
+	 * Write the fitness values for the non-novelty objectives, the performance and the behaviours of the given
+	 * Chromosome.
+	 */
+	static void writeResults(DataOutputStream out, Chromosome chrom, int fitnessCount, int behaviourCount) throws IOException {
+		for (int i = 0; i < fitnessCount; i++) {
+			out.writeDouble(chrom.getFitnessValue(i));
+		}
+		out.writeDouble(chrom.getPerformanceValue());
+		for (int i = 0; i < behaviourCount; i++) {
+			Behaviour b = chrom.behaviours[i];
+			if (b == null) {
+				out.writeInt(-1);
+			} else if (b instanceof RealVectorBehaviour) {
+				double[] p = ((RealVectorBehaviour) b).p.getDataRef();
+				out.writeInt(p.length);
+				for (double v : p) {
+					out.writeDouble(v);
+				}
+			} else {
+				throw new IllegalStateException("Behaviours of type " + b.getClass().getSimpleName() + " can not be sent from worker processes.");
+			}
+		}
+	}
+
+	/**
+	 * Read results written by {@link #writeResults(DataOutputStream, Chromosome, int, int)} and assign them to the
+	 * given Chromosome.
+	 */
+	static void readResults(DataInputStream in, Chromosome chrom, int fitnessCount, int behaviourCount) throws IOException {
+		for (int i = 0; i < fitnessCount; i++) {
+			double f = in.readDouble();
+			if (!Double.isNaN(f)) {
+				chrom.setFitnessValue(f, i);
+			}
+		}
+		chrom.setPerformanceValue(in.readDouble());
+		for (int i = 0; i < behaviourCount; i++) {
+			int length = in.readInt();
+			if (length >= 0) {
+				double[] p = new double[length];
+				for (int j = 0; j < length; j++) {
+					p[j] = in.readDouble();
+				}
+				chrom.behaviours[i] = new RealVectorBehaviour(new ArrayRealVector(p, false));
+			}
+		}
+	}
+}
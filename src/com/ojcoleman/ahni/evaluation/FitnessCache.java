@@ -0,0 +1,155 @@
+package com.ojcoleman.ahni.evaluation;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jgapcustomised.ChromosomeMaterial;
+
+import com.ojcoleman.ahni.evaluation.novelty.Behaviour;
+import com.ojcoleman.ahni.hyperneat.Configurable;
+import com.ojcoleman.ahni.hyperneat.Properties;
+
+/**
+ * <p>
+ * A bounded cache of the evaluation results (fitness values, performance and behaviours) of genotypes, keyed by
+ * {@link ChromosomeMaterial#getEquivalenceHash()}. This allows skipping the transcription and evaluation of
+ * individuals that are equivalent to one evaluated recently, for example clones and elites, when all fitness functions
+ * are deterministic (see {@link BulkFitnessFunctionMT#fitnessValuesDeterministic()}). A copy of the genotype is stored
+ * with each entry and compared with {@link ChromosomeMaterial#isEquivalent(ChromosomeMaterial)} on look-up, so that a
+ * hash collision can not cause an individual to be assigned the results of a different genotype.
+ * </p>
+ * <p>
+ * The cache is divided into segments, each of which is a separately locked least-recently-used map, so that evaluator
+ * threads rarely contend with each other. A single instance is shared by all fitness functions via
+ * {@link Properties#singletonObjectProperty(Class)} so that any of them may {@link #clear()} it.
+ * </p>
+ */
+public class FitnessCache implements Configurable {
+	/**
+	 * The maximum number of evaluation results to store. If 0 then caching is disabled. Default is 10000.
+	 */
+	public static final String SIZE_KEY = "fitness.cache.size";
+
+	private static final int SEGMENT_COUNT = 16;
+
+	private int capacity;
+	private Segment[] segments;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	@Override
+	public void init(Properties props) {
+		capacity = Math.max(0, props.getIntProperty(SIZE_KEY, 10000));
+		segments = new Segment[SEGMENT_COUNT];
+		for (int s = 0; s < SEGMENT_COUNT; s++) {
+			segments[s] = new Segment((capacity + SEGMENT_COUNT - 1) / SEGMENT_COUNT);
+		}
+	}
+
+	/**
+	 * @return The maximum number of evaluation results stored, 0 indicates caching is disabled.
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Get the evaluation results for the given genotype, or null if none are stored.
+	 */
+	public Entry get(ChromosomeMaterial material) {
+		long key = material.getEquivalenceHash();
+		Segment segment = segment(key);
+		Entry entry;
+		synchronized (segment) {
+			entry = segment.get(key);
+		}
+		// The stored copy is never modified so may be compared outside the lock.
+		if (entry != null && !entry.material.isEquivalent(material)) {
+			entry = null;
+		}
+		(entry != null ? hits : misses).incrementAndGet();
+		return entry;
+	}
+
+	/**
+	 * Store the evaluation results for the given genotype. A copy of the genotype is stored with the results.
+	 */
+	public void put(ChromosomeMaterial material, Entry entry) {
+		if (capacity == 0)
+			return;
+		entry.material = material.clone(null);
+		long key = entry.material.getEquivalenceHash();
+		Segment segment = segment(key);
+		synchronized (segment) {
+			segment.put(key, entry);
+		}
+	}
+
+	/**
+	 * Remove all stored evaluation results. This must be called when the evaluation results for a genotype may change,
+	 * for example when the difficulty of the task is increased.
+	 */
+	public void clear() {
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				segment.clear();
+			}
+		}
+	}
+
+	/**
+	 * @return The proportion of look-ups that found stored results since the last call to {@link #resetStatistics()},
+	 *         or NaN if there have been no look-ups.
+	 */
+	public double getHitRate() {
+		long h = hits.get(), total = h + misses.get();
+		return total == 0 ? Double.NaN : (double) h / total;
+	}
+
+	/**
+	 * Reset the counts used to determine the hit rate.
+	 */
+	public void resetStatistics() {
+		hits.set(0);
+		misses.set(0);
+	}
+
+	private Segment segment(long key) {
+		return segments[(int) (key ^ (key >>> 32)) & (SEGMENT_COUNT - 1)];
+	}
+
+	/**
+	 * The evaluation results for a genotype.
+	 */
+	public static class Entry {
+		/**
+		 * The fitness values for all fitness objectives, excluding novelty objectives.
+		 */
+		public final double[] fitnessValues;
+		public final double performance;
+		public final Behaviour[] behaviours;
+		private ChromosomeMaterial material;
+
+		public Entry(double[] fitnessValues, double performance, Behaviour[] behaviours) {
+			this.fitnessValues = fitnessValues;
+			this.performance = performance;
+			this.behaviours = behaviours;
+		}
+	}
+
+	private static class Segment extends LinkedHashMap<Long, Entry> {
+		private static final long serialVersionUID = 1L;
+		private final int capacity;
+
+		Segment(int capacity) {
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Long, FitnessCache.Entry> eldest) {
+			return size() > capacity;
+		}
+	}
+}
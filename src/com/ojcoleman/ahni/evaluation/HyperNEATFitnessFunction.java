@@ -147,8 +147,8 @@ public abstract class HyperNEATFitnessFunction extends BulkFitnessFunctionMT {
 			// allow sub-class to make necessary changes
 			HyperNEATTranscriber transcriber = (HyperNEATTranscriber) props.singletonObjectProperty(ActivatorTranscriber.TRANSCRIBER_KEY);
 			scale(scaleCount, scaleFactor, transcriber);
-			for (Evaluator ev : evaluators)
-				ev.resetSubstrate(); // don't reuse old size substrate
+			resetSubstrates(); // don't reuse old size substrate
+			invalidateFitnessCache(); // performance may be recorded differently and the task may have changed
 			HyperNEATTranscriber transcriberHN = (HyperNEATTranscriber) props.singletonObjectProperty(ActivatorTranscriber.TRANSCRIBER_KEY);
 			transcriberHN.resize(transcriberHN.getWidth(), transcriberHN.getHeight(), transcriberHN.getConnectionRange());
 
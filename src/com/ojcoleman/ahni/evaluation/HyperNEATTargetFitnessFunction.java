@@ -67,11 +67,23 @@ public class HyperNEATTargetFitnessFunction extends HyperNEATFitnessFunction {
 		this.targetOutputPatterns = targetOutputPatterns;
 		this.minTargetOutputValue = minTargetOutputValue;
 		this.maxTargetOutputValue = maxTargetOutputValue;
+		invalidateFitnessCache();
+	}
+
+	/**
+	 * {@inheritDoc} This implementation returns true as the evaluation of an individual depends only on the input and
+	 * target output patterns, which only change via {@link #setPatterns(double[][][], double[][][], double, double)}.
+	 */
+	@Override
+	public boolean fitnessValuesDeterministic() {
+		return true;
 	}
 
 	@Override
 	protected double evaluate(Chromosome genotype, Activator substrate, int evalThreadIndex) {
-		return _evaluate(genotype, substrate, null, false, false);
+		TargetFitnessCalculator.Results results = fitnessCalculator.evaluate(substrate, inputPatterns, targetOutputPatterns, minTargetOutputValue, maxTargetOutputValue, null, getRandom(evalThreadIndex));
+		genotype.setPerformanceValue(results.performance);
+		return results.fitness;
 	}
 	
 	@Override
@@ -157,12 +157,21 @@ public class TargetFitnessCalculator implements Configurable {
 	 * @return The calculated fitness value.
 	 */
 	public Results evaluate(Activator substrate, Object inputPatterns, Object targetOutputPatterns, double minTargetOutputValue, double maxTargetOutputValue, NiceWriter logOutput) {
+		return evaluate(substrate, inputPatterns, targetOutputPatterns, minTargetOutputValue, maxTargetOutputValue, logOutput, properties.getConfig().getRandomGenerator());
+	}
+
+	/**
+	 * Evaluate the given network on the given input and target output pairs, as for
+	 * {@link #evaluate(Activator, Object, Object, double, double, NiceWriter)}, using the given random number generator
+	 * to shuffle the order of the trials. Evaluator threads should supply their own generator (see
+	 * {@link BulkFitnessFunctionMT#getRandom(int)}) so that results do not depend on the number of threads.
+	 */
+	public Results evaluate(Activator substrate, Object inputPatterns, Object targetOutputPatterns, double minTargetOutputValue, double maxTargetOutputValue, NiceWriter logOutput, Random random) {
 		// if (substrate instanceof BainNN && ((BainNN) substrate).getTopology() == BainNN.Topology.RECURRENT) {
 		// logger.debug("Setting fitness to 0 due to recurrent topology for target fitness function.");
 		// return new Results();
 		// }
 		
-		Random random = properties.getConfig().getRandomGenerator();
 
 		int dim = (inputPatterns instanceof double[][]) ? 1 : 2;
 		double[][] input1D = null, output1D = null, responses1D = null;
@@ -0,0 +1,104 @@
+package com.ojcoleman.ahni.evaluation;
+
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+/**
+ * <p>
+ * Determines the number of evaluator threads to use by measuring the evaluation throughput (individuals evaluated per
+ * second) with different thread counts over successive generations, and then settling on the fastest. See
+ * {@link BulkFitnessFunctionMT#THREADS_AUTOTUNE_KEY}.
+ * </p>
+ * <p>
+ * The thread counts probed are the maximum, then successively halved counts down to the minimum. The first
+ * evaluation is not measured as it is likely to be dominated by JIT compilation and other warm-up costs. When the
+ * cost of evaluating an individual changes significantly, for example when the substrate is resized,
+ * {@link #reprobe()} should be called.
+ * </p>
+ */
+public class ThreadCountTuner {
+	private static Logger logger = Logger.getLogger(ThreadCountTuner.class);
+	private static final DecimalFormat nf = new DecimalFormat("0.0");
+
+	private final int[] candidates;
+	private final double[] throughput;
+	private int probe;
+	private int threadCount;
+	private boolean warmedUp;
+
+	/**
+	 * @param minThreads The minimum number of threads to use, at least 1.
+	 * @param maxThreads The maximum number of threads to use.
+	 */
+	public ThreadCountTuner(int minThreads, int maxThreads) {
+		minThreads = Math.max(1, Math.min(minThreads, maxThreads));
+		List<Integer> counts = new ArrayList<Integer>();
+		for (int t = maxThreads; t > minThreads; t /= 2) {
+			counts.add(t);
+		}
+		counts.add(minThreads);
+		candidates = new int[counts.size()];
+		for (int i = 0; i < candidates.length; i++) {
+			candidates[i] = counts.get(i);
+		}
+		throughput = new double[candidates.length];
+		reprobe();
+	}
+
+	/**
+	 * @return The number of threads to use for the next evaluation.
+	 */
+	public int getThreadCount() {
+		return probe < candidates.length ? candidates[probe] : threadCount;
+	}
+
+	/**
+	 * @return true iff the thread counts are currently being probed.
+	 */
+	public boolean isProbing() {
+		return probe < candidates.length;
+	}
+
+	/**
+	 * Record the results of an evaluation performed with the number of threads given by {@link #getThreadCount()}.
+	 *
+	 * @param individuals The number of individuals that were evaluated (excluding those whose results were already
+	 *            available).
+	 * @param nanos The time taken to evaluate them, in nanoseconds.
+	 */
+	public void recordEvaluation(int individuals, long nanos) {
+		// Not a useful measurement, try again next time.
+		if (!isProbing() || individuals == 0 || nanos <= 0) {
+			return;
+		}
+		if (!warmedUp) {
+			warmedUp = true;
+			return;
+		}
+		throughput[probe] = individuals / (nanos / 1e9);
+		probe++;
+		if (!isProbing()) {
+			int best = 0;
+			StringBuilder probed = new StringBuilder();
+			for (int i = 0; i < candidates.length; i++) {
+				if (throughput[i] > throughput[best]) {
+					best = i;
+				}
+				probed.append(i > 0 ? ", " : "").append(candidates[i]).append(": ").append(nf.format(throughput[i]));
+			}
+			threadCount = candidates[best];
+			logger.info("Using " + threadCount + " evaluator threads (individuals evaluated per second for each thread count probed: " + probed + ").");
+		}
+	}
+
+	/**
+	 * Start probing the thread counts again, for example because the substrate size has changed.
+	 */
+	public void reprobe() {
+		probe = 0;
+		threadCount = candidates[0];
+	}
+}
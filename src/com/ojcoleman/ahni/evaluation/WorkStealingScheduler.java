@@ -0,0 +1,102 @@
+package com.ojcoleman.ahni.evaluation;
+
+/**
+ * An {@link EvaluationScheduler} in which the population is initially partitioned into one contiguous block per
+ * evaluator thread. Each thread takes chunks from the front of its own block, so threads only contend with each other
+ * once a thread has exhausted its own block: it then steals the back half of the block with the most remaining
+ * individuals. This keeps all threads busy until the end of a generation when evaluation costs vary a lot between
+ * individuals, without a single shared point of contention.
+ */
+public class WorkStealingScheduler extends EvaluationScheduler {
+	private Span[] spans = new Span[0];
+	private volatile int threadCount;
+
+	@Override
+	public void reset(int itemCount, int threadCount) {
+		this.threadCount = threadCount;
+		if (spans.length != threadCount) {
+			spans = new Span[threadCount];
+			for (int t = 0; t < threadCount; t++) {
+				spans[t] = new Span();
+			}
+		}
+		for (int t = 0; t < threadCount; t++) {
+			spans[t].set((int) ((long) itemCount * t / threadCount), (int) ((long) itemCount * (t + 1) / threadCount));
+		}
+	}
+
+	@Override
+	public boolean nextChunk(int thread, int[] chunk) {
+		Span own = spans[thread];
+		while (true) {
+			synchronized (own) {
+				int remaining = own.end - own.start;
+				if (remaining > 0) {
+					chunk[0] = own.start;
+					chunk[1] = own.start + chunkSize(remaining, threadCount);
+					own.start = chunk[1];
+					return true;
+				}
+			}
+			if (!steal(thread, own)) {
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Move the back half of the largest remaining block of another thread to the given (empty) block.
+	 *
+	 * @return false iff there was nothing left to steal.
+	 */
+	private boolean steal(int thread, Span own) {
+		while (true) {
+			Span victim = null;
+			int victimRemaining = 0;
+			for (int t = 0; t < spans.length; t++) {
+				if (t != thread) {
+					int remaining = spans[t].remaining();
+					if (remaining > victimRemaining) {
+						victim = spans[t];
+						victimRemaining = remaining;
+					}
+				}
+			}
+			if (victim == null) {
+				return false;
+			}
+			int start, end;
+			synchronized (victim) {
+				int remaining = victim.end - victim.start;
+				if (remaining <= 0) {
+					// Emptied since we looked, try again.
+					continue;
+				}
+				end = victim.end;
+				start = victim.end - (remaining + 1) / 2;
+				victim.end = start;
+			}
+			synchronized (own) {
+				own.set(start, end);
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * A block of individual indices [start, end).
+	 */
+	private static class Span {
+		int start;
+		int end;
+
+		synchronized void set(int start, int end) {
+			this.start = start;
+			this.end = end;
+		}
+
+		synchronized int remaining() {
+			return end - start;
+		}
+	}
+}
@@ -0,0 +1,261 @@
+package com.ojcoleman.ahni.evaluation;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.jgapcustomised.Chromosome;
+
+import com.anji.util.Randomizer;
+import com.ojcoleman.ahni.evaluation.novelty.NoveltySearch;
+import com.ojcoleman.ahni.hyperneat.HyperNEATConfiguration;
+import com.ojcoleman.ahni.hyperneat.HyperNEATEvolver;
+import com.ojcoleman.ahni.hyperneat.Properties;
+
+/**
+ * The master side of a worker JVM that transcribes and evaluates individuals on behalf of a
+ * {@link BulkFitnessFunctionMT} (see {@link BulkFitnessFunctionMT#WORKERS_KEY} and {@link EvaluationWorker}). Each
+ * instance is used by a single evaluator thread; genomes are sent to the worker over a loopback socket one at a
+ * time and the evaluation results are read back.
+ */
+public class WorkerProcess {
+	private static Logger logger = Logger.getLogger(WorkerProcess.class);
+
+	/**
+	 * How long to wait for each worker connection attempt before checking that the worker processes are still alive.
+	 */
+	private static final int ACCEPT_POLL_MILLIS = 1000;
+	/**
+	 * The maximum time to wait for all workers to connect.
+	 */
+	private static final long CONNECT_TIMEOUT_MILLIS = 5 * 60 * 1000;
+
+	private final int index;
+	private final Process process;
+	private Socket socket;
+	private DataInputStream in;
+	private DataOutputStream out;
+	private int fitnessCount;
+	private int behaviourCount;
+
+	private WorkerProcess(int index, Process process) {
+		this.index = index;
+		this.process = process;
+	}
+
+	/**
+	 * Launch the given number of worker processes, each of which sets up the run from a copy of the given Properties.
+	 * This method returns once all workers have connected. If a worker process terminates before connecting, or not
+	 * all workers connect within a reasonable time, all workers are shut down and an IOException is thrown.
+	 *
+	 * @param props The Properties for the run.
+	 * @param count The number of workers to launch.
+	 * @param jvmArgs Additional arguments for the worker JVMs, for example "-Xmx2g". May be null.
+	 * @param fitnessCount The number of (non-novelty) fitness objectives.
+	 * @param behaviourCount The number of novelty objectives.
+	 */
+	public static WorkerProcess[] launch(Properties props, int count, String jvmArgs, int fitnessCount, int behaviourCount) throws IOException {
+		File propsFile = writeWorkerProperties(props);
+		ServerSocket server = new ServerSocket(0, count, InetAddress.getByName("127.0.0.1"));
+		WorkerProcess[] workers = new WorkerProcess[count];
+		try {
+			String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+			for (int i = 0; i < count; i++) {
+				List<String> command = new ArrayList<String>();
+				command.add(java);
+				if (jvmArgs != null && !jvmArgs.trim().isEmpty()) {
+					for (String arg : jvmArgs.trim().split("\\s+")) {
+						command.add(arg);
+					}
+				}
+				command.add("-cp");
+				command.add(System.getProperty("java.class.path"));
+				command.add(EvaluationWorker.class.getName());
+				command.add(propsFile.getAbsolutePath());
+				command.add("" + server.getLocalPort());
+				command.add("" + i);
+				ProcessBuilder pb = new ProcessBuilder(command);
+				pb.redirectErrorStream(true);
+				workers[i] = new WorkerProcess(i, pb.start());
+				workers[i].relayOutput();
+			}
+
+			// Workers may connect in any order, they identify themselves with their index.
+			server.setSoTimeout(ACCEPT_POLL_MILLIS);
+			long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT_MILLIS;
+			for (int i = 0; i < count; i++) {
+				Socket socket = null;
+				while (socket == null) {
+					try {
+						socket = server.accept();
+					} catch (SocketTimeoutException e) {
+						checkConnecting(workers);
+						if (System.currentTimeMillis() > deadline) {
+							throw new IOException("Only " + i + " of " + count + " worker processes connected within " + (CONNECT_TIMEOUT_MILLIS / 1000) + " seconds.");
+						}
+					}
+				}
+				socket.setTcpNoDelay(true);
+				DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+				WorkerProcess worker = workers[in.readInt()];
+				worker.socket = socket;
+				worker.in = in;
+				worker.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+				worker.fitnessCount = fitnessCount;
+				worker.behaviourCount = behaviourCount;
+			}
+		} catch (IOException e) {
+			for (WorkerProcess worker : workers) {
+				if (worker != null) {
+					worker.dispose();
+				}
+			}
+			throw e;
+		} finally {
+			server.close();
+		}
+		return workers;
+	}
+
+	/**
+	 * Throw an IOException if any worker process that has not yet connected has terminated.
+	 */
+	private static void checkConnecting(WorkerProcess[] workers) throws IOException {
+		for (WorkerProcess worker : workers) {
+			if (worker.socket == null) {
+				try {
+					int exitValue = worker.process.exitValue();
+					throw new IOException("Worker process " + worker.index + " terminated with exit value " + exitValue + " before connecting (see log for its output).");
+				} catch (IllegalThreadStateException e) {
+					// Still running.
+				}
+			}
+		}
+	}
+
+	/**
+	 * Write a copy of the given Properties for use by workers. Workers evaluate individuals one at a time in a single
+	 * thread, do not write output files and do not launch further workers.
+	 */
+	private static File writeWorkerProperties(Properties props) throws IOException {
+		java.util.Properties workerProps = new java.util.Properties();
+		for (Map.Entry<Object, Object> e : props.entrySet()) {
+			if (e.getKey() instanceof String && e.getValue() instanceof String) {
+				workerProps.put(e.getKey(), e.getValue());
+			}
+		}
+		// Make sure all workers set up their fitness function(s) identically to the master.
+		workerProps.setProperty("random.seed", "" + props.singletonObjectProperty(Randomizer.class).getSeed());
+		workerProps.remove(HyperNEATConfiguration.OUTPUT_DIR_KEY);
+		workerProps.setProperty(HyperNEATEvolver.PERSIST_ENABLE_KEY, "false");
+		workerProps.setProperty(BulkFitnessFunctionMT.WORKERS_KEY, "0");
+		workerProps.setProperty(BulkFitnessFunctionMT.MIN_THREADS_KEY, "1");
+		workerProps.setProperty(BulkFitnessFunctionMT.MAX_THREADS_KEY, "1");
+		workerProps.setProperty(BulkFitnessFunctionMT.TRANSCRIBE_THREADS_KEY, "0");
+		workerProps.setProperty(BulkFitnessFunctionMT.RACING_KEY, "false");
+		workerProps.setProperty(FitnessCache.SIZE_KEY, "0");
+		workerProps.setProperty(NoveltySearch.ARCHIVE_MAPPED, "false");
+
+		File file = File.createTempFile("ahni-worker-", ".properties");
+		file.deleteOnExit();
+		FileWriter writer = new FileWriter(file);
+		try {
+			workerProps.store(writer, "Properties for evaluation worker processes");
+		} finally {
+			writer.close();
+		}
+		return file;
+	}
+
+	/**
+	 * Relay the console output of the worker process to the log.
+	 */
+	private void relayOutput() {
+		Thread relay = new Thread("Worker " + index + " output") {
+			public void run() {
+				try {
+					BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+					String line;
+					while ((line = reader.readLine()) != null) {
+						logger.info("[worker " + index + "] " + line);
+					}
+				} catch (IOException e) {
+					// Worker has terminated.
+				}
+			}
+		};
+		relay.setDaemon(true);
+		relay.start();
+	}
+
+	/**
+	 * Transcribe and evaluate the given Chromosome in the worker process, and assign the resulting fitness values (for
+	 * all non-novelty objectives), performance and behaviours to it.
+	 *
+	 * @param generation The current generation, used to seed random number generators in the worker.
+	 * @return true iff the evaluation was aborted because it exceeded the evaluation budget (see
+	 *         {@link BulkFitnessFunctionMT#BUDGET_STEPS_KEY}).
+	 */
+	public boolean evaluate(Chromosome chrom, int generation) throws IOException {
+		out.writeInt(EvaluationWorker.EVALUATE);
+		out.writeLong(chrom.getId());
+		out.writeInt(generation);
+		EvaluationWorker.writeMaterial(out, chrom.getMaterial());
+		out.flush();
+
+		int result = in.readInt();
+		if (result == EvaluationWorker.RESULT_FAILED) {
+			throw new IllegalStateException("Evaluation failed in worker " + index + ": " + in.readUTF());
+		}
+		EvaluationWorker.readResults(in, chrom, fitnessCount, behaviourCount);
+		return result == EvaluationWorker.RESULT_ABORTED;
+	}
+
+	/**
+	 * Shut down the worker process.
+	 */
+	public void dispose() {
+		if (out != null) {
+			try {
+				out.writeInt(EvaluationWorker.SHUTDOWN);
+				out.flush();
+				socket.close();
+			} catch (IOException e) {
+				// Worker has already terminated.
+			}
+		}
+		try {
+			process.getOutputStream().close();
+		} catch (IOException e) {
+		}
+		Thread waiter = new Thread() {
+			public void run() {
+				try {
+					process.waitFor();
+				} catch (InterruptedException e) {
+				}
+			}
+		};
+		waiter.start();
+		try {
+			waiter.join(5000);
+		} catch (InterruptedException e) {
+		}
+		// Make sure the worker doesn't linger if it didn't shut down cleanly.
+		process.destroy();
+	}
+}
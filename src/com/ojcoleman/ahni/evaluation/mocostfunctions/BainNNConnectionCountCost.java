@@ -6,6 +6,8 @@ import com.anji.integration.Activator;
 import com.ojcoleman.ahni.evaluation.BulkFitnessFunctionMT;
 import com.ojcoleman.ahni.hyperneat.Properties;
 import com.ojcoleman.ahni.nn.BainNN;
+import com.ojcoleman.ahni.nn.DenseLayeredNet;
+import com.ojcoleman.ahni.nn.SparseNet;
 import com.ojcoleman.bain.base.SynapseCollection;
 
 public class BainNNConnectionCountCost extends BulkFitnessFunctionMT {
@@ -26,6 +28,11 @@ public class BainNNConnectionCountCost extends BulkFitnessFunctionMT {
 	public boolean fitnessValuesStable() {
 		return true;
 	}
+
+	@Override
+	public boolean fitnessValuesDeterministic() {
+		return true;
+	}
 	
 	@Override
 	protected double evaluate(Chromosome genotype, Activator substrate, int evalThreadIndex) {
@@ -40,6 +47,16 @@ public class BainNNConnectionCountCost extends BulkFitnessFunctionMT {
 			double targetCount = nn.getNeuronCount() * nn.getNeuronCount() * target;
 			return 1.0 / (1.0 + Math.abs(count - targetCount));
 		}
+		if (substrate instanceof SparseNet) {
+			SparseNet nn = (SparseNet) substrate;
+			double targetCount = nn.getNeuronCount() * nn.getNeuronCount() * target;
+			return 1.0 / (1.0 + Math.abs(nn.getSynapseCount() - targetCount));
+		}
+		if (substrate instanceof DenseLayeredNet) {
+			DenseLayeredNet nn = (DenseLayeredNet) substrate;
+			double targetCount = nn.getNeuronCount() * nn.getNeuronCount() * target;
+			return 1.0 / (1.0 + Math.abs(nn.getSynapseCount() - targetCount));
+		}
 		return 0;
 	}
 }
@@ -6,6 +6,8 @@ import com.anji.integration.Activator;
 import com.ojcoleman.ahni.evaluation.BulkFitnessFunctionMT;
 import com.ojcoleman.ahni.hyperneat.Properties;
 import com.ojcoleman.ahni.nn.BainNN;
+import com.ojcoleman.ahni.nn.DenseLayeredNet;
+import com.ojcoleman.ahni.nn.SparseNet;
 import com.ojcoleman.bain.base.SynapseCollection;
 
 public class BainNNConnectionLengthCost extends BulkFitnessFunctionMT {
@@ -13,6 +15,11 @@ public class BainNNConnectionLengthCost extends BulkFitnessFunctionMT {
 	public boolean fitnessValuesStable() {
 		return true;
 	}
+
+	@Override
+	public boolean fitnessValuesDeterministic() {
+		return true;
+	}
 	
 	@Override
 	protected double evaluate(Chromosome genotype, Activator substrate, int evalThreadIndex) {
@@ -20,6 +27,14 @@ public class BainNNConnectionLengthCost extends BulkFitnessFunctionMT {
 			double tcl = ((BainNN) substrate).getSumOfSquaredConnectionLengths();
 			return 1.0 / (1+tcl);
 		}
+		if (substrate instanceof SparseNet) {
+			double tcl = ((SparseNet) substrate).getSumOfSquaredConnectionLengths();
+			return 1.0 / (1+tcl);
+		}
+		if (substrate instanceof DenseLayeredNet) {
+			double tcl = ((DenseLayeredNet) substrate).getSumOfSquaredConnectionLengths();
+			return 1.0 / (1+tcl);
+		}
 		return 0;
 	}
 }
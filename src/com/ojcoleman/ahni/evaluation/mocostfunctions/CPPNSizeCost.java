@@ -10,6 +10,11 @@ public class CPPNSizeCost extends BulkFitnessFunctionMT {
 	public boolean fitnessValuesStable() {
 		return true;
 	}
+
+	@Override
+	public boolean fitnessValuesDeterministic() {
+		return true;
+	}
 	
 	@Override
 	protected double evaluate(Chromosome genotype, Activator substrate, int evalThreadIndex) {
@@ -0,0 +1,242 @@
+package com.ojcoleman.ahni.evaluation.novelty;
+
+import java.util.List;
+
+/**
+ * <p>
+ * A vantage-point tree over a fixed set of {@link Behaviour}s, supporting exact k-nearest-neighbour and range queries
+ * using {@link Behaviour#distanceFrom(Behaviour)} or a {@link VectorMetric}. Queries typically compute the distance to
+ * only a small fraction of the indexed behaviours. Distances must satisfy the triangle inequality (as the normalised
+ * Manhattan distance used by {@link RealVectorBehaviour} does), otherwise queries may miss neighbours.
+ * </p>
+ * <p>
+ * The tree is stored implicitly in a single array: the node for the range [lo, hi) has its vantage point at lo, the
+ * behaviours closer to it than the median distance in [lo+1, mid) and the remainder in [mid, hi). An index is
+ * immutable once built, so it may be queried by multiple threads concurrently.
+ * </p>
+ */
+public class BehaviourIndex {
+	/**
+	 * Ranges of at most this size are scanned linearly rather than split further.
+	 */
+	private static final int LEAF_SIZE = 8;
+
+	private final Behaviour[] items;
+	private final VectorMetric metric;
+	/**
+	 * The median distance from the vantage point of the node at each position, or 0 for leaves.
+	 */
+	private final double[] mu;
+
+	/**
+	 * Build an index over the given behaviours. The list is copied, subsequent changes to it are not reflected in the
+	 * index.
+	 *
+	 * @param metric The metric to use for distances between {@link RealVectorBehaviour}s, or null to use
+	 *            {@link Behaviour#distanceFrom(Behaviour)} (see {@link VectorMetric#distance(Behaviour, Behaviour,
+	 *            VectorMetric, double)}).
+	 */
+	public BehaviourIndex(List<Behaviour> behaviours, VectorMetric metric) {
+		this.metric = metric;
+		items = behaviours.toArray(new Behaviour[behaviours.size()]);
+		mu = new double[items.length];
+		build(0, items.length, new double[items.length]);
+	}
+
+	/**
+	 * @return The number of behaviours in this index.
+	 */
+	public int size() {
+		return items.length;
+	}
+
+	private static int mid(int lo, int hi) {
+		return lo + 1 + (hi - lo - 1) / 2;
+	}
+
+	private void build(int lo, int hi, double[] dist) {
+		if (hi - lo <= LEAF_SIZE)
+			return;
+		// Use the middle element as the vantage point to avoid degenerate trees when behaviours were added in a
+		// systematic order.
+		swap(lo, lo + (hi - lo) / 2, dist);
+		Behaviour vantage = items[lo];
+		for (int i = lo + 1; i < hi; i++) {
+			dist[i] = distance(vantage, items[i], Double.POSITIVE_INFINITY);
+		}
+		int mid = mid(lo, hi);
+		select(lo + 1, hi - 1, mid, dist);
+		mu[lo] = dist[mid];
+		build(lo + 1, mid, dist);
+		build(mid, hi, dist);
+	}
+
+	/**
+	 * Partially sort items in [left, right] by dist such that the element at position n is the one that would be there
+	 * if fully sorted, with smaller or equal elements before it and larger or equal elements after it.
+	 */
+	private void select(int left, int right, int n, double[] dist) {
+		while (right > left) {
+			double pivot = dist[(left + right) >>> 1];
+			int i = left, j = right;
+			while (i <= j) {
+				while (dist[i] < pivot)
+					i++;
+				while (dist[j] > pivot)
+					j--;
+				if (i <= j) {
+					swap(i, j, dist);
+					i++;
+					j--;
+				}
+			}
+			if (n <= j) {
+				right = j;
+			} else if (n >= i) {
+				left = i;
+			} else {
+				return;
+			}
+		}
+	}
+
+	private void swap(int i, int j, double[] dist) {
+		Behaviour tb = items[i];
+		items[i] = items[j];
+		items[j] = tb;
+		double td = dist[i];
+		dist[i] = dist[j];
+		dist[j] = td;
+	}
+
+	/**
+	 * Offer the distances from the given behaviour to its nearest neighbours in this index to the given accumulator.
+	 * All distances smaller than the accumulator's bound at the end of the query are guaranteed to have been offered.
+	 */
+	public void nearest(Behaviour b, NearestDistances nearest) {
+		nearest(b, nearest, 0, items.length);
+	}
+
+	private void nearest(Behaviour b, NearestDistances nearest, int lo, int hi) {
+		if (hi - lo <= LEAF_SIZE) {
+			for (int i = lo; i < hi; i++) {
+				nearest.offer(distance(b, items[i], nearest.bound()));
+			}
+			return;
+		}
+		double d = distance(b, items[lo], Double.POSITIVE_INFINITY);
+		nearest.offer(d);
+		int mid = mid(lo, hi);
+		double m = mu[lo];
+		if (d < m) {
+			nearest(b, nearest, lo + 1, mid);
+			if (d + nearest.bound() >= m)
+				nearest(b, nearest, mid, hi);
+		} else {
+			nearest(b, nearest, mid, hi);
+			if (d - nearest.bound() <= m)
+				nearest(b, nearest, lo + 1, mid);
+		}
+	}
+
+	private double distance(Behaviour a, Behaviour b, double bound) {
+		return VectorMetric.distance(a, b, metric, bound);
+	}
+
+	/**
+	 * @return true iff this index contains a behaviour whose distance from the given behaviour is less than the given
+	 *         threshold.
+	 */
+	public boolean containsWithin(Behaviour b, double threshold) {
+		return countWithin(b, threshold, 1, 0, items.length) > 0;
+	}
+
+	/**
+	 * Count the behaviours in this index whose distance from the given behaviour is less than the given threshold,
+	 * stopping once the given limit is reached.
+	 *
+	 * @return The count, at most limit.
+	 */
+	public int countWithin(Behaviour b, double threshold, int limit) {
+		return countWithin(b, threshold, limit, 0, items.length);
+	}
+
+	private int countWithin(Behaviour b, double threshold, int limit, int lo, int hi) {
+		int count = 0;
+		if (hi - lo <= LEAF_SIZE) {
+			for (int i = lo; i < hi && count < limit; i++) {
+				if (distance(b, items[i], threshold) < threshold)
+					count++;
+			}
+			return count;
+		}
+		double d = distance(b, items[lo], Double.POSITIVE_INFINITY);
+		if (d < threshold)
+			count++;
+		int mid = mid(lo, hi);
+		double m = mu[lo];
+		// Behaviours in [lo+1, mid) are within m of the vantage point, those in [mid, hi) are at least m from it.
+		if (count < limit && d - threshold < m)
+			count += countWithin(b, threshold, limit - count, lo + 1, mid);
+		if (count < limit && d + threshold > m)
+			count += countWithin(b, threshold, limit - count, mid, hi);
+		return count;
+	}
+
+	/**
+	 * Accumulates the k smallest of the distances offered to it, in ascending order.
+	 */
+	public static class NearestDistances {
+		private final double[] dist;
+		private int size;
+
+		/**
+		 * @param k The number of smallest distances to retain.
+		 */
+		public NearestDistances(int k) {
+			dist = new double[Math.max(1, k)];
+		}
+
+		/**
+		 * Offer a distance, it is retained if it is among the k smallest offered so far.
+		 */
+		public void offer(double d) {
+			if (size == dist.length) {
+				if (d >= dist[size - 1])
+					return;
+				size--;
+			}
+			int i = size++;
+			while (i > 0 && dist[i - 1] > d) {
+				dist[i] = dist[i - 1];
+				i--;
+			}
+			dist[i] = d;
+		}
+
+		/**
+		 * @return The largest retained distance if k distances have been retained, otherwise positive infinity.
+		 */
+		public double bound() {
+			return size == dist.length ? dist[size - 1] : Double.POSITIVE_INFINITY;
+		}
+
+		/**
+		 * @return The number of distances retained.
+		 */
+		public int size() {
+			return size;
+		}
+
+		/**
+		 * @return The average of the retained distances, summed in ascending order.
+		 */
+		public double average() {
+			double sum = 0;
+			for (int i = 0; i < size; i++) {
+				sum += dist[i];
+			}
+			return sum / size;
+		}
+	}
+}
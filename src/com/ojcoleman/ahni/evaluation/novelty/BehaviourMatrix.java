@@ -0,0 +1,212 @@
+package com.ojcoleman.ahni.evaluation.novelty;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * Stores behaviour vectors (see {@link RealVectorBehaviour}) contiguously in a single array so that distances to them
+ * can be computed in bulk without object indirection. Optionally the matrix of distances between all pairs of the
+ * stored behaviours is computed, as for the current population in {@link NoveltySearch}. Each pairwise distance is
+ * computed once, for both orderings of the pair. The computation is divided into square tiles of the matrix small
+ * enough that the vectors involved stay in cache; threads that call {@link #computeDistances()} claim tiles until
+ * none remain, so the computation is spread over all threads that require the distances.
+ * </p>
+ * <p>
+ * Once the distances are computed an instance may be queried by multiple threads concurrently.
+ * </p>
+ */
+public class BehaviourMatrix {
+	/**
+	 * The approximate number of vector elements from the rows of a tile to keep in cache.
+	 */
+	private static final int TILE_ELEMENTS = 2048;
+
+	private final int size;
+	private final int dimension;
+	private final double[] vectors;
+	private final IdentityHashMap<Behaviour, Integer> rows;
+	private final VectorMetric metric;
+
+	private final double[] distances;
+	private final int tileSize;
+	private final int[] tileRow;
+	private final int[] tileCol;
+	private final AtomicInteger nextTile = new AtomicInteger();
+	private int tilesFinished;
+
+	private BehaviourMatrix(List<Behaviour> behaviours, int dimension, VectorMetric metric, boolean pairwise) {
+		size = behaviours.size();
+		this.dimension = dimension;
+		this.metric = metric;
+		vectors = new double[size * dimension];
+		rows = new IdentityHashMap<Behaviour, Integer>(size * 2);
+		for (int i = 0; i < size; i++) {
+			Behaviour b = behaviours.get(i);
+			System.arraycopy(((RealVectorBehaviour) b).p.getDataRef(), 0, vectors, i * dimension, dimension);
+			rows.put(b, i);
+		}
+		if (!pairwise) {
+			distances = null;
+			tileSize = 0;
+			tileRow = tileCol = new int[0];
+			return;
+		}
+		distances = new double[size * size];
+
+		tileSize = Math.max(4, Math.min(64, TILE_ELEMENTS / (2 * Math.max(1, dimension))));
+		int tilesPerSide = (size + tileSize - 1) / tileSize;
+		int tileCount = tilesPerSide * (tilesPerSide + 1) / 2;
+		tileRow = new int[tileCount];
+		tileCol = new int[tileCount];
+		int t = 0;
+		for (int r = 0; r < tilesPerSide; r++) {
+			for (int c = r; c < tilesPerSide; c++) {
+				tileRow[t] = r;
+				tileCol[t] = c;
+				t++;
+			}
+		}
+	}
+
+	/**
+	 * Create a matrix for the given behaviours if they are all {@link RealVectorBehaviour}s of the same dimension.
+	 *
+	 * @param metric The metric to compute distances with.
+	 * @param pairwise Whether the distances between all pairs of the behaviours will be required (see
+	 *            {@link #computeDistances()}).
+	 * @return The matrix, or null if the behaviours are not all vectors of the same dimension.
+	 */
+	public static BehaviourMatrix create(List<Behaviour> behaviours, VectorMetric metric, boolean pairwise) {
+		int dimension = -1;
+		for (Behaviour b : behaviours) {
+			if (!(b instanceof RealVectorBehaviour))
+				return null;
+			int d = ((RealVectorBehaviour) b).p.getDimension();
+			if (dimension != -1 && d != dimension)
+				return null;
+			dimension = d;
+		}
+		return dimension == -1 ? null : new BehaviourMatrix(behaviours, dimension, metric, pairwise);
+	}
+
+	/**
+	 * @return The number of behaviours in this matrix.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return The row of the given behaviour in this matrix, or -1 if it is not in this matrix.
+	 */
+	public int rowOf(Behaviour b) {
+		Integer row = rows.get(b);
+		return row == null ? -1 : row;
+	}
+
+	/**
+	 * Compute the distances between all pairs of behaviours in this matrix if they have not already been computed.
+	 * The calling thread computes tiles of the matrix until none remain, then waits for any tiles being computed by
+	 * other threads. The matrix must have been created with pairwise set to true.
+	 */
+	public void computeDistances() {
+		int t;
+		while ((t = nextTile.getAndIncrement()) < tileRow.length) {
+			computeTile(tileRow[t] * tileSize, tileCol[t] * tileSize);
+			tileFinished();
+		}
+		while (true) {
+			try {
+				synchronized (this) {
+					if (tilesFinished == tileRow.length)
+						break;
+					wait();
+				}
+			} catch (InterruptedException e) {
+				System.out.println("Exception: " + e);
+			}
+		}
+	}
+
+	private synchronized void tileFinished() {
+		if (++tilesFinished == tileRow.length)
+			notifyAll();
+	}
+
+	private void computeTile(int rowStart, int colStart) {
+		int rowEnd = Math.min(size, rowStart + tileSize);
+		int colEnd = Math.min(size, colStart + tileSize);
+		for (int i = rowStart; i < rowEnd; i++) {
+			int iOffset = i * dimension;
+			// On the diagonal tiles only the upper triangle is computed, the distance of a behaviour from itself is 0.
+			for (int j = rowStart == colStart ? i + 1 : colStart; j < colEnd; j++) {
+				double d = metric.distance(vectors, iOffset, vectors, j * dimension, dimension, Double.POSITIVE_INFINITY);
+				distances[i * size + j] = d;
+				distances[j * size + i] = d;
+			}
+		}
+	}
+
+	/**
+	 * Offer the distances from the behaviour at the given row to all behaviours in this matrix (including itself) to
+	 * the given accumulator. {@link #computeDistances()} must have been called first.
+	 */
+	public void nearest(int row, BehaviourIndex.NearestDistances nearest) {
+		int offset = row * size;
+		for (int j = 0; j < size; j++) {
+			nearest.offer(distances[offset + j]);
+		}
+	}
+
+	/**
+	 * Offer the distances from the given behaviour, which need not be in this matrix, to all behaviours in this
+	 * matrix to the given accumulator. Distances that can not be among the nearest are abandoned early.
+	 */
+	public void nearest(Behaviour b, BehaviourIndex.NearestDistances nearest) {
+		double[] p = vectorOf(b);
+		for (int j = 0; j < size; j++) {
+			nearest.offer(metric.distance(p, 0, vectors, j * dimension, dimension, nearest.bound()));
+		}
+	}
+
+	/**
+	 * Count the behaviours in this matrix whose distance from the given behaviour is less than the given threshold,
+	 * stopping once the given limit is reached.
+	 *
+	 * @return The count, at most limit.
+	 */
+	public int countWithin(Behaviour b, double threshold, int limit) {
+		double[] p = vectorOf(b);
+		int count = 0;
+		for (int j = 0; j < size && count < limit; j++) {
+			if (metric.distance(p, 0, vectors, j * dimension, dimension, threshold) < threshold)
+				count++;
+		}
+		return count;
+	}
+
+	/**
+	 * @return true iff this matrix contains a behaviour whose distance from the given behaviour is less than the given
+	 *         threshold.
+	 */
+	public boolean containsWithin(Behaviour b, double threshold) {
+		return countWithin(b, threshold, 1) > 0;
+	}
+
+	/**
+	 * @return true iff distances from the given behaviour to those in this matrix can be computed, that is it is a
+	 *         {@link RealVectorBehaviour} of the same dimension.
+	 */
+	public boolean accepts(Behaviour b) {
+		return b instanceof RealVectorBehaviour && ((RealVectorBehaviour) b).p.getDimension() == dimension;
+	}
+
+	private double[] vectorOf(Behaviour b) {
+		if (!accepts(b)) {
+			throw new IllegalArgumentException("The behaviour must be a RealVectorBehaviour of dimension " + dimension + ".");
+		}
+		return ((RealVectorBehaviour) b).p.getDataRef();
+	}
+}
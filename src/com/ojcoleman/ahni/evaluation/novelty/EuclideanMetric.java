@@ -0,0 +1,49 @@
+package com.ojcoleman.ahni.evaluation.novelty;
+
+import java.nio.DoubleBuffer;
+
+/**
+ * The Euclidean distance divided by the square root of the vector length, so that distances between vectors with
+ * elements in the range [0, 1] are in the range [0, 1]. The sum of squared differences is compared against the
+ * squared bound so that the square root is only taken once.
+ */
+public class EuclideanMetric extends VectorMetric {
+	/**
+	 * Check whether to abandon the computation every this many elements.
+	 */
+	private static final int BLOCK = 16;
+
+	@Override
+	public double distance(double[] a, int aOffset, double[] b, int bOffset, int length, double bound) {
+		double limit = bound * bound * length;
+		double sum = 0;
+		int i = 0;
+		while (i < length) {
+			int end = Math.min(length, i + BLOCK);
+			for (; i < end; i++) {
+				double d = a[aOffset + i] - b[bOffset + i];
+				sum += d * d;
+			}
+			if (sum >= limit && i < length)
+				return Math.max(Math.sqrt(sum / length), bound);
+		}
+		return Math.sqrt(sum / length);
+	}
+
+	@Override
+	public double distance(double[] a, int aOffset, DoubleBuffer b, int bOffset, int length, double bound) {
+		double limit = bound * bound * length;
+		double sum = 0;
+		int i = 0;
+		while (i < length) {
+			int end = Math.min(length, i + BLOCK);
+			for (; i < end; i++) {
+				double d = a[aOffset + i] - b.get(bOffset + i);
+				sum += d * d;
+			}
+			if (sum >= limit && i < length)
+				return Math.max(Math.sqrt(sum / length), bound);
+		}
+		return Math.sqrt(sum / length);
+	}
+}
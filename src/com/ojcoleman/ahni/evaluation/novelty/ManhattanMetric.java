@@ -0,0 +1,46 @@
+package com.ojcoleman.ahni.evaluation.novelty;
+
+import java.nio.DoubleBuffer;
+
+/**
+ * The Manhattan (L1) distance divided by the vector length, the same distance as
+ * {@link RealVectorBehaviour#distanceFrom(Behaviour)}. This is the default metric for {@link NoveltySearch}.
+ */
+public class ManhattanMetric extends VectorMetric {
+	/**
+	 * Check whether to abandon the computation every this many elements.
+	 */
+	private static final int BLOCK = 16;
+
+	@Override
+	public double distance(double[] a, int aOffset, double[] b, int bOffset, int length, double bound) {
+		double limit = bound * length;
+		double sum = 0;
+		int i = 0;
+		while (i < length) {
+			int end = Math.min(length, i + BLOCK);
+			for (; i < end; i++) {
+				sum += Math.abs(a[aOffset + i] - b[bOffset + i]);
+			}
+			if (sum >= limit && i < length)
+				return Math.max(sum / length, bound);
+		}
+		return sum / length;
+	}
+
+	@Override
+	public double distance(double[] a, int aOffset, DoubleBuffer b, int bOffset, int length, double bound) {
+		double limit = bound * length;
+		double sum = 0;
+		int i = 0;
+		while (i < length) {
+			int end = Math.min(length, i + BLOCK);
+			for (; i < end; i++) {
+				sum += Math.abs(a[aOffset + i] - b.get(bOffset + i));
+			}
+			if (sum >= limit && i < length)
+				return Math.max(sum / length, bound);
+		}
+		return sum / length;
+	}
+}
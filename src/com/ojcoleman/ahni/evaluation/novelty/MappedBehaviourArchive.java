@@ -0,0 +1,257 @@
+package com.ojcoleman.ahni.evaluation.novelty;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ * An append-only store of behaviour vectors (see {@link RealVectorBehaviour}) in a memory-mapped file, used as the
+ * novelty archive when {@link NoveltySearch#ARCHIVE_MAPPED} is enabled so that very large archives need not be held
+ * on the heap. Vectors are stored as fixed-width rows of doubles after a small header recording the vector dimension
+ * and the number of rows, so the file can be reopened to resume a run or read for analysis. The file is mapped in
+ * segments; nearest-neighbour and range queries scan the segments through {@link DoubleBuffer} views without copying.
+ * </p>
+ * <p>
+ * Queries may be performed by multiple threads concurrently, but not concurrently with {@link #append(double[])} or
+ * {@link #clear()}.
+ * </p>
+ */
+public class MappedBehaviourArchive {
+	private static final int MAGIC = 0x41484e41;
+	/**
+	 * Header: magic number (int), dimension (int), number of rows (int), unused (int, so that the rows are aligned).
+	 */
+	private static final int HEADER_BYTES = 16;
+	/**
+	 * The approximate size of each mapped segment of the file.
+	 */
+	private static final int SEGMENT_BYTES = 64 * 1024 * 1024;
+
+	private final File file;
+	private final RandomAccessFile raf;
+	private final FileChannel channel;
+	private final MappedByteBuffer header;
+	private final List<MappedByteBuffer> mappedSegments = new ArrayList<MappedByteBuffer>();
+	private final List<DoubleBuffer> segments = new ArrayList<DoubleBuffer>();
+	private int dimension;
+	private int rowsPerSegment;
+	private int size;
+
+	/**
+	 * Open an archive file, creating it if necessary.
+	 *
+	 * @param file The file.
+	 * @param resume If true and the file contains an archive then its contents are retained, otherwise the archive is
+	 *            emptied.
+	 */
+	public MappedBehaviourArchive(File file, boolean resume) throws IOException {
+		this.file = file;
+		raf = new RandomAccessFile(file, "rw");
+		channel = raf.getChannel();
+		boolean existing = channel.size() >= HEADER_BYTES;
+		if (!resume) {
+			// Discard any previous contents before anything is mapped.
+			channel.truncate(0);
+			existing = false;
+		}
+		header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+		if (existing) {
+			if (header.getInt(0) != MAGIC) {
+				close();
+				throw new IOException("The file " + file + " is not a novelty archive file.");
+			}
+			int d = header.getInt(4);
+			int rows = header.getInt(8);
+			if (d > 0 && rows > 0) {
+				setDimension(d);
+				size = rows;
+				while ((long) segments.size() * rowsPerSegment < size) {
+					mapSegment();
+				}
+			}
+		}
+		if (size == 0) {
+			clear();
+		}
+	}
+
+	private void setDimension(int dimension) {
+		this.dimension = dimension;
+		rowsPerSegment = Math.max(1, SEGMENT_BYTES / (dimension * 8));
+		header.putInt(4, dimension);
+	}
+
+	private void mapSegment() throws IOException {
+		long segmentBytes = (long) rowsPerSegment * dimension * 8;
+		long start = HEADER_BYTES + segments.size() * segmentBytes;
+		MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_WRITE, start, segmentBytes);
+		mappedSegments.add(segment);
+		segments.add(segment.asDoubleBuffer());
+	}
+
+	/**
+	 * @return The file backing this archive.
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * @return The number of vectors in this archive.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return The dimension of the vectors in this archive, or 0 if no vectors have been added yet.
+	 */
+	public int getDimension() {
+		return dimension;
+	}
+
+	/**
+	 * Append a vector to this archive. All vectors must have the same dimension.
+	 */
+	public void append(double[] v) throws IOException {
+		if (dimension == 0) {
+			setDimension(v.length);
+		} else if (v.length != dimension) {
+			throw new IllegalArgumentException("All behaviours in the archive must have the same dimension (" + dimension + ") but a behaviour of dimension " + v.length + " was given.");
+		}
+		int segment = size / rowsPerSegment;
+		if (segment == segments.size()) {
+			mapSegment();
+		}
+		DoubleBuffer buffer = segments.get(segment);
+		int offset = (size % rowsPerSegment) * dimension;
+		for (int i = 0; i < dimension; i++) {
+			buffer.put(offset + i, v[i]);
+		}
+		size++;
+		header.putInt(8, size);
+	}
+
+	/**
+	 * Remove all vectors from this archive. The file is not truncated as parts of it may still be mapped, the rows
+	 * beyond the row count recorded in the header are ignored and are overwritten by subsequent appends.
+	 */
+	public void clear() throws IOException {
+		size = 0;
+		mappedSegments.clear();
+		segments.clear();
+		dimension = 0;
+		header.putInt(0, MAGIC);
+		header.putInt(4, 0);
+		header.putInt(8, 0);
+	}
+
+	/**
+	 * Get the value of the given element of the given vector.
+	 */
+	public double get(int row, int element) {
+		return segments.get(row / rowsPerSegment).get((row % rowsPerSegment) * dimension + element);
+	}
+
+	/**
+	 * Copy the given vector into the given array.
+	 *
+	 * @param buffer An array to copy the vector into, if null or of the wrong length a new array is created.
+	 * @return The array containing the vector.
+	 */
+	public double[] get(int row, double[] buffer) {
+		if (buffer == null || buffer.length != dimension) {
+			buffer = new double[dimension];
+		}
+		DoubleBuffer segment = segments.get(row / rowsPerSegment);
+		int offset = (row % rowsPerSegment) * dimension;
+		for (int i = 0; i < dimension; i++) {
+			buffer[i] = segment.get(offset + i);
+		}
+		return buffer;
+	}
+
+	/**
+	 * @return true iff distances from the given behaviour to those in this archive can be computed, that is it is a
+	 *         {@link RealVectorBehaviour} of the same dimension (or this archive is empty).
+	 */
+	public boolean accepts(Behaviour b) {
+		return b instanceof RealVectorBehaviour && (size == 0 || ((RealVectorBehaviour) b).p.getDimension() == dimension);
+	}
+
+	/**
+	 * Offer the distances from the given behaviour to all behaviours in this archive to the given accumulator.
+	 * Distances that can not be among the nearest are abandoned early.
+	 */
+	public void nearest(Behaviour b, VectorMetric metric, BehaviourIndex.NearestDistances nearest) {
+		if (size == 0)
+			return;
+		double[] p = vectorOf(b);
+		for (int s = 0; s < segments.size(); s++) {
+			DoubleBuffer segment = segments.get(s);
+			int rows = Math.min(rowsPerSegment, size - s * rowsPerSegment);
+			for (int r = 0; r < rows; r++) {
+				nearest.offer(metric.distance(p, 0, segment, r * dimension, dimension, nearest.bound()));
+			}
+		}
+	}
+
+	/**
+	 * Count the behaviours in this archive whose distance from the given behaviour is less than the given threshold,
+	 * stopping once the given limit is reached.
+	 *
+	 * @return The count, at most limit.
+	 */
+	public int countWithin(Behaviour b, VectorMetric metric, double threshold, int limit) {
+		if (size == 0)
+			return 0;
+		double[] p = vectorOf(b);
+		int count = 0;
+		for (int s = 0; s < segments.size() && count < limit; s++) {
+			DoubleBuffer segment = segments.get(s);
+			int rows = Math.min(rowsPerSegment, size - s * rowsPerSegment);
+			for (int r = 0; r < rows && count < limit; r++) {
+				if (metric.distance(p, 0, segment, r * dimension, dimension, threshold) < threshold)
+					count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return true iff this archive contains a behaviour whose distance from the given behaviour is less than the
+	 *         given threshold.
+	 */
+	public boolean containsWithin(Behaviour b, VectorMetric metric, double threshold) {
+		return countWithin(b, metric, threshold, 1) > 0;
+	}
+
+	private double[] vectorOf(Behaviour b) {
+		if (!accepts(b)) {
+			throw new IllegalArgumentException("The behaviour must be a RealVectorBehaviour of dimension " + dimension + ".");
+		}
+		return ((RealVectorBehaviour) b).p.getDataRef();
+	}
+
+	/**
+	 * Write any changes to the file and close it. The file is not truncated as the segments may remain mapped until
+	 * they are garbage collected, so it may extend beyond the last row to the end of the last segment.
+	 */
+	public void close() throws IOException {
+		// The header is forced last so that the row count never covers unwritten rows.
+		for (MappedByteBuffer segment : mappedSegments) {
+			segment.force();
+		}
+		header.force();
+		mappedSegments.clear();
+		segments.clear();
+		channel.close();
+		raf.close();
+	}
+}
@@ -1,8 +1,11 @@
 package com.ojcoleman.ahni.evaluation.novelty;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Random;
 
@@ -10,6 +13,7 @@ import org.apache.log4j.Logger;
 
 import com.anji.neat.NeatConfiguration;
 import com.ojcoleman.ahni.evaluation.BulkFitnessFunctionMT;
+import com.ojcoleman.ahni.hyperneat.HyperNEATConfiguration;
 import com.ojcoleman.ahni.hyperneat.Configurable;
 import com.ojcoleman.ahni.hyperneat.Properties;
 import com.ojcoleman.ahni.util.Range;
@@ -42,6 +46,80 @@ public class NoveltySearch implements Configurable {
 	 * fitness.function.novelty.threshold. Default is 0 (disabled, threshold method will be used instead).
 	 */
 	public static final String ARCHIVE_ADD_PROB = "fitness.function.novelty.add_probability";
+	/**
+	 * Whether to use a spatial index (see {@link BehaviourIndex}) over the archive, and over the current population if
+	 * the population distance matrix is not used (see {@link #USE_MATRIX}), to find the nearest neighbours of
+	 * behaviours, rather than computing the distance to every archived behaviour and every member of the current
+	 * population. Results are identical, but the index requires that the distance between behaviours (see
+	 * {@link #METRIC_CLASS} and {@link Behaviour#distanceFrom(Behaviour)}) satisfies the triangle inequality; this
+	 * should be set to false if it does not. Default is true.
+	 */
+	public static final String USE_INDEX = "fitness.function.novelty.index";
+	/**
+	 * Whether to store the behaviours of the current population contiguously and compute the distances between all
+	 * pairs of them once, in bulk, spread over the threads testing novelty (see {@link BehaviourMatrix}). The archive
+	 * is also stored contiguously if the index is disabled (see {@link #USE_INDEX}). Only applies if all behaviours
+	 * are {@link RealVectorBehaviour}s of the same dimension. The population distance matrix is not used for
+	 * populations larger than {@link #MATRIX_MAX_POPULATION}. Default is true.
+	 */
+	public static final String USE_MATRIX = "fitness.function.novelty.matrix";
+	/**
+	 * The {@link VectorMetric} to use for distances between {@link RealVectorBehaviour}s. Default is
+	 * {@link ManhattanMetric}, which gives the same distances as {@link RealVectorBehaviour#distanceFrom(Behaviour)}.
+	 */
+	public static final String METRIC_CLASS = "fitness.function.novelty.metric.class";
+	/**
+	 * The maximum number of behaviours to keep in the archive. When additions would exceed this, behaviours are
+	 * evicted as determined by {@link #ARCHIVE_EVICTION}. Default is 0 (unbounded).
+	 */
+	public static final String ARCHIVE_CAPACITY = "fitness.function.novelty.archive.capacity";
+	/**
+	 * The policy used to select behaviours to evict from the archive when it is full (see {@link #ARCHIVE_CAPACITY}),
+	 * one of {@link EvictionPolicy}. Default is FIFO.
+	 */
+	public static final String ARCHIVE_EVICTION = "fitness.function.novelty.archive.eviction";
+	/**
+	 * Whether to store the archive in a memory-mapped file rather than on the heap (see
+	 * {@link MappedBehaviourArchive}), for very long runs that accumulate large archives. The file is named
+	 * novelty_archive-&lt;n&gt;.dat in the output directory, or is a temporary file if there is no output directory.
+	 * Only {@link RealVectorBehaviour}s may be stored, the archive index is not used and the archive may not be bounded
+	 * (see {@link #ARCHIVE_CAPACITY}). Default is false.
+	 */
+	public static final String ARCHIVE_MAPPED = "fitness.function.novelty.archive.mapped";
+	/**
+	 * If the archive is stored in a file (see {@link #ARCHIVE_MAPPED}), whether to load the behaviours already in the
+	 * file, for example to resume a run. Otherwise the file is emptied. Default is false.
+	 */
+	public static final String ARCHIVE_MAPPED_RESUME = "fitness.function.novelty.archive.mapped.resume";
+
+	/**
+	 * Policies for selecting behaviours to evict from a full archive, see {@link NoveltySearch#ARCHIVE_EVICTION}.
+	 */
+	public enum EvictionPolicy {
+		/**
+		 * Evict the behaviours that have been in the archive the longest.
+		 */
+		FIFO,
+		/**
+		 * Evict the behaviours that were least novel when they were added to the archive.
+		 */
+		LEAST_NOVEL,
+		/**
+		 * Keep a uniform random sample of all behaviours ever added to the archive (reservoir sampling).
+		 */
+		RANDOM,
+		/**
+		 * Evict the behaviours in the most densely populated regions of the archive, that is those with the smallest
+		 * average distance to their k nearest neighbours in the archive.
+		 */
+		DENSITY
+	}
+
+	/**
+	 * The largest population for which the population distance matrix is used (see {@link #USE_MATRIX}); the matrix
+	 * for this size occupies 128MB.
+	 */
+	public static final int MATRIX_MAX_POPULATION = 4096;
 
 	int k = 30;
 	double archiveThreshold = 0;
@@ -51,12 +129,66 @@ public class NoveltySearch implements Configurable {
 	Properties properties;
 	public List<Behaviour> archive;
 	List<Behaviour> currentPop;
-	List<Behaviour> toArchive;
+	/**
+	 * The novelty of each archived behaviour when it was added to the archive, in the same order as {@link #archive}.
+	 */
+	List<Double> archiveNovelty;
+	int archiveCapacity;
+	EvictionPolicy evictionPolicy;
+	/**
+	 * The total number of behaviours offered to the archive, for reservoir sampling.
+	 */
+	long archiveOffered;
+	int lastEvictionCount;
+	/**
+	 * Candidates for addition to the archive, collected per thread during evaluation and merged in
+	 * {@link #finishedEvaluation()}.
+	 */
+	private final List<List<ArchiveCandidate>> candidateBuffers = new ArrayList<List<ArchiveCandidate>>();
+	private final ThreadLocal<List<ArchiveCandidate>> candidateBuffer = new ThreadLocal<List<ArchiveCandidate>>() {
+		@Override
+		protected List<ArchiveCandidate> initialValue() {
+			List<ArchiveCandidate> buffer = new ArrayList<ArchiveCandidate>();
+			synchronized (candidateBuffers) {
+				candidateBuffers.add(buffer);
+			}
+			return buffer;
+		}
+	};
 	int noNewArchiveCount; // count number of generations in a row for which no individual added to archive.
 	int noNewArchiveGenerationsThreshold = 10;
 	int tooManyArchiveAdditionsThreshold;
 	double addProbability;
 	Random random;
+	boolean useIndex = true;
+	boolean useMatrix = true;
+	VectorMetric metric;
+	/**
+	 * Index over the archive, or null if not enabled. Rebuilt when behaviours are added to the archive.
+	 */
+	BehaviourIndex archiveIndex;
+	/**
+	 * Contiguous store of the archive, used if the index is disabled. Rebuilt when behaviours are added to the archive.
+	 */
+	BehaviourMatrix archiveMatrix;
+	/**
+	 * The archive size when {@link #archiveIndex} and {@link #archiveMatrix} were built, they are not used if the
+	 * archive has since been modified other than via {@link #finishedEvaluation()}.
+	 */
+	int indexedArchiveSize;
+	/**
+	 * Whether {@link #currentPopMatrix} and {@link #currentPopIndex} have been built for the current population. They
+	 * are built when first required after the population has changed.
+	 */
+	volatile boolean currentPopPrepared;
+	BehaviourMatrix currentPopMatrix;
+	BehaviourIndex currentPopIndex;
+	boolean archiveMapped;
+	/**
+	 * The archive stored in a file, or null if not enabled (see {@link #ARCHIVE_MAPPED}). If not null then
+	 * {@link #archive} is not used.
+	 */
+	MappedBehaviourArchive archiveFile;
 
 	public NoveltySearch() {
 	}
@@ -78,6 +210,19 @@ public class NoveltySearch implements Configurable {
 		}
 
 		k = props.getIntProperty(K, k);
+		useIndex = props.getBooleanProperty(USE_INDEX, useIndex);
+		useMatrix = props.getBooleanProperty(USE_MATRIX, useMatrix);
+		archiveCapacity = props.getIntProperty(ARCHIVE_CAPACITY, 0);
+		evictionPolicy = props.getEnumProperty(ARCHIVE_EVICTION, EvictionPolicy.class, EvictionPolicy.FIFO);
+		if (archiveCapacity > 0) {
+			logger.info("Novelty archive capacity is " + archiveCapacity + " with " + evictionPolicy + " eviction.");
+		}
+		archiveMapped = props.getBooleanProperty(ARCHIVE_MAPPED, false);
+		if (archiveMapped && archiveCapacity > 0) {
+			throw new IllegalArgumentException("The options/properties " + ARCHIVE_MAPPED + " and " + ARCHIVE_CAPACITY + " are mutually exclusive.");
+		}
+		Class<?> metricClass = props.getClassProperty(METRIC_CLASS, ManhattanMetric.class);
+		metric = (VectorMetric) props.newObjectProperty(metricClass);
 		// Adjust threshold so that around 1% of population is added at a time.
 		int popSize = props.getIntProperty(NeatConfiguration.POPUL_SIZE_KEY);
 		tooManyArchiveAdditionsThreshold = Math.max(1, (int) Math.round(popSize * 0.01));
@@ -90,9 +235,54 @@ public class NoveltySearch implements Configurable {
 	 */
 	public void reset() {
 		archive = new ArrayList<Behaviour>(k);
-		toArchive = Collections.synchronizedList(new ArrayList<Behaviour>());
+		archiveNovelty = new ArrayList<Double>(k);
+		archiveOffered = 0;
+		lastEvictionCount = 0;
+		synchronized (candidateBuffers) {
+			for (List<ArchiveCandidate> buffer : candidateBuffers) {
+				buffer.clear();
+			}
+		}
+		if (archiveFile != null) {
+			try {
+				archiveFile.clear();
+			} catch (IOException e) {
+				throw new RuntimeException("Unable to clear novelty archive file " + archiveFile.getFile(), e);
+			}
+		}
 		currentPop = new ArrayList<Behaviour>();
 		noNewArchiveCount = 0;
+		indexArchive();
+		currentPopPrepared = false;
+	}
+
+	/**
+	 * Open the file to store this archive in, if enabled (see {@link #ARCHIVE_MAPPED}). This should be called once,
+	 * after {@link #init(Properties)}.
+	 * 
+	 * @param index The index of this archive among those used by the fitness function, used to name the file.
+	 */
+	public void initArchiveFile(int index) {
+		if (!archiveMapped || archiveFile != null) {
+			return;
+		}
+		boolean resume = properties.getBooleanProperty(ARCHIVE_MAPPED_RESUME, false);
+		try {
+			File file;
+			String outputDir = properties.getProperty(HyperNEATConfiguration.OUTPUT_DIR_KEY, null);
+			if (outputDir != null) {
+				file = new File(outputDir + "novelty_archive-" + index + ".dat");
+			} else {
+				file = File.createTempFile("novelty_archive-" + index + "-", ".dat");
+				file.deleteOnExit();
+				resume = false;
+			}
+			archiveFile = new MappedBehaviourArchive(file, resume);
+		} catch (IOException e) {
+			throw new RuntimeException("Unable to open novelty archive file.", e);
+		}
+		logger.info("Storing novelty archive in " + archiveFile.getFile() + (archiveFile.size() > 0 ? ", resuming with " + archiveFile.size() + " behaviours." : "."));
+		indexArchive();
 	}
 
 	/**
@@ -102,30 +292,61 @@ public class NoveltySearch implements Configurable {
 	 * @return The novelty, a value in the range [0, 1].
 	 */
 	public double testNovelty(Behaviour b) {
+		return testNovelty(b, properties.getConfig().getRandomGenerator());
+	}
+
+	/**
+	 * Determine the novelty of the given behaviour. This method can be called by multiple threads asynchronously.
+	 * 
+	 * @param b The behaviour to test.
+	 * @param random The random number generator to use for probabilistic archive addition. This should not be shared
+	 *            with other threads.
+	 * @return The novelty, a value in the range [0, 1].
+	 */
+	public double testNovelty(Behaviour b, Random random) {
 		// System.err.println(b);
-		int totalSize = archive.size() + currentPop.size();
-		double[] dist = new double[totalSize];
-		int i = 0;
-		int inArchiveCount = 0;
-		for (Behaviour b2 : archive) {
-			dist[i] = b.distanceFrom(b2);
-			assert (dist[i] >= 0 && dist[i] <= 1) : "Values returned by implementations of Behaviour.distanceFrom() must be in the range [0, 1] but a value of " + dist[i] + " was found.";
-			if (dist[i] < 0.0000001) inArchiveCount++;
-			i++;
-		}
 		assert currentPop.size() > 0 : "The current population in NoveltySearch has zero size.";
-		for (Behaviour b2 : currentPop) {
-			dist[i] = b.distanceFrom(b2);
-			assert (dist[i] >= 0 && dist[i] <= 1) : "Values returned by implementations of Behaviour.distanceFrom() must be in the range [0, 1] but a value of " + dist[i] + " was found.";
-			i++;
-		}
-		int kTemp = Math.min(totalSize, this.k);
-		Arrays.sort(dist);
-		double avgDist = 0;
-		for (i = 0; i < kTemp; i++) {
-			avgDist += dist[i];
-		}
-		avgDist /= kTemp;
+		prepareCurrentPopulation();
+		BehaviourIndex.NearestDistances nearest = new BehaviourIndex.NearestDistances(k);
+
+		// Search the current population first so that distances to archived behaviours that can not be among the
+		// nearest may be abandoned early.
+		int row = currentPopMatrix != null ? currentPopMatrix.rowOf(b) : -1;
+		if (row != -1) {
+			currentPopMatrix.computeDistances();
+			currentPopMatrix.nearest(row, nearest);
+		} else if (currentPopMatrix != null && currentPopMatrix.accepts(b)) {
+			currentPopMatrix.nearest(b, nearest);
+		} else if (currentPopIndex != null) {
+			currentPopIndex.nearest(b, nearest);
+		} else {
+			for (Behaviour b2 : currentPop) {
+				nearest.offer(distance(b, b2));
+			}
+		}
+
+		int inArchiveCount;
+		boolean archiveIndexed = archive.size() == indexedArchiveSize;
+		boolean archiveInMatrix = archiveIndexed && archiveMatrix != null && archiveMatrix.accepts(b);
+		if (archiveFile != null) {
+			archiveFile.nearest(b, metric, nearest);
+			inArchiveCount = archiveFile.countWithin(b, metric, 0.0000001, k);
+		} else if (archiveIndexed && archiveIndex != null) {
+			archiveIndex.nearest(b, nearest);
+			inArchiveCount = archiveIndex.countWithin(b, 0.0000001, k);
+		} else if (archiveInMatrix) {
+			archiveMatrix.nearest(b, nearest);
+			inArchiveCount = archiveMatrix.countWithin(b, 0.0000001, k);
+		} else {
+			// Partial selection of the k smallest distances.
+			inArchiveCount = 0;
+			for (Behaviour b2 : archive) {
+				double d = distance(b, b2);
+				if (d < 0.0000001) inArchiveCount++;
+				nearest.offer(d);
+			}
+		}
+		double avgDist = nearest.average();
 		assert (avgDist >= 0 && avgDist <= 1) : "Values returned by testNovelty must be in the range [0, 1] but a value of " + avgDist + " was found.";
 
 		// Don't add it if it's already in the archive k times (at which point adding it more times will have no 
@@ -133,8 +354,8 @@ public class NoveltySearch implements Configurable {
 		if (inArchiveCount < k) {
 			// If using probabilistic archive addition method.
 			if (addProbability > 0) {
-				if (properties.getConfig().getRandomGenerator().nextDouble() < addProbability) {
-					toArchive.add(b);
+				if (random.nextDouble() < addProbability) {
+					candidateBuffer.get().add(new ArchiveCandidate(b, avgDist));
 				}
 			} else { // Using threshold archive addition method.
 				if (archiveThreshold == 0) {
@@ -142,9 +363,20 @@ public class NoveltySearch implements Configurable {
 					archiveThresholdMin = properties.getDoubleProperty(ARCHIVE_THRESHOLD_MIN, archiveThreshold * 0.05);
 	
 				}
-				// If the archive and toArchive queue don't contain a similar behaviour, add it to the archive.
-				if (!containsSimilar(toArchive, b, archiveThreshold) && !containsSimilar(archive, b, archiveThreshold)) {
-					toArchive.add(b);
+				// If the archive doesn't contain a similar behaviour, add it to the archive (candidates from this
+				// generation that are similar to each other are filtered in finishedEvaluation()).
+				boolean similarInArchive;
+				if (archiveFile != null) {
+					similarInArchive = archiveFile.containsWithin(b, metric, archiveThreshold);
+				} else if (archiveIndexed && archiveIndex != null) {
+					similarInArchive = archiveIndex.containsWithin(b, archiveThreshold);
+				} else if (archiveInMatrix) {
+					similarInArchive = archiveMatrix.containsWithin(b, archiveThreshold);
+				} else {
+					similarInArchive = containsSimilar(archive, b, archiveThreshold);
+				}
+				if (!similarInArchive) {
+					candidateBuffer.get().add(new ArchiveCandidate(b, avgDist));
 				}
 			}
 		}
@@ -157,19 +389,56 @@ public class NoveltySearch implements Configurable {
 			return false;
 		synchronized (behaviours) {
 			for (Behaviour b2 : behaviours) {
-				if (b.distanceFrom(b2) < threshold)
+				if (VectorMetric.distance(b, b2, metric, threshold) < threshold)
 					return true;
 			}
 		}
 		return false;
 	}
 
+	private double distance(Behaviour b, Behaviour b2) {
+		double d = VectorMetric.distance(b, b2, metric, Double.POSITIVE_INFINITY);
+		assert (d >= 0 && d <= 1) : "Distances between behaviours must be in the range [0, 1] but a value of " + d + " was found.";
+		return d;
+	}
+
+	/**
+	 * Build the index over and/or contiguous store of the archive, as enabled.
+	 */
+	private void indexArchive() {
+		if (archiveFile != null) {
+			archiveIndex = null;
+			archiveMatrix = null;
+			indexedArchiveSize = 0;
+			return;
+		}
+		archiveIndex = useIndex ? new BehaviourIndex(archive, metric) : null;
+		archiveMatrix = !useIndex && useMatrix ? BehaviourMatrix.create(archive, metric, false) : null;
+		indexedArchiveSize = archive.size();
+	}
+
+	/**
+	 * Build the distance matrix or index for the current population, as enabled, if not already built.
+	 */
+	private void prepareCurrentPopulation() {
+		if (!currentPopPrepared) {
+			synchronized (this) {
+				if (!currentPopPrepared) {
+					currentPopMatrix = useMatrix && currentPop.size() <= MATRIX_MAX_POPULATION ? BehaviourMatrix.create(currentPop, metric, true) : null;
+					currentPopIndex = currentPopMatrix == null && useIndex ? new BehaviourIndex(currentPop, metric) : null;
+					currentPopPrepared = true;
+				}
+			}
+		}
+	}
+
 	/**
 	 * This may be called before evaluating individuals from a population to allow determining novelty based on the
 	 * archive and the current population.
 	 */
 	public synchronized void setCurrentPopulation(List<Behaviour> behaviours) {
 		currentPop = behaviours;
+		currentPopPrepared = false;
 	}
 
 	/**
@@ -178,15 +447,19 @@ public class NoveltySearch implements Configurable {
 	 */
 	public synchronized void addToCurrentPopulation(Behaviour b) {
 		currentPop.add(b);
+		currentPopPrepared = false;
 	}
 
 	/**
 	 * This method must be called when the population has been evaluated. Individuals with novelty greater than the
 	 * threshold (see {@link NoveltySearch#ARCHIVE_THRESHOLD}) will be added to the archive. The archive threshold is
 	 * adjusted if no new individuals have been added for 10 generations or if more than (popSize/100) individuals have
-	 * been added. The record of behaviours for the current population is cleared.
+	 * been added. If the archive is bounded (see {@link #ARCHIVE_CAPACITY}) then behaviours are evicted as necessary.
+	 * The record of behaviours for the current population is cleared.
 	 */
 	public void finishedEvaluation() {
+		List<ArchiveCandidate> toArchive = mergeCandidates();
+
 		// If not using probabilistic archive addition method, adjust threshold if necessary to maintain desired
 		// addition rate.
 		if (addProbability == 0) {
@@ -209,15 +482,237 @@ public class NoveltySearch implements Configurable {
 			}
 		}
 
-		archive.addAll(toArchive);
+		int sizeBefore = archive.size();
+		lastEvictionCount = addToArchive(toArchive);
+		if (!toArchive.isEmpty() || archive.size() != sizeBefore || archive.size() != indexedArchiveSize) {
+			indexArchive();
+		}
 		if (properties.getEvolver().getGeneration() % 50 == 0)
-			logger.info("Novelty archive size is now " + archive.size() + (addProbability == 0 ? "  (archive threshold is " + archiveThreshold + ")." : "."));
+			logger.info("Novelty archive size is now " + getArchiveSize() + (archiveCapacity > 0 ? " (" + lastEvictionCount + " evicted this generation)" : "") + (addProbability == 0 ? "  (archive threshold is " + archiveThreshold + ")." : "."));
 
-		toArchive.clear();
 		currentPop = new ArrayList<Behaviour>();
+		currentPopPrepared = false;
+		currentPopMatrix = null;
+		currentPopIndex = null;
+	}
+
+	/**
+	 * Collect the candidates for addition to the archive from all threads. If the threshold addition method is used
+	 * then candidates similar to a more novel candidate are discarded. Candidates are considered in order of
+	 * decreasing novelty so that the result does not depend on which threads tested which behaviours.
+	 */
+	private List<ArchiveCandidate> mergeCandidates() {
+		List<ArchiveCandidate> candidates = new ArrayList<ArchiveCandidate>();
+		synchronized (candidateBuffers) {
+			for (List<ArchiveCandidate> buffer : candidateBuffers) {
+				candidates.addAll(buffer);
+				buffer.clear();
+			}
+		}
+		Collections.sort(candidates);
+		if (addProbability > 0) {
+			return candidates;
+		}
+		List<ArchiveCandidate> merged = new ArrayList<ArchiveCandidate>(candidates.size());
+		for (ArchiveCandidate c : candidates) {
+			boolean similar = false;
+			for (ArchiveCandidate m : merged) {
+				if (VectorMetric.distance(c.behaviour, m.behaviour, metric, archiveThreshold) < archiveThreshold) {
+					similar = true;
+					break;
+				}
+			}
+			if (!similar) {
+				merged.add(c);
+			}
+		}
+		return merged;
+	}
+
+	/**
+	 * Add the given candidates to the archive, evicting behaviours if the archive would exceed its capacity.
+	 * 
+	 * @return The number of behaviours evicted (or candidates not added when using reservoir sampling).
+	 */
+	private int addToArchive(List<ArchiveCandidate> toArchive) {
+		if (archiveFile != null) {
+			for (ArchiveCandidate c : toArchive) {
+				if (!archiveFile.accepts(c.behaviour)) {
+					throw new IllegalArgumentException("Only RealVectorBehaviours of the same dimension may be stored in a memory-mapped novelty archive.");
+				}
+				try {
+					archiveFile.append(((RealVectorBehaviour) c.behaviour).p.getDataRef());
+				} catch (IOException e) {
+					throw new RuntimeException("Unable to write to novelty archive file " + archiveFile.getFile(), e);
+				}
+			}
+			return 0;
+		}
+		if (archiveCapacity <= 0 || evictionPolicy != EvictionPolicy.RANDOM) {
+			for (ArchiveCandidate c : toArchive) {
+				archive.add(c.behaviour);
+				archiveNovelty.add(c.novelty);
+			}
+		} else {
+			// Reservoir sampling: each behaviour ever offered has an equal chance of being in the archive.
+			Random random = properties.getConfig().getRandomGenerator();
+			int evicted = 0;
+			for (ArchiveCandidate c : toArchive) {
+				archiveOffered++;
+				if (archive.size() < archiveCapacity) {
+					archive.add(c.behaviour);
+					archiveNovelty.add(c.novelty);
+				} else {
+					long j = (long) (random.nextDouble() * archiveOffered);
+					if (j < archiveCapacity) {
+						archive.set((int) j, c.behaviour);
+						archiveNovelty.set((int) j, c.novelty);
+					}
+					evicted++;
+				}
+			}
+			return evicted;
+		}
+
+		int excess = archive.size() - archiveCapacity;
+		if (archiveCapacity <= 0 || excess <= 0) {
+			return 0;
+		}
+		if (evictionPolicy == EvictionPolicy.FIFO) {
+			archive.subList(0, excess).clear();
+			archiveNovelty.subList(0, excess).clear();
+			return excess;
+		}
+
+		// Rank the archived behaviours by how much they should be kept.
+		final double[] keepScore = new double[archive.size()];
+		if (evictionPolicy == EvictionPolicy.LEAST_NOVEL) {
+			for (int i = 0; i < keepScore.length; i++) {
+				keepScore[i] = archiveNovelty.get(i);
+			}
+		} else {
+			BehaviourIndex index = useIndex ? new BehaviourIndex(archive, metric) : null;
+			for (int i = 0; i < keepScore.length; i++) {
+				// The k+1 nearest includes the behaviour itself, at distance 0.
+				BehaviourIndex.NearestDistances nearest = new BehaviourIndex.NearestDistances(k + 1);
+				if (index != null) {
+					index.nearest(archive.get(i), nearest);
+				} else {
+					for (Behaviour b2 : archive) {
+						nearest.offer(VectorMetric.distance(archive.get(i), b2, metric, nearest.bound()));
+					}
+				}
+				keepScore[i] = nearest.average();
+			}
+		}
+		Integer[] order = new Integer[keepScore.length];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				int c = Double.compare(keepScore[a], keepScore[b]);
+				// Prefer to evict older behaviours when scores are equal.
+				return c != 0 ? c : a.compareTo(b);
+			}
+		});
+		boolean[] evict = new boolean[keepScore.length];
+		for (int i = 0; i < excess; i++) {
+			evict[order[i]] = true;
+		}
+		List<Behaviour> keptBehaviours = new ArrayList<Behaviour>(archiveCapacity);
+		List<Double> keptNovelty = new ArrayList<Double>(archiveCapacity);
+		for (int i = 0; i < evict.length; i++) {
+			if (!evict[i]) {
+				keptBehaviours.add(archive.get(i));
+				keptNovelty.add(archiveNovelty.get(i));
+			}
+		}
+		archive.clear();
+		archive.addAll(keptBehaviours);
+		archiveNovelty = keptNovelty;
+		return excess;
 	}
 
 	public int getArchiveSize() {
-		return archive.size();
+		return archiveFile != null ? archiveFile.size() : archive.size();
+	}
+
+	/**
+	 * @return The dimension of the archived behaviours if they are {@link RealVectorBehaviour}s, otherwise (or if the
+	 *         archive is empty) 0.
+	 */
+	public int getArchiveDimension() {
+		if (archiveFile != null) {
+			return archiveFile.getDimension();
+		}
+		return !archive.isEmpty() && archive.get(0) instanceof RealVectorBehaviour ? ((RealVectorBehaviour) archive.get(0)).p.getDimension() : 0;
+	}
+
+	/**
+	 * Get the vector of an archived behaviour, which must be a {@link RealVectorBehaviour} (see
+	 * {@link #getArchiveDimension()}). This allows reading the archive one behaviour at a time if it is stored in a file
+	 * (see {@link #ARCHIVE_MAPPED}).
+	 * 
+	 * @param i The index of the behaviour in the archive.
+	 * @param buffer An array the vector may be copied into, may be null.
+	 * @return An array containing the vector, which should not be modified.
+	 */
+	public double[] getArchivedVector(int i, double[] buffer) {
+		if (archiveFile != null) {
+			return archiveFile.get(i, buffer);
+		}
+		return ((RealVectorBehaviour) archive.get(i)).p.getDataRef();
+	}
+
+	/**
+	 * Close the file storing the archive, if any (see {@link #ARCHIVE_MAPPED}).
+	 */
+	public void dispose() {
+		if (archiveFile != null) {
+			try {
+				archiveFile.close();
+			} catch (IOException e) {
+				logger.warn("Unable to close novelty archive file " + archiveFile.getFile() + ": " + e);
+			}
+			archiveFile = null;
+		}
+	}
+
+	/**
+	 * @return The number of behaviours evicted from the archive at the end of the last evaluation (see
+	 *         {@link #ARCHIVE_CAPACITY}).
+	 */
+	public int getEvictionCount() {
+		return lastEvictionCount;
+	}
+
+	/**
+	 * @return The maximum number of behaviours kept in the archive, or 0 if unbounded.
+	 */
+	public int getArchiveCapacity() {
+		return archiveCapacity;
+	}
+
+	/**
+	 * A behaviour to be added to the archive, with its novelty when tested.
+	 */
+	private static class ArchiveCandidate implements Comparable<ArchiveCandidate> {
+		final Behaviour behaviour;
+		final double novelty;
+
+		ArchiveCandidate(Behaviour behaviour, double novelty) {
+			this.behaviour = behaviour;
+			this.novelty = novelty;
+		}
+
+		/**
+		 * Orders by decreasing novelty.
+		 */
+		@Override
+		public int compareTo(ArchiveCandidate other) {
+			return Double.compare(other.novelty, novelty);
+		}
 	}
 }
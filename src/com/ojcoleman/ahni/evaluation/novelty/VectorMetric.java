@@ -0,0 +1,68 @@
+package com.ojcoleman.ahni.evaluation.novelty;
+
+import java.nio.DoubleBuffer;
+
+/**
+ * <p>
+ * Base class for distance metrics between behaviours represented as vectors (see {@link RealVectorBehaviour}), used by
+ * {@link NoveltySearch} in place of {@link Behaviour#distanceFrom(Behaviour)} so that distances can be computed
+ * directly on the flat arrays of a {@link BehaviourMatrix}. As for {@link Behaviour#distanceFrom(Behaviour)},
+ * distances should be in the range [0, 1]. Metrics must satisfy the triangle inequality if the novelty archive index
+ * is used (see {@link NoveltySearch#USE_INDEX}).
+ * </p>
+ * <p>
+ * Implementations may abandon the computation early once the distance is known to be at least a given bound; callers
+ * only require the exact distance when it is smaller than the bound. Implementations must be stateless, they are
+ * used by multiple threads concurrently.
+ * </p>
+ *
+ * @see ManhattanMetric
+ * @see EuclideanMetric
+ */
+public abstract class VectorMetric {
+	/**
+	 * Compute the distance between two vectors.
+	 *
+	 * @param a The array containing the first vector.
+	 * @param aOffset The index of the first element of the first vector in a.
+	 * @param b The array containing the second vector.
+	 * @param bOffset The index of the first element of the second vector in b.
+	 * @param length The length of the vectors.
+	 * @param bound If the distance is at least this value then the computation may be abandoned and any value greater
+	 *            than or equal to the bound returned. Use Double.POSITIVE_INFINITY to always compute the exact
+	 *            distance.
+	 */
+	public abstract double distance(double[] a, int aOffset, double[] b, int bOffset, int length, double bound);
+
+	/**
+	 * Compute the distance between a vector in an array and a vector in a buffer, as for the rows of a
+	 * {@link MappedBehaviourArchive}. This implementation copies the second vector into an array, subclasses should
+	 * override it to read the buffer directly.
+	 *
+	 * @see #distance(double[], int, double[], int, int, double)
+	 */
+	public double distance(double[] a, int aOffset, DoubleBuffer b, int bOffset, int length, double bound) {
+		double[] row = new double[length];
+		for (int i = 0; i < length; i++) {
+			row[i] = b.get(bOffset + i);
+		}
+		return distance(a, aOffset, row, 0, length, bound);
+	}
+
+	/**
+	 * Compute the distance between two behaviours. If both are {@link RealVectorBehaviour}s of the same dimension then
+	 * the given metric is used (if not null), otherwise {@link Behaviour#distanceFrom(Behaviour)}.
+	 *
+	 * @param bound See {@link #distance(double[], int, double[], int, int, double)}.
+	 */
+	public static double distance(Behaviour a, Behaviour b, VectorMetric metric, double bound) {
+		if (metric != null && a instanceof RealVectorBehaviour && b instanceof RealVectorBehaviour) {
+			double[] pa = ((RealVectorBehaviour) a).p.getDataRef();
+			double[] pb = ((RealVectorBehaviour) b).p.getDataRef();
+			if (pa.length == pb.length) {
+				return metric.distance(pa, 0, pb, 0, pa.length, bound);
+			}
+		}
+		return a.distanceFrom(b);
+	}
+}
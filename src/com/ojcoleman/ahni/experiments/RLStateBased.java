@@ -149,126 +149,16 @@ public class RLStateBased extends BulkFitnessFunctionMT implements AHNIEventList
 	}
 	
 	public double _evaluate(Chromosome genotype, Activator substrate, String baseFileName, boolean logText, boolean logImage) {
-		double reward = 0;
 		int solvedCount = 0;
 
 		try {
 			NiceWriter logOutput = !logText ? null : new NiceWriter(new FileWriter(baseFileName + ".txt"), "0.00");
 
-			// Either the substrate input array has length equal to the maximum state count + the maximum action count +
-			// 1,
-			// or the current state count + current action count + 1.
-			int inputActionOffset = stateCount; // Initialise with current state + action count.
-			int inputRewardOffset = stateCount + actionCount;
-			// If using max state count + max action count + 1.
-			if (stateCountMax + actionCountMax + 1 == (substrate.getInputDimension()[0])) {
-				inputActionOffset = stateCountMax;
-				inputRewardOffset = stateCountMax + actionCountMax;
-			}
-			double[] input = new double[substrate.getInputDimension()[0]];
-
 			double[] avgRewardForEachTrial = new double[trialCount];
 			for (Environment env : environments) {
-				if (logText) {
-					logOutput.put("\n\nBEGIN EVALUATION ON ENVIRONMENT " + env.id + "\n");
-					logOutput.put(env).put("\n");
-				}
-				
-				// Reset substrate to initial state to begin learning new environment.
-				substrate.reset();
-				
-				double envReward = 0;
-				double trialReward = 0;
-				int consecutivePerfectTrialCount = 0;
-				for (int trial = 0; trial < trialCount; trial++) {
-					if (logText) {
-						logOutput.put("\n  BEGIN TRIAL " + (trial + 1) + " of " + trialCount + "\n");
-					}
-
-					State currentState = env.states[0];
-					int previousAction = 0;
-					boolean[] stateVisited = new boolean[stateCount];
-					stateVisited[currentState.id] = true;
-					trialReward = 0;
-					double[] output = null;
-					double[] previousOutput = new double[substrate.getOutputDimension()[0]];
-
-					// The network can perform a number of steps equal to the number of states minus the start state.
-					// The challenge is to find a sequence of actions (of which there is at least one) to visit all
-					// the states containing a reward.
-					for (int step = 0; step < stateCount - 1; step++) {
-						// Set up the inputs to the network.
-						Arrays.fill(input, 0);
-						input[currentState.id] = 1; // Current state.
-						input[inputActionOffset + previousAction] = 1; // Previously performed action.
-						if (!stateVisited[currentState.id]) { // The reward from each state can only be counted once.
-							input[inputRewardOffset] = currentState.reward; // Reward from previous action and resultant
-																			// state.
-							trialReward += currentState.reward;
-						}
-
-						stateVisited[currentState.id] = true;
-
-						// Ask the network what it wants to do next, and let it know the reward for the current state.
-						for (int p = 0; p < 4; p++) {
-							output = substrate.next(input);
-							if (ArrayUtil.getMaxValue(output) > 0.5) break;
-						}
-						// The action to perform is the one corresponding to the output with the highest output value.
-						//int action = ArrayUtil.getMaxIndex(output);
-						int action = -1;
-						for (int o = 0; o < output.length; o++) {
-							if (output[o] > 0.5) {
-								action = o;
-								break;
-							}
-						}
-
-						if (logText) {
-							boolean outputChanged = step > 0 && !ArrayUtils.isEquals(output, previousOutput);
-							logOutput.put("    Agent is at " + currentState.id + "\n");
-							logOutput.put("    Input: " + ArrayUtil.toString(input, ", ", nf) + "\n");
-							logOutput.put("    Output: " + ArrayUtil.toString(output, ", ", nf) + (outputChanged ? " [changed]" : "") + "\n");
-							logOutput.put("    Action: " + action + "\n");
-							logOutput.put("    Current reward: " + nf.format(trialReward) + "\n\n");
-							System.arraycopy(output, 0, previousOutput, 0, output.length);
-						}
-
-						// If the maximum reward has been reached, end the trial.
-						if (trialReward > 0.9999) {
-							break;
-						}
-
-						// If an action is specified and a new state is defined for the current state and specified action.
-						if (action != -1 && currentState.actionStateMap[action] != null) {
-							currentState = currentState.actionStateMap[action];
-						}
-					}
-					
-					envReward += trialReward;
-					avgRewardForEachTrial[trial] += trialReward;
-
-					// If environmentMasteredTrialCount perfect trials have been executed then we can probably assume
-					// this environment has been mastered.
-					if (trialReward > 0.9999) {
-						consecutivePerfectTrialCount++;
-						if (consecutivePerfectTrialCount == environmentMasteredTrialCount) {
-							solvedCount++;
-							// Fill in reward values for trials we're skipping.
-							for (int t = trial+1; t < trialCount; t++) {
-								avgRewardForEachTrial[t] += trialReward;
-								envReward += trialReward;
-							}
-							if (logText) {
-								logOutput.put("  ENVIRONMENT MASTERED.\n\n");
-							}
-							break; // breaks out of: for (int trial = 0; trial < trialCount; trial++)
-						}
-					} else {
-						consecutivePerfectTrialCount = 0;
-					}
+				if (evaluateEnvironment(env, substrate, avgRewardForEachTrial, logOutput)) {
+					solvedCount++;
 				}
-				reward += envReward / trialCount;
 			}
 
 			for (int trial = 0; trial < trialCount; trial++) {
@@ -281,8 +171,6 @@ public class RLStateBased extends BulkFitnessFunctionMT implements AHNIEventList
 			}
 			
 			genotype.setPerformanceValue((double) solvedCount / environmentCount);
-			reward /= environmentCount;
-			//return reward;
 			//return genotype.getPerformanceValue() * 0.75 + reward * 0.25;
 			//return genotype.getPerformanceValue();
 			//return avgRewardForEachTrial[trialCount-1]; // Result of final trials.
@@ -294,6 +182,149 @@ public class RLStateBased extends BulkFitnessFunctionMT implements AHNIEventList
 		return 0;
 	}
 
+	/**
+	 * {@inheritDoc} Racing evaluation is performed over environments, each racing trial is an evaluation on one
+	 * environment (comprising the configured number of learning trials).
+	 */
+	@Override
+	public int getRacingTrialCount() {
+		return environmentCount;
+	}
+
+	@Override
+	protected TrialResult evaluateTrial(Chromosome genotype, Activator substrate, int evalThreadIndex, int trial) {
+		double[] rewardForEachTrial = new double[trialCount];
+		try {
+			double solved = evaluateEnvironment(environments[trial], substrate, rewardForEachTrial, null) ? 1 : 0;
+			// Result of final trial and whether the environment was solved, as for _evaluate().
+			return new TrialResult(rewardForEachTrial[trialCount - 1] * 0.5 + solved * 0.5, solved);
+		} catch (IOException e) {
+			// Can't happen as nothing is logged.
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Evaluate the given substrate on the given environment.
+	 * 
+	 * @param rewardForEachTrial The reward obtained in each trial is added to the corresponding element of this array.
+	 * @param logOutput If not null then a description of the evaluation is written to this.
+	 * @return true iff the environment was mastered.
+	 */
+	private boolean evaluateEnvironment(Environment env, Activator substrate, double[] rewardForEachTrial, NiceWriter logOutput) throws IOException {
+		boolean solved = false;
+
+		// Either the substrate input array has length equal to the maximum state count + the maximum action count +
+		// 1,
+		// or the current state count + current action count + 1.
+		int inputActionOffset = stateCount; // Initialise with current state + action count.
+		int inputRewardOffset = stateCount + actionCount;
+		// If using max state count + max action count + 1.
+		if (stateCountMax + actionCountMax + 1 == (substrate.getInputDimension()[0])) {
+			inputActionOffset = stateCountMax;
+			inputRewardOffset = stateCountMax + actionCountMax;
+		}
+		double[] input = new double[substrate.getInputDimension()[0]];
+
+		if (logOutput != null) {
+			logOutput.put("\n\nBEGIN EVALUATION ON ENVIRONMENT " + env.id + "\n");
+			logOutput.put(env).put("\n");
+		}
+		
+		// Reset substrate to initial state to begin learning new environment.
+		substrate.reset();
+		
+		double trialReward = 0;
+		int consecutivePerfectTrialCount = 0;
+		for (int trial = 0; trial < trialCount; trial++) {
+			if (logOutput != null) {
+				logOutput.put("\n  BEGIN TRIAL " + (trial + 1) + " of " + trialCount + "\n");
+			}
+
+			State currentState = env.states[0];
+			int previousAction = 0;
+			boolean[] stateVisited = new boolean[stateCount];
+			stateVisited[currentState.id] = true;
+			trialReward = 0;
+			double[] output = null;
+			double[] previousOutput = new double[substrate.getOutputDimension()[0]];
+
+			// The network can perform a number of steps equal to the number of states minus the start state.
+			// The challenge is to find a sequence of actions (of which there is at least one) to visit all
+			// the states containing a reward.
+			for (int step = 0; step < stateCount - 1; step++) {
+				// Set up the inputs to the network.
+				Arrays.fill(input, 0);
+				input[currentState.id] = 1; // Current state.
+				input[inputActionOffset + previousAction] = 1; // Previously performed action.
+				if (!stateVisited[currentState.id]) { // The reward from each state can only be counted once.
+					input[inputRewardOffset] = currentState.reward; // Reward from previous action and resultant
+																	// state.
+					trialReward += currentState.reward;
+				}
+
+				stateVisited[currentState.id] = true;
+
+				// Ask the network what it wants to do next, and let it know the reward for the current state.
+				for (int p = 0; p < 4; p++) {
+					output = substrate.next(input);
+					if (ArrayUtil.getMaxValue(output) > 0.5) break;
+				}
+				// The action to perform is the one corresponding to the output with the highest output value.
+				//int action = ArrayUtil.getMaxIndex(output);
+				int action = -1;
+				for (int o = 0; o < output.length; o++) {
+					if (output[o] > 0.5) {
+						action = o;
+						break;
+					}
+				}
+
+				if (logOutput != null) {
+					boolean outputChanged = step > 0 && !ArrayUtils.isEquals(output, previousOutput);
+					logOutput.put("    Agent is at " + currentState.id + "\n");
+					logOutput.put("    Input: " + ArrayUtil.toString(input, ", ", nf) + "\n");
+					logOutput.put("    Output: " + ArrayUtil.toString(output, ", ", nf) + (outputChanged ? " [changed]" : "") + "\n");
+					logOutput.put("    Action: " + action + "\n");
+					logOutput.put("    Current reward: " + nf.format(trialReward) + "\n\n");
+					System.arraycopy(output, 0, previousOutput, 0, output.length);
+				}
+
+				// If the maximum reward has been reached, end the trial.
+				if (trialReward > 0.9999) {
+					break;
+				}
+
+				// If an action is specified and a new state is defined for the current state and specified action.
+				if (action != -1 && currentState.actionStateMap[action] != null) {
+					currentState = currentState.actionStateMap[action];
+				}
+			}
+			
+			rewardForEachTrial[trial] += trialReward;
+
+			// If environmentMasteredTrialCount perfect trials have been executed then we can probably assume
+			// this environment has been mastered.
+			if (trialReward > 0.9999) {
+				consecutivePerfectTrialCount++;
+				if (consecutivePerfectTrialCount == environmentMasteredTrialCount) {
+					solved = true;
+					// Fill in reward values for trials we're skipping.
+					for (int t = trial+1; t < trialCount; t++) {
+						rewardForEachTrial[t] += trialReward;
+					}
+					if (logOutput != null) {
+						logOutput.put("  ENVIRONMENT MASTERED.\n\n");
+					}
+					break; // breaks out of: for (int trial = 0; trial < trialCount; trial++)
+				}
+			} else {
+				consecutivePerfectTrialCount = 0;
+			}
+		}
+		return solved;
+	}
+
 	private boolean increaseDifficulty() {
 		boolean increasedDifficulty = false;
 		if (stateCount < props.getIntProperty(STATE_COUNT_MAX)) {
@@ -325,6 +356,9 @@ public class RLStateBased extends BulkFitnessFunctionMT implements AHNIEventList
 				}
 			}
 		}
+		if (increasedDifficulty) {
+			invalidateFitnessCache();
+		}
 		return increasedDifficulty;
 	}
 
@@ -427,6 +461,14 @@ public class RLStateBased extends BulkFitnessFunctionMT implements AHNIEventList
 		}
 	}
 
+	/**
+	 * {@inheritDoc} This implementation returns true iff environments are never replaced.
+	 */
+	@Override
+	public boolean fitnessValuesDeterministic() {
+		return environmentReplaceProb == 0;
+	}
+
 	@Override
 	public int[] getLayerDimensions(int layer, int totalLayerCount) {
 		if (layer == 0) // Input layer.
@@ -211,10 +211,34 @@ public class RLContinuousStateBased extends BulkFitnessFunctionMT implements AHN
 		_evaluate(genotype, substrate, baseFileName, logText, logImage, null, null);
 	}
 	
+	/**
+	 * {@inheritDoc} Racing evaluation is performed over environments, each racing trial is an evaluation on one
+	 * environment (comprising the configured number of learning trials).
+	 */
+	@Override
+	public int getRacingTrialCount() {
+		return environmentCount;
+	}
+
+	@Override
+	protected TrialResult evaluateTrial(Chromosome genotype, Activator substrate, int evalThreadIndex, int trial) {
+		NNAdaptor nn = (NNAdaptor) substrate;
+		if (nn.getInputCount() != environments[0].getOutputSize() || nn.getOutputCount() != environments[0].getInputSize()) {
+			throw new IllegalArgumentException("Substrate input (or output) size does not match number of outputSize (inputSize) environment nodes.");
+		}
+		EnvironmentResult result = new EnvironmentResult();
+		try {
+			evaluateEnvironment(nn, trial, result, new double[trialCount], null, null, null, 0, null, false, null);
+		} catch (IOException e) {
+			// Can't happen as nothing is logged.
+			throw new RuntimeException(e);
+		}
+		// The mean over all environments of these values gives the fitness and performance calculated by _evaluate().
+		return new TrialResult(result.fitness / result.maxFitness, result.performance);
+	}
+	
 	public void _evaluate(Chromosome genotype, Activator substrate, String baseFileName, boolean logText, boolean logImage, double[] fitnessValues, Behaviour[] behaviours) {
 		super.evaluate(genotype, substrate, baseFileName, logText, logImage);
-		double fitness = 0;
-		double performance = 0;
 		ArrayRealVector[][] finalStates = new ArrayRealVector[environmentCount][trialCount];
 		NNAdaptor nn = (NNAdaptor) substrate;
 		
@@ -224,223 +248,25 @@ public class RLContinuousStateBased extends BulkFitnessFunctionMT implements AHN
 
 		try {
 			NiceWriter logOutput = !logText ? null : new NiceWriter(new FileWriter(baseFileName + ".txt"), "0.00");
-			int imageSize = 256;
 
 			double[] avgRewardForEachTrial = new double[trialCount];
-			double learnRating = 0;
 			ArrayRealVector behaviourED = nsEvenDistribution && nsEnvironments == null ? new ArrayRealVector(environmentCount * trialCount * envSize * behaviourEDRecordCount) : null;
 			ArrayRealVector behaviourFS = nsFirstSteps && nsEnvironments == null ? new ArrayRealVector(environmentCount * trialCount * envSize * behaviourFSRecordCount) : null;
 			int behaviourIndex = 0;
-			double maxFitness = 0;
 			boolean logImageTemp = logImage;
+			EnvironmentResult result = new EnvironmentResult();
 			for (int ei = 0; ei < environmentCount; ei++) {
 				int envIndex = ((logText || logImageTemp) && environmentReplaceProb == 0) ? ei : environmentOrder[ei];
-				Environment env = environments[envIndex];
-				if (logText) {
-					logOutput.put("\n\nBEGIN EVALUATION ON ENVIRONMENT " + env.id + "\n");
-					logOutput.put("\tEnvironment description:\n" + env + "\n");
-
-					//NiceWriter logOutputEnv = new NiceWriter(new FileWriter(baseFileName + ".environment-" + env.id + ".txt"), "0.00");
-					//logOutputEnv.put(env);
-					//logOutputEnv.close();
-				}
 				// Don't log more than 20 environments to images.
 				if (ei >= 20) {
 					logImageTemp = false;
 				}
-				if (logImageTemp) {
-					env.logToImage(baseFileName + ".env_ " + envIndex, imageSize);
-				}
-
-				// Reset substrate to initial state to begin learning (new) environment.
-				nn.reset();
-				// Run network for a bit to let it stabilise.
-				//for (int step = 0; step < 5; step++) {
-				//	nn.next();
-				//}
-				
-				double envFitness = 0;
-				int noveltySearchStepsPerRecord = (int) Math.ceil((double) env.getMinimumStepsToSolve() / behaviourEDRecordCount);
-				double previousTrialReward = 0;
-				double previousTrialPerformance = 0;
-				ArrayRealVector state = null;
-				for (int trial = 0; trial < trialCount; trial++) {
-					double trialReward = 0;
-					double[] agentOutput = new double[env.getInputSize()];
-					
-					// Get initial state and environment output.
-					state = env.startState.copy();
-					double[] agentInput = new double[env.getOutputSize()];
-					env.getOutputForState(state, agentInput);
-					
-					BufferedImage image = null;
-					Graphics2D g = null;
-					if (logText) {
-						logOutput.put("\n  BEGIN TRIAL " + (trial + 1) + " of " + trialCount + "\n");
-						logOutput.put("    step, , state, , agent output, , agent input\n");
-					}
-					if (logImageTemp && (env.getOutputSize() == 3 || env.size == 2)) {
-						image = new BufferedImage(imageSize+2, imageSize+2, BufferedImage.TYPE_3BYTE_BGR);
-						g = image.createGraphics();
-						if (env.getOutputSize() == 3) {
-							// Log agent perception in 2D map.
-							g.setColor(Color.LIGHT_GRAY);
-							double[] p = new double[env.getOutputSize()];
-							env.getOutputForState(env.startState, p);
-							g.drawOval((int) Math.round(p[0] * imageSize - 3.5), (int) Math.round(p[1] * imageSize - 3.5), 7, 7);
-							env.getOutputForState(env.goalState, p);
-							g.drawRect((int) Math.round(p[0] * imageSize - 2.5), (int) Math.round(p[1] * imageSize - 2.5), 5, 5);
-						}
-						if (env.size == 2) {
-							// Log environment state in 2D map.
-							env.logToImageForTrial(g, imageSize);
-							g.setColor(Color.WHITE);
-							g.drawOval((int) Math.round(env.startState.getEntry(0) * imageSize - 3.5), (int) Math.round(env.startState.getEntry(1) * imageSize - 3.5), 7, 7);
-							g.drawRect((int) Math.round(env.goalState.getEntry(0) * imageSize - 2.5), (int) Math.round(env.goalState.getEntry(1) * imageSize - 2.5), 5, 5);
-						}
-					}
-					
-					int behaviourIndexED = 0;
-					int behaviourIndexFS = 0;
-					//double previousReward = agentInput[agentInput.length-1];
-					agentInput[agentInput.length-1] = 0;
-					for (int step = 0; step < env.getMinimumStepsToSolve(); step++) {
-						if (logText) {
-							logOutput.put("    " + step + ", , ");
-							for (int i = 0; i < env.size; i++) {
-								logOutput.put(nf.format(state.getEntry(i)) + ", ");
-							}
-							logOutput.put(", ");
-							for (int i = 0; i < env.getInputSize(); i++) {
-								logOutput.put(nf.format(agentOutput[i]) + ", ");
-							}
-							logOutput.put(", ");
-							for (int i = 0; i < env.getOutputSize(); i++) {
-								logOutput.put(nf.format(agentInput[i]) + ", ");
-							}
-							logOutput.put("\n");
-						}	
-						if (logImageTemp) {
-							if (env.getOutputSize() == 3) {
-								g.setColor(Color.LIGHT_GRAY);
-								int x = (int) Math.round(agentInput[0] * imageSize-0.5);
-								int y = (int) Math.round(agentInput[1] * imageSize-0.5);
-								g.drawRect(x, y, 1, 1);
-							}
-							if (env.size == 2) {
-								g.setColor(Color.WHITE);
-								int x = (int) Math.round(state.getEntry(0) * imageSize-0.5);
-								int y = (int) Math.round(state.getEntry(1) * imageSize-0.5);
-								g.drawRect(x, y, 1, 1);
-							}
-						}
-						
-
-						if (nsEvenDistribution && nsEnvironments == null && step > 0 && step % noveltySearchStepsPerRecord == 0) {
-							// Behaviour is concatenation of states at behaviourEDRecordCount times from each trial from each environment.
-							behaviourED.setSubVector(behaviourIndex, state);
-							behaviourIndex += envSize;
-							behaviourIndexED++;
-						}
-						
-						if (nsFirstSteps && nsEnvironments == null && step > 0 && step <= behaviourFSRecordCount) {
-							behaviourFS.setSubVector(behaviourIndexFS, state);
-							behaviourIndexFS += envSize;
-						}
-						
-						// If goal reached.
-						//if (agentInput[env.getOutputSize()-1] >= targetPerformance) {
-						//	break;
-						//}
-						
-						// Ask agent what it wants to do next, given output from environment.
-						// This also provides agent with reinforcement signal in the last element of the array.
-						nn.next(agentInput, agentOutput);
-						
-						// Get updated environment output.
-						double perf = env.updateStateAndOutput(state, agentOutput, agentInput);
-						
-						if (trialCount > 1) {
-							// Set reward signal to binary value, otherwise agent can potentially follow the reward gradient during a trial. 
-							agentInput[agentInput.length-1] = perf > 0.9 ? 1 : 0;
-						}
-						
-						// Set reward signal to delta of reward between steps.
-						//double currentReward = agentInput[agentInput.length-1];
-						//agentInput[agentInput.length-1] = currentReward > previousReward ? 1 : 0;
-						//previousReward = currentReward;
-					}
-
-					// Reward for trial is reward received in last step.
-					trialReward = env.getRewardForState(state);
-					assert Range.checkUnitRange(trialReward, "trialReward");
-					avgRewardForEachTrial[trial] += trialReward;
-					
-					double p = previousTrialPerformance;
-					double c = env.getPerformanceForState(state);
-					learnRating += c < p ? 0 : (c == p ? 1 : 2);
-					previousTrialPerformance = c;
-					
-					// Reward received in initial trials isn't worth as much as for later trials, as agent can't know 
-					// which environment it's in in initial trials (favour agents that find the right behaviour and 
-					// then stick to it)
-					double factor = Math.pow((double) (trial+1.0) / trialCount, 2);
-					maxFitness += factor;
-					fitness += trialReward * factor;
-					
-					// Just grab reference as a new initial state is created from a copy of the start state at start of each trial.
-					finalStates[ei][trial] = state;
-					
-					if (logText) {
-						logOutput.put("    " + env.getMinimumStepsToSolve() + ", , ");
-						for (int i = 0; i < env.size; i++) {
-							logOutput.put(nf.format(state.getEntry(i)) + ", ");
-						}
-						logOutput.put(", ");
-						for (int i = 0; i < env.getInputSize(); i++) {
-							logOutput.put(nf.format(agentOutput[i]) + ", ");
-						}
-						logOutput.put(", ");
-						for (int i = 0; i < env.getOutputSize(); i++) {
-							logOutput.put(nf.format(agentInput[i]) + ", ");
-						}
-						logOutput.put("\n");
-					}	
-					if (logImageTemp && env.size == 2) {
-						if (env.getOutputSize() == 3) {
-							g.setColor(Color.LIGHT_GRAY);
-							int x = (int) Math.round(agentInput[0] * imageSize-0.5);
-							int y = (int) Math.round(agentInput[1] * imageSize-0.5);
-							g.drawRect(x, y, 1, 1);
-						}
-						if (env.size == 2) {
-							g.setColor(Color.WHITE);
-							int x = (int) Math.round(state.getEntry(0) * imageSize-0.5);
-							int y = (int) Math.round(state.getEntry(1) * imageSize-0.5);
-							g.drawRect(x, y, 1, 1);
-						}
-						
-						File outputfile = new File(baseFileName + ".env_ " + envIndex + ".trial_" + trial + ".png");
-						ImageIO.write(image, "png", outputfile);
-					}
-					
-					if (nsEvenDistribution && nsEnvironments == null) {
-						// Fill rest of behaviour vector with final state (if the goal was reached before the maximum 
-						// steps were used then this will ensure the behaviour vector is the right length).
-						for (; behaviourIndexED < behaviourEDRecordCount; behaviourIndexED++) {
-							behaviourED.setSubVector(behaviourIndex, state);
-							behaviourIndex += envSize;
-						}
-					}
-				}
-				
-				// Only show performance for last trial.
-				performance += env.getPerformanceForState(state);
-				
+				behaviourIndex = evaluateEnvironment(nn, envIndex, result, avgRewardForEachTrial, finalStates[ei], behaviourED, behaviourFS, behaviourIndex, logOutput, logImageTemp, baseFileName);
 			} //for (int envIndex = 0; envIndex < environmentCount; envIndex++) {
 			
-			fitness /= maxFitness;
-			performance /= environmentCount;
+			double fitness = result.fitness / result.maxFitness;
+			double learnRating = result.learnRating;
+			double performance = result.performance / environmentCount;
 			genotype.setPerformanceValue(performance);
 			
 			for (int trial = 0; trial < trialCount; trial++) {
@@ -498,6 +324,230 @@ public class RLContinuousStateBased extends BulkFitnessFunctionMT implements AHN
 		}
 	}
 	
+	/**
+	 * Evaluate the given substrate on the environment with the given index over the configured number of trials.
+	 * 
+	 * @param result The fitness, learn rating and performance on the environment are added to this.
+	 * @param rewardForEachTrial The reward obtained in each trial is added to the corresponding element of this array.
+	 * @param finalStates If not null the final state of each trial is recorded in this array.
+	 * @param behaviourIndex The index in behaviourED to record the next state at, if behaviourED is used.
+	 * @param logOutput If not null then a description of the evaluation is written to this.
+	 * @return The index in behaviourED following the last state recorded.
+	 */
+	private int evaluateEnvironment(NNAdaptor nn, int envIndex, EnvironmentResult result, double[] rewardForEachTrial, ArrayRealVector[] finalStates, ArrayRealVector behaviourED, ArrayRealVector behaviourFS, int behaviourIndex, NiceWriter logOutput, boolean logImageTemp, String baseFileName) throws IOException {
+		Environment env = environments[envIndex];
+		boolean logText = logOutput != null;
+		int imageSize = 256;
+		if (logText) {
+			logOutput.put("\n\nBEGIN EVALUATION ON ENVIRONMENT " + env.id + "\n");
+			logOutput.put("\tEnvironment description:\n" + env + "\n");
+
+			//NiceWriter logOutputEnv = new NiceWriter(new FileWriter(baseFileName + ".environment-" + env.id + ".txt"), "0.00");
+			//logOutputEnv.put(env);
+			//logOutputEnv.close();
+		}
+		if (logImageTemp) {
+			env.logToImage(baseFileName + ".env_ " + envIndex, imageSize);
+		}
+
+		// Reset substrate to initial state to begin learning (new) environment.
+		nn.reset();
+		// Run network for a bit to let it stabilise.
+		//for (int step = 0; step < 5; step++) {
+		//	nn.next();
+		//}
+		
+		int noveltySearchStepsPerRecord = (int) Math.ceil((double) env.getMinimumStepsToSolve() / behaviourEDRecordCount);
+		double previousTrialPerformance = 0;
+		ArrayRealVector state = null;
+		for (int trial = 0; trial < trialCount; trial++) {
+			double trialReward = 0;
+			double[] agentOutput = new double[env.getInputSize()];
+			
+			// Get initial state and environment output.
+			state = env.startState.copy();
+			double[] agentInput = new double[env.getOutputSize()];
+			env.getOutputForState(state, agentInput);
+			
+			BufferedImage image = null;
+			Graphics2D g = null;
+			if (logText) {
+				logOutput.put("\n  BEGIN TRIAL " + (trial + 1) + " of " + trialCount + "\n");
+				logOutput.put("    step, , state, , agent output, , agent input\n");
+			}
+			if (logImageTemp && (env.getOutputSize() == 3 || env.size == 2)) {
+				image = new BufferedImage(imageSize+2, imageSize+2, BufferedImage.TYPE_3BYTE_BGR);
+				g = image.createGraphics();
+				if (env.getOutputSize() == 3) {
+					// Log agent perception in 2D map.
+					g.setColor(Color.LIGHT_GRAY);
+					double[] p = new double[env.getOutputSize()];
+					env.getOutputForState(env.startState, p);
+					g.drawOval((int) Math.round(p[0] * imageSize - 3.5), (int) Math.round(p[1] * imageSize - 3.5), 7, 7);
+					env.getOutputForState(env.goalState, p);
+					g.drawRect((int) Math.round(p[0] * imageSize - 2.5), (int) Math.round(p[1] * imageSize - 2.5), 5, 5);
+				}
+				if (env.size == 2) {
+					// Log environment state in 2D map.
+					env.logToImageForTrial(g, imageSize);
+					g.setColor(Color.WHITE);
+					g.drawOval((int) Math.round(env.startState.getEntry(0) * imageSize - 3.5), (int) Math.round(env.startState.getEntry(1) * imageSize - 3.5), 7, 7);
+					g.drawRect((int) Math.round(env.goalState.getEntry(0) * imageSize - 2.5), (int) Math.round(env.goalState.getEntry(1) * imageSize - 2.5), 5, 5);
+				}
+			}
+			
+			int behaviourIndexED = 0;
+			int behaviourIndexFS = 0;
+			//double previousReward = agentInput[agentInput.length-1];
+			agentInput[agentInput.length-1] = 0;
+			for (int step = 0; step < env.getMinimumStepsToSolve(); step++) {
+				if (logText) {
+					logOutput.put("    " + step + ", , ");
+					for (int i = 0; i < env.size; i++) {
+						logOutput.put(nf.format(state.getEntry(i)) + ", ");
+					}
+					logOutput.put(", ");
+					for (int i = 0; i < env.getInputSize(); i++) {
+						logOutput.put(nf.format(agentOutput[i]) + ", ");
+					}
+					logOutput.put(", ");
+					for (int i = 0; i < env.getOutputSize(); i++) {
+						logOutput.put(nf.format(agentInput[i]) + ", ");
+					}
+					logOutput.put("\n");
+				}	
+				if (logImageTemp) {
+					if (env.getOutputSize() == 3) {
+						g.setColor(Color.LIGHT_GRAY);
+						int x = (int) Math.round(agentInput[0] * imageSize-0.5);
+						int y = (int) Math.round(agentInput[1] * imageSize-0.5);
+						g.drawRect(x, y, 1, 1);
+					}
+					if (env.size == 2) {
+						g.setColor(Color.WHITE);
+						int x = (int) Math.round(state.getEntry(0) * imageSize-0.5);
+						int y = (int) Math.round(state.getEntry(1) * imageSize-0.5);
+						g.drawRect(x, y, 1, 1);
+					}
+				}
+				
+
+				if (nsEvenDistribution && nsEnvironments == null && step > 0 && step % noveltySearchStepsPerRecord == 0) {
+					// Behaviour is concatenation of states at behaviourEDRecordCount times from each trial from each environment.
+					behaviourED.setSubVector(behaviourIndex, state);
+					behaviourIndex += envSize;
+					behaviourIndexED++;
+				}
+				
+				if (nsFirstSteps && nsEnvironments == null && step > 0 && step <= behaviourFSRecordCount) {
+					behaviourFS.setSubVector(behaviourIndexFS, state);
+					behaviourIndexFS += envSize;
+				}
+				
+				// If goal reached.
+				//if (agentInput[env.getOutputSize()-1] >= targetPerformance) {
+				//	break;
+				//}
+				
+				// Ask agent what it wants to do next, given output from environment.
+				// This also provides agent with reinforcement signal in the last element of the array.
+				nn.next(agentInput, agentOutput);
+				
+				// Get updated environment output.
+				double perf = env.updateStateAndOutput(state, agentOutput, agentInput);
+				
+				if (trialCount > 1) {
+					// Set reward signal to binary value, otherwise agent can potentially follow the reward gradient during a trial. 
+					agentInput[agentInput.length-1] = perf > 0.9 ? 1 : 0;
+				}
+				
+				// Set reward signal to delta of reward between steps.
+				//double currentReward = agentInput[agentInput.length-1];
+				//agentInput[agentInput.length-1] = currentReward > previousReward ? 1 : 0;
+				//previousReward = currentReward;
+			}
+
+			// Reward for trial is reward received in last step.
+			trialReward = env.getRewardForState(state);
+			assert Range.checkUnitRange(trialReward, "trialReward");
+			rewardForEachTrial[trial] += trialReward;
+			
+			double p = previousTrialPerformance;
+			double c = env.getPerformanceForState(state);
+			result.learnRating += c < p ? 0 : (c == p ? 1 : 2);
+			previousTrialPerformance = c;
+			
+			// Reward received in initial trials isn't worth as much as for later trials, as agent can't know 
+			// which environment it's in in initial trials (favour agents that find the right behaviour and 
+			// then stick to it)
+			double factor = Math.pow((double) (trial+1.0) / trialCount, 2);
+			result.maxFitness += factor;
+			result.fitness += trialReward * factor;
+			
+			// Just grab reference as a new initial state is created from a copy of the start state at start of each trial.
+			if (finalStates != null) {
+				finalStates[trial] = state;
+			}
+			
+			if (logText) {
+				logOutput.put("    " + env.getMinimumStepsToSolve() + ", , ");
+				for (int i = 0; i < env.size; i++) {
+					logOutput.put(nf.format(state.getEntry(i)) + ", ");
+				}
+				logOutput.put(", ");
+				for (int i = 0; i < env.getInputSize(); i++) {
+					logOutput.put(nf.format(agentOutput[i]) + ", ");
+				}
+				logOutput.put(", ");
+				for (int i = 0; i < env.getOutputSize(); i++) {
+					logOutput.put(nf.format(agentInput[i]) + ", ");
+				}
+				logOutput.put("\n");
+			}	
+			if (logImageTemp && env.size == 2) {
+				if (env.getOutputSize() == 3) {
+					g.setColor(Color.LIGHT_GRAY);
+					int x = (int) Math.round(agentInput[0] * imageSize-0.5);
+					int y = (int) Math.round(agentInput[1] * imageSize-0.5);
+					g.drawRect(x, y, 1, 1);
+				}
+				if (env.size == 2) {
+					g.setColor(Color.WHITE);
+					int x = (int) Math.round(state.getEntry(0) * imageSize-0.5);
+					int y = (int) Math.round(state.getEntry(1) * imageSize-0.5);
+					g.drawRect(x, y, 1, 1);
+				}
+				
+				File outputfile = new File(baseFileName + ".env_ " + envIndex + ".trial_" + trial + ".png");
+				ImageIO.write(image, "png", outputfile);
+			}
+			
+			if (nsEvenDistribution && nsEnvironments == null) {
+				// Fill rest of behaviour vector with final state (if the goal was reached before the maximum 
+				// steps were used then this will ensure the behaviour vector is the right length).
+				for (; behaviourIndexED < behaviourEDRecordCount; behaviourIndexED++) {
+					behaviourED.setSubVector(behaviourIndex, state);
+					behaviourIndex += envSize;
+				}
+			}
+		}
+
+		// Only show performance for last trial.
+		result.performance += env.getPerformanceForState(state);
+		return behaviourIndex;
+	}
+	
+	/**
+	 * Accumulates the results of evaluations on environments, see
+	 * {@link RLContinuousStateBased#evaluateEnvironment(NNAdaptor, int, EnvironmentResult, double[], ArrayRealVector[], ArrayRealVector, ArrayRealVector, int, NiceWriter, boolean, String)}.
+	 */
+	private static class EnvironmentResult {
+		double fitness;
+		double maxFitness;
+		double learnRating;
+		double performance;
+	}
+	
 	// Used to determine behaviour when environments used to determine fitness will be replaced over the course of evolution.
 	private void getBehaviourForNovelty(Chromosome genotype, NNAdaptor nn, Behaviour[] behaviours) {
 		//int trialCount = 1;
@@ -619,6 +669,7 @@ public class RLContinuousStateBased extends BulkFitnessFunctionMT implements AHN
 						environments[e].increaseDifficulty();
 						environments[e].setUp(environmentCounter++);
 					}
+					invalidateFitnessCache();
 					logger.info("Increased difficulty.");
 				}
 			}
@@ -670,6 +721,11 @@ public class RLContinuousStateBased extends BulkFitnessFunctionMT implements AHN
 		return environmentReplaceProb == 0;
 	}
 	
+	@Override
+	public boolean fitnessValuesDeterministic() {
+		return environmentReplaceProb == 0;
+	}
+	
 	public int getEnvironmentCount() {
 		return environmentCount;
 	}
@@ -78,6 +78,14 @@ public class DoublePoleBalancing extends BulkFitnessFunctionMT {
 		_poleAngleThreshold = poleAngleThreshold;
 	}
 
+	/**
+	 * {@inheritDoc} This implementation returns true as the simulation always starts from the same state.
+	 */
+	@Override
+	public boolean fitnessValuesDeterministic() {
+		return true;
+	}
+
 	@Override
 	protected void evaluate(Chromosome genotype, Activator substrate, int evalThreadIndex, double[] fitnessValues, Behaviour[] behaviours) {
 		_evaluate(genotype, substrate, null, false, false, fitnessValues, behaviours);
@@ -432,6 +432,11 @@ public class HyperNEATEvolver implements Configurable, GeneticEventListener {
 				m.append("  ZPC: " + genotype.getNumberOfChromosomesWithZeroPerformanceFromLastGen() + "  ZFC: " + genotype.getNumberOfChromosomesWithZeroFitnessFromLastGen() + "  ABSP: " + nf4.format(avgBestSpeciesPerformance));
 				m.append("  S: " + numSpecies + "  NS/ES: " + numNewSpecies + "/" + numExtinctSpecies + "  SCT: " + nf1.format(speciationCompatThreshold) + "  Min/Max SS: " + minSpeciesSize + "/" + maxSpeciesSize + "  Min/Max SA: " + minSpeciesAge + "/" + maxSpeciesAge + "  SNB: " + numSpeciesWithNewPerformance);
 				m.append("  Min/Avg/Max GS: " + minSize + "/" + avgSize + "/" + maxSize);
+				if (bulkFitnessFunc instanceof AHNIFitnessFunction) {
+					String summary = ((AHNIFitnessFunction) bulkFitnessFunc).getLogSummary();
+					if (summary != null)
+						m.append("  " + summary);
+				}
 				m.append("  Time: " + nf3.format(cumulativeDurationBetweenLogging / logPerGenerations) + "s  ETA: " + Misc.formatTimeInterval(eta) + "  Mem: " + memUsed + "MB");
 				
 				logger.info(m);
@@ -16,6 +16,7 @@ import org.apache.log4j.Logger;
 
 import com.anji.integration.Activator;
 import com.anji.integration.TranscriberException;
+import com.ojcoleman.ahni.evaluation.EvaluationBudget;
 import com.ojcoleman.ahni.util.ArrayUtil;
 
 import com.ojcoleman.bain.NeuralNetwork;
@@ -178,6 +179,7 @@ public class BainNN extends NNAdaptor {
 	
 	@Override
 	public void next(double[] stimuli, double[] output) {
+		EvaluationBudget.step(stepsPerStep);
 		if (topology == Topology.FEED_FORWARD_NONLAYERED) {
 			// For non-layered FF networks we have to run the network stepsPerStep times to propagate the
 			// signals all the way through, while making sure the input neurons have the stimuli values
@@ -215,6 +217,7 @@ public class BainNN extends NNAdaptor {
 		// Optmisation for layered FF networks.
 
 		if (topology == Topology.FEED_FORWARD_LAYERED) {
+			EvaluationBudget.step(stimuliCount + stepsPerStep - 1);
 			for (int stimuliIndex = 0, responseIndex = 1 - stepsPerStep; stimuliIndex < stimuliCount + stepsPerStep - 1; stimuliIndex++, responseIndex++) {
 				if (stimuliIndex < stimuliCount) {
 					System.arraycopy(stimuli[stimuliIndex], 0, nnOutputs, 0, stimuli[stimuliIndex].length);
@@ -259,6 +262,7 @@ public class BainNN extends NNAdaptor {
 		
 		// Optmisation for layered FF networks.
 		if (topology == Topology.FEED_FORWARD_LAYERED) {
+			EvaluationBudget.step(stimuliCount + stepsPerStep - 1);
 			for (int stimuliIndex = 0, responseIndex = 1 - stepsPerStep; stimuliIndex < stimuliCount + stepsPerStep - 1; stimuliIndex++, responseIndex++) {
 				if (stimuliIndex < stimuliCount) {
 					double[] input = ArrayUtil.pack(stimuli[stimuliIndex]);
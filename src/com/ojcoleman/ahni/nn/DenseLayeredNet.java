@@ -0,0 +1,485 @@
+package com.ojcoleman.ahni.nn;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import com.anji.integration.Activator;
+import com.anji.nn.activationfunction.ActivationFunction;
+import com.ojcoleman.ahni.evaluation.EvaluationBudget;
+import com.ojcoleman.ahni.nn.BainNN.Topology;
+
+/**
+ * <p>
+ * A fully connected layered feed-forward neural network implemented in plain Java, as an alternative to {@link BainNN}
+ * for layered feed-forward substrates. The connections from each layer to the next are stored as a dense weight matrix
+ * (absent connections have a weight of zero). Each neuron has a bias and all neurons use the same
+ * {@link ActivationFunction}.
+ * </p>
+ * <p>
+ * The input vectors given to {@link #nextSequence(double[][])} are activated together: the activation values for each
+ * layer are computed for all of the input vectors as a single matrix-matrix product of the activation values of the
+ * previous layer and the weight matrix, using a blocked kernel so that a block of the weight matrix is reused for many
+ * input vectors while it is in cache. If an {@link ExecutorService} is given then the neurons of each layer are
+ * divided amongst the given number of threads when there is enough work to make this worthwhile.
+ * </p>
+ * <p>
+ * The neurons are ordered as for Bain networks, by layer. The connections to each neuron are summed in order of the
+ * source neuron index, then the bias is added, so if the neuron model of a Bain network is equivalent to the
+ * activation function (for example the default SigmoidNeuronCollection and the "sigmoid" function) then this network
+ * produces the same output as the Bain network.
+ * </p>
+ */
+public class DenseLayeredNet extends NNAdaptor {
+	/**
+	 * base XML tag
+	 */
+	public final static String XML_TAG = "dense layered network";
+
+	/**
+	 * The number of source neurons in a block of the weight matrix.
+	 */
+	private static final int BLOCK_SOURCES = 256;
+	/**
+	 * The number of target neurons in a block of the weight matrix.
+	 */
+	private static final int BLOCK_TARGETS = 16;
+	/**
+	 * The minimum number of multiply-adds for a layer to be divided amongst multiple threads.
+	 */
+	private static final long MIN_PARALLEL_WORK = 1 << 18;
+
+	private final ActivationFunction activationFunction;
+	private String name;
+	private final int[] inputDimensions;
+	private final int[] outputDimensions;
+	private final int depth;
+	private final int[] layerSize;
+	private final int neuronCount, synapseCount;
+
+	/**
+	 * The weight matrix for the connections to each layer from the previous layer, in row-major order with a row for
+	 * each target neuron (so the weight from source neuron s to target neuron t is at [t * sourceLayerSize + s]). The
+	 * element for the input layer is null.
+	 */
+	private final double[][] weights;
+	/**
+	 * The bias of each neuron in each layer. The element for the input layer is null.
+	 */
+	private final double[][] bias;
+
+	/**
+	 * The activation values of each layer for each input vector in the current batch, in row-major order with a row
+	 * for each input vector.
+	 */
+	private final double[][] activation;
+	/**
+	 * The number of input vectors the activation arrays can hold.
+	 */
+	private int capacity;
+
+	private final ExecutorService executor;
+	private final int threads;
+
+	private double sumOfSquaredConnectionLengths;
+
+	/**
+	 * Create a new DenseLayeredNet.
+	 *
+	 * @param inputDimensions The size of each dimension in the input, see {@link Activator#getInputDimension()}.
+	 * @param outputDimensions The size of each dimension in the output, see {@link Activator#getOutputDimension()}.
+	 * @param layerSize The number of neurons in each layer, including the input and output layers.
+	 * @param weights The weight matrix for the connections to each layer from the previous layer, in row-major order
+	 *            with a row for each target neuron. The element for the input layer is ignored.
+	 * @param bias The bias of each neuron in each layer. The element for the input layer is ignored.
+	 * @param function The activation function for all neurons.
+	 * @param executor If not null, the executor used to divide the activation of large layers amongst threads.
+	 * @param threads The number of threads to divide the activation of large layers amongst.
+	 * @param name A name for this network.
+	 */
+	public DenseLayeredNet(int[] inputDimensions, int[] outputDimensions, int[] layerSize, double[][] weights, double[][] bias, ActivationFunction function, ExecutorService executor, int threads, String name) {
+		this.inputDimensions = inputDimensions;
+		this.outputDimensions = outputDimensions;
+		this.layerSize = layerSize;
+		this.weights = weights;
+		this.bias = bias;
+		this.activationFunction = function;
+		this.executor = executor;
+		this.threads = executor == null ? 1 : Math.max(1, threads);
+		this.name = name;
+		depth = layerSize.length;
+
+		int neurons = 0;
+		for (int l = 0; l < depth; l++) {
+			neurons += layerSize[l];
+		}
+		neuronCount = neurons;
+		int synapses = 0;
+		for (int l = 1; l < depth; l++) {
+			if (weights[l].length != layerSize[l] * layerSize[l - 1]) {
+				throw new IllegalArgumentException("The weight matrix for layer " + l + " has " + weights[l].length + " elements but should have " + (layerSize[l] * layerSize[l - 1]) + ".");
+			}
+			for (int i = 0; i < weights[l].length; i++) {
+				if (weights[l][i] != 0) {
+					synapses++;
+				}
+			}
+		}
+		synapseCount = synapses;
+
+		activation = new double[depth][];
+		ensureCapacity(1);
+	}
+
+	/**
+	 * Make sure the activation arrays can hold the given number of input vectors.
+	 */
+	private void ensureCapacity(int count) {
+		if (count > capacity) {
+			capacity = Math.max(count, capacity * 2);
+			for (int l = 0; l < depth; l++) {
+				activation[l] = new double[capacity * layerSize[l]];
+			}
+		}
+	}
+
+	/**
+	 * Compute the activation values of all non-input layers for the given number of input vectors, which must already
+	 * be in the activation array for the input layer.
+	 */
+	private void activate(final int count) {
+		for (int layer = 1; layer < depth; layer++) {
+			final int l = layer;
+			int targets = layerSize[l];
+			long work = (long) count * targets * layerSize[l - 1];
+			int parts = work < MIN_PARALLEL_WORK ? 1 : Math.min(threads, targets);
+			if (parts <= 1) {
+				activateLayer(l, count, 0, targets);
+				continue;
+			}
+			// Divide the target neurons amongst the threads, each thread computes the activation values of its
+			// neurons for all input vectors.
+			List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(parts);
+			for (int p = 0; p < parts; p++) {
+				final int from = (int) ((long) targets * p / parts);
+				final int to = (int) ((long) targets * (p + 1) / parts);
+				tasks.add(new Callable<Object>() {
+					@Override
+					public Object call() {
+						activateLayer(l, count, from, to);
+						return null;
+					}
+				});
+			}
+			try {
+				for (Future<Object> result : executor.invokeAll(tasks)) {
+					result.get();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("Interrupted while activating network.", e);
+			} catch (ExecutionException e) {
+				throw new RuntimeException("Error activating network.", e.getCause());
+			}
+		}
+	}
+
+	/**
+	 * Compute the activation values of the target neurons with indices in the range [fromTarget, toTarget) in the
+	 * given layer for the given number of input vectors.
+	 */
+	private void activateLayer(int l, int count, int fromTarget, int toTarget) {
+		int targets = layerSize[l];
+		double[] out = activation[l];
+		multiply(activation[l - 1], weights[l], out, count, layerSize[l - 1], targets, fromTarget, toTarget);
+		double[] b = bias[l];
+		for (int v = 0, row = 0; v < count; v++, row += targets) {
+			for (int t = fromTarget; t < toTarget; t++) {
+				out[row + t] += b[t];
+			}
+			activationFunction.apply(out, out, row + fromTarget, row + toTarget);
+		}
+	}
+
+	/**
+	 * Compute the product of the matrix <code>a</code>, which has a row for each of <code>count</code> input vectors
+	 * and a column for each of <code>sources</code> source neurons, and the transpose of the weight matrix
+	 * <code>w</code>, which has a row for each of <code>targets</code> target neurons, for the target neurons with
+	 * indices in the range [fromTarget, toTarget). The result is written to the corresponding elements of
+	 * <code>c</code>, which has a row for each input vector. Each element of the result is summed in order of the
+	 * source neuron index.
+	 */
+	private static void multiply(double[] a, double[] w, double[] c, int count, int sources, int targets, int fromTarget, int toTarget) {
+		for (int s0 = 0; s0 < sources; s0 += BLOCK_SOURCES) {
+			int s1 = Math.min(sources, s0 + BLOCK_SOURCES);
+			boolean first = s0 == 0;
+			for (int t0 = fromTarget; t0 < toTarget; t0 += BLOCK_TARGETS) {
+				int t1 = Math.min(toTarget, t0 + BLOCK_TARGETS);
+				// The block of the weight matrix for [t0, t1) x [s0, s1) is reused for every input vector.
+				for (int v = 0, aRow = 0, cRow = 0; v < count; v++, aRow += sources, cRow += targets) {
+					int t = t0;
+					for (; t + 3 < t1; t += 4) {
+						int w0 = t * sources, w1 = w0 + sources, w2 = w1 + sources, w3 = w2 + sources;
+						double sum0 = first ? 0 : c[cRow + t];
+						double sum1 = first ? 0 : c[cRow + t + 1];
+						double sum2 = first ? 0 : c[cRow + t + 2];
+						double sum3 = first ? 0 : c[cRow + t + 3];
+						for (int s = s0; s < s1; s++) {
+							double x = a[aRow + s];
+							sum0 += x * w[w0 + s];
+							sum1 += x * w[w1 + s];
+							sum2 += x * w[w2 + s];
+							sum3 += x * w[w3 + s];
+						}
+						c[cRow + t] = sum0;
+						c[cRow + t + 1] = sum1;
+						c[cRow + t + 2] = sum2;
+						c[cRow + t + 3] = sum3;
+					}
+					for (; t < t1; t++) {
+						int w0 = t * sources;
+						double sum = first ? 0 : c[cRow + t];
+						for (int s = s0; s < s1; s++) {
+							sum += a[aRow + s] * w[w0 + s];
+						}
+						c[cRow + t] = sum;
+					}
+				}
+			}
+		}
+	}
+
+	@Override
+	public Object next() {
+		return next((double[]) null);
+	}
+
+	@Override
+	public double[] next(double[] stimuli) {
+		double[] outputs = new double[layerSize[depth - 1]];
+		next(stimuli, outputs);
+		return outputs;
+	}
+
+	@Override
+	public void next(double[] stimuli, double[] output) {
+		EvaluationBudget.step(1);
+		if (stimuli != null) {
+			System.arraycopy(stimuli, 0, activation[0], 0, stimuli.length);
+		}
+		activate(1);
+		System.arraycopy(activation[depth - 1], 0, output, 0, layerSize[depth - 1]);
+	}
+
+	@Override
+	public double[][] nextSequence(double[][] stimuli) {
+		double[][] result = new double[stimuli.length][layerSize[depth - 1]];
+		nextSequence(stimuli, result);
+		return result;
+	}
+
+	@Override
+	public void nextSequence(double[][] stimuli, double[][] result) {
+		int count = stimuli.length;
+		if (count == 0) {
+			return;
+		}
+		EvaluationBudget.step(count);
+		ensureCapacity(count);
+		int inputSize = layerSize[0], outputSize = layerSize[depth - 1];
+		double[] in = activation[0];
+		for (int s = 0; s < count; s++) {
+			System.arraycopy(stimuli[s], 0, in, s * inputSize, inputSize);
+		}
+		activate(count);
+		double[] out = activation[depth - 1];
+		for (int s = 0; s < count; s++) {
+			System.arraycopy(out, s * outputSize, result[s], 0, outputSize);
+		}
+	}
+
+	@Override
+	public double[][] next(double[][] stimuli) {
+		double[][] output = new double[outputDimensions[1]][outputDimensions[0]];
+		next(stimuli, output);
+		return output;
+	}
+
+	@Override
+	public void next(double[][] stimuli, double[][] output) {
+		nextSequence(new double[][][] { stimuli }, new double[][][] { output });
+	}
+
+	@Override
+	public double[][][] nextSequence(double[][][] stimuli) {
+		double[][][] result = new double[stimuli.length][outputDimensions[1]][outputDimensions[0]];
+		nextSequence(stimuli, result);
+		return result;
+	}
+
+	@Override
+	public void nextSequence(double[][][] stimuli, double[][][] result) {
+		int count = stimuli.length;
+		if (count == 0) {
+			return;
+		}
+		EvaluationBudget.step(count);
+		ensureCapacity(count);
+		int inputSize = layerSize[0], outputSize = layerSize[depth - 1];
+		double[] in = activation[0];
+		for (int s = 0; s < count; s++) {
+			int i = s * inputSize;
+			for (int y = 0; y < stimuli[s].length; y++) {
+				System.arraycopy(stimuli[s][y], 0, in, i, stimuli[s][y].length);
+				i += stimuli[s][y].length;
+			}
+		}
+		activate(count);
+		double[] out = activation[depth - 1];
+		for (int s = 0; s < count; s++) {
+			int i = s * outputSize;
+			for (int y = 0; y < result[s].length; y++) {
+				System.arraycopy(out, i, result[s][y], 0, result[s][y].length);
+				i += result[s][y].length;
+			}
+		}
+	}
+
+	@Override
+	public void reset() {
+		// Feed-forward networks have no state between input vectors.
+	}
+
+	public Topology getTopology() {
+		return Topology.FEED_FORWARD_LAYERED;
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String newName) {
+		name = newName;
+	}
+
+	@Override
+	public double getMinResponse() {
+		return activationFunction.getMinValue();
+	}
+
+	@Override
+	public double getMaxResponse() {
+		return activationFunction.getMaxValue();
+	}
+
+	@Override
+	public int[] getInputDimension() {
+		return inputDimensions;
+	}
+
+	@Override
+	public int[] getOutputDimension() {
+		return outputDimensions;
+	}
+
+	@Override
+	public int getInputCount() {
+		return layerSize[0];
+	}
+
+	@Override
+	public int getOutputCount() {
+		return layerSize[depth - 1];
+	}
+
+	@Override
+	public int getNeuronCount() {
+		return neuronCount;
+	}
+
+	/**
+	 * @return The number of synapses in this network with a non-zero weight.
+	 */
+	public int getSynapseCount() {
+		return synapseCount;
+	}
+
+	@Override
+	public String toXml() {
+		StringBuffer result = new StringBuffer();
+		result.append("<").append(XML_TAG).append(">\n");
+		result.append("<title>").append(getName()).append("</title>\n");
+		result.append("</").append(XML_TAG).append(">\n");
+		return result.toString();
+	}
+
+	@Override
+	public String getXmld() {
+		return name;
+	}
+
+	@Override
+	public String getXmlRootTag() {
+		return "network";
+	}
+
+	/**
+	 * Returns a string describing this network and its connectivity. Neurons are given by their index, as for Bain
+	 * networks, and only synapses with a non-zero weight are included.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder out = new StringBuilder(125 + neuronCount * 10 + synapseCount * 20);
+		out.append("Activation function: " + activationFunction);
+		out.append("\nNeuron count: " + neuronCount);
+		out.append("\nSynapse count: " + synapseCount);
+		out.append("\nTopology type: " + Topology.FEED_FORWARD_LAYERED);
+		out.append("\nNeurons:\n\tbias");
+		for (int l = 0; l < depth; l++) {
+			for (int n = 0; n < layerSize[l]; n++) {
+				out.append("\n\t" + (l == 0 ? 0 : bias[l][n]));
+			}
+		}
+		out.append("\nSynapses:\n\tpre > post\tweight");
+		for (int l = 1, first = layerSize[0], firstSource = 0; l < depth; firstSource = first, first += layerSize[l], l++) {
+			int sources = layerSize[l - 1];
+			for (int t = 0; t < layerSize[l]; t++) {
+				for (int s = 0; s < sources; s++) {
+					double w = weights[l][t * sources + s];
+					if (w != 0) {
+						out.append("\n\t" + (firstSource + s) + " > " + (first + t) + "\t" + w);
+					}
+				}
+			}
+		}
+		out.append("\n");
+		return out.toString();
+	}
+
+	@Override
+	public void dispose() {
+	}
+
+	@Override
+	public boolean isRecurrent() {
+		return false;
+	}
+
+	/**
+	 * @return the sum of the squared lengths of all connections.
+	 */
+	public double getSumOfSquaredConnectionLengths() {
+		return sumOfSquaredConnectionLengths;
+	}
+
+	/**
+	 * @param sumOfSquaredConnectionLengths the sum of the squared lengths of all connections.
+	 */
+	public void setSumOfSquaredConnectionLengths(double sumOfSquaredConnectionLengths) {
+		this.sumOfSquaredConnectionLengths = sumOfSquaredConnectionLengths;
+	}
+}
@@ -21,6 +21,7 @@ import java.awt.Graphics2D;
 import com.anji.integration.Activator;
 import com.anji.nn.activationfunction.ActivationFunction;
 import com.anji.nn.activationfunction.ActivationFunctionFactory;
+import com.ojcoleman.ahni.evaluation.EvaluationBudget;
 import com.ojcoleman.ahni.nn.BainNN.Topology;
 
 public class GridNet implements Activator {
@@ -389,6 +390,7 @@ public class GridNet implements Activator {
 		// activationNew to the same input layer array
 		activationNew[0] = activation[0];
 
+		EvaluationBudget.step(cyclesPerStep);
 		for (int cycle = 0; cycle < cyclesPerStep; cycle++) {
 			// for each target neuron
 			for (int tz = 1; tz < depth; tz++) { // first layer is input layer, don't update it
@@ -442,6 +444,7 @@ public class GridNet implements Activator {
 	 * activating each layer once in sequence (connections can only exist from layer n to layer n+1).
 	 */
 	public void stepFF() {
+		EvaluationBudget.step(1);
 		// for each target layer
 		for (int tz = 1, sz = 0; tz < depth; tz++, sz++) { // first layer is input layer, don't update it
 			for (int ty = 0; ty < height[tz]; ty++) {
@@ -465,12 +468,14 @@ public class GridNet implements Activator {
 							sum += activation[sz][sy][sx] * w[wy][wx];
 						}
 					}
-					activation[tz][ty][tx] = activationFunction.apply(sum);
+					activation[tz][ty][tx] = sum;
 
 					// System.out.println();
 
 					// System.out.print("\t" + activation[tz][ty][tx]);
 				}
+				// Neurons in a row don't depend on each other so apply the activation function to the row together.
+				activationFunction.apply(activation[tz][ty], activation[tz][ty], 0, width[tz]);
 				// System.out.println();
 			}
 			// System.out.println();
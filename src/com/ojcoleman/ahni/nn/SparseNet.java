@@ -0,0 +1,409 @@
+package com.ojcoleman.ahni.nn;
+
+import java.util.Arrays;
+
+import org.apache.log4j.Logger;
+
+import com.anji.integration.Activator;
+import com.anji.nn.activationfunction.ActivationFunction;
+import com.ojcoleman.ahni.evaluation.EvaluationBudget;
+import com.ojcoleman.ahni.nn.BainNN.Topology;
+import com.ojcoleman.ahni.util.ArrayUtil;
+
+/**
+ * <p>
+ * A sparse neural network implemented in plain Java, as an alternative to {@link BainNN} for CPU-only runs. The
+ * connections are stored in compressed sparse row (CSR) format: the synapses to each neuron are stored contiguously,
+ * with a row pointer array giving the index of the first synapse to each neuron and a column index array giving the
+ * source neuron of each synapse. Each neuron has a bias and all neurons use the same {@link ActivationFunction}.
+ * </p>
+ * <p>
+ * The neurons are ordered as for Bain networks: input neurons first, then hidden neurons, then output neurons. For
+ * feed-forward networks the neurons are activated once each, in topological order, for each input vector. For
+ * recurrent networks each activation cycle computes the net input of every neuron from the activation values from the
+ * previous cycle before any activation values are updated, as for a Bain rate-based network (so, as in Bain, the
+ * input neurons are also updated each cycle). If the neuron model of a Bain network is equivalent to the activation
+ * function (for example the default SigmoidNeuronCollection and the "sigmoid" function) then this network produces
+ * the same output as the Bain network.
+ * </p>
+ */
+public class SparseNet extends NNAdaptor {
+	private final static Logger logger = Logger.getLogger(SparseNet.class);
+
+	/**
+	 * base XML tag
+	 */
+	public final static String XML_TAG = "sparse network";
+
+	private final ActivationFunction activationFunction;
+	private Topology topology;
+	private final int cyclesPerStep;
+	private String name;
+	private final int[] inputDimensions;
+	private final int[] outputDimensions;
+	private final int inputSize, outputIndex, outputSize;
+	private final int neuronCount, synapseCount;
+
+	/**
+	 * The index of the first synapse to each neuron, the last element is the number of synapses.
+	 */
+	private final int[] rowStart;
+	/**
+	 * The source neuron of each synapse.
+	 */
+	private final int[] source;
+	private final double[] weight;
+	private final double[] bias;
+	/**
+	 * For feed-forward networks, the non-input neurons in the order they should be activated.
+	 */
+	private int[] order;
+
+	private final double[] activation;
+	private final double[] netInput;
+
+	private double sumOfSquaredConnectionLengths;
+
+	/**
+	 * Create a new SparseNet. The synapses may be given in any order.
+	 *
+	 * @param inputDimensions The size of each dimension in the input, see {@link Activator#getInputDimension()}.
+	 * @param outputDimensions The size of each dimension in the output, see {@link Activator#getOutputDimension()}.
+	 * @param bias The bias of each neuron, the length of this array determines the number of neurons.
+	 * @param pre The source neuron of each synapse.
+	 * @param post The target neuron of each synapse.
+	 * @param weights The weight of each synapse.
+	 * @param synapseCount The number of synapses, the synapse arrays may be longer than this.
+	 * @param function The activation function for all neurons.
+	 * @param topology Specifies the network topology. If the topology is feed-forward (layered or not) but the
+	 *            network contains cycles then the topology is changed to {@link BainNN.Topology#RECURRENT}.
+	 * @param cyclesPerStep For recurrent networks, the number of activation cycles to perform for each input vector.
+	 * @param name A name for this network.
+	 */
+	public SparseNet(int[] inputDimensions, int[] outputDimensions, double[] bias, int[] pre, int[] post, double[] weights, int synapseCount, ActivationFunction function, Topology topology, int cyclesPerStep, String name) {
+		this.inputDimensions = inputDimensions;
+		this.outputDimensions = outputDimensions;
+		this.bias = bias;
+		this.synapseCount = synapseCount;
+		this.activationFunction = function;
+		this.topology = topology;
+		this.cyclesPerStep = cyclesPerStep;
+		this.name = name;
+		neuronCount = bias.length;
+
+		int size = 1;
+		for (int i = 0; i < inputDimensions.length; i++) {
+			size *= inputDimensions[i];
+		}
+		inputSize = size;
+		size = 1;
+		for (int i = 0; i < outputDimensions.length; i++) {
+			size *= outputDimensions[i];
+		}
+		outputSize = size;
+		outputIndex = neuronCount - outputSize;
+
+		// Sort the synapses by target neuron (a counting sort, so the order of the synapses to each neuron is kept).
+		rowStart = new int[neuronCount + 1];
+		for (int s = 0; s < synapseCount; s++) {
+			rowStart[post[s] + 1]++;
+		}
+		for (int n = 0; n < neuronCount; n++) {
+			rowStart[n + 1] += rowStart[n];
+		}
+		source = new int[synapseCount];
+		weight = new double[synapseCount];
+		int[] next = Arrays.copyOf(rowStart, neuronCount);
+		for (int s = 0; s < synapseCount; s++) {
+			int i = next[post[s]]++;
+			source[i] = pre[s];
+			weight[i] = weights[s];
+		}
+
+		activation = new double[neuronCount];
+		netInput = new double[neuronCount];
+
+		if (topology != Topology.RECURRENT) {
+			order = getActivationOrder();
+			if (order == null) {
+				logger.debug("Feed forward sparse network contains cycles, switching to recurrent topology mode with " + cyclesPerStep + " activation cycles per step.");
+				this.topology = Topology.RECURRENT;
+			}
+		}
+	}
+
+	/**
+	 * Determine a topological order for the non-input neurons (the input neurons are always set to the input values).
+	 *
+	 * @return The order, or null if the network contains a cycle.
+	 */
+	private int[] getActivationOrder() {
+		// The number of synapses to each neuron from non-input neurons that have not been activated yet.
+		int[] waiting = new int[neuronCount];
+		// The targets of the synapses from each non-input neuron, in CSR format.
+		int[] outStart = new int[neuronCount + 1];
+		for (int n = inputSize; n < neuronCount; n++) {
+			for (int i = rowStart[n]; i < rowStart[n + 1]; i++) {
+				if (source[i] >= inputSize) {
+					waiting[n]++;
+					outStart[source[i] + 1]++;
+				}
+			}
+		}
+		for (int n = 0; n < neuronCount; n++) {
+			outStart[n + 1] += outStart[n];
+		}
+		int[] target = new int[outStart[neuronCount]];
+		int[] next = Arrays.copyOf(outStart, neuronCount);
+		for (int n = inputSize; n < neuronCount; n++) {
+			for (int i = rowStart[n]; i < rowStart[n + 1]; i++) {
+				if (source[i] >= inputSize) {
+					target[next[source[i]]++] = n;
+				}
+			}
+		}
+
+		// The order array doubles as the queue of neurons ready to be activated.
+		int[] order = new int[neuronCount - inputSize];
+		int head = 0, tail = 0;
+		for (int n = inputSize; n < neuronCount; n++) {
+			if (waiting[n] == 0) {
+				order[tail++] = n;
+			}
+		}
+		while (head < tail) {
+			int n = order[head++];
+			for (int i = outStart[n]; i < outStart[n + 1]; i++) {
+				if (--waiting[target[i]] == 0) {
+					order[tail++] = target[i];
+				}
+			}
+		}
+		return tail == order.length ? order : null;
+	}
+
+	/**
+	 * Activate each non-input neuron once, in topological order.
+	 */
+	private void stepFF() {
+		for (int k = 0; k < order.length; k++) {
+			int n = order[k];
+			double sum = 0;
+			for (int i = rowStart[n], end = rowStart[n + 1]; i < end; i++) {
+				sum += activation[source[i]] * weight[i];
+			}
+			activation[n] = activationFunction.apply(sum + bias[n]);
+		}
+	}
+
+	/**
+	 * Perform one activation cycle: compute the net input of all neurons from the current activation values, then
+	 * update the activation values.
+	 */
+	private void stepRecurrent() {
+		for (int n = 0; n < neuronCount; n++) {
+			double sum = 0;
+			for (int i = rowStart[n], end = rowStart[n + 1]; i < end; i++) {
+				sum += activation[source[i]] * weight[i];
+			}
+			netInput[n] = sum + bias[n];
+		}
+		activationFunction.apply(netInput, activation, 0, neuronCount);
+	}
+
+	@Override
+	public Object next() {
+		return next((double[]) null);
+	}
+
+	@Override
+	public double[] next(double[] stimuli) {
+		double[] outputs = new double[outputSize];
+		next(stimuli, outputs);
+		return outputs;
+	}
+
+	@Override
+	public void next(double[] stimuli, double[] output) {
+		if (stimuli != null) {
+			System.arraycopy(stimuli, 0, activation, 0, stimuli.length);
+		}
+		if (topology == Topology.RECURRENT) {
+			EvaluationBudget.step(cyclesPerStep);
+			for (int c = 0; c < cyclesPerStep; c++) {
+				stepRecurrent();
+			}
+		} else {
+			EvaluationBudget.step(1);
+			stepFF();
+		}
+		System.arraycopy(activation, outputIndex, output, 0, outputSize);
+	}
+
+	@Override
+	public double[][] nextSequence(double[][] stimuli) {
+		double[][] result = new double[stimuli.length][outputSize];
+		nextSequence(stimuli, result);
+		return result;
+	}
+
+	@Override
+	public void nextSequence(double[][] stimuli, double[][] result) {
+		for (int s = 0; s < stimuli.length; s++) {
+			next(stimuli[s], result[s]);
+		}
+	}
+
+	@Override
+	public double[][] next(double[][] stimuli) {
+		double[][] output = new double[outputDimensions[1]][outputDimensions[0]];
+		next(stimuli, output);
+		return output;
+	}
+
+	@Override
+	public void next(double[][] stimuli, double[][] output) {
+		ArrayUtil.unpack(next(ArrayUtil.pack(stimuli)), output, 0);
+	}
+
+	@Override
+	public double[][][] nextSequence(double[][][] stimuli) {
+		double[][][] result = new double[stimuli.length][outputDimensions[1]][outputDimensions[0]];
+		nextSequence(stimuli, result);
+		return result;
+	}
+
+	@Override
+	public void nextSequence(double[][][] stimuli, double[][][] result) {
+		for (int s = 0; s < stimuli.length; s++) {
+			next(stimuli[s], result[s]);
+		}
+	}
+
+	@Override
+	public void reset() {
+		Arrays.fill(activation, 0);
+	}
+
+	public Topology getTopology() {
+		return topology;
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String newName) {
+		name = newName;
+	}
+
+	@Override
+	public double getMinResponse() {
+		return activationFunction.getMinValue();
+	}
+
+	@Override
+	public double getMaxResponse() {
+		return activationFunction.getMaxValue();
+	}
+
+	@Override
+	public int[] getInputDimension() {
+		return inputDimensions;
+	}
+
+	@Override
+	public int[] getOutputDimension() {
+		return outputDimensions;
+	}
+
+	@Override
+	public int getInputCount() {
+		return inputSize;
+	}
+
+	@Override
+	public int getOutputCount() {
+		return outputSize;
+	}
+
+	@Override
+	public int getNeuronCount() {
+		return neuronCount;
+	}
+
+	/**
+	 * @return The number of synapses in this network.
+	 */
+	public int getSynapseCount() {
+		return synapseCount;
+	}
+
+	@Override
+	public String toXml() {
+		StringBuffer result = new StringBuffer();
+		result.append("<").append(XML_TAG).append(">\n");
+		result.append("<title>").append(getName()).append("</title>\n");
+		result.append("</").append(XML_TAG).append(">\n");
+		return result.toString();
+	}
+
+	@Override
+	public String getXmld() {
+		return name;
+	}
+
+	@Override
+	public String getXmlRootTag() {
+		return "network";
+	}
+
+	/**
+	 * Returns a string describing this network and its connectivity.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder out = new StringBuilder(125 + neuronCount * 10 + synapseCount * 20);
+		out.append("Activation function: " + activationFunction);
+		out.append("\nNeuron count: " + neuronCount);
+		out.append("\nSynapse count: " + synapseCount);
+		out.append("\nTopology type: " + topology);
+		out.append("\nCycles per step: " + (topology == Topology.RECURRENT ? cyclesPerStep : 1));
+		out.append("\nNeurons:\n\tbias");
+		for (int n = 0; n < neuronCount; n++) {
+			out.append("\n\t" + bias[n]);
+		}
+		out.append("\nSynapses:\n\tpre > post\tweight");
+		for (int n = 0; n < neuronCount; n++) {
+			for (int i = rowStart[n]; i < rowStart[n + 1]; i++) {
+				out.append("\n\t" + source[i] + " > " + n + "\t" + weight[i]);
+			}
+		}
+		out.append("\n");
+		return out.toString();
+	}
+
+	@Override
+	public void dispose() {
+	}
+
+	@Override
+	public boolean isRecurrent() {
+		return topology == Topology.RECURRENT;
+	}
+
+	/**
+	 * @return the sum of the squared lengths of all connections.
+	 */
+	public double getSumOfSquaredConnectionLengths() {
+		return sumOfSquaredConnectionLengths;
+	}
+
+	/**
+	 * @param sumOfSquaredConnectionLengths the sum of the squared lengths of all connections.
+	 */
+	public void setSumOfSquaredConnectionLengths(double sumOfSquaredConnectionLengths) {
+		this.sumOfSquaredConnectionLengths = sumOfSquaredConnectionLengths;
+	}
+}
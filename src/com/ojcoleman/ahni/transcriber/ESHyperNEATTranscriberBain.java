@@ -32,6 +32,7 @@ import com.ojcoleman.ahni.hyperneat.HyperNEATConfiguration;
 import com.ojcoleman.ahni.hyperneat.Properties;
 import com.ojcoleman.ahni.nn.BainNN;
 import com.ojcoleman.ahni.nn.NNAdaptor;
+import com.ojcoleman.ahni.nn.SparseNet;
 import com.ojcoleman.ahni.transcriber.HyperNEATTranscriber.CPPN;
 import com.ojcoleman.ahni.util.Point;
 
@@ -254,12 +255,12 @@ public class ESHyperNEATTranscriberBain extends HyperNEATTranscriberBainBase imp
 	 * @see Transcriber#transcribe(Chromosome)
 	 */
 	@Override
-	public BainNN transcribe(Chromosome genotype) throws TranscriberException {
+	public NNAdaptor transcribe(Chromosome genotype) throws TranscriberException {
 		return generateSubstrate(genotype);
 	}
 
 	@Override
-	public BainNN transcribe(Chromosome genotype, BainNN substrate) throws TranscriberException {
+	public NNAdaptor transcribe(Chromosome genotype, NNAdaptor substrate) throws TranscriberException {
 		return generateSubstrate(genotype);
 	}
 
@@ -267,7 +268,7 @@ public class ESHyperNEATTranscriberBain extends HyperNEATTranscriberBainBase imp
 	 * Generate a substrate from a Chromosome according to the ES-HyperNEAT algorithm.
 	 * @param genotype The genotype from which to generate a substrate.
 	 */
-	public BainNN generateSubstrate(Chromosome genotype) throws TranscriberException {
+	public NNAdaptor generateSubstrate(Chromosome genotype) throws TranscriberException {
 		long startTime = System.currentTimeMillis();
 		CPPN cppn = new CPPN(genotype);
 		
@@ -447,70 +448,43 @@ public class ESHyperNEATTranscriberBain extends HyperNEATTranscriberBainBase imp
 		//logger.info(neuronCount + ", " + synapseCount);
 		
 
-		// Create Bain NeuralNetwork.
-		NeuronCollection neurons = null;
-		SynapseCollection synapses = null;
-		String neuronModelClass = properties.getProperty(TranscriberAdaptor.SUBSTRATE_NEURON_MODEL, "com.ojcoleman.bain.neuron.rate.SigmoidNeuronCollection");
-		String synapseModelClass = properties.getProperty(TranscriberAdaptor.SUBSTRATE_SYNAPSE_MODEL, "com.ojcoleman.bain.synapse.rate.FixedSynapseCollection");
-		try {
-			neurons = BainNN.createNeuronCollection(neuronModelClass, neuronCount, enableBias, neuronTypesEnabled, neuronParamsEnabled);
-		} catch (Exception e) {
-			e.printStackTrace();
-			throw new TranscriberException("Error creating neurons for Bain neural network. Have you specified the name of the neuron collection class correctly, including the containing packages?", e);
-		}
-		try {
-			synapses = BainNN.createSynapseCollection(synapseModelClass, synapseCount, synapseTypesEnabled, synapseParamsEnabled, connectionWeightMin, connectionWeightMax);
-		} catch (Exception e) {
-			e.printStackTrace();
-			throw new TranscriberException("Error creating synapses for Bain neural network. Have you specified the name of the synapse collection class correctly, including the containing packages?", e);
-		}
-
-		// Determine index in Bain NN for all neurons (Bain NNs connectivity is specified by indices rather than object references).
+		// Determine index in Bain NN (or SparseNet) for all neurons (connectivity is specified by indices rather than object references).
+		List<Neuron> allNeurons = new ArrayList<Neuron>(neuronCount);
+		allNeurons.addAll(inputNeuronPositionsCopy);
+		allNeurons.addAll(hiddenNeurons.values());
+		allNeurons.addAll(outputNeuronPositionsCopy);
 		int indexInBainNN = 0;
-		for (Neuron point : inputNeuronPositionsCopy) {
-			point.indexInBainNN = indexInBainNN;
-			setNeuronParameters(point, neurons, indexInBainNN, cppn, true);
-			indexInBainNN++;
-		}
-		for (Neuron point : hiddenNeurons.values()) {
+		for (Neuron point : allNeurons) {
 			point.indexInBainNN = indexInBainNN;
-			setNeuronParameters(point, neurons, indexInBainNN, cppn, true);
-			indexInBainNN++;
-		}
-		for (Neuron point : outputNeuronPositionsCopy) {
-			point.indexInBainNN = indexInBainNN;
-			setNeuronParameters(point, neurons, indexInBainNN, cppn, true);
 			indexInBainNN++;
 		}
 		assert (indexInBainNN == neuronCount);
-
-		// Set pre and post neuron indexes and weight value for each connection.
-		double[] synapseWeights = synapses.getEfficacies();
-		int ci = 0;
-		for (Connection c : connections) {
-			assert (c.source.indexInBainNN < neuronCount);
-			assert (c.target.indexInBainNN < neuronCount);
-			synapses.setPreAndPostNeurons(ci, c.source.indexInBainNN, c.target.indexInBainNN);
-			synapseWeights[ci] = c.weight;
-			if (synapseParamsEnabled || synapseTypesEnabled) {
-				cppn.query(c.source, c.target);
-				setSynapseParameters(synapses, ci, cppn, false, true);
-			}
-			ci++;
-		}
-		assert (ci == synapseCount);
-		synapses.setEfficaciesModified();
-
-		int simRes = properties.getIntProperty(BainNN.SUBSTRATE_SIMULATION_RESOLUTION, 1000);
-		String execModeName = properties.getProperty(BainNN.SUBSTRATE_EXECUTION_MODE, null);
-		Kernel.EXECUTION_MODE execMode = execModeName == null ? null : Kernel.EXECUTION_MODE.valueOf(execModeName);
-		NeuralNetwork nn = new NeuralNetwork(simRes, neurons, synapses, execMode);
+		
 		int[] inputDims = new int[] { inputCount, 1 };
 		int[] outputDims = new int[] { outputCount, 1 };
-		int maxRecurrentCycles = properties.getIntProperty(HyperNEATTranscriberBain.SUBSTRATE_MAX_RECURRENT_CYCLE, 1000000);
+		NNAdaptor network;
+		if (sparseNetEnabled) {
+			double[] bias = new double[neuronCount];
+			for (Neuron point : allNeurons) {
+				bias[point.indexInBainNN] = getNeuronBias(point, cppn);
+			}
+			int[] pre = new int[synapseCount];
+			int[] post = new int[synapseCount];
+			double[] weights = new double[synapseCount];
+			int ci = 0;
+			for (Connection c : connections) {
+				pre[ci] = c.source.indexInBainNN;
+				post[ci] = c.target.indexInBainNN;
+				weights[ci] = c.weight;
+				ci++;
+			}
+			network = new SparseNet(inputDims, outputDims, bias, pre, post, weights, synapseCount, sparseNetActivationFunction, feedForward ? BainNN.Topology.FEED_FORWARD_NONLAYERED : BainNN.Topology.RECURRENT, cyclesPerStep, "network " + genotype.getId());
+		} else {
+			network = newBainNN(genotype, cppn, allNeurons, connections, inputDims, outputDims);
+		}
+		
 		try {
-			BainNN network = new BainNN(nn, inputDims, outputDims, cyclesPerStep, feedForward ? BainNN.Topology.FEED_FORWARD_NONLAYERED : BainNN.Topology.RECURRENT, "network " + genotype.getId(), maxRecurrentCycles);
-			if (feedForward && network.getTopology().equals(BainNN.Topology.RECURRENT)) {
+			if (feedForward && network.isRecurrent()) {
 				return null;
 			}
 			if (properties.getBooleanProperty(ES_HYPERNEAT_RECORD_COORDINATES, false)) {
@@ -565,6 +539,71 @@ public class ESHyperNEATTranscriberBain extends HyperNEATTranscriberBainBase imp
 		}
 	}
 	
+	/**
+	 * Create a Bain neural network with the given neurons (which must have their index set) and connections.
+	 */
+	private BainNN newBainNN(Chromosome genotype, CPPN cppn, List<Neuron> allNeurons, List<Connection> connections, int[] inputDims, int[] outputDims) throws TranscriberException {
+		int neuronCount = allNeurons.size();
+		int synapseCount = connections.size();
+		NeuronCollection neurons = null;
+		SynapseCollection synapses = null;
+		String neuronModelClass = properties.getProperty(TranscriberAdaptor.SUBSTRATE_NEURON_MODEL, "com.ojcoleman.bain.neuron.rate.SigmoidNeuronCollection");
+		String synapseModelClass = properties.getProperty(TranscriberAdaptor.SUBSTRATE_SYNAPSE_MODEL, "com.ojcoleman.bain.synapse.rate.FixedSynapseCollection");
+		try {
+			neurons = BainNN.createNeuronCollection(neuronModelClass, neuronCount, enableBias, neuronTypesEnabled, neuronParamsEnabled);
+		} catch (Exception e) {
+			e.printStackTrace();
+			throw new TranscriberException("Error creating neurons for Bain neural network. Have you specified the name of the neuron collection class correctly, including the containing packages?", e);
+		}
+		try {
+			synapses = BainNN.createSynapseCollection(synapseModelClass, synapseCount, synapseTypesEnabled, synapseParamsEnabled, connectionWeightMin, connectionWeightMax);
+		} catch (Exception e) {
+			e.printStackTrace();
+			throw new TranscriberException("Error creating synapses for Bain neural network. Have you specified the name of the synapse collection class correctly, including the containing packages?", e);
+		}
+
+		for (Neuron point : allNeurons) {
+			setNeuronParameters(point, neurons, point.indexInBainNN, cppn, true);
+		}
+
+		// Set pre and post neuron indexes and weight value for each connection.
+		double[] synapseWeights = synapses.getEfficacies();
+		if (synapseParamsEnabled || synapseTypesEnabled) {
+			cppn.clearBatch();
+			for (Connection c : connections) {
+				cppn.setSourceCoordinates(c.source);
+				cppn.setTargetCoordinates(c.target);
+				cppn.addToBatch();
+			}
+			cppn.queryBatch();
+		}
+		int ci = 0;
+		for (Connection c : connections) {
+			assert (c.source.indexInBainNN < neuronCount);
+			assert (c.target.indexInBainNN < neuronCount);
+			synapses.setPreAndPostNeurons(ci, c.source.indexInBainNN, c.target.indexInBainNN);
+			synapseWeights[ci] = c.weight;
+			if (synapseParamsEnabled || synapseTypesEnabled) {
+				cppn.selectBatchResult(ci);
+				setSynapseParameters(synapses, ci, cppn, false, true);
+			}
+			ci++;
+		}
+		assert (ci == synapseCount);
+		synapses.setEfficaciesModified();
+
+		int simRes = properties.getIntProperty(BainNN.SUBSTRATE_SIMULATION_RESOLUTION, 1000);
+		String execModeName = properties.getProperty(BainNN.SUBSTRATE_EXECUTION_MODE, null);
+		Kernel.EXECUTION_MODE execMode = execModeName == null ? null : Kernel.EXECUTION_MODE.valueOf(execModeName);
+		NeuralNetwork nn = new NeuralNetwork(simRes, neurons, synapses, execMode);
+		int maxRecurrentCycles = properties.getIntProperty(HyperNEATTranscriberBain.SUBSTRATE_MAX_RECURRENT_CYCLE, 1000000);
+		try {
+			return new BainNN(nn, inputDims, outputDims, cyclesPerStep, feedForward ? BainNN.Topology.FEED_FORWARD_NONLAYERED : BainNN.Topology.RECURRENT, "network " + genotype.getId(), maxRecurrentCycles);
+		} catch (Exception e) {
+			throw new TranscriberException(e);
+		}
+	}
+	
 	private class Neuron extends Point {
 		public static final int INPUT = 1, HIDDEN = 2, OUTPUT = 3;
 		public int type;
@@ -664,57 +703,73 @@ public class ESHyperNEATTranscriberBain extends HyperNEATTranscriberBainBase imp
 			g = image.createGraphics();
 		}*/
 		
+		// The quadtree is built breadth-first, one level at a time, so that the CPPN can be queried for all the squares
+		// in a level in one batch.
+		List<QuadPoint> level = new ArrayList<QuadPoint>();
 		while (!queue.isEmpty()) {
-			QuadPoint parent = queue.removeFirst();
-
-			// Divide into sub-regions and assign children to parent.
-			int childLevel = parent.level+1;
-			double childWidth = parent.width * 0.5;
-			double offset = childWidth * 0.5;
-			if (pseudo3D ) {
-				// Hidden nodes located on XZ plane at y = 0.5.
-				parent.children[0] = new QuadPoint(parent.x - offset, 0.5, parent.z - offset, childWidth, childLevel);
-				parent.children[1] = new QuadPoint(parent.x - offset, 0.5, parent.z + offset, childWidth, childLevel);
-				parent.children[2] = new QuadPoint(parent.x + offset, 0.5, parent.z - offset, childWidth, childLevel);
-				parent.children[3] = new QuadPoint(parent.x + offset, 0.5, parent.z + offset, childWidth, childLevel);
-			}
-			else {
-				// Hidden nodes located on XY plane.
-				parent.children[0] = new QuadPoint(parent.x - offset, parent.y - offset, 0, childWidth, childLevel);
-				parent.children[1] = new QuadPoint(parent.x - offset, parent.y + offset, 0, childWidth, childLevel);
-				parent.children[2] = new QuadPoint(parent.x + offset, parent.y - offset, 0, childWidth, childLevel);
-				parent.children[3] = new QuadPoint(parent.x + offset, parent.y + offset, 0, childWidth, childLevel);
-			}
+			level.clear();
+			level.addAll(queue);
+			queue.clear();
 			
-			// Get CPPN output for each child.
-			for (int ci = 0; ci < 4; ci++) {
-				QuadPoint child = parent.children[ci];
-				if (outgoing) { // Querying connection from input or hidden node.
-					child.cppnValue = cppn.query(n, child); // Outgoing connectivity pattern.
-					//child.cppnValue = cppn.getRangedWeight();
+			cppn.clearBatch();
+			for (QuadPoint parent : level) {
+				// Divide into sub-regions and assign children to parent.
+				int childLevel = parent.level+1;
+				double childWidth = parent.width * 0.5;
+				double offset = childWidth * 0.5;
+				if (pseudo3D ) {
+					// Hidden nodes located on XZ plane at y = 0.5.
+					parent.children[0] = new QuadPoint(parent.x - offset, 0.5, parent.z - offset, childWidth, childLevel);
+					parent.children[1] = new QuadPoint(parent.x - offset, 0.5, parent.z + offset, childWidth, childLevel);
+					parent.children[2] = new QuadPoint(parent.x + offset, 0.5, parent.z - offset, childWidth, childLevel);
+					parent.children[3] = new QuadPoint(parent.x + offset, 0.5, parent.z + offset, childWidth, childLevel);
 				}
-				else { // Querying connection to output node.
-					child.cppnValue = cppn.query(child, n); // Incoming connectivity pattern.
-					//child.cppnValue = cppn.getRangedWeight();
+				else {
+					// Hidden nodes located on XY plane.
+					parent.children[0] = new QuadPoint(parent.x - offset, parent.y - offset, 0, childWidth, childLevel);
+					parent.children[1] = new QuadPoint(parent.x - offset, parent.y + offset, 0, childWidth, childLevel);
+					parent.children[2] = new QuadPoint(parent.x + offset, parent.y - offset, 0, childWidth, childLevel);
+					parent.children[3] = new QuadPoint(parent.x + offset, parent.y + offset, 0, childWidth, childLevel);
+				}
+				for (int ci = 0; ci < 4; ci++) {
+					QuadPoint child = parent.children[ci];
+					addToBatch(cppn, n, outgoing, child.x, child.y, child.z);
 				}
-				
-				child.leo = cppn.getLEO();
-				
-				/*if (firstTime) {
-					int hwI = (int) Math.round(childWidth * w);
-					int x = (int) Math.round(child.x * w) - hwI/2;
-					int y = (int) Math.round((pseudo3D ? child.z : child.y) * h) - hwI/2;
-					int c = Math.min((int) Math.round(child.cppnValue * 0.5 * 255), 255);
-					g.setColor(new Color(c, c, c));
-					g.fillRect(x, y, hwI, hwI);*/
-					//logger.info(child.level + " : " + child.width + " : " + nf1.format(n.x) + ", " + nf1.format(n.y) + ", " + nf1.format(n.z) +  " -> " + nf1.format(child.x) + ", " + nf1.format(child.y) + ", " + nf1.format(child.z) + " : " + nf1.format(child.cppnValue));
-				//}
 			}
-
-			// Divide if minimum resolution hasn't been reached or variance is above threshold and maximum resolution hasn't been reached.
-			if (parent.level < initialDepth || (parent.level < maxDepth && variance(parent, tempStorageForCPPNValues) > divisionThreshold)) {
+			cppn.queryBatch();
+			int batchIndex = 0;
+			
+			for (QuadPoint parent : level) {
+				// Get CPPN output for each child.
 				for (int ci = 0; ci < 4; ci++) {
-					queue.add(parent.children[ci]);
+					QuadPoint child = parent.children[ci];
+					child.cppnValue = cppn.getBatchWeight(batchIndex);
+					//child.cppnValue = cppn.getRangedWeight();
+					
+					if (enableLEO) {
+						cppn.selectBatchResult(batchIndex);
+						child.leo = cppn.getLEO();
+					} else {
+						child.leo = true;
+					}
+					batchIndex++;
+					
+					/*if (firstTime) {
+						int hwI = (int) Math.round(childWidth * w);
+						int x = (int) Math.round(child.x * w) - hwI/2;
+						int y = (int) Math.round((pseudo3D ? child.z : child.y) * h) - hwI/2;
+						int c = Math.min((int) Math.round(child.cppnValue * 0.5 * 255), 255);
+						g.setColor(new Color(c, c, c));
+						g.fillRect(x, y, hwI, hwI);*/
+						//logger.info(child.level + " : " + child.width + " : " + nf1.format(n.x) + ", " + nf1.format(n.y) + ", " + nf1.format(n.z) +  " -> " + nf1.format(child.x) + ", " + nf1.format(child.y) + ", " + nf1.format(child.z) + " : " + nf1.format(child.cppnValue));
+					//}
+				}
+
+				// Divide if minimum resolution hasn't been reached or variance is above threshold and maximum resolution hasn't been reached.
+				if (parent.level < initialDepth || (parent.level < maxDepth && variance(parent, tempStorageForCPPNValues) > divisionThreshold)) {
+					for (int ci = 0; ci < 4; ci++) {
+						queue.add(parent.children[ci]);
+					}
 				}
 			}
 		}
@@ -748,58 +803,81 @@ public class ESHyperNEATTranscriberBain extends HyperNEATTranscriberBainBase imp
 	 * @param tempStorageForCPPNValues A list store the CPPN value for each node in the quadtree. Allows reuse of same list for performance reasons.
 	 */
 	protected void pruneAndExpress(CPPN cppn, Point neuron, List<TempConnection> connections, QuadPoint root, boolean outgoing, double[] tempStorageForCPPNValues) {
-		double left = 0, right = 0, top = 0, bottom = 0;
+		// Find the points that may be in a band, querying the CPPN for their neighbours in one batch.
+		List<QuadPoint> candidates = new ArrayList<QuadPoint>();
+		cppn.clearBatch();
+		findBandCandidates(cppn, neuron, root, outgoing, tempStorageForCPPNValues, candidates);
+		if (candidates.isEmpty())
+			return;
+		cppn.queryBatch();
+		
+		int batchIndex = 0;
+		for (QuadPoint child : candidates) {
+			// Determine if point is in a band by checking neighbour CPPN values.
+			double left = Math.abs(child.cppnValue - cppn.getBatchWeight(batchIndex++));
+			double right = Math.abs(child.cppnValue - cppn.getBatchWeight(batchIndex++));
+			double top = Math.abs(child.cppnValue - cppn.getBatchWeight(batchIndex++));
+			double bottom = Math.abs(child.cppnValue - cppn.getBatchWeight(batchIndex++));
+			
+			if (Math.max(Math.min(top, bottom), Math.min(left, right)) > bandThrehold) {
+				TempConnection tc;
+				if (outgoing) {
+					tc = new TempConnection(neuron, child, child.cppnValue);
+				} else {
+					tc = new TempConnection(child, neuron, child.cppnValue);
+				}
+				connections.add(tc);
+			}
+		}
+	}
 
+	/**
+	 * Traverse the given quadtree depth-first until the current node's variance is smaller than the variance threshold
+	 * or until the node has no children, adding each such node with a true LEO value to the given list and adding
+	 * queries for its left, right, top and bottom neighbours to the current batch for the given CPPN.
+	 */
+	private void findBandCandidates(CPPN cppn, Point neuron, QuadPoint root, boolean outgoing, double[] tempStorageForCPPNValues, List<QuadPoint> candidates) {
 		if (root.children[0] == null)
 			return;
 
-		// Traverse quadtree depth-first.
+		double width = root.width;
 		for (int ci = 0; ci < 4; ci++) {
 			QuadPoint child = root.children[ci];
-			double childVariance = variance(child, tempStorageForCPPNValues);
-			if (childVariance >= varianceThreshold) {
-				pruneAndExpress(cppn, neuron, connections, child, outgoing, tempStorageForCPPNValues);
+			if (variance(child, tempStorageForCPPNValues) >= varianceThreshold) {
+				findBandCandidates(cppn, neuron, child, outgoing, tempStorageForCPPNValues, candidates);
 			} else if (child.leo) { // If LEO disabled this should always happen for at least the leaf nodes because their variance is zero.
-				// Determine if point is in a band by checking neighbour CPPN values.
-				double width = root.width;
-				if (outgoing) {
-					left = Math.abs(child.cppnValue - cppn.query(neuron.x, neuron.y, neuron.z, child.x - width, child.y, child.z));
-					right = Math.abs(child.cppnValue - cppn.query(neuron.x, neuron.y, neuron.z, child.x + width, child.y, child.z));
-					if (pseudo3D) { // Hidden nodes located on XZ plane.
-						top = Math.abs(child.cppnValue - cppn.query(neuron.x, neuron.y, neuron.z, child.x, child.y, child.z - width));
-						bottom = Math.abs(child.cppnValue - cppn.query(neuron.x, neuron.y, neuron.z, child.x, child.y, child.z + width));
-					}
-					else { // Hidden nodes located on XY plane.
-						top = Math.abs(child.cppnValue - cppn.query(neuron.x, neuron.y, neuron.z, child.x, child.y - width, child.z));
-						bottom = Math.abs(child.cppnValue - cppn.query(neuron.x, neuron.y, neuron.z, child.x, child.y + width, child.z));
-					}
-				} else {
-					left = Math.abs(child.cppnValue - cppn.query(child.x - width, child.y, child.z, neuron.x, neuron.y, neuron.z));
-					right = Math.abs(child.cppnValue - cppn.query(child.x + width, child.y, child.z, neuron.x, neuron.y, neuron.z));
-					if (pseudo3D) { // Hidden nodes located on XZ plane.
-						top = Math.abs(child.cppnValue - cppn.query(child.x, child.y, child.z - width, neuron.x, neuron.y, neuron.z));
-						bottom = Math.abs(child.cppnValue - cppn.query(child.x, child.y, child.z + width, neuron.x, neuron.y, neuron.z));
-					}
-					else { // Hidden nodes located on XY plane.
-						top = Math.abs(child.cppnValue - cppn.query(child.x, child.y - width, child.z, neuron.x, neuron.y, neuron.z));
-						bottom = Math.abs(child.cppnValue - cppn.query(child.x, child.y + width, child.z, neuron.x, neuron.y, neuron.z));
-					}
+				candidates.add(child);
+				addToBatch(cppn, neuron, outgoing, child.x - width, child.y, child.z); // left
+				addToBatch(cppn, neuron, outgoing, child.x + width, child.y, child.z); // right
+				if (pseudo3D) { // Hidden nodes located on XZ plane.
+					addToBatch(cppn, neuron, outgoing, child.x, child.y, child.z - width); // top
+					addToBatch(cppn, neuron, outgoing, child.x, child.y, child.z + width); // bottom
 				}
-				
-				if (Math.max(Math.min(top, bottom), Math.min(left, right)) > bandThrehold) {
-					TempConnection tc;
-					if (outgoing) {
-						tc = new TempConnection(neuron, child, child.cppnValue);
-					} else {
-						tc = new TempConnection(child, neuron, child.cppnValue);
-					}
-					connections.add(tc);
+				else { // Hidden nodes located on XY plane.
+					addToBatch(cppn, neuron, outgoing, child.x, child.y - width, child.z); // top
+					addToBatch(cppn, neuron, outgoing, child.x, child.y + width, child.z); // bottom
 				}
-
 			}
 		}
 	}
 
+	/**
+	 * Add a query to the current batch for the given CPPN for the connection between the given neuron and the given
+	 * point.
+	 * 
+	 * @param outgoing If true the connection is from the neuron to the point, otherwise from the point to the neuron.
+	 */
+	private void addToBatch(CPPN cppn, Point neuron, boolean outgoing, double x, double y, double z) {
+		if (outgoing) {
+			cppn.setSourceCoordinates(neuron.x, neuron.y, neuron.z);
+			cppn.setTargetCoordinates(x, y, z);
+		} else {
+			cppn.setSourceCoordinates(x, y, z);
+			cppn.setTargetCoordinates(neuron.x, neuron.y, neuron.z);
+		}
+		cppn.addToBatch();
+	}
+
 	/**
 	 * Determine the variance of a given region.
 	 * @param p The root of the quadtree.  
@@ -845,7 +923,7 @@ public class ESHyperNEATTranscriberBain extends HyperNEATTranscriberBainBase imp
 	
 	@Override
 	public Class getPhenotypeClass() {
-		return BainNN.class;
+		return sparseNetEnabled ? SparseNet.class : BainNN.class;
 	}
 
 	/**
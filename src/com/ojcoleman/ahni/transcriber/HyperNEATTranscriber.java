@@ -9,6 +9,7 @@ import org.jgapcustomised.Chromosome;
 import com.anji.integration.Activator;
 import com.anji.integration.AnjiActivator;
 import com.anji.integration.AnjiNetTranscriber;
+import com.anji.integration.CompiledAnjiActivator;
 import com.anji.integration.Transcriber;
 import com.anji.integration.TranscriberException;
 import com.anji.neat.NeatConfiguration;
@@ -61,7 +62,8 @@ public abstract class HyperNEATTranscriber<T extends Activator> extends Transcri
 	public static final String HYPERNEAT_CONNECTION_EXPRESSION_THRESHOLD = "ann.hyperneat.connection.expression.threshold";
 	/**
 	 * Limits the incoming connections to a target neuron to include those from source neurons within the specified
-	 * range of the target neuron. Set this to -1 to disable it.
+	 * range of the target neuron. Set this to -1 to disable it. Supported by {@link HyperNEATTranscriberGridNet} and
+	 * {@link HyperNEATTranscriberBain}, for which only synapses within the range are queried and allocated.
 	 */
 	public static final String HYPERNEAT_CONNECTION_RANGE = "ann.hyperneat.connection.range";
 	/**
@@ -178,6 +180,27 @@ public abstract class HyperNEATTranscriber<T extends Activator> extends Transcri
 	 */
 	public static final String HYPERNEAT_NEO_THRESHOLD = "ann.hyperneat.neo.threshold";
 
+	/**
+	 * Whether to compile CPPNs to a flat array form (see {@link com.anji.nn.CompiledAnjiNet}) which is much faster to
+	 * query. Results are identical for feed-forward CPPNs. Default is true.
+	 */
+	public static final String HYPERNEAT_CPPN_COMPILED = "ann.hyperneat.cppn.compiled";
+
+	/**
+	 * Whether to generate a Java class for each compiled CPPN (see {@link com.anji.nn.CompiledAnjiNetGenerator}),
+	 * which the JIT compiler can optimise further. This is worthwhile when each CPPN is queried many times, for example
+	 * for large substrates. Only applies if {@link #HYPERNEAT_CPPN_COMPILED} is enabled. Default is false.
+	 */
+	public static final String HYPERNEAT_CPPN_GENERATED = "ann.hyperneat.cppn.generated";
+
+	/**
+	 * The maximum size, in megabytes, of the tables of CPPN input values that transcribers may compute once for all
+	 * queries into the substrate (see {@link CPPNInputTable}), so that transcribing each genome only requires
+	 * activating its CPPN. If the tables for a substrate would be larger than this they are not used. Set to 0 to
+	 * disable. Default is 256.
+	 */
+	public static final String HYPERNEAT_CPPN_INPUT_TABLE_MAX = "ann.hyperneat.cppn.input.table.max";
+
 	/**
 	 * The width of each layer in the substrate.
 	 */
@@ -276,6 +299,18 @@ public abstract class HyperNEATTranscriber<T extends Activator> extends Transcri
 	 * Threshold for the Neuron Expression Output.
 	 */
 	protected double neoThreshold = 0;
+	/**
+	 * If true CPPNs are compiled to a flat array form, see {@link #HYPERNEAT_CPPN_COMPILED}.
+	 */
+	protected boolean compiledCPPN = true;
+	/**
+	 * If true classes are generated for compiled CPPNs, see {@link #HYPERNEAT_CPPN_GENERATED}.
+	 */
+	protected boolean generatedCPPN = false;
+	/**
+	 * The maximum size of CPPN input tables in megabytes, see {@link #HYPERNEAT_CPPN_INPUT_TABLE_MAX}.
+	 */
+	protected int cppnInputTableMax = 256;
 	/**
 	 * The number of inputs to the CPPN.
 	 * 
@@ -361,6 +396,9 @@ public abstract class HyperNEATTranscriber<T extends Activator> extends Transcri
 		leoThresholdFactorDirection = props.getDoubleArrayProperty(HYPERNEAT_LEO_THRESHOLD_DIRECTION, leoThresholdFactorDirection);
 		enableNEO = props.getBooleanProperty(HYPERNEAT_NEO, enableNEO);
 		neoThreshold = props.getDoubleProperty(HYPERNEAT_NEO_THRESHOLD, neoThreshold);
+		compiledCPPN = props.getBooleanProperty(HYPERNEAT_CPPN_COMPILED, compiledCPPN);
+		generatedCPPN = props.getBooleanProperty(HYPERNEAT_CPPN_GENERATED, generatedCPPN);
+		cppnInputTableMax = props.getIntProperty(HYPERNEAT_CPPN_INPUT_TABLE_MAX, cppnInputTableMax);
 
 		if (enableLEO && connectionExprThresh != 0) {
 			logger.warn("LEO is enabled but the connection expression threshold is not 0. It is recommended to set the connection expression threshold to 0 when LEO is enabled.");
@@ -679,6 +717,39 @@ public abstract class HyperNEATTranscriber<T extends Activator> extends Transcri
 		return new CPPN(genotype);
 	}
 
+	/**
+	 * @return true iff tables of CPPN input values for the given number of queries are within the size limit set by
+	 *         {@link #HYPERNEAT_CPPN_INPUT_TABLE_MAX}.
+	 */
+	protected boolean cppnInputTablesAllowed(long queryCount) {
+		return queryCount * (cppnInputCount + 1) * 8 <= cppnInputTableMax * 1024L * 1024L;
+	}
+
+	/**
+	 * A table of CPPN input values (and synapse lengths) for a batch of queries, built with
+	 * {@link CPPN#getBatchInputTable()} and evaluated with {@link CPPN#queryBatch(CPPNInputTable)}. The input values
+	 * depend only on the substrate coordinates, so a table may be built once and then shared, read-only, by all
+	 * threads to query the CPPN of every genome.
+	 */
+	public static class CPPNInputTable {
+		private final double[][] input;
+		private final double[] synapseLength;
+		private final int size;
+
+		private CPPNInputTable(double[][] input, double[] synapseLength, int size) {
+			this.input = input;
+			this.synapseLength = synapseLength;
+			this.size = size;
+		}
+
+		/**
+		 * @return The number of queries in this table.
+		 */
+		public int size() {
+			return size;
+		}
+	}
+
 	/**
 	 * Provides a wrapper for an {@link com.anji.integration.Activator} that represents a CPPN.
 	 */
@@ -693,10 +764,42 @@ public abstract class HyperNEATTranscriber<T extends Activator> extends Transcri
 		 * Squared length of the current synapse (set when query() called).
 		 */
 		protected double synapseLength = 0;
+		/**
+		 * Input values for the current batch of queries, indexed by [CPPN input][query], see {@link #addToBatch()}.
+		 */
+		protected double[][] batchInput = new double[cppnInputCount][];
+		protected double[] batchSynapseLength;
+		protected int batchSize;
+		private int batchCapacity;
+		/**
+		 * Output values from the last batch evaluated, indexed by [CPPN output][query].
+		 */
+		protected double[][] batchOutput;
+		private double[] batchOutputRow;
+		private double[][] batchResultInput;
+		private double[] batchResultSynapseLength;
+
+		/**
+		 * Create a CPPN without a network, which may only be used to build tables of input values with
+		 * {@link #addToBatch()} and {@link #getBatchInputTable()}.
+		 */
+		protected CPPN() {
+			if (cppnIdxBiasInput != -1) {
+				cppnInput[cppnIdxBiasInput] = 1; // Bias.
+			}
+		}
 
 		public CPPN(Chromosome genotype) throws TranscriberException {
-			cppnActivator = cppnTranscriber.transcribe(genotype);
-			((AnjiActivator) cppnActivator).setName("CPPN-" + genotype.getId());
+			if (compiledCPPN) {
+				cppnActivator = ((AnjiNetTranscriber) cppnTranscriber).transcribeCompiled(genotype);
+				((CompiledAnjiActivator) cppnActivator).setName("CPPN-" + genotype.getId());
+				if (generatedCPPN) {
+					((CompiledAnjiActivator) cppnActivator).generateClass();
+				}
+			} else {
+				cppnActivator = cppnTranscriber.transcribe(genotype);
+				((AnjiActivator) cppnActivator).setName("CPPN-" + genotype.getId());
+			}
 			if (cppnIdxBiasInput != -1) {
 				cppnInput[cppnIdxBiasInput] = 1; // Bias.
 			}
@@ -903,6 +1006,17 @@ public abstract class HyperNEATTranscriber<T extends Activator> extends Transcri
 		 * @return The value of the (first) weight output. Other outputs can be retrieved with the various get methods.
 		 */
 		public double query() {
+			setDerivedInputs();
+			cppnActivator.reset();
+			cppnOutput = cppnActivator.next(cppnInput);
+			return getWeight();
+		}
+
+		/**
+		 * Set the delta and angle inputs (if enabled) and the synapse length (if required for LEO) from the current
+		 * source and target coordinates.
+		 */
+		private void setDerivedInputs() {
 			synapseLength = -1; // Reset
 			if (includeDelta || leoThresholdFactorDistance) {
 				double dx = 0, dy = 0, dz = 0;
@@ -929,10 +1043,126 @@ public abstract class HyperNEATTranscriber<T extends Activator> extends Transcri
 					angle += 1;
 				cppnInput[cppnIdxAn] = angle;
 			}
+		}
 
-			cppnActivator.reset();
-			cppnOutput = cppnActivator.next(cppnInput);
-			return getWeight();
+		/**
+		 * Remove all queries from the current batch. A batch of queries is built with {@link #addToBatch()}, evaluated
+		 * with {@link #queryBatch()} and the results retrieved with {@link #selectBatchResult(int)}. Batches should be
+		 * used where many queries are made as they are evaluated much more efficiently.
+		 */
+		public void clearBatch() {
+			batchSize = 0;
+		}
+
+		/**
+		 * Add a query for the current source and target coordinates to the current batch, see {@link #clearBatch()}.
+		 * 
+		 * @return The index of the query in the batch, for use with {@link #selectBatchResult(int)}.
+		 */
+		public int addToBatch() {
+			if (batchSize == batchCapacity) {
+				batchCapacity = Math.max(64, batchCapacity * 2);
+				for (int i = 0; i < cppnInputCount; i++) {
+					batchInput[i] = batchInput[i] == null ? new double[batchCapacity] : Arrays.copyOf(batchInput[i], batchCapacity);
+				}
+				batchSynapseLength = batchSynapseLength == null ? new double[batchCapacity] : Arrays.copyOf(batchSynapseLength, batchCapacity);
+			}
+			setDerivedInputs();
+			for (int i = 0; i < cppnInputCount; i++) {
+				batchInput[i][batchSize] = cppnInput[i];
+			}
+			batchSynapseLength[batchSize] = synapseLength;
+			return batchSize++;
+		}
+
+		/**
+		 * @return The number of queries in the current batch.
+		 */
+		public int getBatchSize() {
+			return batchSize;
+		}
+
+		/**
+		 * Evaluate all queries in the current batch, see {@link #clearBatch()}.
+		 */
+		public void queryBatch() {
+			queryBatch(batchInput, batchSynapseLength, batchSize);
+		}
+
+		/**
+		 * Get a copy of the input values of the current batch, which may be evaluated any number of times with
+		 * {@link #queryBatch(CPPNInputTable)} by any CPPN of this transcriber.
+		 */
+		public CPPNInputTable getBatchInputTable() {
+			double[][] input = new double[cppnInputCount][];
+			for (int i = 0; i < cppnInputCount; i++) {
+				input[i] = batchSize == 0 ? new double[0] : Arrays.copyOf(batchInput[i], batchSize);
+			}
+			double[] lengths = batchSize == 0 ? new double[0] : Arrays.copyOf(batchSynapseLength, batchSize);
+			return new CPPNInputTable(input, lengths, batchSize);
+		}
+
+		/**
+		 * Evaluate all queries in the given table, see {@link #queryBatch(double[][], double[], int)}.
+		 */
+		public void queryBatch(CPPNInputTable table) {
+			queryBatch(table.input, table.synapseLength, table.size);
+		}
+
+		/**
+		 * Evaluate a batch of queries given as a table of CPPN input values, for example a table of input values
+		 * computed once for all substrate connections. The results are retrieved with {@link #selectBatchResult(int)}.
+		 * If the CPPN is compiled (see {@link HyperNEATTranscriber#HYPERNEAT_CPPN_COMPILED}) the CPPN is evaluated over
+		 * all queries one neuron at a time, otherwise each query is evaluated separately. The given tables are not
+		 * modified and must not be modified until the results have been retrieved.
+		 * 
+		 * @param inputs The CPPN input values, indexed by [CPPN input][query], including the bias, delta and angle
+		 *            inputs if enabled.
+		 * @param synapseLengths The length of the synapse for each query, or -1 or null to calculate it on demand (see
+		 *            {@link #getSynapseLength()}).
+		 * @param count The number of queries.
+		 */
+		public void queryBatch(double[][] inputs, double[] synapseLengths, int count) {
+			if (batchOutput == null || batchOutput[0].length < count) {
+				batchOutput = new double[cppnOutputCount][Math.max(count, batchCapacity)];
+			}
+			if (cppnActivator instanceof CompiledAnjiActivator) {
+				((CompiledAnjiActivator) cppnActivator).nextBatch(inputs, count, batchOutput);
+			} else {
+				double[] input = new double[cppnInputCount];
+				for (int q = 0; q < count; q++) {
+					for (int i = 0; i < cppnInputCount; i++) {
+						input[i] = inputs[i][q];
+					}
+					cppnActivator.reset();
+					double[] output = cppnActivator.next(input);
+					for (int o = 0; o < cppnOutputCount; o++) {
+						batchOutput[o][q] = output[o];
+					}
+				}
+			}
+			batchResultInput = inputs;
+			batchResultSynapseLength = synapseLengths;
+		}
+
+		/**
+		 * Make the results of the given query in the last batch evaluated the current results, so that they can be
+		 * retrieved with the various get methods as for {@link #query()}.
+		 * 
+		 * @param index The index of the query in the batch.
+		 */
+		public void selectBatchResult(int index) {
+			for (int i = 0; i < cppnInputCount; i++) {
+				cppnInput[i] = batchResultInput[i][index];
+			}
+			if (batchOutputRow == null) {
+				batchOutputRow = new double[cppnOutputCount];
+			}
+			for (int o = 0; o < cppnOutputCount; o++) {
+				batchOutputRow[o] = batchOutput[o][index];
+			}
+			cppnOutput = batchOutputRow;
+			synapseLength = batchResultSynapseLength != null ? batchResultSynapseLength[index] : -1;
 		}
 
 		/**
@@ -983,6 +1213,14 @@ public abstract class HyperNEATTranscriber<T extends Activator> extends Transcri
 			return query();
 		}
 
+		/**
+		 * Get the value of the (first) weight output for the given query in the last batch evaluated. This is
+		 * equivalent to, but faster than, calling {@link #selectBatchResult(int)} followed by {@link #getWeight()}.
+		 */
+		public double getBatchWeight(int index) {
+			return batchOutput[cppnIdxWeight[0]][index];
+		}
+
 		/**
 		 * Get the value of the weight. Should be called after calling {@link #query()}.
 		 */
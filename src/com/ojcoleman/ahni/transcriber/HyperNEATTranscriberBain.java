@@ -1,7 +1,15 @@
 package com.ojcoleman.ahni.transcriber;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import com.ojcoleman.bain.NeuralNetwork;
 import com.ojcoleman.bain.base.NeuronCollection;
@@ -11,10 +19,19 @@ import org.apache.log4j.Logger;
 import org.jgapcustomised.*;
 
 import com.amd.aparapi.Kernel;
+import com.anji.nn.activationfunction.ActivationFunction;
+import com.anji.nn.activationfunction.ActivationFunctionFactory;
+import com.anji.nn.activationfunction.ClampedLinearActivationFunction;
+import com.anji.nn.activationfunction.LookupTableActivationFunction;
+import com.anji.nn.activationfunction.SigmoidActivationFunction;
 import com.anji.integration.Transcriber;
 import com.anji.integration.TranscriberException;
 import com.ojcoleman.ahni.hyperneat.Properties;
 import com.ojcoleman.ahni.nn.BainNN;
+import com.ojcoleman.ahni.nn.DenseLayeredNet;
+import com.ojcoleman.ahni.nn.NNAdaptor;
+import com.ojcoleman.ahni.nn.SparseNet;
+import com.ojcoleman.ahni.util.DaemonThreadFactory;
 import com.ojcoleman.ahni.util.Point;
 
 /**
@@ -36,13 +53,96 @@ public class HyperNEATTranscriberBain extends HyperNEATTranscriberBainBase {
 	 * network is used for any given network.
 	 */
 	public static final String SUBSTRATE_MAX_RECURRENT_CYCLE = "ann.transcriber.bain.maxrecurrentcyclesearchlength";
+	/**
+	 * The number of threads to use to construct the synapses of each substrate. The target neurons are partitioned
+	 * into contiguous ranges with about the same number of synapses, and a copy of the CPPN is created to query the
+	 * synapses for each range. This is useful for very large substrates, particularly when the number of individuals
+	 * being transcribed at once is smaller than the number of processors (for example when the champion is
+	 * transcribed for logging). Substrates with fewer than 65536 synapses per thread use fewer threads. It is not used
+	 * if synapse types or parameters are enabled, as these are not set in a thread-safe manner. If 0 then the number
+	 * of available processors is used. Default is 1. Note that with more than one thread the sum of the squared
+	 * lengths of the synapses may differ in the least significant bits from that computed by one thread, as the sum
+	 * is accumulated in a different order.
+	 */
+	public static final String SUBSTRATE_CONSTRUCTION_THREADS = "ann.transcriber.bain.threads";
+	/**
+	 * If true then only the expressed synapses of each substrate are stored: rather than allocating a synapse for every
+	 * possible connection (which are mostly unused when LEO is enabled or many connection weights are zero), the
+	 * expressed synapses are recorded during transcription and then copied, ordered by target neuron, into a synapse
+	 * collection sized to the number of expressed synapses. When a substrate is reused its synapse collection is
+	 * reused if it is large enough, otherwise a new substrate is created. This reduces memory use and the time taken
+	 * to simulate the substrate for sparse substrates. The number of expressed synapses relative to the number
+	 * allocated and possible is logged (at INFO level when a synapse collection is allocated and at DEBUG level for
+	 * every substrate). Default is false.
+	 */
+	public static final String SUBSTRATE_COMPACT = "ann.transcriber.bain.compact";
+	/**
+	 * If true then for layered feed-forward substrates ({@link HyperNEATTranscriber#HYPERNEAT_FEED_FORWARD} is true) a
+	 * {@link DenseLayeredNet} is produced instead of a Bain network when the Bain network would be equivalent to it:
+	 * the neuron model is the plain rate-based SigmoidNeuronCollection or ClampedLinearNeuronCollection, the synapse
+	 * model is FixedSynapseCollection, neuron and synapse model types and parameters are not enabled and the Bain
+	 * execution mode is not an OpenCL mode (GPU or CPU). DenseLayeredNet activates all of the input vectors given to
+	 * {@link com.anji.integration.Activator#nextSequence(double[][])} together using matrix-matrix products, which is
+	 * much faster than stepping a Bain network for each input vector. As a full weight matrix is stored between each
+	 * pair of layers a DenseLayeredNet is only produced if the connection range is not limited (see
+	 * {@link HyperNEATTranscriber#HYPERNEAT_CONNECTION_RANGE}) and the substrate has at most 4194304 (2^22)
+	 * connections, otherwise a Bain network is produced. Default is false.
+	 */
+	public static final String SUBSTRATE_DENSE = "ann.transcriber.bain.dense";
+	/**
+	 * The number of threads to divide the activation of each layer of a {@link DenseLayeredNet} amongst, see
+	 * {@link #SUBSTRATE_DENSE}. Only layers with many connections (for the number of input vectors being activated) are
+	 * divided amongst threads. As fitness evaluation is usually performed by multiple threads this should typically be
+	 * left at 1. If 0 then the number of available processors is used. Default is 1.
+	 */
+	public static final String SUBSTRATE_DENSE_THREADS = "ann.transcriber.bain.dense.threads";
+
+	/**
+	 * The minimum number of synapses for each thread to construct, see {@link #SUBSTRATE_CONSTRUCTION_THREADS}.
+	 */
+	private static final int MIN_SYNAPSES_PER_THREAD = 65536;
+	/**
+	 * The maximum number of connections for a substrate to be produced as a DenseLayeredNet, see
+	 * {@link #SUBSTRATE_DENSE}.
+	 */
+	private static final long MAX_DENSE_CONNECTIONS = 1 << 22;
 
 	private final static Logger logger = Logger.getLogger(HyperNEATTranscriberBain.class);
 
 	private Properties properties;
-	private int[] neuronLayerSize, bainIndexForNeuronLayer, ffSynapseLayerSize, bainIndexForFFSynapseLayer; // ff=feed
-																											// forward
+	private int[] neuronLayerSize, bainIndexForNeuronLayer;
+	/**
+	 * The index of the first synapse to each neuron, indexed by Bain neuron index. The synapses to each neuron are
+	 * contiguous. The last element is the total number of synapses.
+	 */
+	private int[] bainIndexForFirstSynapse;
 	private int neuronCount, synapseCount;
+	/**
+	 * Precomputed CPPN input values for the neuron parameter queries, and for the synapse queries for each target
+	 * neuron (indexed by Bain neuron index), or null if not used.
+	 */
+	private volatile CPPNInputTable neuronInputTable;
+	private volatile CPPNInputTable[] synapseInputTables;
+	private int constructionThreads;
+	private ExecutorService constructionExecutor;
+	private boolean compact;
+	/**
+	 * If not null then DenseLayeredNet substrates using this activation function are produced, see
+	 * {@link #SUBSTRATE_DENSE}.
+	 */
+	private ActivationFunction denseActivationFunction;
+	/**
+	 * Whether DenseLayeredNet substrates are produced for the current substrate dimensions, see
+	 * {@link #SUBSTRATE_DENSE}.
+	 */
+	private boolean dense;
+	private int denseThreads;
+	private ExecutorService denseExecutor;
+	/**
+	 * Buffers to record the expressed synapses in for compacted substrates, reused across transcriptions by each
+	 * thread. One buffer per construction thread.
+	 */
+	private final ThreadLocal<SynapseBuffer[]> synapseBuffers = new ThreadLocal<SynapseBuffer[]>();
 	
 
 	public HyperNEATTranscriberBain() {
@@ -59,29 +159,113 @@ public class HyperNEATTranscriberBain extends HyperNEATTranscriberBainBase {
 		
 		neuronLayerSize = new int[depth];
 		bainIndexForNeuronLayer = new int[depth];
-		if (feedForward) {
-			ffSynapseLayerSize = new int[depth - 1];
-			bainIndexForFFSynapseLayer = new int[depth - 1];
+		resize(width, height, connectionRange); // Initialise above arrays.
+		
+		constructionThreads = props.getIntProperty(SUBSTRATE_CONSTRUCTION_THREADS, 1);
+		if (constructionThreads == 0) {
+			constructionThreads = Runtime.getRuntime().availableProcessors();
+		}
+		if (constructionThreads > 1) {
+			if (synapseTypesEnabled || synapseParamsEnabled) {
+				logger.warn("Substrates will be constructed by a single thread as synapse types or parameters are enabled (see " + SUBSTRATE_CONSTRUCTION_THREADS + ").");
+				constructionThreads = 1;
+			} else {
+				constructionExecutor = Executors.newFixedThreadPool(constructionThreads, new DaemonThreadFactory(HyperNEATTranscriberBain.class.getName()));
+			}
+		}
+		
+		compact = props.getBooleanProperty(SUBSTRATE_COMPACT, false);
+		
+		if (feedForward && !sparseNetEnabled && props.getBooleanProperty(SUBSTRATE_DENSE, false)) {
+			denseActivationFunction = getDenseActivationFunction(props);
+			if (denseActivationFunction != null) {
+				denseThreads = props.getIntProperty(SUBSTRATE_DENSE_THREADS, 1);
+				if (denseThreads == 0) {
+					denseThreads = Runtime.getRuntime().availableProcessors();
+				}
+				if (denseThreads > 1) {
+					denseExecutor = Executors.newFixedThreadPool(denseThreads, new DaemonThreadFactory(DenseLayeredNet.class.getName()));
+				}
+				updateDense();
+			}
+		}
+	}
+
+	/**
+	 * Determine whether DenseLayeredNet substrates can be produced for the current substrate dimensions and connection
+	 * range, see {@link #SUBSTRATE_DENSE}.
+	 */
+	private void updateDense() {
+		if (denseActivationFunction == null) {
+			dense = false;
+			return;
+		}
+		long connections = 0;
+		for (int l = 1; l < depth; l++) {
+			connections += (long) neuronLayerSize[l] * neuronLayerSize[l - 1];
+		}
+		dense = connectionRange == -1 && connections <= MAX_DENSE_CONNECTIONS;
+		if (dense) {
+			logger.info("Substrates will be dense layered feed-forward networks using the " + denseActivationFunction + " activation function (see " + SUBSTRATE_DENSE + ").");
+		} else if (connectionRange != -1) {
+			logger.info("Substrates will not be dense layered feed-forward networks as the connection range is limited (see " + SUBSTRATE_DENSE + ").");
+		} else {
+			logger.info("Substrates will not be dense layered feed-forward networks as they would have " + connections + " connections, more than the maximum of " + MAX_DENSE_CONNECTIONS + " (see " + SUBSTRATE_DENSE + ").");
+		}
+	}
+	
+	/**
+	 * @return The activation function equivalent to the Bain neuron model if substrates may be produced as
+	 *         DenseLayeredNets, otherwise null. See {@link #SUBSTRATE_DENSE}.
+	 */
+	private ActivationFunction getDenseActivationFunction(Properties props) {
+		if (neuronTypesEnabled || neuronParamsEnabled || synapseTypesEnabled || synapseParamsEnabled) {
+			return null;
+		}
+		String execModeName = props.getProperty(BainNN.SUBSTRATE_EXECUTION_MODE, null);
+		if (execModeName != null && (Kernel.EXECUTION_MODE.valueOf(execModeName) == Kernel.EXECUTION_MODE.GPU || Kernel.EXECUTION_MODE.valueOf(execModeName) == Kernel.EXECUTION_MODE.CPU)) {
+			return null;
 		}
-		resize(width, height, -1); // Initialise above arrays.
+		String synapseModelClass = props.getProperty(TranscriberAdaptor.SUBSTRATE_SYNAPSE_MODEL, "com.ojcoleman.bain.synapse.rate.FixedSynapseCollection");
+		if (!synapseModelClass.equals("com.ojcoleman.bain.synapse.rate.FixedSynapseCollection")) {
+			return null;
+		}
+		String neuronModelClass = props.getProperty(TranscriberAdaptor.SUBSTRATE_NEURON_MODEL, "com.ojcoleman.bain.neuron.rate.SigmoidNeuronCollection");
+		ActivationFunction function = null;
+		if (neuronModelClass.equals("com.ojcoleman.bain.neuron.rate.SigmoidNeuronCollection")) {
+			function = ActivationFunctionFactory.getInstance().get(SigmoidActivationFunction.NAME);
+		} else if (neuronModelClass.equals("com.ojcoleman.bain.neuron.rate.ClampedLinearNeuronCollection")) {
+			function = ActivationFunctionFactory.getInstance().get(ClampedLinearActivationFunction.NAME);
+		}
+		// The Bain neuron models compute the function exactly, so don't use a fast-math approximation.
+		if (function instanceof LookupTableActivationFunction) {
+			function = ((LookupTableActivationFunction) function).getExact();
+		}
+		return function;
 	}
 
 	/**
 	 * @see Transcriber#transcribe(Chromosome)
 	 */
 	@Override
-	public BainNN transcribe(Chromosome genotype) throws TranscriberException {
-		return newBainNN(genotype, null, null);
+	public NNAdaptor transcribe(Chromosome genotype) throws TranscriberException {
+		return transcribe(genotype, null, null);
 	}
 
 	@Override
-	public BainNN transcribe(Chromosome genotype, BainNN substrate) throws TranscriberException {
-		return newBainNN(genotype, substrate, null);
+	public NNAdaptor transcribe(Chromosome genotype, NNAdaptor substrate) throws TranscriberException {
+		return transcribe(genotype, substrate, null);
 	}
 	
 	@Override
-	public BainNN transcribe(Chromosome genotype, BainNN substrate, Map<String, Object> options) throws TranscriberException {
-		return newBainNN(genotype, substrate, options);
+	public NNAdaptor transcribe(Chromosome genotype, NNAdaptor substrate, Map<String, Object> options) throws TranscriberException {
+		if (sparseNetEnabled) {
+			return newSparseNet(genotype);
+		}
+		if (dense) {
+			return newDenseLayeredNet(genotype);
+		}
+		return newBainNN(genotype, substrate instanceof BainNN ? (BainNN) substrate : null, options);
 	}
 	
 	//static HashMap<Long, String> debug = new HashMap<Long, String>();
@@ -104,109 +288,80 @@ public class HyperNEATTranscriberBain extends HyperNEATTranscriberBainBase {
 		NeuronCollection neurons = null;
 		SynapseCollection synapses = null;
 		if (createNewPhenotype) {
-			String neuronModelClass = properties.getProperty(TranscriberAdaptor.SUBSTRATE_NEURON_MODEL, "com.ojcoleman.bain.neuron.rate.SigmoidNeuronCollection");
-			String synapseModelClass = properties.getProperty(TranscriberAdaptor.SUBSTRATE_SYNAPSE_MODEL, "com.ojcoleman.bain.synapse.rate.FixedSynapseCollection");
-			try {
-				neurons = BainNN.createNeuronCollection(neuronModelClass, neuronCount, enableBias, neuronTypesEnabled, neuronParamsEnabled);
-			} catch (Exception e) {
-				e.printStackTrace();
-				throw new TranscriberException("Error creating neurons for Bain neural network. Have you specified the name of the neuron collection class correctly, including the containing packages?", e);
-			}
-			try {
-				synapses = BainNN.createSynapseCollection(synapseModelClass, synapseCount, synapseTypesEnabled, synapseParamsEnabled, connectionWeightMin, connectionWeightMax);
-			} catch (Exception e) {
-				e.printStackTrace();
-				throw new TranscriberException("Error creating synapses for Bain neural network. Have you specified the name of the synapse collection class correctly, including the containing packages?", e);
+			neurons = createNeurons();
+			// For compacted substrates the synapses are created once the number of expressed synapses is known.
+			if (!compact) {
+				synapses = createSynapses(synapseCount);
 			}
 		} else {
 			neurons = substrate.getNeuralNetwork().getNeurons();
 			synapses = substrate.getNeuralNetwork().getSynapses();
 		}
-		double[] synapseWeights = synapses.getEfficacies();
-		double sumOfSquaredConnectionLengths = 0;
+		double sumOfSquaredConnectionLengths;
 		
-		int synapseIndex = 0;
+		// Use the precomputed CPPN input values if available.
+		CPPNInputTable neuronTable = neuronInputTable;
+		CPPNInputTable[] synapseTables = synapseInputTables;
 		
 		// query CPPN for substrate neuron parameters.
 		boolean[] neuronDisabled = new boolean[neuronCount];
-		for (int z = 0; z < depth; z++) {
-			for (int y = 0; y < height[z]; y++) {
-				for (int x = 0; x < width[z]; x++) {
-					cppn.resetSourceCoordinates();
-					cppn.setTargetCoordinatesFromGridIndices(x, y, z);
-					cppn.query();
-					
-					int bainNeuronIndex = getBainNeuronIndex(x, y, z);
-					int neuronType = cppn.getNeuronTypeIndex();
-					int outputIndex = layerEncodingIsInput ? neuronType : z;
-					
-					setNeuronParameters(neurons, bainNeuronIndex, cppn, createNewPhenotype);
-					
-					// Only allow disabling hidden neurons.
-					neuronDisabled[bainNeuronIndex] = z > 0 && z < depth-1 && !cppn.getNEO(outputIndex);
-					
-					// If substrate is null then this is set below after we create the initial substrate.
-					if (substrate != null) {
-						substrate.setNeuronDisabled(bainNeuronIndex, neuronDisabled[bainNeuronIndex]);
-					}
-				}
-			}
-		}
+		setNeurons(cppn, neurons, null, neuronDisabled, neuronTable, substrate, createNewPhenotype);
 		
 		// Query CPPN for substrate synapse parameters.
 		// Start at tz=1: don't allow connections to inputs.
-		for (int tz = 1; tz < depth; tz++) {
-			for (int ty = 0; ty < height[tz]; ty++) {
-				for (int tx = 0; tx < width[tz]; tx++) {
-					int bainNeuronIndexTarget = getBainNeuronIndex(tx, ty, tz);
-					
-					cppn.setTargetCoordinatesFromGridIndices(tx, ty, tz);
-					
-					// Iteration over layers for the source neuron is only used for recurrent networks.
-					for (int sz = (feedForward ? tz - 1 : 0); sz < (feedForward ? tz : depth); sz++) {
-						for (int sy = 0; sy < height[sz]; sy++) {
-							for (int sx = 0; sx < width[sz]; sx++) {
-								cppn.setSourceCoordinatesFromGridIndices(sx, sy, sz);
-								cppn.query();
-
-								int bainNeuronIndexSource = getBainNeuronIndex(sx, sy, sz);
-								int synapseType = cppn.getSynapseTypeIndex();
-								int outputIndex = layerEncodingIsInput ? synapseType : sz;
-								
-								synapses.setPreAndPostNeurons(synapseIndex, bainNeuronIndexSource, bainNeuronIndexTarget);
-								
-								// Synapse is disabled if the source and target are the same neuron, 
-								// or source or target neurons are disabled, or if the LEO specifies it.
-								boolean disabled = tz==sz && ty==sy && tx==sx || neuronDisabled[bainNeuronIndexTarget] || neuronDisabled[bainNeuronIndexSource] || !cppn.getLEO(outputIndex);
-								
-								// Determine weight for synapse from source to target.
-								synapseWeights[synapseIndex] = disabled ? 0 : cppn.getRangedWeight(outputIndex);
-								
-								// If we're not using LEO to explicitly enable synapses, then consider a synapse disabled if the weight is zero.
-								if (!enableLEO && synapseWeights[synapseIndex] == 0) {
-									disabled = true;
-								}
-								
-								setSynapseParameters(synapses, synapseIndex, cppn, disabled, createNewPhenotype);
-								
-								if (!disabled) {
-									sumOfSquaredConnectionLengths += cppn.getSynapseLength() * cppn.getSynapseLength();
-								}
-
-								/* The getBainSynapseIndex methods aren't used, and currently aren't correct.
-								if (feedForward) {
-									assert synapseIndex == getBainSynapseIndex(tx, ty, tz, sx, sy);
-								} else {
-									assert synapseIndex == getBainSynapseIndex(tx, ty, tz, sx, sy, sz);
-								}*/
-
-								synapseIndex++;
-							} // sx
-						} // sy
-					} // sz
-				} // tx
-			} // ty
-		} // tz
+		int threads = getConstructionThreadCount();
+		if (!compact) {
+			if (threads <= 1) {
+				sumOfSquaredConnectionLengths = setSynapses(cppn, synapses, null, neuronDisabled, synapseTables, createNewPhenotype, neuronLayerSize[0], neuronCount);
+			} else {
+				sumOfSquaredConnectionLengths = setSynapsesParallel(genotype, cppn, synapses, null, neuronDisabled, synapseTables, createNewPhenotype, threads);
+			}
+		} else {
+			// Record the expressed synapses, then copy them to the front of a synapse collection.
+			SynapseBuffer[] buffers = getSynapseBuffers(threads);
+			if (threads <= 1) {
+				sumOfSquaredConnectionLengths = setSynapses(cppn, null, buffers[0], neuronDisabled, synapseTables, false, neuronLayerSize[0], neuronCount);
+			} else {
+				sumOfSquaredConnectionLengths = setSynapsesParallel(genotype, cppn, null, buffers, neuronDisabled, synapseTables, false, threads);
+			}
+			int expressedCount = 0;
+			for (int t = 0; t < threads; t++) {
+				expressedCount += buffers[t].size;
+			}
+			// A Bain collection must contain at least one component, so if there are no expressed synapses a single
+			// unused synapse with zero weight is allocated.
+			int requiredSize = Math.max(1, expressedCount);
+			
+			if (!createNewPhenotype && synapses.getSize() < requiredSize) {
+				// The existing substrate can't hold the expressed synapses, create a new one (the existing one will be
+				// disposed of by the caller). The neurons of the existing substrate can't be shared with the new one.
+				substrate = null;
+				createNewPhenotype = true;
+				neurons = createNeurons();
+				setNeurons(cppn, neurons, null, neuronDisabled, neuronTable, substrate, createNewPhenotype);
+			}
+			if (createNewPhenotype) {
+				synapses = createSynapses(requiredSize);
+				logger.info("Allocated compacted substrate synapses for network " + genotype.getId() + ": " + expressedCount + " expressed of " + synapseCount + " possible synapses (" + percent(expressedCount, synapseCount) + ").");
+			}
+			
+			int synapseIndex = 0;
+			for (int t = 0; t < threads; t++) {
+				synapseIndex = copySynapses(buffers[t], synapses, synapseIndex, createNewPhenotype);
+			}
+			if (expressedCount == 0 && createNewPhenotype && (synapseTypesEnabled || synapseParamsEnabled)) {
+				// Give the unused synapse a configuration so that the collection may be reused.
+				synapses.addConfiguration(synapses.getConfigSingleton().createConfiguration());
+				synapses.setComponentConfiguration(0, 0);
+			}
+			// Zero the weights of synapses left over from a previous (larger) network.
+			Arrays.fill(synapses.getEfficacies(), expressedCount, synapses.getSize(), 0);
+			synapses.setSizePopulated(requiredSize);
+			
+			if (logger.isDebugEnabled()) {
+				logger.debug("Compacted substrate for network " + genotype.getId() + " has " + expressedCount + " expressed synapses, " + synapses.getSize() + " allocated (" + percent(expressedCount, synapses.getSize()) + "), " + synapseCount + " possible (" + percent(expressedCount, synapseCount) + ").");
+			}
+		}
 		synapses.setEfficaciesModified();
 		
 		// Remove unused synapses from simulation calculations.
@@ -276,27 +431,454 @@ public class HyperNEATTranscriberBain extends HyperNEATTranscriberBainBase {
 		return substrate;
 	}
 
+	/**
+	 * Create a new {@link SparseNet} from a genotype, see {@link TranscriberAdaptor#SUBSTRATE_SPARSE_NET}. Only the
+	 * expressed synapses are included, as for {@link #SUBSTRATE_COMPACT}.
+	 * 
+	 * @param genotype chromosome to transcribe
+	 * @throws TranscriberException
+	 */
+	public SparseNet newSparseNet(Chromosome genotype) throws TranscriberException {
+		CPPN cppn = new CPPN(genotype);
+		
+		double[] bias = new double[neuronCount];
+		boolean[] neuronDisabled = new boolean[neuronCount];
+		setNeurons(cppn, null, bias, neuronDisabled, neuronInputTable, null, false);
+		
+		int threads = getConstructionThreadCount();
+		SynapseBuffer[] buffers = getSynapseBuffers(threads);
+		double sumOfSquaredConnectionLengths;
+		if (threads <= 1) {
+			sumOfSquaredConnectionLengths = setSynapses(cppn, null, buffers[0], neuronDisabled, synapseInputTables, false, neuronLayerSize[0], neuronCount);
+		} else {
+			sumOfSquaredConnectionLengths = setSynapsesParallel(genotype, cppn, null, buffers, neuronDisabled, synapseInputTables, false, threads);
+		}
+		SynapseBuffer synapses = buffers[0];
+		if (threads > 1) {
+			// Combine the synapses for each range.
+			synapses = new SynapseBuffer(0);
+			for (int t = 0; t < threads; t++) {
+				for (int i = 0; i < buffers[t].size; i++) {
+					synapses.add(buffers[t].pre[i], buffers[t].post[i], buffers[t].weight[i], null, false);
+				}
+			}
+		}
+		
+		int[] outputDims = new int[] { width[depth - 1], height[depth - 1] };
+		int[] inputDims = new int[] { width[0], height[0] };
+		SparseNet substrate = new SparseNet(inputDims, outputDims, bias, synapses.pre, synapses.post, synapses.weight, synapses.size, sparseNetActivationFunction, feedForward ? BainNN.Topology.FEED_FORWARD_LAYERED : BainNN.Topology.RECURRENT, cyclesPerStep, "network " + genotype.getId());
+		substrate.setSumOfSquaredConnectionLengths(sumOfSquaredConnectionLengths);
+		substrate.enableCoords();
+		Point p = new Point();
+		for (int tz = 0; tz < depth; tz++) {
+			for (int ty = 0; ty < height[tz]; ty++) {
+				for (int tx = 0; tx < width[tz]; tx++) {
+					cppn.getCoordinatesForGridIndices(tx, ty, tz, p);
+					substrate.setCoords(getBainNeuronIndex(tx, ty, tz), p.x, p.y, p.z);
+				}
+			}
+		}
+		return substrate;
+	}
+
+	/**
+	 * Create a new {@link DenseLayeredNet} from a genotype, see {@link #SUBSTRATE_DENSE}.
+	 * 
+	 * @param genotype chromosome to transcribe
+	 * @throws TranscriberException if DenseLayeredNet substrates are not enabled or not applicable to the substrate.
+	 */
+	public DenseLayeredNet newDenseLayeredNet(Chromosome genotype) throws TranscriberException {
+		if (!dense) {
+			throw new TranscriberException("DenseLayeredNet substrates are not enabled or not applicable to the substrate, see " + SUBSTRATE_DENSE + ".");
+		}
+		CPPN cppn = new CPPN(genotype);
+		
+		double[] bias = new double[neuronCount];
+		boolean[] neuronDisabled = new boolean[neuronCount];
+		setNeurons(cppn, null, bias, neuronDisabled, neuronInputTable, null, false);
+		
+		int threads = getConstructionThreadCount();
+		SynapseBuffer[] buffers = getSynapseBuffers(threads);
+		double sumOfSquaredConnectionLengths;
+		if (threads <= 1) {
+			sumOfSquaredConnectionLengths = setSynapses(cppn, null, buffers[0], neuronDisabled, synapseInputTables, false, neuronLayerSize[0], neuronCount);
+		} else {
+			sumOfSquaredConnectionLengths = setSynapsesParallel(genotype, cppn, null, buffers, neuronDisabled, synapseInputTables, false, threads);
+		}
+		
+		double[][] layerWeights = new double[depth][];
+		double[][] layerBias = new double[depth][];
+		for (int l = 1; l < depth; l++) {
+			layerWeights[l] = new double[neuronLayerSize[l] * neuronLayerSize[l - 1]];
+			layerBias[l] = Arrays.copyOfRange(bias, bainIndexForNeuronLayer[l], bainIndexForNeuronLayer[l] + neuronLayerSize[l]);
+		}
+		// The synapses are ordered by target neuron and so by layer.
+		for (int t = 0; t < threads; t++) {
+			SynapseBuffer buffer = buffers[t];
+			int l = 1;
+			for (int i = 0; i < buffer.size; i++) {
+				while (buffer.post[i] >= bainIndexForNeuronLayer[l] + neuronLayerSize[l]) {
+					l++;
+				}
+				int target = buffer.post[i] - bainIndexForNeuronLayer[l];
+				int source = buffer.pre[i] - bainIndexForNeuronLayer[l - 1];
+				layerWeights[l][target * neuronLayerSize[l - 1] + source] = buffer.weight[i];
+			}
+		}
+		
+		int[] outputDims = new int[] { width[depth - 1], height[depth - 1] };
+		int[] inputDims = new int[] { width[0], height[0] };
+		DenseLayeredNet substrate = new DenseLayeredNet(inputDims, outputDims, neuronLayerSize.clone(), layerWeights, layerBias, denseActivationFunction, denseExecutor, denseThreads, "network " + genotype.getId());
+		substrate.setSumOfSquaredConnectionLengths(sumOfSquaredConnectionLengths);
+		substrate.enableCoords();
+		Point p = new Point();
+		for (int tz = 0; tz < depth; tz++) {
+			for (int ty = 0; ty < height[tz]; ty++) {
+				for (int tx = 0; tx < width[tz]; tx++) {
+					cppn.getCoordinatesForGridIndices(tx, ty, tz, p);
+					substrate.setCoords(getBainNeuronIndex(tx, ty, tz), p.x, p.y, p.z);
+				}
+			}
+		}
+		return substrate;
+	}
+
+	/**
+	 * Create a neuron collection for a new substrate.
+	 */
+	private NeuronCollection<?> createNeurons() throws TranscriberException {
+		String neuronModelClass = properties.getProperty(TranscriberAdaptor.SUBSTRATE_NEURON_MODEL, "com.ojcoleman.bain.neuron.rate.SigmoidNeuronCollection");
+		try {
+			return BainNN.createNeuronCollection(neuronModelClass, neuronCount, enableBias, neuronTypesEnabled, neuronParamsEnabled);
+		} catch (Exception e) {
+			e.printStackTrace();
+			throw new TranscriberException("Error creating neurons for Bain neural network. Have you specified the name of the neuron collection class correctly, including the containing packages?", e);
+		}
+	}
+
+	/**
+	 * Create a synapse collection of the given size for a new substrate.
+	 */
+	private SynapseCollection<?> createSynapses(int size) throws TranscriberException {
+		String synapseModelClass = properties.getProperty(TranscriberAdaptor.SUBSTRATE_SYNAPSE_MODEL, "com.ojcoleman.bain.synapse.rate.FixedSynapseCollection");
+		try {
+			return BainNN.createSynapseCollection(synapseModelClass, size, synapseTypesEnabled, synapseParamsEnabled, connectionWeightMin, connectionWeightMax);
+		} catch (Exception e) {
+			e.printStackTrace();
+			throw new TranscriberException("Error creating synapses for Bain neural network. Have you specified the name of the synapse collection class correctly, including the containing packages?", e);
+		}
+	}
+
+	/**
+	 * Query the CPPN for the parameters of all neurons and set them in the given collection, and determine which
+	 * neurons are disabled.
+	 * 
+	 * @param bias If neurons is null then the bias of each neuron is set in this array instead.
+	 * @param substrate If not null then the disabled state of the neurons is also set in this substrate.
+	 */
+	private void setNeurons(CPPN cppn, NeuronCollection<?> neurons, double[] bias, boolean[] neuronDisabled, CPPNInputTable neuronTable, BainNN substrate, boolean createNewPhenotype) {
+		if (neuronTable != null) {
+			cppn.queryBatch(neuronTable);
+		} else {
+			cppn.clearBatch();
+			addNeuronQueries(cppn);
+			cppn.queryBatch();
+		}
+		int batchIndex = 0;
+		for (int z = 0; z < depth; z++) {
+			for (int y = 0; y < height[z]; y++) {
+				for (int x = 0; x < width[z]; x++) {
+					cppn.selectBatchResult(batchIndex++);
+					
+					int bainNeuronIndex = getBainNeuronIndex(x, y, z);
+					int neuronType = cppn.getNeuronTypeIndex();
+					int outputIndex = layerEncodingIsInput ? neuronType : z;
+					
+					if (neurons != null) {
+						setNeuronParameters(neurons, bainNeuronIndex, cppn, createNewPhenotype);
+					} else if (enableBias) {
+						bias[bainNeuronIndex] = cppn.getRangedBiasWeight(neuronType);
+					}
+					
+					// Only allow disabling hidden neurons.
+					neuronDisabled[bainNeuronIndex] = z > 0 && z < depth-1 && !cppn.getNEO(outputIndex);
+					
+					// If substrate is null then this is set after we create the initial substrate.
+					if (substrate != null) {
+						substrate.setNeuronDisabled(bainNeuronIndex, neuronDisabled[bainNeuronIndex]);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return The given number of (cleared) synapse buffers for the current thread, see {@link #SUBSTRATE_COMPACT}.
+	 */
+	private SynapseBuffer[] getSynapseBuffers(int count) {
+		SynapseBuffer[] buffers = synapseBuffers.get();
+		if (buffers == null || buffers.length < count) {
+			SynapseBuffer[] newBuffers = new SynapseBuffer[count];
+			for (int i = 0; i < count; i++) {
+				newBuffers[i] = buffers != null && i < buffers.length ? buffers[i] : new SynapseBuffer(synapseParamNames.length);
+			}
+			buffers = newBuffers;
+			synapseBuffers.set(buffers);
+		}
+		for (int i = 0; i < count; i++) {
+			buffers[i].size = 0;
+		}
+		return buffers;
+	}
+
+	/**
+	 * Copy the synapses recorded in the given buffer to the given synapse collection, starting at the given index.
+	 * 
+	 * @return The index following the last synapse copied.
+	 */
+	private int copySynapses(SynapseBuffer buffer, SynapseCollection<?> synapses, int synapseIndex, boolean addNewConfig) {
+		double[] synapseWeights = synapses.getEfficacies();
+		boolean setParameters = synapseTypesEnabled || synapseParamsEnabled;
+		for (int i = 0; i < buffer.size; i++, synapseIndex++) {
+			synapses.setPreAndPostNeurons(synapseIndex, buffer.pre[i], buffer.post[i]);
+			synapseWeights[synapseIndex] = buffer.weight[i];
+			if (setParameters) {
+				setSynapseParameters(synapses, synapseIndex, buffer.type[i], buffer.params, i * buffer.paramCount, false, addNewConfig);
+			}
+		}
+		return synapseIndex;
+	}
+
+	private static String percent(int count, int total) {
+		return String.format("%.1f%%", 100.0 * count / total);
+	}
+
+	/**
+	 * @return The number of threads to use to construct the synapses of a substrate, see
+	 *         {@link #SUBSTRATE_CONSTRUCTION_THREADS}.
+	 */
+	private int getConstructionThreadCount() {
+		return Math.max(1, Math.min(constructionThreads, synapseCount / MIN_SYNAPSES_PER_THREAD));
+	}
+
+	/**
+	 * As for {@link #setSynapses(CPPN, SynapseCollection, SynapseBuffer, boolean[], CPPNInputTable[], boolean, int, int)}
+	 * for all target neurons, with the target neurons partitioned into the given number of ranges which are
+	 * constructed concurrently. The given CPPN is used for the first range and a new CPPN is created for each of the
+	 * others. If buffers is not null then the synapses for each range are recorded in the corresponding buffer.
+	 * 
+	 * @return The sum of the squared lengths of the enabled synapses.
+	 */
+	private double setSynapsesParallel(Chromosome genotype, CPPN cppn, final SynapseCollection<?> synapses, SynapseBuffer[] buffers, final boolean[] neuronDisabled, final CPPNInputTable[] synapseTables, final boolean createNewPhenotype, int threads) throws TranscriberException {
+		List<Callable<Double>> tasks = new ArrayList<Callable<Double>>(threads);
+		int fromTarget = neuronLayerSize[0];
+		for (int t = 0; t < threads; t++) {
+			// Find the first target neuron of the next range, the ranges have about the same number of synapses.
+			long toSynapse = (long) synapseCount * (t + 1) / threads;
+			int toTarget = fromTarget;
+			while (toTarget < neuronCount && bainIndexForFirstSynapse[toTarget] < toSynapse) {
+				toTarget++;
+			}
+			final CPPN rangeCPPN = t == 0 ? cppn : new CPPN(genotype);
+			final SynapseBuffer buffer = buffers != null ? buffers[t] : null;
+			final int from = fromTarget, to = toTarget;
+			tasks.add(new Callable<Double>() {
+				@Override
+				public Double call() {
+					return setSynapses(rangeCPPN, synapses, buffer, neuronDisabled, synapseTables, createNewPhenotype, from, to);
+				}
+			});
+			fromTarget = toTarget;
+		}
+		
+		double sumOfSquaredConnectionLengths = 0;
+		try {
+			for (Future<Double> result : constructionExecutor.invokeAll(tasks)) {
+				sumOfSquaredConnectionLengths += result.get();
+			}
+		} catch (InterruptedException e) {
+			throw new TranscriberException("Interrupted while constructing substrate.", e);
+		} catch (ExecutionException e) {
+			throw new TranscriberException("Error constructing substrate.", e.getCause());
+		}
+		return sumOfSquaredConnectionLengths;
+	}
+
+	/**
+	 * Query the CPPN for the synapses to the target neurons with Bain indices in the range [fromTarget, toTarget) and
+	 * set the synapses accordingly. Only the synapses to these neurons are modified, so this may be called for
+	 * disjoint ranges concurrently (with a different CPPN for each range). If buffer is not null then rather than
+	 * setting the synapses in a collection the enabled synapses are appended to the buffer (and synapses may be null).
+	 * 
+	 * @return The sum of the squared lengths of the enabled synapses.
+	 */
+	private double setSynapses(CPPN cppn, SynapseCollection<?> synapses, SynapseBuffer buffer, boolean[] neuronDisabled, CPPNInputTable[] synapseTables, boolean createNewPhenotype, int fromTarget, int toTarget) {
+		double[] synapseWeights = buffer == null ? synapses.getEfficacies() : null;
+		double sumOfSquaredConnectionLengths = 0;
+		int synapseIndex = bainIndexForFirstSynapse[fromTarget];
+		int range = getSourceRange();
+		for (int tz = 1; tz < depth; tz++) {
+			for (int ty = 0; ty < height[tz]; ty++) {
+				for (int tx = 0; tx < width[tz]; tx++) {
+					int bainNeuronIndexTarget = getBainNeuronIndex(tx, ty, tz);
+					if (bainNeuronIndexTarget < fromTarget || bainNeuronIndexTarget >= toTarget) {
+						continue;
+					}
+					
+					// Query the CPPN for all synapses to the target neuron in one batch.
+					if (synapseTables != null) {
+						cppn.queryBatch(synapseTables[bainNeuronIndexTarget]);
+					} else {
+						cppn.clearBatch();
+						addSynapseQueries(cppn, tx, ty, tz);
+						cppn.queryBatch();
+					}
+					int batchIndex = 0;
+					
+					// Iteration over layers for the source neuron is only used for recurrent networks.
+					// Only source neurons within the connection range (if set) are considered.
+					for (int sz = getFirstSourceLayer(tz); sz <= getLastSourceLayer(tz); sz++) {
+						for (int sy = Math.max(0, ty - range); sy <= Math.min(height[sz] - 1, ty + range); sy++) {
+							for (int sx = Math.max(0, tx - range); sx <= Math.min(width[sz] - 1, tx + range); sx++) {
+								cppn.selectBatchResult(batchIndex++);
+
+								int bainNeuronIndexSource = getBainNeuronIndex(sx, sy, sz);
+								int synapseType = cppn.getSynapseTypeIndex();
+								int outputIndex = layerEncodingIsInput ? synapseType : sz;
+								
+								// Synapse is disabled if the source and target are the same neuron, 
+								// or source or target neurons are disabled, or if the LEO specifies it.
+								boolean disabled = tz==sz && ty==sy && tx==sx || neuronDisabled[bainNeuronIndexTarget] || neuronDisabled[bainNeuronIndexSource] || !cppn.getLEO(outputIndex);
+								
+								// Determine weight for synapse from source to target.
+								double weight = disabled ? 0 : cppn.getRangedWeight(outputIndex);
+								
+								// If we're not using LEO to explicitly enable synapses, then consider a synapse disabled if the weight is zero.
+								if (!enableLEO && weight == 0) {
+									disabled = true;
+								}
+								
+								if (buffer == null) {
+									synapses.setPreAndPostNeurons(synapseIndex, bainNeuronIndexSource, bainNeuronIndexTarget);
+									synapseWeights[synapseIndex] = weight;
+									setSynapseParameters(synapses, synapseIndex, cppn, disabled, createNewPhenotype);
+								} else if (!disabled) {
+									buffer.add(bainNeuronIndexSource, bainNeuronIndexTarget, weight, cppn, synapseTypesEnabled || synapseParamsEnabled);
+								}
+								
+								if (!disabled) {
+									sumOfSquaredConnectionLengths += cppn.getSynapseLength() * cppn.getSynapseLength();
+								}
+
+								/* The getBainSynapseIndex methods aren't used, and currently aren't correct.
+								if (feedForward) {
+									assert synapseIndex == getBainSynapseIndex(tx, ty, tz, sx, sy);
+								} else {
+									assert synapseIndex == getBainSynapseIndex(tx, ty, tz, sx, sy, sz);
+								}*/
+
+								synapseIndex++;
+							} // sx
+						} // sy
+					} // sz
+				} // tx
+			} // ty
+		} // tz
+		return sumOfSquaredConnectionLengths;
+	}
+
+	/**
+	 * Add queries for the parameters of every neuron to the current batch for the given CPPN, in the order of the
+	 * neuron indices.
+	 */
+	private void addNeuronQueries(CPPN cppn) {
+		cppn.resetSourceCoordinates();
+		for (int z = 0; z < depth; z++) {
+			for (int y = 0; y < height[z]; y++) {
+				for (int x = 0; x < width[z]; x++) {
+					cppn.setTargetCoordinatesFromGridIndices(x, y, z);
+					cppn.addToBatch();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Add queries for every synapse to the given target neuron to the current batch for the given CPPN, in the order
+	 * the synapses are created.
+	 */
+	private void addSynapseQueries(CPPN cppn, int tx, int ty, int tz) {
+		cppn.setTargetCoordinatesFromGridIndices(tx, ty, tz);
+		int range = getSourceRange();
+		for (int sz = getFirstSourceLayer(tz); sz <= getLastSourceLayer(tz); sz++) {
+			for (int sy = Math.max(0, ty - range); sy <= Math.min(height[sz] - 1, ty + range); sy++) {
+				for (int sx = Math.max(0, tx - range); sx <= Math.min(width[sz] - 1, tx + range); sx++) {
+					cppn.setSourceCoordinatesFromGridIndices(sx, sy, sz);
+					cppn.addToBatch();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Compute the CPPN input values for all queries into the substrate, if within the limit set by
+	 * {@link HyperNEATTranscriber#HYPERNEAT_CPPN_INPUT_TABLE_MAX}.
+	 */
+	private void buildInputTables() {
+		neuronInputTable = null;
+		synapseInputTables = null;
+		if (!cppnInputTablesAllowed((long) neuronCount + synapseCount)) {
+			logger.info("Not precomputing CPPN input values as the tables would exceed the size limit (see " + HYPERNEAT_CPPN_INPUT_TABLE_MAX + ").");
+			return;
+		}
+		CPPN cppn = new CPPN();
+		cppn.clearBatch();
+		addNeuronQueries(cppn);
+		CPPNInputTable neuronTable = cppn.getBatchInputTable();
+		CPPNInputTable[] synapseTables = new CPPNInputTable[neuronCount];
+		for (int tz = 1; tz < depth; tz++) {
+			for (int ty = 0; ty < height[tz]; ty++) {
+				for (int tx = 0; tx < width[tz]; tx++) {
+					cppn.clearBatch();
+					addSynapseQueries(cppn, tx, ty, tz);
+					synapseTables[getBainNeuronIndex(tx, ty, tz)] = cppn.getBatchInputTable();
+				}
+			}
+		}
+		synapseInputTables = synapseTables;
+		neuronInputTable = neuronTable;
+	}
+
 	@Override
 	public void resize(int[] width, int[] height, int connectionRange) {
-		this.width = width;
-		this.height = height;
+		super.resize(width, height, connectionRange);
 		neuronCount = 0;
-		synapseCount = 0;
 		for (int l = 0; l < depth; l++) {
 			neuronLayerSize[l] = height[l] * width[l];
 			bainIndexForNeuronLayer[l] = neuronCount;
 			neuronCount += neuronLayerSize[l];
-			if (l > 0 && feedForward) {
-				ffSynapseLayerSize[l - 1] = neuronLayerSize[l - 1] * neuronLayerSize[l];
-				bainIndexForFFSynapseLayer[l - 1] = synapseCount;
-				synapseCount += ffSynapseLayerSize[l - 1];
+		}
+		// Feed forward networks have connections from each layer to the next, recurrent networks have connections 
+		// between all neurons except connections going to the input layer (including connections amongst the input
+		// layer). If the connection range is set then only connections from source neurons within the range of the
+		// target neuron are included.
+		bainIndexForFirstSynapse = new int[neuronCount + 1];
+		long count = 0;
+		for (int tz = 1; tz < depth; tz++) {
+			for (int ty = 0; ty < height[tz]; ty++) {
+				for (int tx = 0; tx < width[tz]; tx++) {
+					bainIndexForFirstSynapse[getBainNeuronIndex(tx, ty, tz)] = (int) count;
+					count += getSourceCount(tx, ty, tz);
+				}
 			}
 		}
-		if (!feedForward) {
-			// All possible connections between all neurons except connections going to the input layer 
-			// (including connections amongst the input layer).
-			synapseCount = neuronCount * (neuronCount - neuronLayerSize[0]);
+		if (count > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("The substrate would have " + count + " synapses, which exceeds the maximum of " + Integer.MAX_VALUE + ". Try reducing " + HYPERNEAT_CONNECTION_RANGE + ".");
 		}
+		synapseCount = (int) count;
+		bainIndexForFirstSynapse[neuronCount] = synapseCount;
+		buildInputTables();
+		updateDense();
 	}
 
 	/**
@@ -304,7 +886,10 @@ public class HyperNEATTranscriberBain extends HyperNEATTranscriberBainBase {
 	 */
 	@Override
 	public Class getPhenotypeClass() {
-		return NeuralNetwork.class;
+		if (sparseNetEnabled) {
+			return SparseNet.class;
+		}
+		return dense ? DenseLayeredNet.class : NeuralNetwork.class;
 	}
 
 	/**
@@ -318,6 +903,43 @@ public class HyperNEATTranscriberBain extends HyperNEATTranscriberBainBase {
 		return bainIndexForNeuronLayer[z] + y * width[z] + x;
 	}
 
+	/**
+	 * @return The range of source neurons, in grid indices along each axis, that connect to a target neuron, see
+	 *         {@link HyperNEATTranscriber#HYPERNEAT_CONNECTION_RANGE}.
+	 */
+	private int getSourceRange() {
+		return connectionRange == -1 ? Integer.MAX_VALUE / 4 : connectionRange;
+	}
+
+	/**
+	 * @return The first layer containing source neurons for target neurons in the given layer.
+	 */
+	private int getFirstSourceLayer(int tz) {
+		return feedForward ? tz - 1 : Math.max(0, tz - getSourceRange());
+	}
+
+	/**
+	 * @return The last layer containing source neurons for target neurons in the given layer.
+	 */
+	private int getLastSourceLayer(int tz) {
+		return feedForward ? tz - 1 : Math.min(depth - 1, tz + getSourceRange());
+	}
+
+	/**
+	 * @return The number of source neurons, and so synapses, for the target neuron at the given location.
+	 */
+	private long getSourceCount(int tx, int ty, int tz) {
+		int range = getSourceRange();
+		long count = 0;
+		for (int sz = getFirstSourceLayer(tz); sz <= getLastSourceLayer(tz); sz++) {
+			// The range may not overlap a smaller source layer at all.
+			long dy = Math.max(0, Math.min(height[sz] - 1, ty + range) - Math.max(0, ty - range) + 1);
+			long dx = Math.max(0, Math.min(width[sz] - 1, tx + range) - Math.max(0, tx - range) + 1);
+			count += dy * dx;
+		}
+		return count;
+	}
+
 	/**
 	 * For feed forward networks, get the index of the synapse in the Bain networks SynapseCollection connecting the
 	 * neurons at the given location. The layer the source neuron is in is given by tz-1 and so need not be specified.
@@ -347,4 +969,50 @@ public class HyperNEATTranscriberBain extends HyperNEATTranscriberBainBase {
 	//public int getBainSynapseIndex(int tx, int ty, int tz, int sx, int sy, int sz) {
 	//	return getBainNeuronIndex(tx, ty, tz) * neuronCount + getBainNeuronIndex(sx, sy, sz);
 	//}
+
+	/**
+	 * Records the expressed synapses of a substrate, see {@link #SUBSTRATE_COMPACT}. The arrays grow as required and
+	 * are reused for subsequent substrates.
+	 */
+	private static class SynapseBuffer {
+		final int paramCount;
+		int size;
+		int[] pre = new int[1024];
+		int[] post = new int[1024];
+		double[] weight = new double[1024];
+		int[] type;
+		double[] params;
+
+		SynapseBuffer(int paramCount) {
+			this.paramCount = paramCount;
+		}
+
+		/**
+		 * Append a synapse. If recordParameters is true then the synapse type and parameter values given by the
+		 * (queried) CPPN are recorded.
+		 */
+		void add(int preIndex, int postIndex, double synapseWeight, CPPN cppn, boolean recordParameters) {
+			if (size == pre.length) {
+				int capacity = pre.length * 2;
+				pre = Arrays.copyOf(pre, capacity);
+				post = Arrays.copyOf(post, capacity);
+				weight = Arrays.copyOf(weight, capacity);
+			}
+			pre[size] = preIndex;
+			post[size] = postIndex;
+			weight[size] = synapseWeight;
+			if (recordParameters) {
+				if (type == null || type.length < pre.length) {
+					type = type == null ? new int[pre.length] : Arrays.copyOf(type, pre.length);
+					params = params == null ? new double[pre.length * paramCount] : Arrays.copyOf(params, pre.length * paramCount);
+				}
+				int synapseType = cppn.getSynapseTypeIndex();
+				type[size] = synapseType;
+				for (int p = 0; p < paramCount; p++) {
+					params[size * paramCount + p] = cppn.getRangedSynapseParam(synapseType, p);
+				}
+			}
+			size++;
+		}
+	}
 }
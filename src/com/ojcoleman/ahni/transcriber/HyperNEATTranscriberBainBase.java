@@ -6,16 +6,17 @@ import com.ojcoleman.bain.base.SynapseCollection;
 import com.ojcoleman.bain.base.SynapseConfiguration;
 import com.ojcoleman.bain.neuron.rate.NeuronCollectionWithBias;
 
-import com.ojcoleman.ahni.nn.BainNN;
+import com.ojcoleman.ahni.nn.NNAdaptor;
 import com.ojcoleman.ahni.util.Point;
 
 /**
- * Base class for HyperNEAT-based transcribers that create BainNN neural network phenotypes. Includes a few useful
- * methods for setting parameters for BainNN neurons and synapses.
+ * Base class for HyperNEAT-based transcribers that create BainNN (or SparseNet, see
+ * {@link TranscriberAdaptor#SUBSTRATE_SPARSE_NET}) neural network phenotypes. Includes a few useful methods for setting
+ * parameters for BainNN neurons and synapses.
  * 
  * @author Oliver Coleman
  */
-public abstract class HyperNEATTranscriberBainBase extends HyperNEATTranscriber<BainNN> {
+public abstract class HyperNEATTranscriberBainBase extends HyperNEATTranscriber<NNAdaptor> {
 	/**
 	 * Set the parameters for a neuron, specifying the neuron coordinates directly (see
 	 * {@link HyperNEATTranscriber.CPPN#setTargetCoordinates(double, double, double)}).
@@ -77,6 +78,24 @@ public abstract class HyperNEATTranscriberBainBase extends HyperNEATTranscriber<
 		}
 	}
 	
+	/**
+	 * Get the bias for a neuron, specifying the neuron coordinates with a Point (see
+	 * {@link HyperNEATTranscriber.CPPN#setTargetCoordinates(Point)}).
+	 * 
+	 * @param point The coordinates for the neuron.
+	 * @param cppn The CPPN to use to generate the bias value for the given neuron.
+	 * @return The bias, or 0 if bias is not enabled.
+	 */
+	protected double getNeuronBias(Point point, CPPN cppn) {
+		if (!enableBias) {
+			return 0;
+		}
+		cppn.setTargetCoordinates(point);
+		cppn.resetSourceCoordinates();
+		cppn.query();
+		return cppn.getRangedBiasWeight(cppn.getNeuronTypeIndex());
+	}
+	
 	/**
 	 * Set the parameters for a neuron. NOTE: It is assumed that the source and target coordinates have already been
 	 * set for the CPPN and that {@link HyperNEATTranscriber.CPPN#query()} or one of the other query methods has been called.
@@ -132,32 +151,52 @@ public abstract class HyperNEATTranscriberBainBase extends HyperNEATTranscriber<
 	 */
 	public void setSynapseParameters(SynapseCollection synapses, int bainIndex, CPPN cppn, boolean disabled, boolean addNewConfig) {
 		if (synapseParamsEnabled || synapseTypesEnabled) {
-			int synapseType = cppn.getSynapseTypeIndex();
-			
-			// Each synapse has its own configuration object.
-			SynapseConfiguration c = (SynapseConfiguration) (addNewConfig ? synapses.getConfigSingleton().createConfiguration() : synapses.getComponentConfiguration(bainIndex));
-			c.minimumEfficacy = connectionWeightMin;
-			c.maximumEfficacy = connectionWeightMax;
-			
-			if (synapseTypesEnabled) {
-				c.setParameterValue(synapseModelTypeParam, synapseModelTypes[synapseType], true);
-			}
+			setSynapseParameters(synapses, bainIndex, cppn.getSynapseTypeIndex(), cppn, null, 0, disabled, addNewConfig);
+		}
+	}
 	
-			// Set parameters for the config.
-			for (int p = 0; p < synapseParamNames.length; p++) {
-				double v = cppn.getRangedSynapseParam(synapseType, p);
-				c.setParameterValue(synapseParamNames[p], v, true);
-			}
-			if (synapseDisableParamName != null && disabled) {
-				c.setParameterValue(synapseDisableParamName, 0, true);
-			}
-			
-			if (addNewConfig) {
-				// Add the configuration to the synapse collection.
-				synapses.addConfiguration(c);
-				// Set the current synapse to use the new configuration.
-				synapses.setComponentConfiguration(bainIndex, bainIndex);
-			}
+	/**
+	 * Set the parameters for a synapse from previously recorded CPPN output values.
+	 * 
+	 * @param synapses The synapse collection to set parameters for.
+	 * @param bainIndex The index into the synapse collection to specify the synapse to set parameters for.
+	 * @param synapseType The synapse type index, as given by {@link HyperNEATTranscriber.CPPN#getSynapseTypeIndex()}.
+	 * @param params An array containing the parameter values, as given by {@link HyperNEATTranscriber.CPPN#getRangedSynapseParam(int, int)}.
+	 * @param paramsOffset The index in params of the value for the first parameter.
+	 * @param disabled Whether the synapse should be disabled (by setting the parameter specified by {@link #synapseDisableParamName} to 0).
+	 * @param addNewConfig Whether to add a new configuration object to the synapse collection (Set to TRUE if creating a new synapse collection).
+	 */
+	public void setSynapseParameters(SynapseCollection<?> synapses, int bainIndex, int synapseType, double[] params, int paramsOffset, boolean disabled, boolean addNewConfig) {
+		if (synapseParamsEnabled || synapseTypesEnabled) {
+			setSynapseParameters(synapses, bainIndex, synapseType, null, params, paramsOffset, disabled, addNewConfig);
+		}
+	}
+	
+	@SuppressWarnings("rawtypes")
+	private void setSynapseParameters(SynapseCollection synapses, int bainIndex, int synapseType, CPPN cppn, double[] params, int paramsOffset, boolean disabled, boolean addNewConfig) {
+		// Each synapse has its own configuration object.
+		SynapseConfiguration c = (SynapseConfiguration) (addNewConfig ? synapses.getConfigSingleton().createConfiguration() : synapses.getComponentConfiguration(bainIndex));
+		c.minimumEfficacy = connectionWeightMin;
+		c.maximumEfficacy = connectionWeightMax;
+		
+		if (synapseTypesEnabled) {
+			c.setParameterValue(synapseModelTypeParam, synapseModelTypes[synapseType], true);
+		}
+
+		// Set parameters for the config.
+		for (int p = 0; p < synapseParamNames.length; p++) {
+			double v = cppn != null ? cppn.getRangedSynapseParam(synapseType, p) : params[paramsOffset + p];
+			c.setParameterValue(synapseParamNames[p], v, true);
+		}
+		if (synapseDisableParamName != null && disabled) {
+			c.setParameterValue(synapseDisableParamName, 0, true);
+		}
+		
+		if (addNewConfig) {
+			// Add the configuration to the synapse collection.
+			synapses.addConfiguration(c);
+			// Set the current synapse to use the new configuration.
+			synapses.setComponentConfiguration(bainIndex, bainIndex);
 		}
 	}
 }
@@ -35,6 +35,11 @@ public class HyperNEATTranscriberGridNet extends HyperNEATTranscriber {
 
 	private ActivationFunction activationFunction;
 	private boolean layerEncodingIsInput = false;
+	/**
+	 * Precomputed CPPN input values for the queries for each target neuron, indexed by [layer - 1][y][x], or null if
+	 * not used.
+	 */
+	private volatile CPPNInputTable[][][] inputTables;
 
 	public HyperNEATTranscriberGridNet() {
 	}
@@ -46,6 +51,13 @@ public class HyperNEATTranscriberGridNet extends HyperNEATTranscriber {
 	public void init(com.ojcoleman.ahni.hyperneat.Properties props) {
 		super.init(props);
 		activationFunction = ActivationFunctionFactory.getInstance().get(props.getProperty(HYPERNEAT_ACTIVATION_FUNCTION_KEY));
+		buildInputTables();
+	}
+
+	@Override
+	public void resize(int[] width, int[] height, int connectionRange) {
+		super.resize(width, height, connectionRange);
+		buildInputTables();
 	}
 
 	/**
@@ -70,6 +82,8 @@ public class HyperNEATTranscriberGridNet extends HyperNEATTranscriber {
 		CPPN cppn = new CPPN(genotype);
 
 		int connectionRange = this.connectionRange == -1 ? Integer.MAX_VALUE / 4 : this.connectionRange;
+		// Use the precomputed CPPN input values if available.
+		CPPNInputTable[][][] tables = inputTables;
 
 		double[][][][][][] weights;
 		double[][][] bias;
@@ -97,12 +111,18 @@ public class HyperNEATTranscriberGridNet extends HyperNEATTranscriber {
 			for (int tz = 1; tz < depth; tz++) {
 				for (int ty = 0; ty < height[tz]; ty++) {
 					for (int tx = 0; tx < width[tz]; tx++) {
-						cppn.setTargetCoordinatesFromGridIndices(tx, ty, tz);
+						// calculate dimensions of this weight target matrix
+						// (bounded by grid edges)
+						int dy = Math.min(height[tz - 1] - 1, ty + connectionRange) - Math.max(0, ty - connectionRange) + 1;
+						int dx = Math.min(width[tz - 1] - 1, tx + connectionRange) - Math.max(0, tx - connectionRange) + 1;
+
+						// Query the CPPN for the bias and all connections to the target neuron in one batch.
+						queryBatch(cppn, tables, tx, ty, tz, connectionRange);
+						int batchIndex = 0;
 
 						// bias
 						if (enableBias) {
-							cppn.setSourceCoordinatesFromGridIndices(tx, ty, tz);
-							cppn.query();
+							cppn.selectBatchResult(batchIndex++);
 							int cppnOutputIndex = layerEncodingIsInput ? 0 : tz-1;
 							bias[tz - 1][ty][tx] = cppn.getRangedBiasWeight(cppnOutputIndex);
 									
@@ -121,11 +141,6 @@ public class HyperNEATTranscriberGridNet extends HyperNEATTranscriber {
 							*/
 						}
 
-						// calculate dimensions of this weight target matrix
-						// (bounded by grid edges)
-						int dy = Math.min(height[tz - 1] - 1, ty + connectionRange) - Math.max(0, ty - connectionRange) + 1;
-						int dx = Math.min(width[tz - 1] - 1, tx + connectionRange) - Math.max(0, tx - connectionRange) + 1;
-
 						// if (createNewPhenotype)
 						// System.out.println(tz + "," + ty + "," + tx + "  dy = " + dy + "  dx = " + dx);
 
@@ -142,9 +157,7 @@ public class HyperNEATTranscriberGridNet extends HyperNEATTranscriber {
 						// s{y,x} is index of source neuron
 						for (int wy = 0, sy = Math.max(0, ty - connectionRange); wy < dy; wy++, sy++) {
 							for (int wx = 0, sx = Math.max(0, tx - connectionRange); wx < dx; wx++, sx++) {
-								cppn.setSourceCoordinatesFromGridIndices(sx, sy, tz-1);
-
-								cppn.query();
+								cppn.selectBatchResult(batchIndex++);
 
 								// Determine weight for synapse from source to target.
 								int cppnOutputIndex = layerEncodingIsInput ? 0 : tz-1;
@@ -216,8 +229,6 @@ public class HyperNEATTranscriberGridNet extends HyperNEATTranscriber {
 			for (int tz = 1; tz < depth; tz++) {
 				for (int ty = 0; ty < height[tz]; ty++) {
 					for (int tx = 0; tx < width[tz]; tx++) {
-						cppn.setTargetCoordinatesFromGridIndices(tx, ty, tz);
-
 						// calculate dimensions of this weight matrix (bounded by grid edges)
 						int dz = Math.min(depth - 1, tz + connectionRange) - Math.max(1, tz - connectionRange) + 1; // no
 																													// connections
@@ -233,15 +244,17 @@ public class HyperNEATTranscriberGridNet extends HyperNEATTranscriber {
 						weights[tz - 1][ty][tx] = new double[dz][dy][dx];
 						double[][][] w = weights[tz - 1][ty][tx];
 
+						// Query the CPPN for all connections to the target neuron in one batch.
+						queryBatch(cppn, tables, tx, ty, tz, connectionRange);
+						int batchIndex = 0;
+
 						// for each connection to t{zyx}
 						// w{z,y,x} is index into weight matrix
 						// s{z,y,x} is index of source neuron
 						for (int wz = 0, sz = Math.max(1, tz - connectionRange); wz < dz; wz++, sz++) {
 							for (int wy = 0, sy = Math.max(0, ty - connectionRange); wy < dy; wy++, sy++) {
 								for (int wx = 0, sx = Math.max(0, tx - connectionRange); wx < dx; wx++, sx++) {
-									cppn.setSourceCoordinatesFromGridIndices(sx, sy, sz);
-
-									cppn.query();
+									cppn.selectBatchResult(batchIndex++);
 
 									// weight
 									double weightVal = Math.min(connectionWeightMax, Math.max(connectionWeightMin, cppn.getWeight()));
@@ -297,6 +310,85 @@ public class HyperNEATTranscriberGridNet extends HyperNEATTranscriber {
 		return phenotype;
 	}
 
+	/**
+	 * Query the given CPPN in one batch for the bias (for feed-forward substrates, if enabled) and all connections to
+	 * the given target neuron, using the precomputed input values if available.
+	 */
+	@SuppressWarnings("rawtypes")
+	private void queryBatch(CPPN cppn, CPPNInputTable[][][] tables, int tx, int ty, int tz, int connectionRange) {
+		if (tables != null) {
+			cppn.queryBatch(tables[tz - 1][ty][tx]);
+		} else {
+			cppn.clearBatch();
+			addQueries(cppn, tx, ty, tz, connectionRange);
+			cppn.queryBatch();
+		}
+	}
+
+	/**
+	 * Add the queries for the given target neuron to the current batch for the given CPPN, see
+	 * {@link #queryBatch(CPPN, CPPNInputTable[][][], int, int, int, int)}.
+	 */
+	@SuppressWarnings("rawtypes")
+	private void addQueries(CPPN cppn, int tx, int ty, int tz, int connectionRange) {
+		cppn.setTargetCoordinatesFromGridIndices(tx, ty, tz);
+		if (feedForward) {
+			int dy = Math.min(height[tz - 1] - 1, ty + connectionRange) - Math.max(0, ty - connectionRange) + 1;
+			int dx = Math.min(width[tz - 1] - 1, tx + connectionRange) - Math.max(0, tx - connectionRange) + 1;
+			if (enableBias) {
+				cppn.setSourceCoordinatesFromGridIndices(tx, ty, tz);
+				cppn.addToBatch();
+			}
+			for (int wy = 0, sy = Math.max(0, ty - connectionRange); wy < dy; wy++, sy++) {
+				for (int wx = 0, sx = Math.max(0, tx - connectionRange); wx < dx; wx++, sx++) {
+					cppn.setSourceCoordinatesFromGridIndices(sx, sy, tz - 1);
+					cppn.addToBatch();
+				}
+			}
+		} else {
+			int dz = Math.min(depth - 1, tz + connectionRange) - Math.max(1, tz - connectionRange) + 1;
+			int dy = Math.min(height[tz] - 1, ty + connectionRange) - Math.max(0, ty - connectionRange) + 1;
+			int dx = Math.min(width[tz] - 1, tx + connectionRange) - Math.max(0, tx - connectionRange) + 1;
+			for (int wz = 0, sz = Math.max(1, tz - connectionRange); wz < dz; wz++, sz++) {
+				for (int wy = 0, sy = Math.max(0, ty - connectionRange); wy < dy; wy++, sy++) {
+					for (int wx = 0, sx = Math.max(0, tx - connectionRange); wx < dx; wx++, sx++) {
+						cppn.setSourceCoordinatesFromGridIndices(sx, sy, sz);
+						cppn.addToBatch();
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Compute the CPPN input values for all queries into the substrate, if within the limit set by
+	 * {@link HyperNEATTranscriber#HYPERNEAT_CPPN_INPUT_TABLE_MAX}.
+	 */
+	@SuppressWarnings("rawtypes")
+	private void buildInputTables() {
+		inputTables = null;
+		int connectionRange = this.connectionRange == -1 ? Integer.MAX_VALUE / 4 : this.connectionRange;
+		long queryCount = 0;
+		CPPN cppn = new CPPN();
+		CPPNInputTable[][][] tables = new CPPNInputTable[depth - 1][][];
+		for (int tz = 1; tz < depth; tz++) {
+			tables[tz - 1] = new CPPNInputTable[height[tz]][width[tz]];
+			for (int ty = 0; ty < height[tz]; ty++) {
+				for (int tx = 0; tx < width[tz]; tx++) {
+					cppn.clearBatch();
+					addQueries(cppn, tx, ty, tz, connectionRange);
+					queryCount += cppn.getBatchSize();
+					if (!cppnInputTablesAllowed(queryCount)) {
+						logger.info("Not precomputing CPPN input values as the tables would exceed the size limit (see " + HYPERNEAT_CPPN_INPUT_TABLE_MAX + ").");
+						return;
+					}
+					tables[tz - 1][ty][tx] = cppn.getBatchInputTable();
+				}
+			}
+		}
+		inputTables = tables;
+	}
+
 	/**
 	 * @see com.anji.integration.Transcriber#getPhenotypeClass()
 	 */
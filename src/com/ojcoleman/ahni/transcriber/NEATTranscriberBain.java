@@ -19,6 +19,7 @@ import com.ojcoleman.bain.base.SynapseConfiguration;
 import com.ojcoleman.bain.neuron.rate.NeuronCollectionWithBias;
 
 import org.apache.log4j.Logger;
+import org.jgapcustomised.Allele;
 import org.jgapcustomised.BulkFitnessFunction;
 import org.jgapcustomised.Chromosome;
 
@@ -39,6 +40,7 @@ import com.ojcoleman.ahni.hyperneat.HyperNEATEvolver;
 import com.ojcoleman.ahni.hyperneat.Properties;
 import com.ojcoleman.ahni.nn.BainNN;
 import com.ojcoleman.ahni.nn.NNAdaptor;
+import com.ojcoleman.ahni.nn.SparseNet;
 
 /**
  * <p>
@@ -56,7 +58,7 @@ import com.ojcoleman.ahni.nn.NNAdaptor;
  * 
  * @author Oliver Coleman
  */
-public class NEATTranscriberBain extends TranscriberAdaptor<BainNN> implements Configurable {
+public class NEATTranscriberBain extends TranscriberAdaptor<NNAdaptor> implements Configurable {
 	private final static Logger logger = Logger.getLogger(NEATTranscriberBain.class);
 
 	/**
@@ -125,16 +127,16 @@ public class NEATTranscriberBain extends TranscriberAdaptor<BainNN> implements C
 	/**
 	 * @see Transcriber#transcribe(Chromosome)
 	 */
-	public BainNN transcribe(Chromosome genotype) throws TranscriberException {
-		return newBainNN(genotype);
+	public NNAdaptor transcribe(Chromosome genotype) throws TranscriberException {
+		return sparseNetEnabled ? newSparseNet(genotype) : newBainNN(genotype);
 	}
 
 	/**
 	 * @see Transcriber#transcribe(Chromosome, Activator) Note: this method has been added to conform with the
 	 *      Transcriber interface, but does not use the substrate argument for performance gains.
 	 */
-	public BainNN transcribe(Chromosome genotype, BainNN substrate) throws TranscriberException {
-		return newBainNN(genotype);
+	public NNAdaptor transcribe(Chromosome genotype, NNAdaptor substrate) throws TranscriberException {
+		return transcribe(genotype);
 	}
 
 	/**
@@ -198,10 +200,95 @@ public class NEATTranscriberBain extends TranscriberAdaptor<BainNN> implements C
 		}
 
 		// Connections.
+		List<ConnectionAllele> connAlleles = getOrderedConnectionAlleles(genotype, remainingConnAlleles, outputInnoIDs);
+		for (int bainConnectionID = 0; bainConnectionID < connAlleles.size(); bainConnectionID++) {
+			ConnectionAllele connAllele = connAlleles.get(bainConnectionID);
+			int src = allNeurons.get(connAllele.getSrcNeuronId());
+			int dest = allNeurons.get(connAllele.getDestNeuronId());
+			synapses.setPreAndPostNeurons(bainConnectionID, src, dest);
+			synapses.setEfficacy(bainConnectionID, connAllele.getWeight());
+		}
+
+		BainNN.Topology topology = getTopology();
+		// For feed-forward networks the number of activation cycles is calculated by BainNN.
+		int cyclesPerStep = topology == BainNN.Topology.RECURRENT ? props.getIntProperty(RECURRENT_CYCLES_KEY, 1) : 0;
+
+		int simRes = props.getIntProperty(BainNN.SUBSTRATE_SIMULATION_RESOLUTION, 1000);
+		// If feed-forward, cycles per step is depth-1.
+		String execModeName = props.getProperty(BainNN.SUBSTRATE_EXECUTION_MODE, null);
+		Kernel.EXECUTION_MODE execMode = execModeName == null ? null : Kernel.EXECUTION_MODE.valueOf(execModeName);
+		NeuralNetwork nn = new NeuralNetwork(simRes, neurons, synapses, execMode);
+		int[] inputDims = new int[] { inputNeuronAlleles.size() };
+		int[] outputDims = new int[] { outputNeuronAlleles.size() };
+		try {
+			return new BainNN(nn, inputDims, outputDims, cyclesPerStep, topology, "network " + genotype.getId(), 1000);
+		} catch (Exception e) {
+			throw new TranscriberException(e);
+		}
+	}
+
+	/**
+	 * Create a new {@link SparseNet} from <code>genotype</code>. The neurons and synapses are ordered in the same way as
+	 * for {@link #newBainNN(Chromosome)}, so the resulting network produces the same output as the equivalent Bain
+	 * network using a sigmoid or clamped linear neuron model (see {@link TranscriberAdaptor#SUBSTRATE_SPARSE_NET}).
+	 * 
+	 * @param genotype chromosome to transcribe
+	 * @return phenotype
+	 * @throws TranscriberException
+	 */
+	public SparseNet newSparseNet(Chromosome genotype) throws TranscriberException {
+		@SuppressWarnings("unchecked")
+		Set<Allele> alleles = genotype.getAlleles();
+		List<NeuronAllele> inputNeuronAlleles = NeatChromosomeUtility.getNeuronList(alleles, NeuronType.INPUT);
+		List<NeuronAllele> outputNeuronAlleles = NeatChromosomeUtility.getNeuronList(alleles, NeuronType.OUTPUT);
+		List<NeuronAllele> neuronAlleles = new ArrayList<NeuronAllele>(inputNeuronAlleles);
+		neuronAlleles.addAll(NeatChromosomeUtility.getNeuronList(alleles, NeuronType.HIDDEN));
+		neuronAlleles.addAll(outputNeuronAlleles);
+
+		Map<Long, Integer> allNeurons = new HashMap<Long, Integer>();
+		Collection<Long> outputInnoIDs = new ArrayList<Long>();
+		double[] bias = new double[neuronAlleles.size()];
+		for (int n = 0; n < neuronAlleles.size(); n++) {
+			NeuronAllele neuronAllele = neuronAlleles.get(n);
+			allNeurons.put(neuronAllele.getInnovationId(), n);
+			bias[n] = neuronAllele.getBias();
+			if (neuronAllele.getType() == NeuronType.OUTPUT) {
+				outputInnoIDs.add(neuronAllele.getInnovationId());
+			}
+		}
+
+		List<ConnectionAllele> connAlleles = getOrderedConnectionAlleles(genotype, NeatChromosomeUtility.getConnectionList(alleles), outputInnoIDs);
+		int synapseCount = connAlleles.size();
+		int[] pre = new int[synapseCount];
+		int[] post = new int[synapseCount];
+		double[] weights = new double[synapseCount];
+		for (int c = 0; c < synapseCount; c++) {
+			ConnectionAllele connAllele = connAlleles.get(c);
+			pre[c] = allNeurons.get(connAllele.getSrcNeuronId());
+			post[c] = allNeurons.get(connAllele.getDestNeuronId());
+			weights[c] = connAllele.getWeight();
+		}
+
+		BainNN.Topology topology = getTopology();
+		int cyclesPerStep = topology == BainNN.Topology.RECURRENT ? props.getIntProperty(RECURRENT_CYCLES_KEY, 1) : 0;
+		int[] inputDims = new int[] { inputNeuronAlleles.size() };
+		int[] outputDims = new int[] { outputNeuronAlleles.size() };
+		try {
+			return new SparseNet(inputDims, outputDims, bias, pre, post, weights, synapseCount, sparseNetActivationFunction, topology, cyclesPerStep, "network " + genotype.getId());
+		} catch (Exception e) {
+			throw new TranscriberException(e);
+		}
+	}
+
+	/**
+	 * Orders the given connection alleles by working backwards from the output neurons, so that connections to neurons
+	 * closer to the outputs come first. Connections that can not be reached from the output neurons are omitted.
+	 */
+	private List<ConnectionAllele> getOrderedConnectionAlleles(Chromosome genotype, List<ConnectionAllele> remainingConnAlleles, Collection<Long> outputInnoIDs) {
+		List<ConnectionAllele> ordered = new ArrayList<ConnectionAllele>(remainingConnAlleles.size());
 		Set<Long> currentNeuronInnovationIds = new HashSet<Long>(outputInnoIDs);
 		Set<Long> nextNeuronInnovationIds = new HashSet<Long>();
 		Iterator<ConnectionAllele> cit;
-		int bainConnectionID = 0;
 
 		while (!remainingConnAlleles.isEmpty() && !currentNeuronInnovationIds.isEmpty()) {
 			nextNeuronInnovationIds.clear();
@@ -209,12 +296,8 @@ public class NEATTranscriberBain extends TranscriberAdaptor<BainNN> implements C
 			cit = connAlleles.iterator();
 			while (cit.hasNext()) {
 				ConnectionAllele connAllele = cit.next();
-				int src = allNeurons.get(connAllele.getSrcNeuronId());
-				int dest = allNeurons.get(connAllele.getDestNeuronId());
-				synapses.setPreAndPostNeurons(bainConnectionID, src, dest);
-				synapses.setEfficacy(bainConnectionID, connAllele.getWeight());
+				ordered.add(connAllele);
 				nextNeuronInnovationIds.add(connAllele.getSrcNeuronId());
-				bainConnectionID++;
 			}
 			currentNeuronInnovationIds.clear();
 			currentNeuronInnovationIds.addAll(nextNeuronInnovationIds);
@@ -224,37 +307,18 @@ public class NEATTranscriberBain extends TranscriberAdaptor<BainNN> implements C
 		if (!remainingConnAlleles.isEmpty()) {
 			logger.warn("Not all connection genes handled: " + genotype.toString());
 		}
+		return ordered;
+	}
 
-		int cyclesPerStep = 0;
-		BainNN.Topology topology;
-		// For feed-forward networks determine the depth of the network to determine the number of activation cycles.
-		if (recurrencyPolicy.equals(RecurrencyPolicy.DISALLOWED)) {
-			topology = BainNN.Topology.FEED_FORWARD_NONLAYERED;
-			cyclesPerStep = 0; // Calculated by BainNN.
-		} else {
-			topology = BainNN.Topology.RECURRENT;
-			cyclesPerStep = props.getIntProperty(RECURRENT_CYCLES_KEY, 1);
-		}
-
-		int simRes = props.getIntProperty(BainNN.SUBSTRATE_SIMULATION_RESOLUTION, 1000);
-		// If feed-forward, cycles per step is depth-1.
-		String execModeName = props.getProperty(BainNN.SUBSTRATE_EXECUTION_MODE, null);
-		Kernel.EXECUTION_MODE execMode = execModeName == null ? null : Kernel.EXECUTION_MODE.valueOf(execModeName);
-		NeuralNetwork nn = new NeuralNetwork(simRes, neurons, synapses, execMode);
-		int[] inputDims = new int[] { inputNeuronAlleles.size() };
-		int[] outputDims = new int[] { outputNeuronAlleles.size() };
-		try {
-			return new BainNN(nn, inputDims, outputDims, cyclesPerStep, topology, "network " + genotype.getId(), 1000);
-		} catch (Exception e) {
-			throw new TranscriberException(e);
-		}
+	private BainNN.Topology getTopology() {
+		return recurrencyPolicy.equals(RecurrencyPolicy.DISALLOWED) ? BainNN.Topology.FEED_FORWARD_NONLAYERED : BainNN.Topology.RECURRENT;
 	}
 
 	/**
 	 * @see com.anji.integration.Transcriber#getPhenotypeClass()
 	 */
 	public Class getPhenotypeClass() {
-		return BainNN.class;
+		return sparseNetEnabled ? SparseNet.class : BainNN.class;
 	}
 	
 	@Override
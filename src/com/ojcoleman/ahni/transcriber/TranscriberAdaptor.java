@@ -10,6 +10,10 @@ import com.anji.integration.AnjiNetTranscriber;
 import com.anji.integration.Transcriber;
 import com.anji.integration.TranscriberException;
 import com.anji.neat.NeatConfiguration;
+import com.anji.nn.activationfunction.ActivationFunction;
+import com.anji.nn.activationfunction.ActivationFunctionFactory;
+import com.anji.nn.activationfunction.LookupTableActivationFunction;
+import com.anji.nn.activationfunction.SigmoidActivationFunction;
 import com.ojcoleman.ahni.evaluation.AHNIFitnessFunction;
 import com.ojcoleman.ahni.hyperneat.Configurable;
 import com.ojcoleman.ahni.hyperneat.HyperNEATEvolver;
@@ -102,6 +106,22 @@ public abstract class TranscriberAdaptor<T extends Activator> implements Transcr
 	 * the model is set-up with a parameter that can take on integer values to decide what type the model is).
 	 */
 	public static final String SUBSTRATE_SYNAPSE_MODEL_TYPES = "ann.transcriber.synapse.model.types";
+	/**
+	 * If true then the Bain transcribers ({@link HyperNEATTranscriberBain}, {@link ESHyperNEATTranscriberBain} and
+	 * {@link NEATTranscriberBain}) produce a {@link com.ojcoleman.ahni.nn.SparseNet} instead of a
+	 * {@link com.ojcoleman.ahni.nn.BainNN}. SparseNet is implemented in plain Java and only stores the expressed
+	 * synapses, which is typically faster for CPU-only runs. Neuron and synapse model types and parameters are not
+	 * supported, and the neuron model is given by {@link #SUBSTRATE_SPARSE_NET_ACTIVATION} rather than
+	 * {@link #SUBSTRATE_NEURON_MODEL}. Default is false.
+	 */
+	public static final String SUBSTRATE_SPARSE_NET = "ann.transcriber.sparsenet";
+	/**
+	 * The activation function to use for all neurons when {@link #SUBSTRATE_SPARSE_NET} is enabled, see
+	 * {@link com.anji.nn.activationfunction.ActivationFunctionFactory}. The default, "sigmoid", is equivalent to the
+	 * default Bain neuron model (com.ojcoleman.bain.neuron.rate.SigmoidNeuronCollection); "clamped-linear" is
+	 * equivalent to com.ojcoleman.bain.neuron.rate.ClampedLinearNeuronCollection.
+	 */
+	public static final String SUBSTRATE_SPARSE_NET_ACTIVATION = "ann.transcriber.sparsenet.activation";
 	
 	/**
 	 * The minimum connection weight in the substrate.
@@ -219,6 +239,15 @@ public abstract class TranscriberAdaptor<T extends Activator> implements Transcr
 	 */
 	protected int synapseModelTypeCount = 1; // Always has to be at least one type.
 	
+	/**
+	 * Whether a {@link com.ojcoleman.ahni.nn.SparseNet} should be produced, see {@link #SUBSTRATE_SPARSE_NET}.
+	 */
+	protected boolean sparseNetEnabled;
+	/**
+	 * The activation function for SparseNet substrates, see {@link #SUBSTRATE_SPARSE_NET_ACTIVATION}.
+	 */
+	protected ActivationFunction sparseNetActivationFunction;
+	
 	private Properties props;
 
 	/**
@@ -303,6 +332,18 @@ public abstract class TranscriberAdaptor<T extends Activator> implements Transcr
 	
 			synapseDisableParamName = props.getProperty(TranscriberAdaptor.SUBSTRATE_SYNAPSE_MODEL_DISABLE_PARAM, null);
 		}
+		
+		sparseNetEnabled = props.getBooleanProperty(SUBSTRATE_SPARSE_NET, false);
+		if (sparseNetEnabled) {
+			if (neuronTypesEnabled || neuronParamsEnabled || synapseTypesEnabled || synapseParamsEnabled) {
+				throw new IllegalArgumentException("Neuron and synapse model types and parameters are not supported when " + SUBSTRATE_SPARSE_NET + " is enabled.");
+			}
+			sparseNetActivationFunction = ActivationFunctionFactory.getInstance().get(props.getProperty(SUBSTRATE_SPARSE_NET_ACTIVATION, SigmoidActivationFunction.NAME));
+			// The Bain neuron models compute the function exactly, so don't use a fast-math approximation.
+			if (sparseNetActivationFunction instanceof LookupTableActivationFunction) {
+				sparseNetActivationFunction = ((LookupTableActivationFunction) sparseNetActivationFunction).getExact();
+			}
+		}
 	}
 	
 
@@ -7,7 +7,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 /**
  * ThreadFactory to create daemon threads. Uses the factory given by {@link Executors#defaultThreadFactory()} to create the threads, then makes them daemons.
  */
-class DaemonThreadFactory implements ThreadFactory {
+public class DaemonThreadFactory implements ThreadFactory {
 	final String name;
 	final ThreadGroup group;
 	final AtomicInteger threadNumber = new AtomicInteger(1);
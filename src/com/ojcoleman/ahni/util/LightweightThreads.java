@@ -0,0 +1,78 @@
+package com.ojcoleman.ahni.util;
+
+import java.lang.reflect.Method;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Creates lightweight threads for short-lived tasks that spend most of their time blocked, for example waiting on I/O
+ * or another process. If the JVM supports virtual threads (Java 21 or later) then virtual threads are created, via
+ * reflection so that this class may be compiled against and run on earlier versions. Otherwise platform threads with
+ * a small stack are created.
+ */
+public class LightweightThreads {
+	private static Logger logger = Logger.getLogger(LightweightThreads.class);
+
+	/**
+	 * Stack size for platform threads created when virtual threads are not available.
+	 */
+	public static final long FALLBACK_STACK_SIZE = 256 * 1024;
+
+	private static Method ofVirtual;
+	private static Method builderName;
+	private static Method builderHandler;
+	private static Method builderUnstarted;
+
+	static {
+		try {
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			ofVirtual = Thread.class.getMethod("ofVirtual");
+			builderName = builderClass.getMethod("name", String.class);
+			builderHandler = builderClass.getMethod("uncaughtExceptionHandler", Thread.UncaughtExceptionHandler.class);
+			builderUnstarted = builderClass.getMethod("unstarted", Runnable.class);
+			// Virtual threads may be a disabled preview feature.
+			newVirtualThread(new Runnable() {
+				public void run() {
+				}
+			}, "test", null);
+		} catch (Throwable e) {
+			ofVirtual = null;
+		}
+	}
+
+	/**
+	 * @return true iff virtual threads are supported by this JVM.
+	 */
+	public static boolean virtualThreadsAvailable() {
+		return ofVirtual != null;
+	}
+
+	/**
+	 * Create (but do not start) a lightweight thread.
+	 *
+	 * @param task The task to run.
+	 * @param name The name of the thread.
+	 * @param group The ThreadGroup for the thread if virtual threads are not available (virtual threads can not be
+	 *            placed in a specific group). Uncaught exceptions are passed to this group in either case.
+	 */
+	public static Thread newThread(Runnable task, String name, ThreadGroup group) {
+		if (ofVirtual != null) {
+			try {
+				return newVirtualThread(task, name, group);
+			} catch (Exception e) {
+				logger.warn("Unable to create virtual thread, using platform threads instead: " + e);
+				ofVirtual = null;
+			}
+		}
+		return new Thread(group, task, name, FALLBACK_STACK_SIZE);
+	}
+
+	private static Thread newVirtualThread(Runnable task, String name, Thread.UncaughtExceptionHandler handler) throws Exception {
+		Object builder = ofVirtual.invoke(null);
+		builder = builderName.invoke(builder, name);
+		if (handler != null) {
+			builder = builderHandler.invoke(builder, handler);
+		}
+		return (Thread) builderUnstarted.invoke(builder, task);
+	}
+}
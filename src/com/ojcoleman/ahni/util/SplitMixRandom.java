@@ -0,0 +1,74 @@
+package com.ojcoleman.ahni.util;
+
+import java.util.Random;
+
+/**
+ * <p>
+ * A fast, non-thread-safe random number generator based on the SplitMix64 algorithm (Steele, Lea and Flood, "Fast
+ * Splittable Pseudorandom Number Generators", OOPSLA 2014). Unlike {@link java.util.Random} it does not use an atomic
+ * compare-and-set to update its state, so it is suitable for use as a per-thread stream. Streams for different
+ * purposes can be derived from a common seed via {@link #setSeed(long, long, long)}; streams derived from different
+ * keys are statistically independent.
+ * </p>
+ * <p>
+ * Instances must not be shared between threads.
+ * </p>
+ */
+public class SplitMixRandom extends Random {
+	private static final long serialVersionUID = 1L;
+	private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+	private long state;
+
+	public SplitMixRandom() {
+		this(System.nanoTime());
+	}
+
+	public SplitMixRandom(long seed) {
+		super(seed);
+		state = seed;
+	}
+
+	/**
+	 * Set the seed of this generator.
+	 */
+	@Override
+	public void setSeed(long seed) {
+		// Also clears the cached Gaussian value in Random.
+		super.setSeed(seed);
+		state = seed;
+	}
+
+	/**
+	 * Set the seed of this generator to one derived from the given base seed and keys, for example the run seed, the
+	 * generation and the ID of the individual being evaluated.
+	 */
+	public void setSeed(long base, long key1, long key2) {
+		setSeed(mix(mix(base + key1 * GOLDEN_GAMMA) + key2 * GOLDEN_GAMMA));
+	}
+
+	@Override
+	protected int next(int bits) {
+		return (int) (nextLong() >>> (64 - bits));
+	}
+
+	@Override
+	public long nextLong() {
+		state += GOLDEN_GAMMA;
+		return mix(state);
+	}
+
+	@Override
+	public double nextDouble() {
+		return (nextLong() >>> 11) * 0x1.0p-53;
+	}
+
+	/**
+	 * The SplitMix64 finalisation function.
+	 */
+	public static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+}
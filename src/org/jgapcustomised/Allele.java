@@ -197,6 +197,19 @@ public abstract class Allele implements Comparable {
 	 */
 	public abstract boolean isEquivalent(Allele otherAllele);
 
+	/**
+	 * Returns a hash of the innovation ID and parameters of this allele, such that alleles with the same innovation ID
+	 * for which {@link #isEquivalent(Allele)} returns true have the same hash. This default implementation combines
+	 * the innovation ID with {@link #getValue()}; sub-classes with parameters that are not reflected by the value
+	 * should override it.
+	 *
+	 * @see ChromosomeMaterial#getEquivalenceHash()
+	 */
+	public long equivalenceHash() {
+		// Adding 0.0 maps -0.0 to 0.0, which are equivalent values.
+		return getInnovationId() * 0x9E3779B97F4A7C15L ^ Double.doubleToLongBits(getValue() + 0.0);
+	}
+
 	/**
 	 * Generic method for setting the value of an allele. If not required then this method should be overridden with a method returning 0.
 	 */
@@ -321,6 +321,30 @@ public class ChromosomeMaterial implements Comparable, Serializable {
 		return 0;
 	}
 
+	/**
+	 * Returns a 64-bit hash of the alleles of this ChromosomeMaterial, such that equivalent ChromosomeMaterial (see
+	 * {@link #isEquivalent(ChromosomeMaterial)}) have the same hash. The hash is computed each time this method is
+	 * called as the alleles may be modified.
+	 *
+	 * @see Allele#equivalenceHash()
+	 */
+	public long getEquivalenceHash() {
+		long hash = m_alleles.size();
+		for (Allele allele : m_alleles) {
+			hash = mix(hash * 31 + allele.equivalenceHash());
+		}
+		return hash;
+	}
+
+	/**
+	 * Finalisation step of the MurmurHash3 64-bit hash, spreads the bits of the given value over the whole result.
+	 */
+	private static long mix(long z) {
+		z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+		z = (z ^ (z >>> 33)) * 0xc4ceb93c185ec53L;
+		return z ^ (z >>> 33);
+	}
+
 	/**
 	 * @return primary parent ID; dominant parent if chromosome spawned by crossover
 	 */